@@ -0,0 +1,98 @@
+package io.github.ya_b.registry.client.bench;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@code pull} to a tar file and {@code push} from one against a {@link FakeRegistry}, for images of
+ * {@code layers} layers of {@code layerSize} bytes.
+ * <p>
+ * Each invocation moves {@code concurrency} images at once and waits for all of them. Pushes go to a new
+ * repository every time, so every layer is uploaded rather than found on the registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ImageTarBenchmark {
+
+    @Param({"65536", "4194304", "33554432"})
+    public int layerSize;
+
+    @Param({"4"})
+    public int layers;
+
+    @Param({"1", "4"})
+    public int concurrency;
+
+    private FakeRegistry registry;
+    private RegistryClientInstance client;
+    private Path directory;
+    private Path tar;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        registry = FakeRegistry.start();
+        registry.putImage("bench", "v1", layers, layerSize, 42);
+        client = RegistryClient.builder().build();
+        directory = Files.createTempDirectory("registry-client-bench");
+        tar = directory.resolve("source.tar");
+        client.pull(registry.getHost() + "/bench:v1", tar.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        registry.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void pull() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(client.pullAsync(registry.getHost() + "/bench:v1", directory.resolve("pull-" + i + ".tar").toString()));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+
+    @Benchmark
+    public void push() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(client.pushAsync(tar.toString(), registry.getHost() + "/pushed-" + next++ + ":v1"));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+}
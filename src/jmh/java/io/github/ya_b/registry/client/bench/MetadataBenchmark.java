@@ -0,0 +1,132 @@
+package io.github.ya_b.registry.client.bench;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.HttpClientConfig;
+import io.github.ya_b.registry.client.http.RetryPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Metadata calls against a {@link FakeRegistry}: {@code digest}, {@code tags} and catalog paging.
+ * <p>
+ * Each invocation issues {@code concurrency} calls through the async API and waits for all of them, so the score
+ * is the time of one batch. {@code latencyMillis} holds back every response like a remote registry would, and
+ * {@code errorRate} answers that share of requests with a 503 the client has to retry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBenchmark {
+
+    private static final int TAGS = 500;
+    private static final int REPOSITORIES = 500;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1", "16", "64"})
+    public int concurrency;
+
+    @Param({"0", "2"})
+    public int latencyMillis;
+
+    @Param({"0", "0.01"})
+    public double errorRate;
+
+    private FakeRegistry registry;
+    private RegistryClientInstance client;
+    private ExecutorService walkers;
+    private String repository;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        registry = FakeRegistry.start();
+        for (int i = 0; i < TAGS; i++) {
+            registry.putImage("bench", "v" + i, 1, 1024, i);
+        }
+        for (int i = 1; i < REPOSITORIES; i++) {
+            registry.putImage(String.format("team/repo-%03d", i), "latest", 1, 16, i);
+        }
+        registry.delay(Duration.ofMillis(latencyMillis));
+        registry.errorRate(errorRate, 503);
+        client = RegistryClient.builder()
+                .httpClientConfig(HttpClientConfig.builder()
+                        .maxConnectionsPerHost(Math.max(concurrency, 2))
+                        .retryPolicy(RetryPolicy.builder().initialBackoff(Duration.ofMillis(1)).build())
+                        .build())
+                .maxConcurrentRequestsPerHost(concurrency)
+                .build();
+        repository = registry.getHost() + "/bench";
+        walkers = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        walkers.shutdownNow();
+        client.close();
+        registry.close();
+    }
+
+    @Benchmark
+    public List<Optional<String>> digest() {
+        List<CompletableFuture<Optional<String>>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(client.digestAsync(repository + ":v" + (next++ % TAGS)));
+        }
+        return join(futures);
+    }
+
+    @Benchmark
+    public List<List<String>> tags() {
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(client.tagsAsync(repository));
+        }
+        return join(futures);
+    }
+
+    @Benchmark
+    public List<Long> catalogPaging() {
+        List<CompletableFuture<Long>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (Stream<String> repositories = client.catalogStream("http://" + registry.getHost(), PAGE_SIZE)) {
+                    return repositories.count();
+                }
+            }, walkers));
+        }
+        return join(futures);
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        futures.forEach(future -> results.add(future.join()));
+        return results;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.ya_b.registry.client.bench;
+
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import com.google.cloud.tools.jib.http.FailoverHttpClient;
+import com.google.cloud.tools.jib.http.Request;
+import com.google.cloud.tools.jib.http.Response;
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.http.HttpClient;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential {@code digest} calls against a {@link FakeRegistry}, comparing a fresh Jib {@link FailoverHttpClient}
+ * per call, as the client did before the shared transport, with the pooled {@link HttpClient}.
+ * <p>
+ * Sampled per call, so the JMH results carry the p50 and p99 latency of each {@code transport}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Param({"perCall", "pooled"})
+    public String transport;
+
+    private FakeRegistry registry;
+    private JibImageManager manager;
+    private String image;
+    private URL url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        registry = FakeRegistry.start();
+        registry.putManifest("bench", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+        manager = new JibImageManager(new HttpClient());
+        image = registry.getHost() + "/bench:v1";
+        url = URI.create("http://" + registry.getHost() + "/v2/bench/manifests/v1").toURL();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.close();
+        registry.close();
+    }
+
+    @Benchmark
+    public Optional<String> digest() throws IOException, InvalidImageReferenceException {
+        if (transport.equals("pooled")) {
+            return manager.getDigest(image, null);
+        }
+        FailoverHttpClient client = new FailoverHttpClient(true, true, ignored -> { });
+        Request request = Request.builder().setHttpTimeout(3000)
+                .setAccept(Collections.singletonList(MANIFEST_TYPE)).build();
+        try (Response response = client.call("HEAD", url, request)) {
+            return response.getHeader("Docker-Content-Digest").stream().findFirst();
+        } finally {
+            client.shutDown();
+        }
+    }
+}
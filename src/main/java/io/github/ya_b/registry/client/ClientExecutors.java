@@ -0,0 +1,38 @@
+package io.github.ya_b.registry.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default executors of the client.
+ */
+final class ClientExecutors {
+
+    private ClientExecutors() {
+    }
+
+    /**
+     * A virtual-thread-per-task executor on Java 21+, otherwise a fixed pool of daemon threads sized for
+     * blocking I/O.
+     */
+    static ExecutorService newDefaultExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+            return java.util.concurrent.Executors.newFixedThreadPool(threads, daemonThreadFactory("registry-client"));
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
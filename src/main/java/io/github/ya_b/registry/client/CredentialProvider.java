@@ -0,0 +1,14 @@
+package io.github.ya_b.registry.client;
+
+/**
+ * Supplies the username/password pair to use for a registry endpoint.
+ */
+@FunctionalInterface
+public interface CredentialProvider {
+
+    /**
+     * @param endpoint registry endpoint such as {@code https://registry-1.docker.io}
+     * @return {@code {username, password}}, or null for anonymous access
+     */
+    String[] getCredentials(String endpoint);
+}
@@ -0,0 +1,41 @@
+package io.github.ya_b.registry.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe in-memory {@link CredentialProvider} holding basic credentials per endpoint.
+ */
+public class CredentialStore implements CredentialProvider {
+
+    private final Map<String, String[]> credentials = new ConcurrentHashMap<>();
+    private volatile String[] dockerHubCredentials;
+
+    /**
+     * Set basic authentication for a registry endpoint
+     */
+    public CredentialStore authBasic(String endpoint, String username, String password) {
+        credentials.put(normalizeEndpoint(endpoint), new String[]{username, password});
+        return this;
+    }
+
+    /**
+     * Set Docker Hub authentication
+     */
+    public CredentialStore authDockerHub(String username, String password) {
+        dockerHubCredentials = new String[]{username, password};
+        return this;
+    }
+
+    @Override
+    public String[] getCredentials(String endpoint) {
+        if (endpoint.contains("docker.io") || endpoint.contains("index.docker.io")) {
+            return dockerHubCredentials;
+        }
+        return credentials.get(normalizeEndpoint(endpoint));
+    }
+
+    private static String normalizeEndpoint(String endpoint) {
+        return endpoint.replaceAll("^https?://", "").replaceAll("/$", "");
+    }
+}
@@ -2,44 +2,77 @@ package io.github.ya_b.registry.client;
 
 import com.google.cloud.tools.jib.api.ImageReference;
 import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.analytics.ImageSize;
+import io.github.ya_b.registry.client.analytics.LayerDiff;
+import io.github.ya_b.registry.client.analytics.StorageReport;
+import io.github.ya_b.registry.client.copy.CopyResult;
+import io.github.ya_b.registry.client.crawler.CrawlSummary;
+import io.github.ya_b.registry.client.crawler.InventorySink;
+import io.github.ya_b.registry.client.delete.DeleteResult;
+import io.github.ya_b.registry.client.http.ManifestCache;
+import io.github.ya_b.registry.client.http.Platform;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.TokenCache;
 import io.github.ya_b.registry.client.http.resp.CatalogResp;
-import io.github.ya_b.registry.client.jib.JibImageManager;
-import lombok.extern.slf4j.Slf4j;
+import io.github.ya_b.registry.client.index.MetadataIndex;
+import io.github.ya_b.registry.client.lazy.LazyImage;
+import io.github.ya_b.registry.client.index.RefreshSummary;
+import io.github.ya_b.registry.client.retention.RetentionDecision;
+import io.github.ya_b.registry.client.retention.RetentionPolicy;
+import io.github.ya_b.registry.client.retention.RetentionReport;
+import io.github.ya_b.registry.client.tar.BatchPushResult;
+import io.github.ya_b.registry.client.tar.TarVerification;
+import io.github.ya_b.registry.client.watch.RegistryWatcher;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-
-@Slf4j
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Static facade over a default {@link RegistryClientInstance}. Use {@link #builder()} for independently
+ * configured clients.
+ */
 public class RegistryClient {
 
-    private static final JibImageManager JIB_IMAGE_MANAGER = new JibImageManager();
+    // Simple credential storage shared by the static API
+    private static final CredentialStore CREDENTIALS = new CredentialStore();
 
-    // Simple credential storage for Jib
-    private static final Map<String, String[]> CREDENTIALS = new ConcurrentHashMap<>();
-    private static String[] dockerHubCredentials = null;
+    private static final RegistryClientInstance DEFAULT_INSTANCE = RegistryClientInstance.builder()
+            .credentialProvider(CREDENTIALS)
+            .build();
 
-    static {
-        
-        System.setProperty("sendCredentialsOverHttp", "true");
-        System.setProperty("jib.httpTimeout", "30000");
-        System.setProperty("jib.allowInsecureRegistries", "true");
+    /**
+     * Start building a client with its own transport, credentials, executor and timeouts
+     */
+    public static RegistryClientInstance.RegistryClientInstanceBuilder builder() {
+        return RegistryClientInstance.builder();
+    }
+
+    /**
+     * The instance behind the static methods
+     */
+    public static RegistryClientInstance getDefaultInstance() {
+        return DEFAULT_INSTANCE;
     }
 
     /**
      * Set basic authentication for a registry endpoint
      */
     public static void authBasic(String endpoint, String username, String password) {
-        CREDENTIALS.put(normalizeEndpoint(endpoint), new String[]{username, password});
+        CREDENTIALS.authBasic(endpoint, username, password);
     }
 
     /**
      * Set Docker Hub authentication
      */
     public static void authDockerHub(String username, String password) {
-        dockerHubCredentials = new String[]{username, password};
+        CREDENTIALS.authDockerHub(username, password);
     }
 
     /**
@@ -47,8 +80,13 @@ public class RegistryClient {
      */
     public static String extractEndpoint(String imageReference) throws InvalidImageReferenceException {
         ImageReference imageRef = ImageReference.parse(imageReference);
-        String registry = imageRef.getRegistry();
+        return endpointOf(imageRef.getRegistry());
+    }
 
+    /**
+     * Registry endpoint for a registry host
+     */
+    static String endpointOf(String registry) {
         // Add protocol prefix for endpoint matching
         if (registry.startsWith("localhost") || registry.startsWith("127.0.0.1") || registry.startsWith("0.0.0.0")) {
             return "http://" + registry;
@@ -61,131 +99,164 @@ public class RegistryClient {
      * Get credentials for an endpoint
      */
     static String[] getCredentials(String endpoint) {
-        if (endpoint.contains("docker.io") || endpoint.contains("index.docker.io")) {
-            return dockerHubCredentials;
-        }
-        return CREDENTIALS.get(normalizeEndpoint(endpoint));
+        return CREDENTIALS.getCredentials(endpoint);
     }
 
-    private static String normalizeEndpoint(String endpoint) {
-        return endpoint.replaceAll("^https?://", "").replaceAll("/$", "");
+    public static void push(String filePath, String image) throws IOException {
+        DEFAULT_INSTANCE.push(filePath, image);
     }
 
-    public static void push(String filePath, String image) throws IOException {
-        try {
-            // Set credentials for Jib
-            String endpoint = extractEndpoint(image);
-            String[] credentials = getCredentials(endpoint);
+    public static BatchPushResult pushAll(Map<Path, String> images) throws IOException {
+        return DEFAULT_INSTANCE.pushAll(images);
+    }
 
+    public static TarVerification verify(String filePath) throws IOException {
+        return DEFAULT_INSTANCE.verify(filePath);
+    }
 
-            JIB_IMAGE_MANAGER.pushToRegistry(filePath, image, credentials);
-        } catch (InvalidImageReferenceException e) {
-            log.error("Invalid image reference while pushing", e);
-            throw new IOException("Invalid image reference", e);
-        }
+    public static void pull(String image, String filePath) throws IOException {
+        DEFAULT_INSTANCE.pull(image, filePath);
     }
 
+    public static void pull(String image, String filePath, Platform platform) throws IOException {
+        DEFAULT_INSTANCE.pull(image, filePath, platform);
+    }
 
-    public static void pull(String image, String filePath) throws IOException {
-        try {
-            // Set credentials for Jib
-            String endpoint = extractEndpoint(image);
-            String[] credentials = getCredentials(endpoint);
-
-            JIB_IMAGE_MANAGER.saveToTar(ImageReference.parse(image), credentials, filePath);
-        } catch (InvalidImageReferenceException e) {
-            log.error("Invalid image reference while pulling", e);
-            throw new IOException("Invalid image reference", e);
-        }
+    public static void pull(String image, OutputStream out) throws IOException {
+        DEFAULT_INSTANCE.pull(image, out);
+    }
+
+    public static RawManifest manifest(String image) throws IOException {
+        return DEFAULT_INSTANCE.manifest(image);
     }
 
     public static Optional<String> digest(String image) throws IOException {
-        try {
-            // Set credentials for Jib
-            String endpoint = extractEndpoint(image);
-            String[] credentials = getCredentials(endpoint);
-
-            return JIB_IMAGE_MANAGER.getDigest(image, credentials);
-        } catch (InvalidImageReferenceException e) {
-            log.error("Invalid image reference while getting digest", e);
-            throw new IOException("Invalid image reference", e);
-        }
+        return DEFAULT_INSTANCE.digest(image);
     }
 
     public static List<String> tags(String image) throws IOException {
-        try {
-            // Set credentials for Jib
-            String endpoint = extractEndpoint(image);
-            String[] credentials = getCredentials(endpoint);
-
-            return JIB_IMAGE_MANAGER.getTags(image, credentials);
-        } catch (InvalidImageReferenceException e) {
-            log.error("Invalid image reference while getting tags", e);
-            throw new IOException("Invalid image reference", e);
-        }
+        return DEFAULT_INSTANCE.tags(image);
+    }
+
+    public static Stream<String> tagsStream(String image, int pageSize) throws IOException {
+        return DEFAULT_INSTANCE.tagsStream(image, pageSize);
     }
 
     public static void delete(String image) throws IOException {
-        try {
-            // Set credentials for registry API
-            String endpoint = extractEndpoint(image);
-            String[] credentials = getCredentials(endpoint);
-
-            JIB_IMAGE_MANAGER.deleteImage(image, credentials);
-        } catch (InvalidImageReferenceException e) {
-            log.error("Invalid image reference while deleting", e);
-            throw new IOException("Invalid image reference", e);
-        }
+        DEFAULT_INSTANCE.delete(image);
     }
 
-    public static void copy(String src, String dst) throws IOException {
-        try {
-            // Set credentials for Jib
-            String srcEndpoint = extractEndpoint(src);
-            String dstEndpoint = extractEndpoint(dst);
-            String[] srcCredentials = getCredentials(srcEndpoint);
-            String[] dstCredentials = getCredentials(dstEndpoint);
+    public static Map<String, DeleteResult> delete(Collection<String> images) {
+        return DEFAULT_INSTANCE.delete(images);
+    }
 
-            JIB_IMAGE_MANAGER.pushToRegistry(src, srcCredentials, dst, dstCredentials);
-        } catch (InvalidImageReferenceException e) {
-            log.error("Invalid image reference while copying", e);
-            throw new IOException("Invalid image reference", e);
-        }
+    public static CopyResult copy(String src, String dst) throws IOException {
+        return DEFAULT_INSTANCE.copy(src, dst);
+    }
+
+    public static CopyResult copy(String src, String dst, Collection<Platform> platforms) throws IOException {
+        return DEFAULT_INSTANCE.copy(src, dst, platforms);
+    }
+
+    public static void downloadBlob(String image, String digest, Path target) throws IOException {
+        DEFAULT_INSTANCE.downloadBlob(image, digest, target);
+    }
+
+    public static String uploadBlob(String image, Path source) throws IOException {
+        return DEFAULT_INSTANCE.uploadBlob(image, source);
     }
 
     public static CatalogResp catalog(String url, Integer count, String last) throws IOException {
-        try {
-            // Normalize the registry URL and get credentials
-            String normalizedUrl = normalizeRegistryUrl(url);
-            String[] credentials = getCredentials(normalizedUrl);
-
-            return JIB_IMAGE_MANAGER.getCatalog(normalizedUrl, credentials, count, last);
-        } catch (Exception e) {
-            log.error("Failed to get catalog from registry: {}", url, e);
-            throw new IOException("Failed to get catalog", e);
-        }
+        return DEFAULT_INSTANCE.catalog(url, count, last);
     }
 
-    /**
-     * Normalize registry URL for consistent credential lookup
-     */
-    private static String normalizeRegistryUrl(String url) {
-        if (url == null || url.trim().isEmpty()) {
-            throw new IllegalArgumentException("Registry URL cannot be null or empty");
-        }
+    public static Stream<String> catalogStream(String url, int pageSize) {
+        return DEFAULT_INSTANCE.catalogStream(url, pageSize);
+    }
 
-        String normalized = url.trim();
+    public static CrawlSummary crawl(String url, InventorySink sink) throws IOException {
+        return DEFAULT_INSTANCE.crawl(url, sink);
+    }
 
-        // Add protocol if missing
-        if (!normalized.startsWith("http://") && !normalized.startsWith("https://")) {
-            // Check if it's a local registry
-            if (normalized.startsWith("localhost") || normalized.startsWith("127.0.0.1") || normalized.startsWith("0.0.0.0")) {
-                normalized = "http://" + normalized;
-            } else {
-                normalized = "https://" + normalized;
-            }
-        }
+    public static LazyImage openImage(String image) throws IOException {
+        return DEFAULT_INSTANCE.openImage(image);
+    }
+
+    public static ImageSize imageSize(String image) throws IOException {
+        return DEFAULT_INSTANCE.imageSize(image);
+    }
+
+    public static LayerDiff layerDiff(String from, String to) throws IOException {
+        return DEFAULT_INSTANCE.layerDiff(from, to);
+    }
+
+    public static StorageReport storageReport(String url) throws IOException {
+        return DEFAULT_INSTANCE.storageReport(url);
+    }
+
+    public static RefreshSummary refreshIndex(MetadataIndex index, String url) throws IOException {
+        return DEFAULT_INSTANCE.refreshIndex(index, url);
+    }
+
+    public static RetentionReport applyRetention(String url, RetentionPolicy policy, Consumer<RetentionDecision> listener) throws IOException {
+        return DEFAULT_INSTANCE.applyRetention(url, policy, listener);
+    }
+
+    public static RegistryWatcher watcher() {
+        return DEFAULT_INSTANCE.watcher();
+    }
+
+    public static Map<String, Optional<String>> digests(Collection<String> images) {
+        return DEFAULT_INSTANCE.digests(images);
+    }
+
+    public static CompletableFuture<Void> pushAsync(String filePath, String image) {
+        return DEFAULT_INSTANCE.pushAsync(filePath, image);
+    }
+
+    public static CompletableFuture<Void> pullAsync(String image, String filePath) {
+        return DEFAULT_INSTANCE.pullAsync(image, filePath);
+    }
 
-        return normalized;
+    public static CompletableFuture<Optional<String>> digestAsync(String image) {
+        return DEFAULT_INSTANCE.digestAsync(image);
+    }
+
+    public static CompletableFuture<RawManifest> manifestAsync(String image) {
+        return DEFAULT_INSTANCE.manifestAsync(image);
+    }
+
+    public static CompletableFuture<List<String>> tagsAsync(String image) {
+        return DEFAULT_INSTANCE.tagsAsync(image);
+    }
+
+    public static CompletableFuture<Void> deleteAsync(String image) {
+        return DEFAULT_INSTANCE.deleteAsync(image);
+    }
+
+    public static CompletableFuture<CopyResult> copyAsync(String src, String dst) {
+        return DEFAULT_INSTANCE.copyAsync(src, dst);
+    }
+
+    public static CompletableFuture<CopyResult> copyAsync(String src, String dst, Collection<Platform> platforms) {
+        return DEFAULT_INSTANCE.copyAsync(src, dst, platforms);
+    }
+
+    public static CompletableFuture<CatalogResp> catalogAsync(String url, Integer count, String last) {
+        return DEFAULT_INSTANCE.catalogAsync(url, count, last);
+    }
+
+    /**
+     * Hit/miss counters of the bearer token cache
+     */
+    public static TokenCache.Stats tokenCacheStats() {
+        return DEFAULT_INSTANCE.tokenCacheStats();
+    }
+
+    /**
+     * Hit/revalidation/miss counters of the manifest cache
+     */
+    public static ManifestCache.Stats manifestCacheStats() {
+        return DEFAULT_INSTANCE.manifestCacheStats();
     }
 }
@@ -0,0 +1,767 @@
+package io.github.ya_b.registry.client;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.analytics.ImageSize;
+import io.github.ya_b.registry.client.analytics.LayerDiff;
+import io.github.ya_b.registry.client.analytics.SizeAnalyzer;
+import io.github.ya_b.registry.client.analytics.StorageReport;
+import io.github.ya_b.registry.client.cache.BlobCache;
+import io.github.ya_b.registry.client.copy.CopyResult;
+import io.github.ya_b.registry.client.copy.ImageCopier;
+import io.github.ya_b.registry.client.crawler.CrawlSummary;
+import io.github.ya_b.registry.client.crawler.CrawlerConfig;
+import io.github.ya_b.registry.client.crawler.InventorySink;
+import io.github.ya_b.registry.client.crawler.RegistryCrawler;
+import io.github.ya_b.registry.client.delete.BatchDeleter;
+import io.github.ya_b.registry.client.delete.DeleteResult;
+import io.github.ya_b.registry.client.http.Authenticator;
+import io.github.ya_b.registry.client.http.HostLimiter;
+import io.github.ya_b.registry.client.http.HttpClient;
+import io.github.ya_b.registry.client.http.HttpClientConfig;
+import io.github.ya_b.registry.client.http.ManifestCache;
+import io.github.ya_b.registry.client.http.MirrorConfig;
+import io.github.ya_b.registry.client.http.MirrorRouter;
+import io.github.ya_b.registry.client.http.Platform;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.TokenCache;
+import io.github.ya_b.registry.client.metrics.RegistryMetrics;
+import io.github.ya_b.registry.client.http.resp.CatalogResp;
+import io.github.ya_b.registry.client.index.IndexRefresher;
+import io.github.ya_b.registry.client.index.MetadataIndex;
+import io.github.ya_b.registry.client.index.RefreshSummary;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import io.github.ya_b.registry.client.lazy.LazyImage;
+import io.github.ya_b.registry.client.lazy.LazyImageConfig;
+import io.github.ya_b.registry.client.retention.RetentionDecision;
+import io.github.ya_b.registry.client.retention.RetentionEngine;
+import io.github.ya_b.registry.client.retention.RetentionPolicy;
+import io.github.ya_b.registry.client.retention.RetentionReport;
+import io.github.ya_b.registry.client.tar.ImageExporter;
+import io.github.ya_b.registry.client.tar.BatchPushResult;
+import io.github.ya_b.registry.client.tar.ImageImporter;
+import io.github.ya_b.registry.client.tar.TarVerification;
+import io.github.ya_b.registry.client.tar.TarVerifier;
+import io.github.ya_b.registry.client.watch.RegistryWatcher;
+import io.github.ya_b.registry.client.watch.WatchConfig;
+import io.github.ya_b.registry.client.transfer.BlobTransfer;
+import io.github.ya_b.registry.client.transfer.TransferConfig;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A registry client with its own transport, credentials, executor and timeouts.
+ * <p>
+ * Instances are thread-safe and independent of each other, so differently tuned clients can be used side by side
+ * in one JVM. {@link RegistryClient} exposes the same operations statically over a default instance.
+ * <pre>{@code
+ * RegistryClientInstance client = RegistryClient.builder()
+ *         .credentialProvider(new CredentialStore().authBasic("localhost:5000", "admin", "123456"))
+ *         .httpClientConfig(HttpClientConfig.builder().maxConnectionsPerHost(50).build())
+ *         .build();
+ * }</pre>
+ */
+@Slf4j
+public class RegistryClientInstance implements Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    @FunctionalInterface
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    private final CredentialProvider credentialProvider;
+    private final JibImageManager jibImageManager;
+    private final ExecutorService asyncExecutor;
+    private final boolean ownsAsyncExecutor;
+    private final HostLimiter hostLimiter;
+    private final ImageCopier imageCopier;
+    private final BlobTransfer blobTransfer;
+    private final ImageExporter imageExporter;
+    private final ImageImporter imageImporter;
+    private final TarVerifier tarVerifier;
+
+    /**
+     * @param httpClientConfig             pool size and timeouts of the registry API transport, defaults when null
+     * @param credentialProvider           credentials per endpoint, anonymous access when null
+     * @param asyncExecutor                executor running the {@code *Async} operations; when null a virtual
+     *                                     thread per task executor (Java 21+) or a fixed daemon pool is created
+     *                                     and shut down by {@link #close()}
+     * @param maxConcurrentRequestsPerHost cap on in-flight async operations per registry host, defaults to the
+     *                                     connection pool size
+     * @param transferConfig               chunking and resume settings of blob transfers, defaults when null
+     * @param blobCache                    on-disk blob cache consulted by pull, push, copy and blob downloads;
+     *                                     may be shared between instances and processes, none when null
+     * @param manifestCache                in-memory manifest cache; when null one is created that keeps manifests
+     *                                     by digest and revalidates tags on every read
+     * @param mirrorConfig                 read mirrors per upstream registry, with latency-based selection and
+     *                                     optional hedging; reads go to the registries themselves when null
+     * @param metrics                      receives operation timings, retries and pool and cache gauges; overrides
+     *                                     {@link HttpClientConfig#getMetrics()} when set
+     */
+    @Builder
+    private RegistryClientInstance(HttpClientConfig httpClientConfig, CredentialProvider credentialProvider,
+                                   ExecutorService asyncExecutor,
+                                   Integer maxConcurrentRequestsPerHost, TransferConfig transferConfig,
+                                   BlobCache blobCache, ManifestCache manifestCache, MirrorConfig mirrorConfig,
+                                   RegistryMetrics metrics) {
+        HttpClientConfig config = httpClientConfig != null ? httpClientConfig : HttpClientConfig.defaults();
+        if (metrics != null) {
+            config = config.toBuilder().metrics(metrics).build();
+        }
+        this.credentialProvider = credentialProvider != null ? credentialProvider : endpoint -> null;
+        HttpClient httpClient = new HttpClient(config);
+        this.jibImageManager = new JibImageManager(httpClient, new Authenticator(httpClient), blobCache,
+                manifestCache != null ? manifestCache : new ManifestCache(),
+                mirrorConfig != null ? new MirrorRouter(httpClient, mirrorConfig) : null);
+        this.ownsAsyncExecutor = asyncExecutor == null;
+        this.asyncExecutor = asyncExecutor != null ? asyncExecutor : ClientExecutors.newDefaultExecutor();
+        this.hostLimiter = new HostLimiter(maxConcurrentRequestsPerHost != null
+                ? maxConcurrentRequestsPerHost : config.getMaxConnectionsPerHost());
+        this.imageCopier = new ImageCopier(jibImageManager.getRegistryApi(), this.asyncExecutor,
+                ImageCopier.DEFAULT_BLOB_CONCURRENCY, blobCache);
+        this.blobTransfer = new BlobTransfer(jibImageManager.getRegistryApi(), this.asyncExecutor,
+                transferConfig != null ? transferConfig : TransferConfig.defaults(), blobCache);
+        this.imageExporter = new ImageExporter(jibImageManager.getRegistryApi(), blobTransfer);
+        this.imageImporter = new ImageImporter(jibImageManager.getRegistryApi(), blobTransfer, this.asyncExecutor);
+        this.tarVerifier = new TarVerifier(this.asyncExecutor, Runtime.getRuntime().availableProcessors());
+        if (config.getMetrics() != RegistryMetrics.NOOP) {
+            registerCacheGauges(config.getMetrics(), blobCache);
+        }
+    }
+
+    private void registerCacheGauges(RegistryMetrics metrics, BlobCache blobCache) {
+        TokenCache tokenCache = jibImageManager.getAuthenticator().getTokenCache();
+        metrics.gauge("registry.client.token.cache.hits", Map.of(), () -> tokenCache.stats().hits());
+        metrics.gauge("registry.client.token.cache.misses", Map.of(), () -> tokenCache.stats().misses());
+        metrics.gauge("registry.client.token.cache.size", Map.of(), () -> tokenCache.stats().size());
+        ManifestCache manifestCache = jibImageManager.getRegistryApi().getManifestCache();
+        metrics.gauge("registry.client.manifest.cache.hits", Map.of(), () -> manifestCache.stats().hits());
+        metrics.gauge("registry.client.manifest.cache.revalidations", Map.of(), () -> manifestCache.stats().revalidations());
+        metrics.gauge("registry.client.manifest.cache.misses", Map.of(), () -> manifestCache.stats().misses());
+        metrics.gauge("registry.client.manifest.cache.size", Map.of(), () -> manifestCache.stats().size());
+        if (blobCache != null) {
+            metrics.gauge("registry.client.blob.cache.hits", Map.of(), () -> blobCache.stats().hits());
+            metrics.gauge("registry.client.blob.cache.misses", Map.of(), () -> blobCache.stats().misses());
+            metrics.gauge("registry.client.blob.cache.bytes", Map.of(), () -> blobCache.stats().size());
+        }
+    }
+
+    public CredentialProvider getCredentialProvider() {
+        return credentialProvider;
+    }
+
+    public JibImageManager getJibImageManager() {
+        return jibImageManager;
+    }
+
+    /**
+     * The blob cache of this client, or null when caching is disabled
+     */
+    public BlobCache getBlobCache() {
+        return jibImageManager.getBlobCache();
+    }
+
+    /**
+     * Get credentials for an endpoint
+     */
+    String[] getCredentials(String endpoint) {
+        return credentialProvider.getCredentials(endpoint);
+    }
+
+    /**
+     * Push an image tar (as written by {@link #pull(String, String)} or {@code docker save}), uploading the layers
+     * straight from the archive, see {@link ImageImporter}.
+     */
+    public void push(String filePath, String image) throws IOException {
+        try {
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            imageImporter.importTar(Path.of(filePath), ImageReference.parse(image), credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while pushing", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Push many image tars, uploading the blobs they share only once, see {@link ImageImporter#importAll}.
+     *
+     * @param images destination image reference per tar
+     */
+    public BatchPushResult pushAll(Map<Path, String> images) throws IOException {
+        Map<Path, ImageReference> references = new LinkedHashMap<>();
+        for (Map.Entry<Path, String> image : images.entrySet()) {
+            try {
+                references.put(image.getKey(), ImageReference.parse(image.getValue()));
+            } catch (InvalidImageReferenceException e) {
+                throw new IOException("Invalid image reference: " + image.getValue(), e);
+            }
+        }
+        return imageImporter.importAll(references, registry -> getCredentials(RegistryClient.endpointOf(registry)));
+    }
+
+    /**
+     * Check every blob of an image tar against its digest, hashing the entries in parallel across the available
+     * cores, see {@link TarVerifier}.
+     *
+     * @throws IOException listing every entry that does not match its digest
+     */
+    public TarVerification verify(String filePath) throws IOException {
+        return tarVerifier.verify(Path.of(filePath));
+    }
+
+    /**
+     * Save an image as a tar file, streaming the layers from the registry into the archive, see {@link ImageExporter}.
+     */
+    public void pull(String image, String filePath) throws IOException {
+        pull(image, filePath, null);
+    }
+
+    /**
+     * Save one platform of a multi-platform image as a tar file
+     *
+     * @param platform platform to save, null for linux/amd64 or else the first one of the index
+     */
+    public void pull(String image, String filePath, Platform platform) throws IOException {
+        try {
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            imageExporter.export(ImageReference.parse(image), credentials, platform, Path.of(filePath));
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while pulling", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Write an image tar to a stream without a temporary file; the stream is left open
+     */
+    public void pull(String image, OutputStream out) throws IOException {
+        pull(image, Channels.newChannel(out));
+        out.flush();
+    }
+
+    /**
+     * Write an image tar to a channel without a temporary file; the channel is left open
+     */
+    public void pull(String image, WritableByteChannel out) throws IOException {
+        pull(image, out, null);
+    }
+
+    /**
+     * Write one platform of an image tar to a channel; the channel is left open
+     */
+    public void pull(String image, WritableByteChannel out, Platform platform) throws IOException {
+        try {
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            imageExporter.export(ImageReference.parse(image), credentials, platform, out);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while pulling", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    public Optional<String> digest(String image) throws IOException {
+        try {
+            // Set credentials for Jib
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            return jibImageManager.getDigest(image, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while getting digest", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Read an image manifest or a manifest list / OCI index, negotiating every supported media type;
+     * {@link RawManifest#parse()} gives the model and {@link RawManifest#isIndex()} tells which kind it is.
+     * Served from the manifest cache where possible, see {@link ManifestCache}.
+     */
+    public RawManifest manifest(String image) throws IOException {
+        try {
+            String[] credentials = getCredentials(RegistryClient.extractEndpoint(image));
+
+            return jibImageManager.getManifest(image, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while getting manifest", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Resolve the digests of many images in one batch, see {@link JibImageManager#getDigests}.
+     * Failed references map to an empty result and are logged.
+     */
+    public Map<String, Optional<String>> digests(Collection<String> images) {
+        return digests(images, (image, e) -> log.warn("Failed to get digest for image: {}", image, e));
+    }
+
+    /**
+     * Resolve the digests of many images in one batch, reporting each failed reference to {@code onError}
+     */
+    public Map<String, Optional<String>> digests(Collection<String> images, BiConsumer<String, Exception> onError) {
+        return jibImageManager.getDigests(images, registry -> getCredentials(RegistryClient.endpointOf(registry)),
+                asyncExecutor, hostLimiter, onError);
+    }
+
+    public List<String> tags(String image) throws IOException {
+        try {
+            // Set credentials for Jib
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            return jibImageManager.getTags(image, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while getting tags", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Lazily stream all tags of a repository, {@value #DEFAULT_PAGE_SIZE} per request
+     */
+    public Stream<String> tagsStream(String image) throws IOException {
+        return tagsStream(image, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Lazily stream all tags of a repository page by page, prefetching the next page in the background.
+     * Close the stream when not consuming it to the end.
+     */
+    public Stream<String> tagsStream(String image, int pageSize) throws IOException {
+        try {
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            return jibImageManager.streamTags(image, credentials, pageSize, asyncExecutor);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while getting tags", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    public void delete(String image) throws IOException {
+        try {
+            // Set credentials for registry API
+            String endpoint = RegistryClient.extractEndpoint(image);
+            String[] credentials = getCredentials(endpoint);
+
+            jibImageManager.deleteImage(image, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while deleting", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Delete many images, resolving tags in parallel and deleting every distinct manifest once, see
+     * {@link BatchDeleter}. Failures are reported per reference instead of being thrown.
+     */
+    public Map<String, DeleteResult> delete(Collection<String> images) {
+        return new BatchDeleter(jibImageManager, asyncExecutor, hostLimiter)
+                .delete(images, registry -> getCredentials(RegistryClient.endpointOf(registry)));
+    }
+
+    /**
+     * Copy an image (or a multi-platform manifest list) between repositories or registries, transferring only
+     * the blobs the destination does not have yet, see {@link ImageCopier}.
+     */
+    public CopyResult copy(String src, String dst) throws IOException {
+        return copy(src, dst, null);
+    }
+
+    /**
+     * Copy only the given platforms of a manifest list or index; their blobs are transferred concurrently
+     *
+     * @param platforms platforms to copy, null or empty for all
+     */
+    public CopyResult copy(String src, String dst, Collection<Platform> platforms) throws IOException {
+        try {
+            String srcEndpoint = RegistryClient.extractEndpoint(src);
+            String dstEndpoint = RegistryClient.extractEndpoint(dst);
+            String[] srcCredentials = getCredentials(srcEndpoint);
+            String[] dstCredentials = getCredentials(dstEndpoint);
+
+            return imageCopier.copy(src, srcCredentials, dst, dstCredentials, platforms);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while copying", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Download a blob of the image's repository to {@code target} with parallel ranged requests, resuming an
+     * earlier interrupted download of the same blob, see {@link BlobTransfer}.
+     */
+    public void downloadBlob(String image, String digest, Path target) throws IOException {
+        try {
+            ImageReference imageRef = ImageReference.parse(image);
+            String[] credentials = getCredentials(RegistryClient.extractEndpoint(image));
+
+            blobTransfer.download(imageRef.getRegistry(), imageRef.getRepository(), digest, target, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while downloading blob", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Upload a file as a blob into the image's repository with chunked uploads, resuming an earlier interrupted
+     * upload of the same blob, see {@link BlobTransfer}.
+     *
+     * @return the digest of the blob
+     */
+    public String uploadBlob(String image, Path source) throws IOException {
+        try {
+            ImageReference imageRef = ImageReference.parse(image);
+            String[] credentials = getCredentials(RegistryClient.extractEndpoint(image));
+
+            return blobTransfer.upload(imageRef.getRegistry(), imageRef.getRepository(), source, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while uploading blob", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    public CatalogResp catalog(String url, Integer count, String last) throws IOException {
+        try {
+            // Normalize the registry URL and get credentials
+            String normalizedUrl = normalizeRegistryUrl(url);
+            String[] credentials = getCredentials(normalizedUrl);
+
+            return jibImageManager.getCatalog(normalizedUrl, credentials, count, last);
+        } catch (Exception e) {
+            log.error("Failed to get catalog from registry: {}", url, e);
+            throw new IOException("Failed to get catalog", e);
+        }
+    }
+
+    public CompletableFuture<Void> pushAsync(String filePath, String image) {
+        return runAsync(() -> {
+            push(filePath, image);
+            return null;
+        }, image);
+    }
+
+    public CompletableFuture<Void> pullAsync(String image, String filePath) {
+        return runAsync(() -> {
+            pull(image, filePath);
+            return null;
+        }, image);
+    }
+
+    public CompletableFuture<Optional<String>> digestAsync(String image) {
+        return runAsync(() -> digest(image), image);
+    }
+
+    public CompletableFuture<RawManifest> manifestAsync(String image) {
+        return runAsync(() -> manifest(image), image);
+    }
+
+    public CompletableFuture<List<String>> tagsAsync(String image) {
+        return runAsync(() -> tags(image), image);
+    }
+
+    public CompletableFuture<Void> deleteAsync(String image) {
+        return runAsync(() -> {
+            delete(image);
+            return null;
+        }, image);
+    }
+
+    public CompletableFuture<CopyResult> copyAsync(String src, String dst) {
+        return runAsync(() -> copy(src, dst), src, dst);
+    }
+
+    public CompletableFuture<CopyResult> copyAsync(String src, String dst, Collection<Platform> platforms) {
+        return runAsync(() -> copy(src, dst, platforms), src, dst);
+    }
+
+    public CompletableFuture<CatalogResp> catalogAsync(String url, Integer count, String last) {
+        return limitedAsync(() -> List.of(URI.create(normalizeRegistryUrl(url)).getAuthority()),
+                () -> catalog(url, count, last));
+    }
+
+    private <T> CompletableFuture<T> runAsync(IOCallable<T> operation, String... images) {
+        return limitedAsync(() -> {
+            List<String> hosts = new ArrayList<>();
+            for (String image : images) {
+                try {
+                    hosts.add(ImageReference.parse(image).getRegistry());
+                } catch (InvalidImageReferenceException e) {
+                    throw new IOException("Invalid image reference", e);
+                }
+            }
+            return hosts;
+        }, operation);
+    }
+
+    /**
+     * Run {@code operation} on the async executor while holding a slot on every registry host it talks to.
+     * Slots are taken in a fixed order so that concurrent copies between the same registries cannot deadlock, and
+     * waited for asynchronously: an operation queued behind a busy host holds no executor thread, so operations
+     * on other hosts are not held up behind it.
+     */
+    private <T> CompletableFuture<T> limitedAsync(IOCallable<Collection<String>> hosts, IOCallable<T> operation) {
+        Collection<String> sortedHosts;
+        try {
+            sortedHosts = new TreeSet<>(hosts.call());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        List<HostLimiter.Permit> permits = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> acquired = CompletableFuture.completedFuture(null);
+        for (String host : sortedHosts) {
+            acquired = acquired.thenCompose(ignored -> hostLimiter.acquireAsync(host)).thenAccept(permits::add);
+        }
+        return acquired.thenApplyAsync(ignored -> {
+            try {
+                return operation.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor).whenComplete((result, e) -> permits.forEach(HostLimiter.Permit::close));
+    }
+
+    public HostLimiter getHostLimiter() {
+        return hostLimiter;
+    }
+
+    /**
+     * Lazily stream all repositories of a registry, {@value #DEFAULT_PAGE_SIZE} per request
+     */
+    public Stream<String> catalogStream(String url) {
+        return catalogStream(url, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Lazily stream all repositories of a registry page by page, prefetching the next page in the background.
+     * Runs in constant memory however many repositories there are; close the stream when not consuming it to
+     * the end.
+     */
+    public Stream<String> catalogStream(String url, int pageSize) {
+        String normalizedUrl = normalizeRegistryUrl(url);
+        String[] credentials = getCredentials(normalizedUrl);
+
+        return jibImageManager.streamCatalog(normalizedUrl, credentials, pageSize, asyncExecutor);
+    }
+
+    /**
+     * Crawl the whole registry with {@link CrawlerConfig#defaults()}, see {@link #crawl(String, CrawlerConfig, InventorySink)}
+     */
+    public CrawlSummary crawl(String url, InventorySink sink) throws IOException {
+        return crawl(url, CrawlerConfig.defaults(), sink);
+    }
+
+    /**
+     * Crawl the whole registry into a repository/tag/digest inventory, delivering entries to {@code sink} as they
+     * are resolved. Blocks until the crawl is done; failing repositories and tags are reported to the sink and
+     * skipped.
+     */
+    public CrawlSummary crawl(String url, CrawlerConfig config, InventorySink sink) throws IOException {
+        String normalizedUrl = normalizeRegistryUrl(url);
+        String[] credentials = getCredentials(normalizedUrl);
+
+        return new RegistryCrawler(jibImageManager, asyncExecutor).crawl(normalizedUrl, credentials, config, sink);
+    }
+
+    /**
+     * A lazy view of the files of an image with {@link LazyImageConfig#defaults()}, see
+     * {@link #openImage(String, LazyImageConfig)}
+     */
+    public LazyImage openImage(String image) throws IOException {
+        return openImage(image, LazyImageConfig.defaults());
+    }
+
+    /**
+     * A read-only view of the files of an image that fetches layer chunks with range requests as files are read,
+     * instead of pulling the whole image, see {@link LazyImage}. Close it to release its cache.
+     */
+    public LazyImage openImage(String image, LazyImageConfig config) throws IOException {
+        try {
+            String[] credentials = getCredentials(RegistryClient.extractEndpoint(image));
+
+            return LazyImage.open(jibImageManager.getRegistryApi(), image, credentials, config);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while opening image", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Compressed size of an image from its manifests alone, every platform of an index included, see
+     * {@link SizeAnalyzer}
+     */
+    public ImageSize imageSize(String image) throws IOException {
+        try {
+            String[] credentials = getCredentials(RegistryClient.extractEndpoint(image));
+
+            return new SizeAnalyzer(jibImageManager, asyncExecutor).size(image, credentials);
+        } catch (InvalidImageReferenceException e) {
+            log.error("Invalid image reference while getting image size", e);
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    /**
+     * Blobs two images share and those only one of them has, from their manifests alone
+     */
+    public LayerDiff layerDiff(String from, String to) throws IOException {
+        return LayerDiff.between(imageSize(from), imageSize(to));
+    }
+
+    /**
+     * Storage use of the registry with {@link CrawlerConfig#defaults()}, see
+     * {@link #storageReport(String, CrawlerConfig)}
+     */
+    public StorageReport storageReport(String url) throws IOException {
+        return storageReport(url, CrawlerConfig.defaults());
+    }
+
+    /**
+     * Deduplicated storage use per repository and for the whole registry, reading every distinct manifest once
+     * and no blob, see {@link SizeAnalyzer}. Blocks until done.
+     */
+    public StorageReport storageReport(String url, CrawlerConfig config) throws IOException {
+        String normalizedUrl = normalizeRegistryUrl(url);
+        String[] credentials = getCredentials(normalizedUrl);
+
+        return new SizeAnalyzer(jibImageManager, asyncExecutor).storage(normalizedUrl, credentials, config);
+    }
+
+    /**
+     * Refresh a persistent metadata index from the registry with {@link CrawlerConfig#defaults()}, see
+     * {@link #refreshIndex(MetadataIndex, String, CrawlerConfig)}
+     */
+    public RefreshSummary refreshIndex(MetadataIndex index, String url) throws IOException {
+        return refreshIndex(index, url, CrawlerConfig.defaults());
+    }
+
+    /**
+     * Bring {@code index} in step with every tag of the registry, reading only manifests it does not hold yet, see
+     * {@link IndexRefresher}. Blocks until done.
+     */
+    public RefreshSummary refreshIndex(MetadataIndex index, String url, CrawlerConfig config) throws IOException {
+        String normalizedUrl = normalizeRegistryUrl(url);
+        String[] credentials = getCredentials(normalizedUrl);
+
+        return new IndexRefresher(jibImageManager, asyncExecutor).refresh(index, normalizedUrl, credentials, config);
+    }
+
+    /**
+     * A change feed over tags, with {@link WatchConfig#defaults()}, see {@link #watcher(WatchConfig)}
+     */
+    public RegistryWatcher watcher() {
+        return watcher(WatchConfig.defaults());
+    }
+
+    /**
+     * A change feed over tags: add repositories or tags to watch and listeners, then start it, see
+     * {@link RegistryWatcher}. Close it to stop polling, before closing this client.
+     */
+    public RegistryWatcher watcher(WatchConfig config) {
+        return new RegistryWatcher(jibImageManager, registry -> getCredentials(RegistryClient.endpointOf(registry)), config);
+    }
+
+    /**
+     * Apply a tag retention policy to every repository of the registry, see {@link RetentionEngine}. Blocks until
+     * every repository is done; repositories that cannot be read are skipped and counted as failures.
+     *
+     * @param listener receives the decision for every evaluated tag, from several threads at once
+     */
+    public RetentionReport applyRetention(String url, RetentionPolicy policy, Consumer<RetentionDecision> listener) throws IOException {
+        String normalizedUrl = normalizeRegistryUrl(url);
+        String[] credentials = getCredentials(normalizedUrl);
+
+        return new RetentionEngine(jibImageManager, asyncExecutor).apply(normalizedUrl, credentials, policy, listener);
+    }
+
+    /**
+     * Hit/miss counters of the bearer token cache
+     */
+    public TokenCache.Stats tokenCacheStats() {
+        return jibImageManager.getAuthenticator().getTokenCache().stats();
+    }
+
+    /**
+     * Hit/revalidation/miss counters of the manifest cache
+     */
+    public ManifestCache.Stats manifestCacheStats() {
+        return jibImageManager.getRegistryApi().getManifestCache().stats();
+    }
+
+    /**
+     * Hedging and failover counters plus per-endpoint latencies of the mirrors, empty without a mirror config
+     */
+    public Optional<MirrorRouter.Stats> mirrorStats() {
+        return Optional.ofNullable(jibImageManager.getRegistryApi().getMirrorRouter()).map(MirrorRouter::stats);
+    }
+
+    /**
+     * Release the pooled connections of this client and shut down the async executor if it was created here
+     */
+    @Override
+    public void close() {
+        if (ownsAsyncExecutor) {
+            asyncExecutor.shutdown();
+        }
+        MirrorRouter mirrorRouter = jibImageManager.getRegistryApi().getMirrorRouter();
+        if (mirrorRouter != null) {
+            mirrorRouter.close();
+        }
+        jibImageManager.close();
+    }
+
+    /**
+     * Normalize registry URL for consistent credential lookup
+     */
+    static String normalizeRegistryUrl(String url) {
+        if (url == null || url.trim().isEmpty()) {
+            throw new IllegalArgumentException("Registry URL cannot be null or empty");
+        }
+
+        String normalized = url.trim();
+
+        // Add protocol if missing
+        if (!normalized.startsWith("http://") && !normalized.startsWith("https://")) {
+            // Check if it's a local registry
+            if (normalized.startsWith("localhost") || normalized.startsWith("127.0.0.1") || normalized.startsWith("0.0.0.0")) {
+                normalized = "http://" + normalized;
+            } else {
+                normalized = "https://" + normalized;
+            }
+        }
+
+        return normalized;
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.ya_b.registry.client.analytics;
+
+import java.util.Map;
+
+/**
+ * Compressed size of an image, as read from its manifests.
+ *
+ * @param image  the reference the size was asked for
+ * @param digest digest of the manifest, or of the manifest list / OCI index
+ * @param size   total size of the distinct blobs, what pulling every platform of the image transfers at most
+ * @param blobs  digest and size of every distinct configuration and layer, in manifest order; for an index the
+ *               union over its platforms
+ */
+public record ImageSize(String image, String digest, long size, Map<String, Long> blobs) {
+}
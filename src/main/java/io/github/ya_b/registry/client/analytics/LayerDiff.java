@@ -0,0 +1,47 @@
+package io.github.ya_b.registry.client.analytics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Blobs two images share and those only one of them has, by digest and size. Image configurations count as
+ * blobs like layers, so two different images never share everything.
+ *
+ * @param shared     blobs of both images
+ * @param onlyInFrom blobs of the first image only, what the second does not reuse
+ * @param onlyInTo   blobs of the second image only, what moving from the first to it transfers
+ */
+public record LayerDiff(Map<String, Long> shared, Map<String, Long> onlyInFrom, Map<String, Long> onlyInTo) {
+
+    public static LayerDiff between(ImageSize from, ImageSize to) {
+        Map<String, Long> shared = new LinkedHashMap<>();
+        Map<String, Long> onlyInFrom = new LinkedHashMap<>();
+        Map<String, Long> onlyInTo = new LinkedHashMap<>(to.blobs());
+        from.blobs().forEach((digest, size) -> {
+            if (onlyInTo.remove(digest) != null) {
+                shared.put(digest, size);
+            } else {
+                onlyInFrom.put(digest, size);
+            }
+        });
+        return new LayerDiff(Collections.unmodifiableMap(shared), Collections.unmodifiableMap(onlyInFrom),
+            Collections.unmodifiableMap(onlyInTo));
+    }
+
+    public long sharedBytes() {
+        return sum(shared);
+    }
+
+    public long onlyInFromBytes() {
+        return sum(onlyInFrom);
+    }
+
+    public long onlyInToBytes() {
+        return sum(onlyInTo);
+    }
+
+    private static long sum(Map<String, Long> blobs) {
+        return blobs.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.ya_b.registry.client.analytics;
+
+/**
+ * Storage used by the images of one repository.
+ *
+ * @param repository     repository name, without the registry
+ * @param tags           tags of the repository
+ * @param images         distinct manifests behind those tags
+ * @param logicalBytes   sum of the image sizes, blobs shared between images counted once per image
+ * @param storedBytes    size of the distinct blobs of the repository's images
+ * @param exclusiveBytes part of {@code storedBytes} no other repository refers to, what deleting the repository
+ *                       would free
+ */
+public record RepositoryUsage(String repository, long tags, long images, long logicalBytes, long storedBytes,
+                              long exclusiveBytes) {
+
+    /**
+     * Part of {@code storedBytes} other repositories refer to as well
+     */
+    public long sharedBytes() {
+        return storedBytes - exclusiveBytes;
+    }
+}
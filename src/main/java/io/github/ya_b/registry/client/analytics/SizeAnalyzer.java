@@ -0,0 +1,193 @@
+package io.github.ya_b.registry.client.analytics;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.crawler.CrawlSummary;
+import io.github.ya_b.registry.client.crawler.CrawlerConfig;
+import io.github.ya_b.registry.client.crawler.InventoryEntry;
+import io.github.ya_b.registry.client.crawler.InventorySink;
+import io.github.ya_b.registry.client.crawler.RegistryCrawler;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import io.github.ya_b.registry.client.transfer.ParallelWorkers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Image sizes and storage accounting from manifests alone.
+ * <p>
+ * A manifest lists the digest and size of its configuration and every layer, so sizes never need a blob: an image
+ * costs one manifest request, a multi-platform image one more per platform, a few KB in all. Foreign layers, which
+ * the registry does not store, are left out. {@link #storage} crawls a registry ({@link RegistryCrawler}), reads
+ * every distinct manifest once in parallel however many tags and repositories share it, and deduplicates blobs
+ * per repository and across the registry.
+ */
+@Slf4j
+public class SizeAnalyzer {
+
+    private final JibImageManager imageManager;
+    private final RegistryApi registryApi;
+    private final Executor executor;
+
+    /**
+     * @param executor executor lending threads for the crawl and for reading manifests
+     */
+    public SizeAnalyzer(JibImageManager imageManager, Executor executor) {
+        this.imageManager = imageManager;
+        this.registryApi = imageManager.getRegistryApi();
+        this.executor = executor;
+    }
+
+    /**
+     * Size of one image, every platform of a manifest list / OCI index included
+     *
+     * @param credentials credentials of the image's registry, null for anonymous access
+     */
+    public ImageSize size(String image, String[] credentials) throws IOException {
+        ImageReference imageRef;
+        try {
+            imageRef = ImageReference.parse(image);
+        } catch (InvalidImageReferenceException e) {
+            throw new IOException("Invalid image reference", e);
+        }
+        RawManifest manifest = registryApi.getManifest(imageRef.getRegistry(), imageRef.getRepository(),
+            imageRef.getQualifier(), credentials);
+        Map<String, Long> blobs = blobs(imageRef.getRegistry(), imageRef.getRepository(), manifest, credentials);
+        return new ImageSize(image, manifest.digest(), sum(blobs), Collections.unmodifiableMap(blobs));
+    }
+
+    /**
+     * Storage use of every repository of the registry at {@code registryUrl}, blocking until done
+     *
+     * @param credentials credentials of the registry, null for anonymous access
+     * @throws IOException when the catalog cannot be read
+     */
+    public StorageReport storage(String registryUrl, String[] credentials, CrawlerConfig config) throws IOException {
+        String baseUrl = registryUrl.replaceAll("/$", "");
+        String host = URI.create(baseUrl).getAuthority();
+        long start = System.nanoTime();
+
+        // repository -> tag -> digest
+        Map<String, Map<String, String>> tags = new ConcurrentHashMap<>();
+        LongAdder failures = new LongAdder();
+        CrawlSummary crawl = new RegistryCrawler(imageManager, executor).crawl(baseUrl, credentials, config, new InventorySink() {
+            @Override
+            public void accept(InventoryEntry entry) {
+                tags.computeIfAbsent(entry.repository(), key -> new ConcurrentHashMap<>()).put(entry.tag(), entry.digest());
+            }
+
+            @Override
+            public void failed(String reference, Exception e) {
+                failures.increment();
+            }
+        });
+
+        // Manifests are content addressed, so one read per digest serves every repository holding it
+        Map<String, String> toRead = new HashMap<>();
+        tags.forEach((repository, repositoryTags) ->
+            repositoryTags.values().forEach(digest -> toRead.putIfAbsent(digest, repository)));
+        Map<String, Map<String, Long>> images = new ConcurrentHashMap<>();
+        ParallelWorkers.forEach(new ArrayList<>(toRead.entrySet()), config.getDigestConcurrency(), executor, entry -> {
+            try {
+                RawManifest manifest = registryApi.getManifest(host, entry.getValue(), entry.getKey(), credentials);
+                images.put(entry.getKey(), blobs(host, entry.getValue(), manifest, credentials));
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Failed to read manifest {} of {}/{}: {}", entry.getKey(), host, entry.getValue(), e.getMessage());
+                failures.increment();
+            }
+        });
+
+        // blob -> repositories referring to it
+        Map<String, Set<String>> referrers = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        tags.forEach((repository, repositoryTags) -> repositoryTags.values().forEach(digest ->
+            images.getOrDefault(digest, Map.of()).forEach((blob, size) -> {
+                referrers.computeIfAbsent(blob, key -> new HashSet<>()).add(repository);
+                sizes.put(blob, size);
+            })));
+
+        List<RepositoryUsage> repositories = new ArrayList<>();
+        long logicalBytes = 0;
+        for (Map.Entry<String, Map<String, String>> repository : tags.entrySet()) {
+            Set<String> digests = new HashSet<>(repository.getValue().values());
+            digests.retainAll(images.keySet());
+            long logical = 0;
+            Set<String> blobs = new HashSet<>();
+            for (String digest : digests) {
+                logical += sum(images.get(digest));
+                blobs.addAll(images.get(digest).keySet());
+            }
+            long stored = 0;
+            long exclusive = 0;
+            for (String blob : blobs) {
+                stored += sizes.get(blob);
+                if (referrers.get(blob).size() == 1) {
+                    exclusive += sizes.get(blob);
+                }
+            }
+            repositories.add(new RepositoryUsage(repository.getKey(), repository.getValue().size(), digests.size(),
+                logical, stored, exclusive));
+            logicalBytes += logical;
+        }
+        repositories.sort(Comparator.comparingLong(RepositoryUsage::storedBytes).reversed()
+            .thenComparing(RepositoryUsage::repository));
+
+        StorageReport report = new StorageReport(repositories, crawl.digests(), images.size(), logicalBytes,
+            sum(sizes), failures.sum(), Duration.ofNanos(System.nanoTime() - start));
+        log.info("Computed storage of {} - {} repositories, {} tags, {} images, {} bytes stored of {} logical, {} failures in {}",
+            baseUrl, repositories.size(), report.tags(), report.images(), report.storedBytes(), report.logicalBytes(),
+            report.failures(), report.elapsed());
+        return report;
+    }
+
+    /**
+     * Distinct blobs of an image manifest, or of every platform manifest of an index
+     */
+    private Map<String, Long> blobs(String host, String repository, RawManifest manifest, String[] credentials) throws IOException {
+        Map<String, Long> blobs = new LinkedHashMap<>();
+        ManifestResp parsed = manifest.parse();
+        if (!manifest.isIndex()) {
+            addBlobs(parsed, blobs);
+            return blobs;
+        }
+        for (Descriptor platform : parsed.getManifests() == null ? List.<Descriptor>of() : parsed.getManifests()) {
+            addBlobs(registryApi.getManifest(host, repository, platform.getDigest(), credentials).parse(), blobs);
+        }
+        return blobs;
+    }
+
+    private static void addBlobs(ManifestResp manifest, Map<String, Long> blobs) {
+        if (manifest.getConfig() != null) {
+            blobs.putIfAbsent(manifest.getConfig().getDigest(), manifest.getConfig().getSize());
+        }
+        for (Descriptor layer : manifest.getLayers() == null ? List.<Descriptor>of() : manifest.getLayers()) {
+            // Foreign layers are served from elsewhere and take no space in the registry
+            if (layer.getUrls() == null || layer.getUrls().isEmpty()) {
+                blobs.putIfAbsent(layer.getDigest(), layer.getSize());
+            }
+        }
+    }
+
+    private static long sum(Map<String, Long> blobs) {
+        return blobs.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
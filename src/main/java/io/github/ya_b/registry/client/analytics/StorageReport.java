@@ -0,0 +1,19 @@
+package io.github.ya_b.registry.client.analytics;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Deduplicated storage use of a registry, computed from manifests alone.
+ *
+ * @param repositories usage per repository, largest {@code storedBytes} first
+ * @param tags         tags seen across all repositories
+ * @param images       distinct manifests across all repositories
+ * @param logicalBytes sum of {@link RepositoryUsage#logicalBytes()} over the repositories
+ * @param storedBytes  size of the distinct blobs of the whole registry, each counted once however many images and
+ *                     repositories refer to it
+ * @param failures     repositories, tags and manifests that could not be read and are left out
+ */
+public record StorageReport(List<RepositoryUsage> repositories, long tags, long images, long logicalBytes,
+                            long storedBytes, long failures, Duration elapsed) {
+}
@@ -0,0 +1,295 @@
+package io.github.ya_b.registry.client.cache;
+
+import io.github.ya_b.registry.client.http.DigestingInputStream;
+import io.github.ya_b.registry.client.http.Digests;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk, content-addressable store of registry blobs, shared by every client (and process) pointing at the
+ * same directory.
+ * <p>
+ * Blobs live under {@code blobs/sha256/<hex>} and are only ever created by writing a temp file, verifying it
+ * against its digest and renaming it into place, so a reader never sees a partial blob. Loading a missing blob
+ * is serialized per digest, among threads by waiting for the load in flight and among processes by a file lock,
+ * so it is fetched once. The last access time is kept in the file's modification time; once the cache grows
+ * beyond its size bound the least recently used blobs are deleted. Blobs used within the last
+ * {@link #EVICTION_GRACE} are spared, so a path just returned by {@link #get(String)} or
+ * {@link #computeIfAbsent(String, BlobLoader)} is still there when the caller opens it.
+ */
+@Slf4j
+public class BlobCache {
+
+    private static final Pattern DIGEST = Pattern.compile("sha256:[0-9a-f]{64}");
+
+    /**
+     * How long after its last use a blob is safe from eviction
+     */
+    public static final Duration EVICTION_GRACE = Duration.ofMinutes(1);
+
+    /**
+     * Writes the content of a missing blob to the given file.
+     */
+    @FunctionalInterface
+    public interface BlobLoader {
+        void load(Path target) throws IOException;
+    }
+
+    /**
+     * Point-in-time view of the cache counters.
+     */
+    public record Stats(long hits, long misses, long evictions, long size) {
+    }
+
+    private final Path root;
+    private final Path blobs;
+    private final Path temp;
+    private final Path locks;
+    private final long maxBytes;
+    private final ConcurrentMap<String, CompletableFuture<Path>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes size bound of the cache, checked after every insert
+     */
+    public BlobCache(Path root, long maxBytes) throws IOException {
+        this.root = root;
+        this.blobs = Files.createDirectories(root.resolve("blobs").resolve("sha256"));
+        this.temp = Files.createDirectories(root.resolve("tmp"));
+        this.locks = Files.createDirectories(root.resolve("locks"));
+        this.maxBytes = maxBytes;
+        this.size.set(scan().stream().mapToLong(CachedBlob::size).sum());
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean contains(String digest) {
+        return Files.exists(path(digest));
+    }
+
+    /**
+     * Look a blob up, marking it as recently used
+     */
+    public Optional<Path> get(String digest) {
+        Path path = path(digest);
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            return Optional.of(path);
+        } catch (NoSuchFileException e) {
+            misses.increment();
+            return Optional.empty();
+        } catch (IOException e) {
+            // Unable to touch it, but the blob is there
+            hits.increment();
+            return Files.exists(path) ? Optional.of(path) : Optional.empty();
+        }
+    }
+
+    /**
+     * Store a blob from a stream, verifying it against {@code digest}
+     *
+     * @return the cached file
+     */
+    public Path put(String digest, InputStream content) throws IOException {
+        // Hashed while it is copied, instead of reading the file again afterwards
+        return computeIfAbsent(digest, target -> Files.copy(new DigestingInputStream(content, digest, -1), target,
+            StandardCopyOption.REPLACE_EXISTING), true);
+    }
+
+    /**
+     * Return the cached blob, or let {@code loader} write it into a temp file that is then verified and moved
+     * into the cache. Only one thread or process loads a given digest at a time; the others wait and use its
+     * result.
+     * <p>
+     * The temp file is named after the digest and survives a failed load, so a loader able to resume (like a
+     * chunked download) continues where the last attempt stopped.
+     *
+     * @return the cached file
+     */
+    public Path computeIfAbsent(String digest, BlobLoader loader) throws IOException {
+        return computeIfAbsent(digest, loader, false);
+    }
+
+    /**
+     * Like {@link #computeIfAbsent(String, BlobLoader)}
+     *
+     * @param verified whether {@code loader} checks the digest of what it writes itself, sparing the cache a second
+     *                 read of the blob
+     */
+    public Path computeIfAbsent(String digest, BlobLoader loader, boolean verified) throws IOException {
+        while (true) {
+            Optional<Path> cached = get(digest);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            // File locks are held per JVM, so only one thread of this process loads a digest and takes its lock
+            CompletableFuture<Path> load = new CompletableFuture<>();
+            CompletableFuture<Path> inFlight = loading.putIfAbsent(digest, load);
+            if (inFlight == null) {
+                try {
+                    Path path = lockAndLoad(digest, loader, verified);
+                    load.complete(path);
+                    return path;
+                } catch (Throwable e) {
+                    load.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    loading.remove(digest, load);
+                }
+            }
+            // A failed load is retried by each waiter with its own loader
+            inFlight.handle((path, e) -> null).join();
+        }
+    }
+
+    private Path lockAndLoad(String digest, BlobLoader loader, boolean verified) throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(locks.resolve(hex(digest) + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Released when the channel closes
+            lockChannel.lock();
+            // Another process may have loaded it while we waited
+            if (Files.exists(path(digest))) {
+                return get(digest).orElse(path(digest));
+            }
+            return load(digest, loader, verified);
+        }
+    }
+
+    private Path load(String digest, BlobLoader loader, boolean verified) throws IOException {
+        Path target = temp.resolve(hex(digest));
+        try {
+            loader.load(target);
+        } catch (IOException e) {
+            if (verified) {
+                // A verifying loader may have failed on a mismatch; never leave corrupt content to resume from
+                Files.deleteIfExists(target);
+            }
+            throw e;
+        }
+
+        if (!verified) {
+            String actual = Digests.sha256(target);
+            if (!actual.equals(digest)) {
+                Files.deleteIfExists(target);
+                throw new IOException("Digest mismatch for blob " + digest + ", got " + actual);
+            }
+        }
+        Path path = path(digest);
+        try {
+            Files.move(target, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(target, path);
+        }
+        long blobSize = Files.size(path);
+        log.debug("Cached blob {} ({} bytes)", digest, blobSize);
+        if (size.addAndGet(blobSize) > maxBytes) {
+            evict();
+        }
+        return path;
+    }
+
+    /**
+     * Delete least recently used blobs until the cache fits its size bound again, sparing those used within the
+     * last {@link #EVICTION_GRACE}
+     */
+    public synchronized void evict() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(locks.resolve("evict.lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                // Another process is trimming the cache already
+                return;
+            }
+            List<CachedBlob> entries = scan();
+            long total = entries.stream().mapToLong(CachedBlob::size).sum();
+            entries.sort(Comparator.comparing(CachedBlob::lastUsed));
+            long graceStart = System.currentTimeMillis() - EVICTION_GRACE.toMillis();
+            for (CachedBlob entry : entries) {
+                // Sorted by last use, so the rest are in use too
+                if (total <= maxBytes || entry.lastUsed().toMillis() > graceStart) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(entry.path());
+                    total -= entry.size();
+                    evictions.increment();
+                } catch (IOException e) {
+                    // Open elsewhere on platforms that forbid deleting open files; try again next time
+                    log.debug("Could not evict {}: {}", entry.path(), e.getMessage());
+                }
+            }
+            size.set(total);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size.get());
+    }
+
+    private record CachedBlob(Path path, long size, FileTime lastUsed) {
+    }
+
+    private List<CachedBlob> scan() throws IOException {
+        List<CachedBlob> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(blobs)) {
+            for (Path path : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    entries.add(new CachedBlob(path, attributes.size(), attributes.lastModifiedTime()));
+                } catch (NoSuchFileException e) {
+                    // Evicted concurrently
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return entries;
+    }
+
+    private Path path(String digest) {
+        return blobs.resolve(hex(digest));
+    }
+
+    private static String hex(String digest) {
+        if (!DIGEST.matcher(digest).matches()) {
+            throw new IllegalArgumentException("Unsupported digest: " + digest);
+        }
+        return digest.substring("sha256:".length());
+    }
+}
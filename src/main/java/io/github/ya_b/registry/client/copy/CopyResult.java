@@ -0,0 +1,13 @@
+package io.github.ya_b.registry.client.copy;
+
+/**
+ * Outcome of an image copy.
+ *
+ * @param digest           digest of the top-level manifest (or manifest list) that was pushed
+ * @param blobsSkipped     blobs already present on the destination
+ * @param blobsMounted     blobs mounted from the source repository of the same registry
+ * @param blobsTransferred blobs streamed from source to destination
+ * @param bytesTransferred total size of the streamed blobs
+ */
+public record CopyResult(String digest, int blobsSkipped, int blobsMounted, int blobsTransferred, long bytesTransferred) {
+}
@@ -0,0 +1,271 @@
+package io.github.ya_b.registry.client.copy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.cache.BlobCache;
+import io.github.ya_b.registry.client.http.DigestingInputStream;
+import io.github.ya_b.registry.client.http.Digests;
+import io.github.ya_b.registry.client.http.Platform;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.metrics.Operation;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
+import io.github.ya_b.registry.client.transfer.ParallelWorkers;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies images between repositories and registries over the registry v2 API, moving only what is missing.
+ * <p>
+ * The source manifest is fetched first (for a manifest list or index, every platform manifest as well). Each
+ * referenced blob is then checked on the destination and skipped when present, mounted when source and
+ * destination share a registry, and otherwise streamed from source to destination without touching the disk.
+ * Missing blobs are copied in parallel, across all platforms of an index at once; the manifests are pushed last
+ * so the destination never references a blob it does not have. A platform filter restricts an index copy to
+ * the selected platforms' manifests and blobs.
+ */
+@Slf4j
+public class ImageCopier {
+
+    public static final int DEFAULT_BLOB_CONCURRENCY = 4;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final RegistryApi registryApi;
+    private final Executor executor;
+    private final int blobConcurrency;
+    private final BlobCache blobCache;
+
+    /**
+     * @param executor        executor lending extra threads for parallel blob copies; the calling thread works
+     *                        as well, so a saturated executor only reduces parallelism
+     * @param blobConcurrency maximum number of blobs copied at once
+     */
+    public ImageCopier(RegistryApi registryApi, Executor executor, int blobConcurrency) {
+        this(registryApi, executor, blobConcurrency, null);
+    }
+
+    /**
+     * @param blobCache cache consulted before reading a blob from the source registry, or null
+     */
+    public ImageCopier(RegistryApi registryApi, Executor executor, int blobConcurrency, BlobCache blobCache) {
+        this.registryApi = registryApi;
+        this.executor = executor;
+        this.blobConcurrency = Math.max(1, blobConcurrency);
+        this.blobCache = blobCache;
+    }
+
+    public CopyResult copy(String srcReference, String[] srcCredentials, String destReference, String[] destCredentials)
+        throws IOException, InvalidImageReferenceException {
+        return copy(srcReference, srcCredentials, destReference, destCredentials, null);
+    }
+
+    /**
+     * Copy an image, keeping only the given platforms of a manifest list or index. The destination then gets an
+     * index listing just those platforms (the original one when all were selected); a single-platform source is
+     * copied as is.
+     *
+     * @param platforms platforms to copy, null or empty for all
+     */
+    public CopyResult copy(String srcReference, String[] srcCredentials, String destReference, String[] destCredentials,
+                           Collection<Platform> platforms) throws IOException, InvalidImageReferenceException {
+        ImageReference src = ImageReference.parse(srcReference);
+        ImageReference dest = ImageReference.parse(destReference);
+        log.info("Copying image from {} to {}", srcReference, destReference);
+
+        RawManifest manifest = registryApi.getManifest(src.getRegistry(), src.getRepository(), src.getQualifier(), srcCredentials);
+        List<RawManifest> platformManifests = new ArrayList<>();
+        Map<String, Descriptor> blobs = new LinkedHashMap<>();
+        if (manifest.isIndex()) {
+            List<Descriptor> selected = new ArrayList<>();
+            for (Descriptor descriptor : manifest.parse().getManifests()) {
+                if (platforms == null || platforms.isEmpty()
+                    || platforms.stream().anyMatch(platform -> platform.matches(descriptor.getPlatform()))) {
+                    selected.add(descriptor);
+                }
+            }
+            if (selected.isEmpty()) {
+                throw new IOException("None of the platforms " + platforms + " is in " + srcReference);
+            }
+            for (Descriptor descriptor : selected) {
+                RawManifest platformManifest = registryApi.getManifest(src.getRegistry(), src.getRepository(),
+                    descriptor.getDigest(), srcCredentials);
+                platformManifests.add(platformManifest);
+                collectBlobs(platformManifest, blobs);
+            }
+            if (selected.size() < manifest.parse().getManifests().size()) {
+                manifest = filterIndex(manifest, selected);
+                log.info("Copying {} of the platforms of {}", selected.size(), srcReference);
+            }
+        } else {
+            collectBlobs(manifest, blobs);
+        }
+
+        Transfer transfer = new Transfer(src, srcCredentials, dest, destCredentials);
+        ParallelWorkers.forEach(blobs.values(), blobConcurrency, executor, transfer::copyBlob);
+
+        for (RawManifest platformManifest : platformManifests) {
+            registryApi.putManifest(dest.getRegistry(), dest.getRepository(), platformManifest.digest(), platformManifest, destCredentials);
+        }
+        String digest = registryApi.putManifest(dest.getRegistry(), dest.getRepository(), dest.getQualifier(), manifest, destCredentials);
+
+        CopyResult result = new CopyResult(digest, transfer.skipped.get(), transfer.mounted.get(),
+            transfer.transferred.get(), transfer.bytes.sum());
+        log.info("Copied image from {} to {}: {} blobs skipped, {} mounted, {} transferred ({} bytes)", srcReference,
+            destReference, result.blobsSkipped(), result.blobsMounted(), result.blobsTransferred(), result.bytesTransferred());
+        return result;
+    }
+
+    /**
+     * The index without the entries that were not selected, keeping every other field as it was
+     */
+    private static RawManifest filterIndex(RawManifest index, List<Descriptor> selected) throws IOException {
+        Set<String> digests = new HashSet<>();
+        selected.forEach(descriptor -> digests.add(descriptor.getDigest()));
+        ObjectNode document = (ObjectNode) JSON.readTree(index.content());
+        ArrayNode manifests = (ArrayNode) document.get("manifests");
+        for (Iterator<JsonNode> entries = manifests.iterator(); entries.hasNext(); ) {
+            if (!digests.contains(entries.next().path("digest").asText())) {
+                entries.remove();
+            }
+        }
+        byte[] content = JSON.writeValueAsBytes(document);
+        return new RawManifest(index.mediaType(), Digests.sha256(content), content);
+    }
+
+    private static void collectBlobs(RawManifest manifest, Map<String, Descriptor> blobs) throws IOException {
+        if (manifest.isIndex()) {
+            throw new IOException("Nested manifest lists are not supported: " + manifest.digest());
+        }
+        ManifestResp parsed = manifest.parse();
+        if (parsed.getConfig() != null) {
+            blobs.putIfAbsent(parsed.getConfig().getDigest(), parsed.getConfig());
+        }
+        if (parsed.getLayers() != null) {
+            for (Descriptor layer : parsed.getLayers()) {
+                // Foreign layers live outside the registry and are not copied
+                if (layer.getUrls() == null || layer.getUrls().isEmpty()) {
+                    blobs.putIfAbsent(layer.getDigest(), layer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blob copies of one image, sharing the counters of the result
+     */
+    private class Transfer {
+        private final ImageReference src;
+        private final String[] srcCredentials;
+        private final ImageReference dest;
+        private final String[] destCredentials;
+        private final boolean sameRegistry;
+
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger mounted = new AtomicInteger();
+        private final AtomicInteger transferred = new AtomicInteger();
+        private final LongAdder bytes = new LongAdder();
+
+        Transfer(ImageReference src, String[] srcCredentials, ImageReference dest, String[] destCredentials) {
+            this.src = src;
+            this.srcCredentials = srcCredentials;
+            this.dest = dest;
+            this.destCredentials = destCredentials;
+            this.sameRegistry = src.getRegistry().equals(dest.getRegistry());
+        }
+
+        void copyBlob(Descriptor blob) throws IOException {
+            try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.BLOB_COPY, dest.getRegistry())) {
+                timer.bytes(transferBlob(blob)).success();
+            }
+        }
+
+        /**
+         * @return the number of bytes transferred, 0 when the blob was skipped or mounted
+         */
+        private long transferBlob(Descriptor blob) throws IOException {
+            String digest = blob.getDigest();
+            if (registryApi.blobExists(dest.getRegistry(), dest.getRepository(), digest, destCredentials)) {
+                log.debug("Blob {} already exists in {}/{}", digest, dest.getRegistry(), dest.getRepository());
+                skipped.incrementAndGet();
+                return 0;
+            }
+
+            Optional<String> location;
+            if (sameRegistry && !src.getRepository().equals(dest.getRepository())) {
+                location = registryApi.startUpload(dest.getRegistry(), dest.getRepository(), digest, src.getRepository(), destCredentials);
+                if (location.isEmpty()) {
+                    mounted.incrementAndGet();
+                    return 0;
+                }
+            } else {
+                location = Optional.of(registryApi.startUpload(dest.getRegistry(), dest.getRepository(), destCredentials));
+            }
+
+            try {
+                return upload(blob, location.get());
+            } catch (IOException | RuntimeException e) {
+                try {
+                    registryApi.cancelUpload(dest.getRegistry(), dest.getRepository(), location.get(), destCredentials);
+                } catch (IOException cancelFailure) {
+                    e.addSuppressed(cancelFailure);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Send the blob from the local cache or the source registry into the upload session at {@code location}
+         */
+        private long upload(Descriptor blob, String location) throws IOException {
+            String digest = blob.getDigest();
+            Optional<Path> cached = blobCache != null ? blobCache.get(digest) : Optional.empty();
+            if (cached.isPresent()) {
+                long length = Files.size(cached.get());
+                registryApi.completeUpload(dest.getRegistry(), dest.getRepository(), location, digest,
+                    new FileEntity(cached.get().toFile(), ContentType.APPLICATION_OCTET_STREAM), destCredentials);
+                log.debug("Transferred blob {} ({} bytes) from the local cache", digest, length);
+                transferred.incrementAndGet();
+                bytes.add(length);
+                return length;
+            }
+
+            try (RegistryResponse response = registryApi.getBlob(src.getRegistry(), src.getRepository(), digest, srcCredentials)) {
+                long length = response.getContentLength() >= 0 ? response.getContentLength() : blob.getSize();
+                // Verified as it streams through: a source blob that does not match its digest aborts the upload
+                InputStreamEntity body = new InputStreamEntity(new DigestingInputStream(response.getBody(), digest, length),
+                    length, ContentType.APPLICATION_OCTET_STREAM);
+                registryApi.completeUpload(dest.getRegistry(), dest.getRepository(), location, digest, body, destCredentials);
+                log.debug("Transferred blob {} ({} bytes)", digest, length);
+                transferred.incrementAndGet();
+                bytes.add(length);
+                return length;
+            }
+        }
+    }
+}
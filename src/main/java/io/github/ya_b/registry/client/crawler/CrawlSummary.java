@@ -0,0 +1,14 @@
+package io.github.ya_b.registry.client.crawler;
+
+import java.time.Duration;
+
+/**
+ * Counters of a finished crawl.
+ *
+ * @param repositories repositories read from the catalog
+ * @param tags         tags listed across all repositories
+ * @param digests      entries delivered to the sink
+ * @param failures     repositories and tags reported as failed
+ */
+public record CrawlSummary(long repositories, long tags, long digests, long failures, Duration elapsed) {
+}
@@ -0,0 +1,40 @@
+package io.github.ya_b.registry.client.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Concurrency and buffering of a {@link RegistryCrawler} run.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class CrawlerConfig {
+
+    /**
+     * Number of repositories requested per catalog page.
+     */
+    @Builder.Default
+    private final int catalogPageSize = 100;
+
+    /**
+     * Number of repositories whose tags are listed concurrently.
+     */
+    @Builder.Default
+    private final int tagConcurrency = 8;
+
+    /**
+     * Number of manifests resolved concurrently.
+     */
+    @Builder.Default
+    private final int digestConcurrency = 32;
+
+    /**
+     * Capacity of each queue between two stages; a full queue blocks the producing stage.
+     */
+    @Builder.Default
+    private final int queueCapacity = 1024;
+
+    public static CrawlerConfig defaults() {
+        return builder().build();
+    }
+}
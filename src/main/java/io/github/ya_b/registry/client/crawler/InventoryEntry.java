@@ -0,0 +1,7 @@
+package io.github.ya_b.registry.client.crawler;
+
+/**
+ * One tag of a repository and the digest of the manifest it points to.
+ */
+public record InventoryEntry(String repository, String tag, String digest) {
+}
@@ -0,0 +1,20 @@
+package io.github.ya_b.registry.client.crawler;
+
+/**
+ * Receives the inventory of a crawl as it is produced.
+ * <p>
+ * Both methods are called concurrently from the crawler's worker threads and must be thread-safe.
+ */
+@FunctionalInterface
+public interface InventorySink {
+
+    void accept(InventoryEntry entry);
+
+    /**
+     * A repository or tag that could not be listed or resolved; the crawl carries on without it.
+     *
+     * @param reference the repository name, or {@code repository:tag} for a failed digest
+     */
+    default void failed(String reference, Exception e) {
+    }
+}
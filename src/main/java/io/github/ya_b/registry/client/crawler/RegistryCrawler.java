@@ -0,0 +1,221 @@
+package io.github.ya_b.registry.client.crawler;
+
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Builds a repository/tag/digest inventory of a whole registry.
+ * <p>
+ * A crawl runs three stages connected by bounded queues: one thread pages through the catalog, a pool of
+ * workers lists the tags of each repository, and a second pool resolves the digest of each tag. Every stage has
+ * its own concurrency limit and a full queue blocks the stage feeding it, so memory stays bounded and the
+ * registry rather than a serial loop sets the pace. Entries are handed to the {@link InventorySink} as soon as
+ * they are resolved; a repository or tag that fails is reported to the sink and skipped.
+ */
+@Slf4j
+public class RegistryCrawler {
+
+    private static final String END_OF_REPOSITORIES = new String("end-of-repositories");
+    private static final InventoryEntry END_OF_TAGS = new InventoryEntry(null, null, null);
+
+    private final JibImageManager imageManager;
+    private final Executor prefetchExecutor;
+
+    /**
+     * @param prefetchExecutor executor prefetching the next catalog page while the current one is queued
+     */
+    public RegistryCrawler(JibImageManager imageManager, Executor prefetchExecutor) {
+        this.imageManager = imageManager;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Crawl the registry at {@code registryUrl}, blocking until every repository has been processed.
+     *
+     * @param credentials credentials of the registry, null for anonymous access
+     * @throws IOException when the catalog cannot be read or the sink fails; entries produced before the failure
+     *                     have already been delivered
+     */
+    public CrawlSummary crawl(String registryUrl, String[] credentials, CrawlerConfig config, InventorySink sink) throws IOException {
+        String normalizedUrl = registryUrl.replaceAll("/$", "");
+        log.info("Crawling registry: {}", normalizedUrl);
+        Run run = new Run(normalizedUrl, credentials, config, sink);
+        CrawlSummary summary = run.execute();
+        log.info("Crawled registry: {} - {} repositories, {} tags, {} digests, {} failures in {}", normalizedUrl,
+            summary.repositories(), summary.tags(), summary.digests(), summary.failures(), summary.elapsed());
+        return summary;
+    }
+
+    private class Run {
+        private final String baseUrl;
+        private final String host;
+        private final String[] credentials;
+        private final CrawlerConfig config;
+        private final InventorySink sink;
+
+        private final BlockingQueue<String> repositoryQueue;
+        private final BlockingQueue<InventoryEntry> tagQueue;
+        private final AtomicInteger runningTagWorkers;
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicReference<Throwable> fatal = new AtomicReference<>();
+        private volatile IOException catalogFailure;
+
+        private final LongAdder repositories = new LongAdder();
+        private final LongAdder tags = new LongAdder();
+        private final LongAdder digests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Run(String baseUrl, String[] credentials, CrawlerConfig config, InventorySink sink) {
+            this.baseUrl = baseUrl;
+            this.host = URI.create(baseUrl).getAuthority();
+            this.credentials = credentials;
+            this.config = config;
+            this.sink = sink;
+            this.repositoryQueue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+            this.tagQueue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+            this.runningTagWorkers = new AtomicInteger(config.getTagConcurrency());
+        }
+
+        CrawlSummary execute() throws IOException {
+            long start = System.nanoTime();
+            thread("catalog", this::listCatalog);
+            for (int i = 0; i < config.getTagConcurrency(); i++) {
+                thread("tags-" + i, this::listTags);
+            }
+            for (int i = 0; i < config.getDigestConcurrency(); i++) {
+                thread("digest-" + i, this::resolveDigests);
+            }
+            // all threads exist before any runs, so an abort reaches every one of them
+            threads.forEach(Thread::start);
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                abort(e);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while crawling " + baseUrl);
+            }
+
+            Throwable failure = fatal.get() != null ? fatal.get() : catalogFailure;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure != null) {
+                throw new IOException("Failed to crawl " + baseUrl, failure);
+            }
+            return new CrawlSummary(repositories.sum(), tags.sum(), digests.sum(), failures.sum(),
+                Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        private void thread(String name, InterruptibleTask task) {
+            Thread thread = new Thread(() -> {
+                try {
+                    task.run();
+                } catch (InterruptedException e) {
+                    // aborted, the cause has been recorded
+                } catch (Throwable e) {
+                    abort(e);
+                }
+            }, "registry-crawler-" + name);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        private void abort(Throwable cause) {
+            if (fatal.compareAndSet(null, cause)) {
+                log.error("Aborting crawl of {}", baseUrl, cause);
+                threads.forEach(Thread::interrupt);
+            }
+        }
+
+        private void listCatalog() throws InterruptedException {
+            try (Stream<String> catalog = imageManager.streamCatalog(baseUrl, credentials,
+                config.getCatalogPageSize(), prefetchExecutor)) {
+                for (Iterator<String> iterator = catalog.iterator(); iterator.hasNext(); ) {
+                    repositoryQueue.put(iterator.next());
+                    repositories.increment();
+                }
+            } catch (UncheckedIOException e) {
+                // repositories already queued are still crawled, the failure is raised at the end
+                log.error("Failed to read catalog of {}", baseUrl, e.getCause());
+                catalogFailure = e.getCause();
+            }
+            for (int i = 0; i < config.getTagConcurrency(); i++) {
+                repositoryQueue.put(END_OF_REPOSITORIES);
+            }
+        }
+
+        private void listTags() throws InterruptedException {
+            try {
+                for (String repository = repositoryQueue.take(); repository != END_OF_REPOSITORIES;
+                     repository = repositoryQueue.take()) {
+                    List<String> repositoryTags;
+                    try {
+                        repositoryTags = imageManager.getTags(host + "/" + repository, credentials);
+                    } catch (IOException | InvalidImageReferenceException e) {
+                        failed(repository, e);
+                        continue;
+                    }
+                    for (String tag : repositoryTags) {
+                        tagQueue.put(new InventoryEntry(repository, tag, null));
+                        tags.increment();
+                    }
+                }
+            } finally {
+                if (runningTagWorkers.decrementAndGet() == 0 && fatal.get() == null) {
+                    for (int i = 0; i < config.getDigestConcurrency(); i++) {
+                        tagQueue.put(END_OF_TAGS);
+                    }
+                }
+            }
+        }
+
+        private void resolveDigests() throws InterruptedException {
+            for (InventoryEntry entry = tagQueue.take(); entry != END_OF_TAGS; entry = tagQueue.take()) {
+                String reference = entry.repository() + ":" + entry.tag();
+                Optional<String> digest;
+                try {
+                    digest = imageManager.getDigest(host + "/" + reference, credentials);
+                } catch (IOException | InvalidImageReferenceException e) {
+                    failed(reference, e);
+                    continue;
+                }
+                if (digest.isPresent()) {
+                    sink.accept(new InventoryEntry(entry.repository(), entry.tag(), digest.get()));
+                    digests.increment();
+                } else {
+                    failed(reference, new IOException("Manifest not found: " + reference));
+                }
+            }
+        }
+
+        private void failed(String reference, Exception e) {
+            log.warn("Skipping {} while crawling {}: {}", reference, baseUrl, e.getMessage());
+            failures.increment();
+            sink.failed(reference, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface InterruptibleTask {
+        void run() throws InterruptedException;
+    }
+}
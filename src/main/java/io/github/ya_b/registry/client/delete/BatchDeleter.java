@@ -0,0 +1,141 @@
+package io.github.ya_b.registry.client.delete;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.http.HostLimiter;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Deletes many images at once.
+ * <p>
+ * Tags are first resolved to digests in one batch ({@link JibImageManager#getDigests}); references given by digest
+ * skip that step. References are then grouped by repository and digest, so a manifest several tags point to is
+ * deleted with a single request instead of failing with 404 for every tag after the first. The deletes run on
+ * {@code executor}, holding a {@link HostLimiter} slot for their registry.
+ */
+@Slf4j
+public class BatchDeleter {
+
+    private final JibImageManager jibImageManager;
+    private final Executor executor;
+    private final HostLimiter limiter;
+
+    public BatchDeleter(JibImageManager jibImageManager, Executor executor, HostLimiter limiter) {
+        this.jibImageManager = jibImageManager;
+        this.executor = executor;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @param credentials credentials for a registry host, may return null
+     * @return a result per distinct reference, in iteration order of {@code imageReferences}
+     */
+    public Map<String, DeleteResult> delete(Collection<String> imageReferences, Function<String, String[]> credentials) {
+        Map<String, DeleteResult> failures = new ConcurrentHashMap<>();
+        // registry/repository@digest -> references resolving to it
+        Map<String, List<String>> manifests = new LinkedHashMap<>();
+        Map<String, ImageReference> targets = new LinkedHashMap<>();
+
+        List<String> tags = new ArrayList<>();
+        for (String imageReference : new LinkedHashSet<>(imageReferences)) {
+            try {
+                ImageReference imageRef = ImageReference.parse(imageReference);
+                if (imageRef.getDigest().isPresent()) {
+                    group(manifests, targets, imageReference, imageRef, imageRef.getDigest().get());
+                } else {
+                    tags.add(imageReference);
+                }
+            } catch (InvalidImageReferenceException e) {
+                failures.put(imageReference, failed(imageReference, null, new IOException("Invalid image reference", e)));
+            }
+        }
+
+        Map<String, Optional<String>> digests = jibImageManager.getDigests(tags, credentials, executor, limiter,
+            (reference, e) -> failures.put(reference, e instanceof FileNotFoundException
+                ? new DeleteResult(reference, null, DeleteResult.Status.NOT_FOUND, null)
+                : failed(reference, null, e)));
+        digests.forEach((reference, digest) -> {
+            if (digest.isPresent()) {
+                try {
+                    group(manifests, targets, reference, ImageReference.parse(reference), digest.get());
+                } catch (InvalidImageReferenceException e) {
+                    // Parsed successfully above
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                failures.putIfAbsent(reference, failed(reference, null,
+                    new IOException("Registry did not return a digest for " + reference)));
+            }
+        });
+
+        Map<String, DeleteResult> results = new ConcurrentHashMap<>(failures);
+        List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        manifests.forEach((key, references) -> {
+            ImageReference target = targets.get(key);
+            String digest = target.getQualifier();
+            deletes.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    HostLimiter.Permit permit = limiter.acquire(target.getRegistry());
+                    try {
+                        RegistryApi registryApi = jibImageManager.getRegistryApi();
+                        return registryApi.deleteManifest(target.getRegistry(), target.getRepository(), digest,
+                            credentials.apply(target.getRegistry()));
+                    } finally {
+                        permit.close();
+                    }
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor).handle((deleted, error) -> {
+                for (String reference : references) {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        results.put(reference, failed(reference, digest,
+                            cause instanceof Exception ? (Exception) cause : new IOException(cause)));
+                    } else {
+                        results.put(reference, new DeleteResult(reference, digest,
+                            deleted ? DeleteResult.Status.DELETED : DeleteResult.Status.NOT_FOUND, null));
+                    }
+                }
+                return null;
+            }));
+        });
+        CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[0])).join();
+        log.info("Deleted {} manifests for {} references", deletes.size(), results.size());
+
+        Map<String, DeleteResult> ordered = new LinkedHashMap<>();
+        for (String imageReference : imageReferences) {
+            ordered.put(imageReference, results.get(imageReference));
+        }
+        return ordered;
+    }
+
+    private static void group(Map<String, List<String>> manifests, Map<String, ImageReference> targets,
+                              String reference, ImageReference imageRef, String digest) {
+        String key = imageRef.getRegistry() + "/" + imageRef.getRepository() + "@" + digest;
+        manifests.computeIfAbsent(key, k -> new ArrayList<>()).add(reference);
+        targets.computeIfAbsent(key, k -> ImageReference.of(imageRef.getRegistry(), imageRef.getRepository(), null, digest));
+    }
+
+    private static DeleteResult failed(String reference, String digest, Exception error) {
+        log.warn("Failed to delete image: {}", reference, error);
+        return new DeleteResult(reference, digest, DeleteResult.Status.FAILED, error);
+    }
+}
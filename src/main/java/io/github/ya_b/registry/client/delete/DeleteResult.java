@@ -0,0 +1,26 @@
+package io.github.ya_b.registry.client.delete;
+
+/**
+ * Outcome of deleting one reference of a batch.
+ *
+ * @param digest manifest digest the reference resolved to, null when it could not be resolved
+ * @param error  cause of a {@link Status#FAILED} result, otherwise null
+ */
+public record DeleteResult(String reference, String digest, Status status, Exception error) {
+
+    public enum Status {
+        /**
+         * The manifest was deleted; references sharing a digest all report this for the single DELETE
+         */
+        DELETED,
+        /**
+         * The tag or manifest did not exist (any more)
+         */
+        NOT_FOUND,
+        FAILED
+    }
+
+    public boolean isDeleted() {
+        return status == Status.DELETED;
+    }
+}
@@ -2,23 +2,27 @@ package io.github.ya_b.registry.client.http;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.Optional;
 
 import com.google.cloud.tools.jib.api.ImageReference;
 import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
 import com.google.cloud.tools.jib.http.Authorization;
-import com.google.cloud.tools.jib.http.FailoverHttpClient;
-import com.google.cloud.tools.jib.http.Request;
-import com.google.cloud.tools.jib.http.Response;
 import com.google.cloud.tools.jib.json.JsonTemplate;
 import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.metrics.Operation;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
 
 import lombok.Data;
 
 public class Authenticator {
     public static final String DOCKER_HUB_REGISTRY;
 
+    private static final String DOCKER_HUB_REALM = "https://auth.docker.io/token";
+    private static final String DOCKER_HUB_SERVICE = "registry.docker.io";
+
     @Data
     private static class TokenTemplate implements JsonTemplate {
         private String token;
@@ -36,25 +40,102 @@ public class Authenticator {
         }
     }
 
-    public static Optional<Authorization> getAuthorization(String endpoint, String[] credentials, String repository,
+    private final HttpClient httpClient;
+    private final TokenCache tokenCache;
+    private final String tokenRegistry;
+    private final String realm;
+    private final String service;
+
+    public Authenticator(HttpClient httpClient) {
+        this(httpClient, new TokenCache());
+    }
+
+    public Authenticator(HttpClient httpClient, TokenCache tokenCache) {
+        this(httpClient, tokenCache, DOCKER_HUB_REGISTRY, DOCKER_HUB_REALM, DOCKER_HUB_SERVICE);
+    }
+
+    /**
+     * For a registry that hands out bearer tokens the way Docker Hub does; other registries get basic credentials
+     *
+     * @param tokenRegistry host of the registry
+     * @param realm         URL of its token endpoint
+     * @param service       service name the token endpoint expects
+     */
+    public Authenticator(HttpClient httpClient, TokenCache tokenCache, String tokenRegistry, String realm, String service) {
+        this.httpClient = httpClient;
+        this.tokenCache = tokenCache;
+        this.tokenRegistry = tokenRegistry;
+        this.realm = realm;
+        this.service = service;
+    }
+
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public Optional<Authorization> getAuthorization(String endpoint, String[] credentials, String repository,
             Scope scope) throws IOException {
+        return getAuthorization(endpoint, credentials, repository, scope, null);
+    }
+
+    /**
+     * Like {@link #getAuthorization(String, String[], String, Scope)}, with pull access to {@code fromRepository}
+     * as well, which mounting a blob from it needs
+     *
+     * @param fromRepository repository of the same registry to read from, or null
+     */
+    public Optional<Authorization> getAuthorization(String endpoint, String[] credentials, String repository,
+            Scope scope, String fromRepository) throws IOException {
         if (credentials == null || credentials.length != 2) {
             return Optional.empty();
         }
         Authorization authorization = Authorization.fromBasicCredentials(credentials[0], credentials[1]);
-        if (!endpoint.contains(DOCKER_HUB_REGISTRY)) {
+        if (!endpoint.contains(tokenRegistry)) {
             return Optional.of(authorization);
         }
 
-        FailoverHttpClient httpClient = HttpClient.get();
-        URL url = URI
-                .create(String.format("https://auth.docker.io/token?service=registry.docker.io&scope=repository:%s:%s",
-                        repository, scope.getScope()))
-                .toURL();
-        Response response = httpClient.get(url,
-                Request.builder().setHttpTimeout(3000).setAuthorization(authorization).build());
-        TokenTemplate tokenResponse = JsonTemplateMapper.readJson(response.getBody(), TokenTemplate.class);
-        return Optional.of(Authorization.fromBearerToken(tokenResponse.token));
+        String scopes = "repository:" + repository + ":" + scope.getScope();
+        if (fromRepository != null && !fromRepository.equals(repository)) {
+            scopes += " repository:" + fromRepository + ":" + Scope.PULL.getScope();
+        }
+        TokenCache.Key key = new TokenCache.Key(realm, service, scopes, TokenCache.fingerprint(credentials));
+        return Optional.of(tokenCache.get(key, () -> fetchToken(key, authorization)));
+    }
+
+    private TokenCache.Token fetchToken(TokenCache.Key key, Authorization authorization) throws IOException {
+        StringBuilder url = new StringBuilder(key.realm()).append("?service=").append(key.service());
+        for (String scope : key.scope().split(" ")) {
+            url.append("&scope=").append(scope);
+        }
+        try (OperationTimer timer = OperationTimer.start(httpClient.getConfig().getMetrics(), Operation.TOKEN,
+                URI.create(key.realm()).getAuthority());
+             RegistryResponse response = httpClient.execute(RegistryRequest.get(url.toString()).authorization(authorization))) {
+            if (response.getStatusCode() != 200) {
+                throw new IOException("Failed to get token. HTTP status: " + response.getStatusCode());
+            }
+            TokenTemplate tokenResponse = JsonTemplateMapper.readJson(response.getBody(), TokenTemplate.class);
+            String token = tokenResponse.token != null ? tokenResponse.token : tokenResponse.access_token;
+            timer.success();
+            return new TokenCache.Token(Authorization.fromBearerToken(token), expiresAt(tokenResponse));
+        }
+    }
+
+    private static Instant expiresAt(TokenTemplate tokenResponse) {
+        Instant issuedAt = Instant.now();
+        if (tokenResponse.issued_at != null) {
+            try {
+                // Trust the server's issue time only when it is not ahead of our clock
+                Instant serverIssuedAt = Instant.parse(tokenResponse.issued_at);
+                if (serverIssuedAt.isBefore(issuedAt)) {
+                    issuedAt = serverIssuedAt;
+                }
+            } catch (DateTimeParseException ignored) {
+                // Fall back to the local clock
+            }
+        }
+        Duration lifetime = tokenResponse.expires_in > 0
+                ? Duration.ofSeconds(tokenResponse.expires_in) : TokenCache.DEFAULT_LIFETIME;
+        return issuedAt.plus(lifetime);
     }
 
 }
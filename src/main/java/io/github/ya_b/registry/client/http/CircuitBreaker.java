@@ -0,0 +1,69 @@
+package io.github.ya_b.registry.client.http;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Per-host circuit breaker. After too many consecutive failures the circuit opens and requests fail at once
+ * instead of piling up on a registry that is down; once the open time has passed a single trial request is let
+ * through, closing the circuit on success and reopening it on failure.
+ */
+class CircuitBreaker {
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String host;
+    private final int threshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+
+    /**
+     * @param threshold consecutive failures that open the circuit, 0 to never open it
+     */
+    CircuitBreaker(String host, int threshold, Duration openTime) {
+        this.host = host;
+        this.threshold = threshold;
+        this.openNanos = openTime.toNanos();
+    }
+
+    /**
+     * Admit a request; every admitted request must be followed by {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @throws IOException when the circuit is open, or half open with the trial request still running
+     */
+    synchronized void acquire() throws IOException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (state == State.OPEN && now - openUntil >= 0) {
+            state = State.HALF_OPEN;
+            return;
+        }
+        long remaining = Math.max(0, openUntil - now);
+        throw new IOException("Circuit open for " + host + " after " + failures + " consecutive failures, retrying in "
+                + Duration.ofNanos(remaining).toMillis() + "ms");
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        if (threshold > 0 && (state == State.HALF_OPEN || failures >= threshold)) {
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openNanos;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+}
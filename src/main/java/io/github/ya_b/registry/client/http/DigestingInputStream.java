@@ -0,0 +1,110 @@
+package io.github.ya_b.registry.client.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Hashes everything read through it and checks the result against the expected digest as soon as the last byte
+ * arrives: with a known size, the read returning the final bytes throws instead on a mismatch, so whatever
+ * consumes the stream (an upload, a cache write) fails before it completes rather than being found corrupt later.
+ */
+public class DigestingInputStream extends FilterInputStream {
+
+    private final String expected;
+    private final long expectedSize;
+    private final MessageDigest digest = Digests.newSha256();
+    private long count;
+    private boolean verified;
+
+    /**
+     * @param expectedSize size of the content, or -1 to verify at the end of the stream
+     */
+    public DigestingInputStream(InputStream in, String expected, long expectedSize) {
+        super(in);
+        this.expected = expected;
+        this.expectedSize = expectedSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            ended();
+        } else {
+            digest.update((byte) b);
+            advanced(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read == -1) {
+            ended();
+        } else if (read > 0) {
+            digest.update(b, off, read);
+            advanced(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes still have to be hashed
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void advanced(int read) throws IOException {
+        count += read;
+        if (expectedSize >= 0 && count > expectedSize) {
+            throw new IOException("Blob " + expected + " is larger than the expected " + expectedSize + " bytes");
+        }
+        if (count == expectedSize) {
+            verify();
+        }
+    }
+
+    private void ended() throws IOException {
+        if (verified) {
+            return;
+        }
+        if (count < expectedSize) {
+            throw new IOException("Blob " + expected + " ended after " + count + " of " + expectedSize + " bytes");
+        }
+        verify();
+    }
+
+    private void verify() throws IOException {
+        verified = true;
+        String actual = Digests.format(digest);
+        if (!actual.equals(expected)) {
+            throw new IOException("Digest mismatch, expected " + expected + " but got " + actual);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.ya_b.registry.client.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Content digests in the registry's {@code algorithm:hex} form.
+ * <p>
+ * Digest instances are cloned from a prototype instead of being looked up through the security providers, and
+ * files are hashed through buffers lent from a small shared pool rather than held per thread, so hashing allocates
+ * next to nothing per blob even when every task runs on a new virtual thread.
+ */
+public final class Digests {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private static final MessageDigest SHA256 = lookupSha256();
+    // Idle buffers; a caller finding none allocates one, and a buffer returned to a full pool is dropped
+    private static final Queue<ByteBuffer> BUFFERS =
+        new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private Digests() {
+    }
+
+    public static String sha256(byte[] content) {
+        return "sha256:" + HexFormat.of().formatHex(newSha256().digest(content));
+    }
+
+    /**
+     * Digest of a file, read in a streaming fashion
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newSha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            update(digest, channel, 0, channel.size());
+        }
+        return format(digest);
+    }
+
+    /**
+     * Feed {@code length} bytes of a file from {@code offset} into {@code digest}, with positional reads that leave
+     * the channel position alone; safe on a file other threads are writing elsewhere.
+     */
+    public static void update(MessageDigest digest, FileChannel channel, long offset, long length) throws IOException {
+        ByteBuffer buffer = BUFFERS.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        try {
+            for (long done = 0; done < length; ) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - done));
+                int read = channel.read(buffer, offset + done);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file after " + (offset + done) + " bytes");
+                }
+                digest.update(buffer.array(), 0, read);
+                done += read;
+            }
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * Digest of a region of a file, hashed in place through read-only memory mappings. Meant for files that stay
+     * as they are afterwards, like an image tar: some platforms cannot move or delete a file while it is mapped.
+     */
+    public static String sha256Mapped(FileChannel channel, long offset, long length) throws IOException {
+        MessageDigest digest = newSha256();
+        for (long done = 0; done < length; done += MAP_WINDOW) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, offset + done, Math.min(MAP_WINDOW, length - done)));
+        }
+        return format(digest);
+    }
+
+    /**
+     * Complete an incremental digest from {@link #newSha256()}
+     */
+    public static String format(MessageDigest digest) {
+        return "sha256:" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return (MessageDigest) SHA256.clone();
+        } catch (CloneNotSupportedException e) {
+            return lookupSha256();
+        }
+    }
+
+    private static MessageDigest lookupSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
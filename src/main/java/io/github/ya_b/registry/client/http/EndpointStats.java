@@ -0,0 +1,66 @@
+package io.github.ya_b.registry.client.http;
+
+import java.util.Arrays;
+
+/**
+ * Latency history of one endpoint: an exponentially weighted moving average for ranking and the most recent
+ * samples for percentiles.
+ */
+class EndpointStats {
+
+    private static final int WINDOW = 128;
+
+    /**
+     * A failure counts as a sample this slow at least, so a failing endpoint drops behind healthy ones
+     */
+    private static final long FAILURE_PENALTY_NANOS = 1_000_000_000L;
+
+    private final double weight;
+    private final long[] window = new long[WINDOW];
+    private long samples;
+    private long failures;
+    private double average;
+
+    EndpointStats(double weight) {
+        this.weight = weight;
+    }
+
+    synchronized void record(long nanos) {
+        window[(int) (samples % WINDOW)] = nanos;
+        average = samples == 0 ? nanos : weight * nanos + (1 - weight) * average;
+        samples++;
+    }
+
+    synchronized void failed() {
+        failures++;
+        record(Math.max(2 * (long) average, FAILURE_PENALTY_NANOS));
+    }
+
+    synchronized long samples() {
+        return samples;
+    }
+
+    synchronized long failures() {
+        return failures;
+    }
+
+    /**
+     * Moving average, 0 before the first sample
+     */
+    synchronized long averageNanos() {
+        return (long) average;
+    }
+
+    /**
+     * 95th percentile of the recent samples, 0 before the first sample
+     */
+    synchronized long p95Nanos() {
+        int size = (int) Math.min(samples, WINDOW);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(window, size);
+        Arrays.sort(sorted);
+        return sorted[Math.min(size - 1, (int) Math.ceil(size * 0.95) - 1)];
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.ya_b.registry.client.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of in-flight operations per registry host.
+ * <p>
+ * Slots can be waited for without holding a thread: {@link #acquireAsync(String)} queues the request and
+ * completes it when an earlier permit is closed, in the order slots were asked for.
+ */
+public class HostLimiter {
+
+    /**
+     * A held permit, released on close.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final int permitsPerHost;
+    private final Map<String, Slots> slots = new ConcurrentHashMap<>();
+
+    public HostLimiter(int permitsPerHost) {
+        if (permitsPerHost < 1) {
+            throw new IllegalArgumentException("permitsPerHost must be positive");
+        }
+        this.permitsPerHost = permitsPerHost;
+    }
+
+    public int getPermitsPerHost() {
+        return permitsPerHost;
+    }
+
+    /**
+     * Block until a slot for {@code host} is free.
+     */
+    public Permit acquire(String host) throws IOException {
+        CompletableFuture<Permit> permit = acquireAsync(host);
+        try {
+            return permit.get();
+        } catch (InterruptedException e) {
+            // A permit handed over meanwhile goes back
+            if (!permit.cancel(false)) {
+                permit.join().close();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a slot on " + host);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A permit for {@code host}, completed right away when a slot is free and otherwise once one frees up.
+     * Cancelling the future gives up the place in the queue.
+     */
+    public CompletableFuture<Permit> acquireAsync(String host) {
+        return slots.computeIfAbsent(host, key -> new Slots()).acquire();
+    }
+
+    /**
+     * Number of operations currently running against {@code host}.
+     */
+    public int inFlight(String host) {
+        Slots hostSlots = slots.get(host);
+        return hostSlots == null ? 0 : hostSlots.inFlight();
+    }
+
+    private class Slots {
+        private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+        private int available = permitsPerHost;
+
+        CompletableFuture<Permit> acquire() {
+            CompletableFuture<Permit> permit = new CompletableFuture<>();
+            synchronized (this) {
+                if (available == 0) {
+                    waiting.add(permit);
+                    return permit;
+                }
+                available--;
+            }
+            permit.complete(newPermit());
+            return permit;
+        }
+
+        synchronized int inFlight() {
+            return permitsPerHost - available;
+        }
+
+        private Permit newPermit() {
+            AtomicBoolean closed = new AtomicBoolean();
+            return () -> {
+                if (closed.compareAndSet(false, true)) {
+                    release();
+                }
+            };
+        }
+
+        private void release() {
+            while (true) {
+                CompletableFuture<Permit> next;
+                synchronized (this) {
+                    next = waiting.poll();
+                    if (next == null) {
+                        available++;
+                        return;
+                    }
+                }
+                // Completed outside the lock, the waiter's continuation may run right here; a waiter that gave
+                // up in the meantime passes the slot on to the next one
+                if (next.complete(newPermit())) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,12 +1,494 @@
 package io.github.ya_b.registry.client.http;
 
-import com.google.cloud.tools.jib.http.FailoverHttpClient;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
+import io.github.ya_b.registry.client.metrics.RegistryMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.ssl.SSLContexts;
 
-public class HttpClient {
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
-    public static FailoverHttpClient get() {
-        FailoverHttpClient client = new FailoverHttpClient(true, true, ignored -> {});
-        return client;
+/**
+ * Long-lived, pooled HTTP transport for registry API calls.
+ * <p>
+ * Every registry host gets its own connection pool, so keep-alive connections and TLS sessions are reused across
+ * calls instead of being re-established for each request. Idle connections are evicted in the background and
+ * {@link #close()} releases everything.
+ * <p>
+ * Transient failures are retried per the config's {@link RetryPolicy}; each host also gets a rate limit pacer and
+ * a circuit breaker, shared by all callers, so a throttled or failing registry sees fewer requests rather than a
+ * storm of independent retries.
+ */
+@Slf4j
+public class HttpClient implements Closeable {
+
+    private static final int MAX_REDIRECTS = 5;
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+
+    /**
+     * How a host is reached once failover has happened, mirroring Jib's secure, insecure, plain HTTP order.
+     */
+    private enum Mode {
+        SECURE, INSECURE, PLAIN
+    }
+
+    /**
+     * Connection pool counters of one host.
+     */
+    public record PoolStats(int leased, int available, int pending, int max) {
+    }
+
+    private final HttpClientConfig config;
+    private final Map<String, HostTransport> transports = new ConcurrentHashMap<>();
+    private final Map<String, HostGuard> guards = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public HttpClient() {
+        this(HttpClientConfig.defaults());
+    }
+
+    public HttpClient(HttpClientConfig config) {
+        this.config = config;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "registry-http-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, config.getIdleTimeout().toMillis() / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public HttpClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Execute a request under the {@link RetryPolicy} of the config: requests are paced against the host's
+     * announced rate limit, refused while its circuit is open, and retried with exponential backoff and jitter on
+     * connection errors, 429 and 502-504 (honouring {@code Retry-After}). Requests that are not idempotent are
+     * only retried when the registry refused them outright (429, 503), and requests with a one-shot body never.
+     * The response of the last attempt is returned, whatever its status.
+     */
+    public RegistryResponse execute(RegistryRequest request) throws IOException {
+        RetryPolicy policy = config.getRetryPolicy();
+        String host = hostKey(request.getUri());
+        String authority = request.getUri().getAuthority();
+        HostGuard guard = guards.computeIfAbsent(host, key -> new HostGuard(key, policy));
+        boolean idempotent = IDEMPOTENT_METHODS.contains(request.getMethod());
+        boolean resendable = canResend(request);
+        for (int attempt = 1; ; attempt++) {
+            if (closed) {
+                throw new IOException("HttpClient is closed");
+            }
+            try {
+                if (policy.isPaceRateLimits()) {
+                    guard.pacer.acquire(isManifestGet(request), policy.getMaxRetryAfter());
+                }
+                guard.breaker.acquire();
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                config.getMetrics().rejected(authority, e.getMessage());
+                throw e;
+            }
+            RegistryResponse response;
+            try {
+                response = send(request);
+            } catch (IOException e) {
+                guard.breaker.onFailure();
+                if (attempt >= policy.getMaxAttempts() || !idempotent || !resendable || e instanceof SSLException
+                        || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                Duration delay = backoff(policy, attempt);
+                log.debug("Retrying {} in {}ms after attempt {} failed: {}", request, delay.toMillis(), attempt, e.toString());
+                OperationTimer.retried(config.getMetrics(), authority, e.getClass().getSimpleName(), attempt, delay.toMillis());
+                sleep(delay, request);
+                continue;
+            } catch (RuntimeException e) {
+                guard.breaker.onFailure();
+                throw e;
+            }
+
+            int status = response.getStatusCode();
+            if (status >= 500) {
+                guard.breaker.onFailure();
+            } else {
+                guard.breaker.onSuccess();
+            }
+            if (policy.isPaceRateLimits()) {
+                guard.pacer.update(response);
+            }
+            boolean retryable = status == 429 || status == 503 || (idempotent && (status == 502 || status == 504));
+            if (!retryable || !resendable || attempt >= policy.getMaxAttempts()) {
+                return response;
+            }
+            Duration delay = backoff(policy, attempt);
+            Optional<Duration> retryAfter = response.getFirstHeader("Retry-After").flatMap(HttpClient::parseRetryAfter);
+            if (retryAfter.isPresent()) {
+                if (retryAfter.get().compareTo(policy.getMaxRetryAfter()) > 0) {
+                    log.warn("{} asks to retry {} after {}s, longer than allowed", host, request, retryAfter.get().toSeconds());
+                    return response;
+                }
+                // Every caller of the host backs off, not only this one
+                guard.pacer.pause(retryAfter.get());
+                delay = retryAfter.get().compareTo(delay) > 0 ? retryAfter.get() : delay;
+            }
+            response.close();
+            log.debug("Retrying {} in {}ms after status {} on attempt {}", request, delay.toMillis(), status, attempt);
+            OperationTimer.retried(config.getMetrics(), authority, String.valueOf(status), attempt, delay.toMillis());
+            sleep(delay, request);
+        }
+    }
+
+    /**
+     * Send a request once. GET and HEAD redirects are followed here rather than by the pool so that the
+     * registry credentials are not forwarded to a different host (e.g. a blob storage backend).
+     */
+    private RegistryResponse send(RegistryRequest request) throws IOException {
+        URI uri = request.getUri();
+        boolean authorize = request.getAuthorization() != null;
+        boolean followRedirects = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+        for (int redirects = 0; ; redirects++) {
+            HostTransport transport = transports.computeIfAbsent(hostKey(uri), this::newTransport);
+            CloseableHttpResponse response = transport.send(request, uri, authorize);
+            int status = response.getStatusLine().getStatusCode();
+            if (followRedirects && isRedirect(status) && response.getFirstHeader("Location") != null
+                    && redirects < MAX_REDIRECTS) {
+                URI next = uri.resolve(response.getFirstHeader("Location").getValue());
+                new RegistryResponse(response, uri).close();
+                authorize = authorize && hostKey(next).equals(hostKey(uri));
+                uri = next;
+                continue;
+            }
+            return new RegistryResponse(response, uri);
+        }
+    }
+
+    /**
+     * Whether requests to {@code host} ({@code scheme://host:port}) currently fail fast
+     */
+    public boolean isCircuitOpen(String host) {
+        HostGuard guard = guards.get(host);
+        return guard != null && guard.breaker.isOpen();
+    }
+
+    /**
+     * Connection pool counters per host, keyed by {@code scheme://host:port}.
+     */
+    public Map<String, PoolStats> poolStats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        transports.forEach((host, transport) -> stats.put(host, transport.stats()));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        transports.values().forEach(HostTransport::close);
+        transports.clear();
+        guards.clear();
+    }
+
+    private void evictIdle() {
+        for (HostTransport transport : transports.values()) {
+            transport.evictIdle(config.getIdleTimeout().toMillis());
+        }
+    }
+
+    private HostTransport newTransport(String hostKey) {
+        HostTransport transport = new HostTransport();
+        RegistryMetrics metrics = config.getMetrics();
+        if (metrics != RegistryMetrics.NOOP) {
+            Map<String, String> tags = Map.of("host", hostKey.substring(hostKey.indexOf("://") + 3));
+            metrics.gauge("registry.client.pool.leased", tags, () -> transport.stats().leased());
+            metrics.gauge("registry.client.pool.available", tags, () -> transport.stats().available());
+            metrics.gauge("registry.client.pool.pending", tags, () -> transport.stats().pending());
+        }
+        return transport;
+    }
+
+    /**
+     * Whether a request counts against a Docker Hub style pull quota, which meters manifest GETs only
+     */
+    private static boolean isManifestGet(RegistryRequest request) {
+        return "GET".equals(request.getMethod()) && request.getUri().getPath().contains("/manifests/");
     }
 
+    private static boolean canResend(RegistryRequest request) {
+        return request.getBody() == null || request.getBody().isRepeatable();
+    }
+
+    /**
+     * Random delay below the exponentially growing bound of the attempt ("full jitter")
+     */
+    private static Duration backoff(RetryPolicy policy, int attempt) {
+        long bound = policy.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20);
+        bound = Math.min(Math.max(1, bound), policy.getMaxBackoff().toMillis());
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(bound + 1));
+    }
+
+    /**
+     * {@code Retry-After} as delay seconds or an HTTP date
+     */
+    static Optional<Duration> parseRetryAfter(String value) {
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim()))));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value.trim());
+            if (date == null) {
+                return Optional.empty();
+            }
+            long millis = date.getTime() - System.currentTimeMillis();
+            return Optional.of(Duration.ofMillis(Math.max(0, millis)));
+        }
+    }
+
+    private static void sleep(Duration delay, RegistryRequest request) throws IOException {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + request);
+        }
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    static String hostKey(URI uri) {
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost() + ":" + port;
+    }
+
+    /**
+     * Rate limit pacing and circuit breaking of a registry host.
+     */
+    private static class HostGuard {
+        private final RateLimitPacer pacer;
+        private final CircuitBreaker breaker;
+
+        HostGuard(String host, RetryPolicy policy) {
+            this.pacer = new RateLimitPacer(host);
+            this.breaker = new CircuitBreaker(host, policy.getCircuitBreakerThreshold(), policy.getCircuitBreakerOpenTime());
+        }
+    }
+
+    /**
+     * Pooled clients for a single host. The insecure client is only created after a failover.
+     */
+    private class HostTransport {
+        private volatile Mode mode = Mode.SECURE;
+        private final PoolingHttpClientConnectionManager secureManager;
+        private final CloseableHttpClient secureClient;
+        private PoolingHttpClientConnectionManager insecureManager;
+        private CloseableHttpClient insecureClient;
+
+        HostTransport() {
+            this.secureManager = connectionManager(SSLConnectionSocketFactory.getSystemSocketFactory());
+            this.secureClient = client(secureManager);
+        }
+
+        CloseableHttpResponse send(RegistryRequest request, URI uri, boolean authorize) throws IOException {
+            boolean https = "https".equalsIgnoreCase(uri.getScheme());
+            Mode current = https ? mode : Mode.SECURE;
+            while (true) {
+                try {
+                    URI target = current == Mode.PLAIN ? toHttp(uri) : uri;
+                    CloseableHttpClient client = current == Mode.INSECURE ? insecureClient() : secureClient;
+                    return client.execute(toApacheRequest(request, target, authorize));
+                } catch (SSLException e) {
+                    if (!https || !config.isAllowInsecure() || current == Mode.PLAIN || !canResend(request)) {
+                        throw e;
+                    }
+                    current = current == Mode.SECURE ? Mode.INSECURE : Mode.PLAIN;
+                    log.warn("TLS failed for {}, failing over to {}", hostKey(uri), current);
+                    mode = current;
+                } catch (ConnectException e) {
+                    // Nothing listens on the default HTTPS port; as Jib did, try plain HTTP on its default port
+                    if (!https || !config.isAllowInsecure() || uri.getPort() != -1 || current == Mode.PLAIN
+                            || !canResend(request)) {
+                        throw e;
+                    }
+                    current = Mode.PLAIN;
+                    log.warn("Cannot connect to {}, failing over to {}", hostKey(uri), current);
+                    mode = current;
+                }
+            }
+        }
+
+        private synchronized CloseableHttpClient insecureClient() throws IOException {
+            if (insecureClient == null) {
+                try {
+                    SSLContext trustAll = SSLContexts.custom().loadTrustMaterial(null, (chain, type) -> true).build();
+                    insecureManager = connectionManager(
+                            new SSLConnectionSocketFactory(trustAll, NoopHostnameVerifier.INSTANCE));
+                    insecureClient = client(insecureManager);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to create insecure TLS context", e);
+                }
+            }
+            return insecureClient;
+        }
+
+        private PoolingHttpClientConnectionManager connectionManager(SSLConnectionSocketFactory sslSocketFactory) {
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", sslSocketFactory)
+                    .build();
+            PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry);
+            manager.setMaxTotal(config.getMaxConnectionsPerHost());
+            manager.setDefaultMaxPerRoute(config.getMaxConnectionsPerHost());
+            manager.setValidateAfterInactivity(2000);
+            return manager;
+        }
+
+        private CloseableHttpClient client(PoolingHttpClientConnectionManager manager) {
+            return HttpClients.custom()
+                    .setConnectionManager(manager)
+                    .setKeepAliveStrategy(keepAliveStrategy())
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout((int) config.getConnectTimeout().toMillis())
+                            .setConnectionRequestTimeout((int) config.getConnectTimeout().toMillis())
+                            .setSocketTimeout((int) config.getRequestTimeout().toMillis())
+                            .build())
+                    .disableRedirectHandling()
+                    .disableContentCompression()
+                    .disableCookieManagement()
+                    // Resend idempotent requests once when a pooled connection turns out to be stale
+                    .setRetryHandler(new DefaultHttpRequestRetryHandler(1, false))
+                    .setUserAgent("registry-client")
+                    .build();
+        }
+
+        private ConnectionKeepAliveStrategy keepAliveStrategy() {
+            return (response, context) -> {
+                HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+                while (it.hasNext()) {
+                    HeaderElement element = it.nextElement();
+                    if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                        try {
+                            return Long.parseLong(element.getValue()) * 1000;
+                        } catch (NumberFormatException ignored) {
+                            // Fall through to the configured default
+                        }
+                    }
+                }
+                return config.getKeepAlive().toMillis();
+            };
+        }
+
+        private HttpRequestBase toApacheRequest(RegistryRequest request, URI uri, boolean authorize) {
+            RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(uri);
+            request.getHeaders().forEach(header -> builder.addHeader(header.getKey(), header.getValue()));
+            if (authorize) {
+                builder.addHeader("Authorization", request.getAuthorization().getScheme() + " "
+                        + request.getAuthorization().getToken());
+            }
+            if (request.getBody() != null) {
+                builder.setEntity(request.getBody());
+            }
+            if (request.getTimeout() != null) {
+                builder.setConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) config.getConnectTimeout().toMillis())
+                        .setConnectionRequestTimeout((int) config.getConnectTimeout().toMillis())
+                        .setSocketTimeout(request.getTimeout())
+                        .build());
+            }
+            HttpRequestBase apacheRequest = (HttpRequestBase) builder.build();
+            if (apacheRequest instanceof HttpEntityEnclosingRequest && request.getBody() == null) {
+                // Registries expect an explicit empty body on POST/PUT without content
+                apacheRequest.setHeader(HTTP.CONTENT_LEN, "0");
+            }
+            return apacheRequest;
+        }
+
+        void evictIdle(long idleMillis) {
+            secureManager.closeExpiredConnections();
+            secureManager.closeIdleConnections(idleMillis, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                if (insecureManager != null) {
+                    insecureManager.closeExpiredConnections();
+                    insecureManager.closeIdleConnections(idleMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        synchronized PoolStats stats() {
+            org.apache.http.pool.PoolStats stats = secureManager.getTotalStats();
+            int leased = stats.getLeased();
+            int available = stats.getAvailable();
+            int pending = stats.getPending();
+            if (insecureManager != null) {
+                org.apache.http.pool.PoolStats insecure = insecureManager.getTotalStats();
+                leased += insecure.getLeased();
+                available += insecure.getAvailable();
+                pending += insecure.getPending();
+            }
+            return new PoolStats(leased, available, pending, stats.getMax());
+        }
+
+        synchronized void close() {
+            closeQuietly(secureClient);
+            closeQuietly(insecureClient);
+        }
+
+        private void closeQuietly(CloseableHttpClient client) {
+            if (client == null) {
+                return;
+            }
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.debug("Failed to close http client", e);
+            }
+        }
+    }
+
+    private static URI toHttp(URI uri) {
+        return URI.create("http" + uri.toString().substring(uri.getScheme().length()));
+    }
 }
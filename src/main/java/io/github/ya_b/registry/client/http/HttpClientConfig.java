@@ -0,0 +1,81 @@
+package io.github.ya_b.registry.client.http;
+
+import io.github.ya_b.registry.client.metrics.RegistryMetrics;
+import lombok.Builder;
+import lombok.Getter;
+import org.slf4j.event.Level;
+
+import java.time.Duration;
+
+/**
+ * Tuning knobs of the pooled registry transport.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class HttpClientConfig {
+
+    /**
+     * Maximum number of open connections kept per registry host.
+     */
+    @Builder.Default
+    private final int maxConnectionsPerHost = 20;
+
+    /**
+     * Pooled connections unused for longer than this are closed.
+     */
+    @Builder.Default
+    private final Duration idleTimeout = Duration.ofSeconds(60);
+
+    /**
+     * How long to keep a connection alive when the server does not send a {@code Keep-Alive} timeout.
+     */
+    @Builder.Default
+    private final Duration keepAlive = Duration.ofSeconds(60);
+
+    @Builder.Default
+    private final Duration connectTimeout = Duration.ofSeconds(3);
+
+    /**
+     * Default socket timeout of a request; individual requests may override it.
+     */
+    @Builder.Default
+    private final Duration requestTimeout = Duration.ofSeconds(3);
+
+    /**
+     * Socket timeout of blob reads, which stream whole layers and may stall longer than a metadata call on a slow
+     * storage backend.
+     */
+    @Builder.Default
+    private final Duration blobReadTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Fall back to unverified TLS and then plain HTTP when a registry does not speak valid HTTPS, and to plain HTTP
+     * when nothing listens on the default HTTPS port.
+     */
+    @Builder.Default
+    private final boolean allowInsecure = true;
+
+    /**
+     * Retries, rate limit pacing and circuit breaking of every call.
+     */
+    @Builder.Default
+    private final RetryPolicy retryPolicy = RetryPolicy.defaults();
+
+    /**
+     * Receives operation timings, byte counts, retries and pool and cache gauges of this transport and the
+     * operations running over it.
+     */
+    @Builder.Default
+    private final RegistryMetrics metrics = RegistryMetrics.NOOP;
+
+    /**
+     * Level of the log lines written for every digest, tag, catalog and delete call; lower it to keep high
+     * request rates from being dominated by logging.
+     */
+    @Builder.Default
+    private final Level callLogLevel = Level.INFO;
+
+    public static HttpClientConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.ya_b.registry.client.http;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses RFC 5988 {@code Link} headers as used by the registry for pagination.
+ */
+public final class LinkHeader {
+
+    private static final Pattern LINK = Pattern.compile("<([^>]*)>\\s*((?:;\\s*[^;,]+)*)");
+    private static final Pattern REL_NEXT = Pattern.compile(";\\s*rel\\s*=\\s*\"?next\"?", Pattern.CASE_INSENSITIVE);
+
+    private LinkHeader() {
+    }
+
+    /**
+     * Absolute URL of the {@code rel="next"} link, resolved against the URI of the request that returned it.
+     */
+    public static Optional<String> next(List<String> headerValues, URI requestUri) {
+        for (String value : headerValues) {
+            Matcher matcher = LINK.matcher(value);
+            while (matcher.find()) {
+                if (REL_NEXT.matcher(matcher.group(2)).find()) {
+                    return Optional.of(requestUri.resolve(matcher.group(1)).toString());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.ya_b.registry.client.http;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of manifests for {@link RegistryApi#getManifest}.
+ * <p>
+ * A manifest fetched by digest never changes, so it is kept until the size bound pushes it out (least recently
+ * used first). A tag only remembers which digest it pointed to and the ETag it was served with: within the TTL the
+ * cached manifest is returned without a request, after that the tag is revalidated with a conditional request and
+ * a {@code 304 Not Modified} keeps using the cached manifest. A TTL of zero revalidates on every read, so the
+ * cache never serves a stale tag and only saves the transfer of unchanged manifests.
+ */
+public class ManifestCache {
+
+    public static final int DEFAULT_MAX_MANIFESTS = 1000;
+
+    /**
+     * Point-in-time view of the cache counters.
+     */
+    public record Stats(long hits, long revalidations, long misses, int size) {
+    }
+
+    /**
+     * What a tag pointed to when it was last fetched or revalidated.
+     */
+    public record TagEntry(String digest, String etag, Instant validatedAt) {
+    }
+
+    private final Map<String, RawManifest> manifests;
+    private final ConcurrentHashMap<String, TagEntry> tags = new ConcurrentHashMap<>();
+    private final Duration tagTtl;
+    private final Clock clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Cache of {@value #DEFAULT_MAX_MANIFESTS} manifests revalidating tags on every read
+     */
+    public ManifestCache() {
+        this(DEFAULT_MAX_MANIFESTS, Duration.ZERO, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxManifests number of manifests kept
+     * @param tagTtl       how long a tag is trusted without asking the registry
+     */
+    public ManifestCache(int maxManifests, Duration tagTtl) {
+        this(maxManifests, tagTtl, Clock.systemUTC());
+    }
+
+    public ManifestCache(int maxManifests, Duration tagTtl, Clock clock) {
+        this.tagTtl = tagTtl;
+        this.clock = clock;
+        this.manifests = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RawManifest> eldest) {
+                return size() > maxManifests;
+            }
+        };
+    }
+
+    public Duration getTagTtl() {
+        return tagTtl;
+    }
+
+    /**
+     * A manifest by digest
+     */
+    public Optional<RawManifest> get(String registry, String repository, String digest) {
+        synchronized (manifests) {
+            return Optional.ofNullable(manifests.get(key(registry, repository, digest)));
+        }
+    }
+
+    /**
+     * The manifest a tag pointed to when it was last validated, provided that happened within the TTL
+     */
+    public Optional<RawManifest> getFresh(String registry, String repository, String tag) {
+        TagEntry entry = tags.get(key(registry, repository, tag));
+        if (entry == null || clock.instant().isAfter(entry.validatedAt().plus(tagTtl))) {
+            return Optional.empty();
+        }
+        return get(registry, repository, entry.digest());
+    }
+
+    /**
+     * The tag entry to revalidate, if its manifest is still cached
+     */
+    public Optional<TagEntry> getTag(String registry, String repository, String tag) {
+        TagEntry entry = tags.get(key(registry, repository, tag));
+        if (entry == null || get(registry, repository, entry.digest()).isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(entry);
+    }
+
+    /**
+     * Store a fetched manifest, and the tag it was fetched by when {@code reference} is not a digest
+     */
+    public void put(String registry, String repository, String reference, String etag, RawManifest manifest) {
+        synchronized (manifests) {
+            manifests.put(key(registry, repository, manifest.digest()), manifest);
+        }
+        if (!reference.equals(manifest.digest())) {
+            tags.put(key(registry, repository, reference), new TagEntry(manifest.digest(), etag, clock.instant()));
+        }
+    }
+
+    /**
+     * Mark a tag as confirmed unchanged by the registry
+     */
+    public void revalidated(String registry, String repository, String tag, TagEntry entry) {
+        tags.put(key(registry, repository, tag), new TagEntry(entry.digest(), entry.etag(), clock.instant()));
+    }
+
+    /**
+     * Forget a tag or digest, e.g. after it was pushed or deleted through this client
+     */
+    public void invalidate(String registry, String repository, String reference) {
+        String key = key(registry, repository, reference);
+        tags.remove(key);
+        synchronized (manifests) {
+            manifests.remove(key);
+        }
+    }
+
+    public void clear() {
+        tags.clear();
+        synchronized (manifests) {
+            manifests.clear();
+        }
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordRevalidation() {
+        revalidations.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    public Stats stats() {
+        synchronized (manifests) {
+            return new Stats(hits.sum(), revalidations.sum(), misses.sum(), manifests.size());
+        }
+    }
+
+    private static String key(String registry, String repository, String reference) {
+        return registry + "/" + repository + "@" + reference;
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.ya_b.registry.client.http;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read mirrors per upstream registry, and how {@link MirrorRouter} picks between them.
+ * <pre>{@code
+ * MirrorConfig.builder()
+ *         .mirror("registry-1.docker.io", List.of("mirror-a.internal:5000", "https://mirror-b.internal"))
+ *         .hedging(true)
+ *         .build();
+ * }</pre>
+ */
+@Getter
+@Builder(toBuilder = true)
+public class MirrorConfig {
+
+    /**
+     * Mirrors keyed by upstream registry as parsed from image references ({@code registry-1.docker.io} for
+     * Docker Hub). A mirror is a {@code host[:port]} or a base URL; they must serve the upstream's repositories
+     * under the same names.
+     */
+    private final Map<String, List<String>> mirrors;
+
+    /**
+     * Fall back to the upstream registry itself once every mirror failed.
+     */
+    @Builder.Default
+    private final boolean fallbackToUpstream = true;
+
+    /**
+     * Send a read to the second best endpoint as well when the best one has not answered within its observed
+     * p95 latency, and take whichever answers first.
+     */
+    @Builder.Default
+    private final boolean hedging = false;
+
+    /**
+     * Hedge delay used until an endpoint has enough samples for a p95.
+     */
+    @Builder.Default
+    private final Duration hedgeDelay = Duration.ofMillis(200);
+
+    /**
+     * Lower bound of the hedge delay, so a very fast endpoint does not get every read doubled.
+     */
+    @Builder.Default
+    private final Duration minHedgeDelay = Duration.ofMillis(10);
+
+    /**
+     * Weight of the newest sample in an endpoint's latency average.
+     */
+    @Builder.Default
+    private final double latencyWeight = 0.3;
+
+    public static MirrorConfig none() {
+        return builder().build();
+    }
+
+    public static class MirrorConfigBuilder {
+        private Map<String, List<String>> mirrors = Map.of();
+
+        /**
+         * Mirrors of {@code upstream}, tried in the given order until latencies are known
+         */
+        public MirrorConfigBuilder mirror(String upstream, List<String> endpoints) {
+            return mirrors(Map.of(upstream, endpoints));
+        }
+
+        public MirrorConfigBuilder mirrors(Map<String, List<String>> mirrors) {
+            // Copied on every change, so a config built earlier does not see later calls
+            Map<String, List<String>> merged = new LinkedHashMap<>(this.mirrors);
+            mirrors.forEach((upstream, endpoints) -> merged.put(upstream, List.copyOf(endpoints)));
+            this.mirrors = Collections.unmodifiableMap(merged);
+            return this;
+        }
+
+        public MirrorConfigBuilder clearMirrors() {
+            this.mirrors = Map.of();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spreads registry reads over the mirrors of a {@link MirrorConfig}.
+ * <p>
+ * Mirrors are ranked by the moving average of their observed latency and a read goes to the best one, failing
+ * over to the next on connection errors, 401, 403, 404, 429 and 5xx responses (a pull-through cache may not hold
+ * or not be allowed to fetch what the upstream has); the upstream registry comes last when
+ * {@link MirrorConfig#isFallbackToUpstream()} is set. With hedging, a read the best mirror has not answered
+ * within its p95 latency is sent to the runner-up as well and the first usable response wins; the other one is
+ * discarded when it arrives.
+ * <p>
+ * Mirrors are read anonymously, as pull-through caches usually are: upstream credentials are only ever sent to
+ * the upstream registry. Registries without mirrors are read directly, at no extra cost.
+ */
+@Slf4j
+public class MirrorRouter implements Closeable {
+
+    /**
+     * Builds the request of a read against an endpoint's base URL, without authorization.
+     */
+    @FunctionalInterface
+    public interface RequestFactory {
+        RegistryRequest create(String baseUrl) throws IOException;
+    }
+
+    /**
+     * Observed latency of one endpoint.
+     */
+    public record Latency(Duration average, Duration p95, long samples, long failures) {
+    }
+
+    /**
+     * Point-in-time view of the routing counters, with the latency of every endpoint by base URL.
+     */
+    public record Stats(long hedged, long hedgeWins, long failovers, Map<String, Latency> endpoints) {
+    }
+
+    /**
+     * Samples an endpoint needs before its own p95 replaces {@link MirrorConfig#getHedgeDelay()}
+     */
+    private static final int MIN_HEDGE_SAMPLES = 16;
+
+    private final HttpClient httpClient;
+    private final MirrorConfig config;
+    private final Map<String, List<String>> mirrors = new LinkedHashMap<>();
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+    private final ExecutorService hedgeExecutor;
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    public MirrorRouter(HttpClient httpClient, MirrorConfig config) {
+        this.httpClient = httpClient;
+        this.config = config;
+        config.getMirrors().forEach((registry, endpoints) -> {
+            List<String> baseUrls = new ArrayList<>();
+            for (String endpoint : endpoints) {
+                String baseUrl = endpoint.contains("://") ? endpoint : RegistryApi.baseUrl(endpoint);
+                baseUrls.add(baseUrl.replaceAll("/$", ""));
+            }
+            mirrors.put(registry, baseUrls);
+        });
+        AtomicInteger threads = new AtomicInteger();
+        // Hedged reads block on I/O; idle threads are let go after a minute
+        this.hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "registry-mirror-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public MirrorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Endpoints a read of {@code registry} tries, best first
+     */
+    public List<String> endpoints(String registry) {
+        List<String> configured = mirrors.get(registry);
+        if (configured == null) {
+            return List.of(RegistryApi.baseUrl(registry));
+        }
+        List<String> ranked = new ArrayList<>(configured);
+        // Unmeasured mirrors average 0 and are tried first, in configured order
+        ranked.sort(Comparator.comparingLong(endpoint -> stats(endpoint).averageNanos()));
+        if (config.isFallbackToUpstream()) {
+            ranked.add(RegistryApi.baseUrl(registry));
+        }
+        return ranked;
+    }
+
+    /**
+     * Execute a read against the best endpoint of {@code registry}.
+     *
+     * @param authorization authorization for the upstream registry, never sent to a mirror
+     * @return the first usable response; when every endpoint failed, the last error response, or the last
+     * exception is thrown
+     */
+    public RegistryResponse execute(String registry, Optional<Authorization> authorization, RequestFactory factory) throws IOException {
+        String upstream = RegistryApi.baseUrl(registry);
+        if (!mirrors.containsKey(registry)) {
+            return httpClient.execute(factory.create(upstream).authorization(authorization));
+        }
+        Attempts attempts = new Attempts(upstream, authorization, factory);
+        List<String> endpoints = endpoints(registry);
+        for (int i = 0; i < endpoints.size(); ) {
+            if (i > 0) {
+                failovers.increment();
+                log.debug("Failing over to {} for a read of {}", endpoints.get(i), registry);
+            }
+            RegistryResponse response;
+            if (config.isHedging() && i + 1 < endpoints.size()) {
+                response = attempts.hedged(endpoints.get(i), endpoints.get(i + 1));
+                i += attempts.hedgeSent ? 2 : 1;
+            } else {
+                response = attempts.single(endpoints.get(i));
+                i++;
+            }
+            if (response != null) {
+                return response;
+            }
+        }
+        return attempts.result();
+    }
+
+    /**
+     * Stop the threads of hedged reads
+     */
+    @Override
+    public void close() {
+        hedgeExecutor.shutdown();
+    }
+
+    public Stats stats() {
+        Map<String, Latency> endpoints = new LinkedHashMap<>();
+        stats.forEach((endpoint, endpointStats) -> endpoints.put(endpoint, new Latency(
+            Duration.ofNanos(endpointStats.averageNanos()), Duration.ofNanos(endpointStats.p95Nanos()),
+            endpointStats.samples(), endpointStats.failures())));
+        return new Stats(hedged.sum(), hedgeWins.sum(), failovers.sum(), endpoints);
+    }
+
+    private EndpointStats stats(String endpoint) {
+        return stats.computeIfAbsent(endpoint, key -> new EndpointStats(config.getLatencyWeight()));
+    }
+
+    private long hedgeDelayNanos(String endpoint) {
+        EndpointStats endpointStats = stats(endpoint);
+        long delay = endpointStats.samples() >= MIN_HEDGE_SAMPLES ? endpointStats.p95Nanos() : config.getHedgeDelay().toNanos();
+        return Math.max(delay, config.getMinHedgeDelay().toNanos());
+    }
+
+    /**
+     * Whether the response settles the read; otherwise the next endpoint is tried
+     */
+    private static boolean usable(RegistryResponse response) {
+        int status = response.getStatusCode();
+        return healthy(response) && status != 401 && status != 403 && status != 404;
+    }
+
+    /**
+     * Whether the endpoint itself served the read well, counting towards its latency rather than its failures
+     */
+    private static boolean healthy(RegistryResponse response) {
+        return response.getStatusCode() < 500 && response.getStatusCode() != 429;
+    }
+
+    private static void closeQuietly(RegistryResponse response) {
+        if (response != null) {
+            try {
+                response.close();
+            } catch (IOException e) {
+                log.debug("Failed to close discarded mirror response", e);
+            }
+        }
+    }
+
+    /**
+     * The attempts of one read, keeping the last error response or exception for when every endpoint fails
+     */
+    private class Attempts {
+        private final String upstream;
+        private final Optional<Authorization> authorization;
+        private final RequestFactory factory;
+        private RegistryResponse lastResponse;
+        private IOException lastFailure;
+        private boolean hedgeSent;
+
+        Attempts(String upstream, Optional<Authorization> authorization, RequestFactory factory) {
+            this.upstream = upstream;
+            this.authorization = authorization;
+            this.factory = factory;
+        }
+
+        /**
+         * Read from one endpoint
+         *
+         * @return the response when usable, otherwise null
+         */
+        RegistryResponse single(String endpoint) {
+            try {
+                return accept(send(endpoint));
+            } catch (IOException e) {
+                reject(e);
+                return null;
+            }
+        }
+
+        /**
+         * Read from {@code primary}, and from {@code secondary} as well once the primary is late
+         *
+         * @return the first usable response, otherwise null
+         */
+        RegistryResponse hedged(String primary, String secondary) throws IOException {
+            hedgeSent = false;
+            CompletableFuture<RegistryResponse> first = sendAsync(primary);
+            try {
+                first.get(hedgeDelayNanos(primary), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // late or failed, decided below
+            } catch (InterruptedException e) {
+                discard(first);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading from " + primary);
+            }
+            if (first.isDone()) {
+                return await(first);
+            }
+
+            hedgeSent = true;
+            hedged.increment();
+            log.debug("{} is slow, hedging the read to {}", primary, secondary);
+            CompletableFuture<RegistryResponse> second = sendAsync(secondary);
+            List<CompletableFuture<RegistryResponse>> pending = new ArrayList<>(List.of(first, second));
+            while (!pending.isEmpty()) {
+                try {
+                    CompletableFuture.anyOf(pending.toArray(new CompletableFuture<?>[0])).get();
+                } catch (ExecutionException e) {
+                    // one of them failed, picked up below
+                } catch (InterruptedException e) {
+                    pending.forEach(this::discard);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading from " + primary + " and " + secondary);
+                }
+                for (CompletableFuture<RegistryResponse> future : List.copyOf(pending)) {
+                    if (!future.isDone()) {
+                        continue;
+                    }
+                    pending.remove(future);
+                    RegistryResponse response = await(future);
+                    if (response != null) {
+                        if (future == second) {
+                            hedgeWins.increment();
+                        }
+                        pending.forEach(this::discard);
+                        return response;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * When every endpoint failed: the last error response, or the last exception
+         */
+        RegistryResponse result() throws IOException {
+            if (lastResponse != null) {
+                return lastResponse;
+            }
+            throw lastFailure;
+        }
+
+        private RegistryResponse await(CompletableFuture<RegistryResponse> future) {
+            try {
+                return accept(future.join());
+            } catch (RuntimeException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                reject(cause instanceof IOException ? (IOException) cause : new IOException(cause != null ? cause : e));
+                return null;
+            }
+        }
+
+        private RegistryResponse accept(RegistryResponse response) {
+            if (usable(response)) {
+                closeQuietly(lastResponse);
+                lastResponse = null;
+                return response;
+            }
+            closeQuietly(lastResponse);
+            lastResponse = response;
+            return null;
+        }
+
+        private void reject(IOException failure) {
+            lastFailure = failure;
+        }
+
+        private void discard(CompletableFuture<RegistryResponse> future) {
+            future.thenAccept(MirrorRouter::closeQuietly);
+        }
+
+        private CompletableFuture<RegistryResponse> sendAsync(String endpoint) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return send(endpoint);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, hedgeExecutor);
+        }
+
+        private RegistryResponse send(String endpoint) throws IOException {
+            RegistryRequest request = factory.create(endpoint);
+            if (endpoint.equals(upstream)) {
+                request.authorization(authorization);
+            }
+            EndpointStats endpointStats = stats(endpoint);
+            long start = System.nanoTime();
+            RegistryResponse response;
+            try {
+                response = httpClient.execute(request);
+            } catch (IOException e) {
+                endpointStats.failed();
+                log.debug("Read from {} failed: {}", endpoint, e.toString());
+                throw e;
+            }
+            if (healthy(response)) {
+                endpointStats.record(System.nanoTime() - start);
+            } else {
+                endpointStats.failed();
+            }
+            return response;
+        }
+    }
+}
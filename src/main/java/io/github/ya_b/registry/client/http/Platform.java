@@ -0,0 +1,41 @@
+package io.github.ya_b.registry.client.http;
+
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+
+/**
+ * An {@code os/architecture[/variant]} selector for the entries of a manifest list or OCI index.
+ * A platform without variant matches every variant of its architecture.
+ */
+public record Platform(String os, String architecture, String variant) {
+
+    public static final Platform LINUX_AMD64 = new Platform("linux", "amd64", null);
+
+    public Platform {
+        if (os == null || os.isEmpty() || architecture == null || architecture.isEmpty()) {
+            throw new IllegalArgumentException("Platform needs an os and an architecture");
+        }
+    }
+
+    /**
+     * Parse {@code linux/arm64} or {@code linux/arm/v7}
+     */
+    public static Platform of(String platform) {
+        String[] parts = platform.split("/");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Invalid platform, expected os/architecture[/variant]: " + platform);
+        }
+        return new Platform(parts[0], parts[1], parts.length == 3 ? parts[2] : null);
+    }
+
+    public boolean matches(Descriptor.Platform platform) {
+        return platform != null
+            && os.equals(platform.getOs())
+            && architecture.equals(platform.getArchitecture())
+            && (variant == null || variant.equals(platform.getVariant()));
+    }
+
+    @Override
+    public String toString() {
+        return os + "/" + architecture + (variant != null ? "/" + variant : "");
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.ya_b.registry.client.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Client-side token bucket of one host, fed by the {@code RateLimit-Limit} and {@code RateLimit-Remaining}
+ * headers Docker Hub sends ({@code 100;w=21600}: 100 requests per 21600 seconds).
+ * <p>
+ * The bucket holds what the registry last reported as remaining and refills at the announced rate, so once the
+ * quota is used up callers wait for it instead of drawing 429s. Only manifest GETs draw from the bucket, as only
+ * those count against Docker Hub's quota; blob, HEAD and upload requests just honour a {@code Retry-After} pause,
+ * which applies to every caller of the host, not only the one that got it. Hosts that never announce a limit are
+ * not paced.
+ */
+class RateLimitPacer {
+
+    private final String host;
+
+    private boolean limited;
+    private double capacity;
+    private double tokens;
+    private double tokensPerNano;
+    private long lastRefill;
+    private long pausedUntil;
+
+    RateLimitPacer(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Wait out a pause of the host and, for a request that counts against the quota, take a token, waiting for
+     * one when the quota is used up
+     *
+     * @param metered whether the request counts against the quota
+     * @param maxWait longest acceptable wait
+     * @throws IOException when the end of the pause or the next token is further away than {@code maxWait}
+     */
+    void acquire(boolean metered, Duration maxWait) throws IOException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            wait = Math.max(0, pausedUntil - now);
+            boolean charged = limited && metered;
+            if (charged) {
+                refill(now);
+                tokens--;
+                if (tokens < 0) {
+                    wait = Math.max(wait, tokensPerNano > 0 ? (long) (-tokens / tokensPerNano) : Long.MAX_VALUE);
+                }
+            }
+            if (wait > maxWait.toNanos()) {
+                if (charged) {
+                    tokens++;
+                }
+                throw new IOException("Rate limit of " + host + " exhausted, next request allowed in "
+                        + (wait == Long.MAX_VALUE ? "an unknown time" : Duration.ofNanos(wait).toSeconds() + "s"));
+            }
+        }
+        if (wait > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(wait).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing requests to " + host);
+            }
+        }
+    }
+
+    /**
+     * Resynchronize the bucket with the quota reported in a response
+     */
+    synchronized void update(RegistryResponse response) {
+        Optional<double[]> limit = response.getFirstHeader("RateLimit-Limit").flatMap(RateLimitPacer::parse);
+        Optional<double[]> remaining = response.getFirstHeader("RateLimit-Remaining").flatMap(RateLimitPacer::parse);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        limited = true;
+        tokens = remaining.get()[0];
+        lastRefill = now;
+        double[] rate = limit.orElse(remaining.get());
+        capacity = Math.max(rate[0], tokens);
+        tokensPerNano = rate[1] > 0 ? rate[0] / (rate[1] * 1e9) : 0;
+    }
+
+    /**
+     * Hold back every request to the host for {@code duration}
+     */
+    synchronized void pause(Duration duration) {
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + duration.toNanos());
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+    /**
+     * Parse {@code <quota>;w=<window seconds>}; the window is 0 when absent
+     */
+    private static Optional<double[]> parse(String value) {
+        String[] parts = value.split(";");
+        try {
+            double window = 0;
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.startsWith("w=")) {
+                    window = Double.parseDouble(part.substring(2));
+                }
+            }
+            return Optional.of(new double[]{Double.parseDouble(parts[0].trim()), window});
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A manifest exactly as served by the registry. The bytes are kept untouched so that the manifest can be pushed
+ * elsewhere under the same digest.
+ */
+public record RawManifest(String mediaType, String digest, byte[] content) {
+
+    public static final String DOCKER_MANIFEST = "application/vnd.docker.distribution.manifest.v2+json";
+    public static final String DOCKER_MANIFEST_LIST = "application/vnd.docker.distribution.manifest.list.v2+json";
+    public static final String OCI_MANIFEST = "application/vnd.oci.image.manifest.v1+json";
+    public static final String OCI_INDEX = "application/vnd.oci.image.index.v1+json";
+
+    /**
+     * Every manifest type understood by this client, for the {@code Accept} header
+     */
+    public static final List<String> MEDIA_TYPES = List.of(DOCKER_MANIFEST, DOCKER_MANIFEST_LIST, OCI_MANIFEST, OCI_INDEX);
+
+    /**
+     * Whether this is a manifest list / image index pointing to per-platform manifests
+     */
+    public boolean isIndex() {
+        return DOCKER_MANIFEST_LIST.equals(mediaType) || OCI_INDEX.equals(mediaType);
+    }
+
+    public ManifestResp parse() throws IOException {
+        return JsonTemplateMapper.readJson(content, ManifestResp.class);
+    }
+}
@@ -0,0 +1,479 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.metrics.Operation;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
+import io.github.ya_b.registry.client.metrics.RegistryMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Manifest and blob endpoints of the registry v2 API, the building blocks of the native copy/transfer code.
+ * <p>
+ * Every call authenticates through the shared {@link Authenticator}, so bearer tokens are reused across calls.
+ * Manifest and blob reads go through the {@link MirrorRouter} when one is set; writes always go to the registry.
+ */
+@Slf4j
+public class RegistryApi {
+
+    /**
+     * Socket timeout while the registry verifies and commits an uploaded blob
+     */
+    private static final int BLOB_COMMIT_TIMEOUT = 300_000;
+
+    /**
+     * Socket timeout of a chunk upload, covering the registry storing the chunk before it acknowledges
+     */
+    private static final int CHUNK_TIMEOUT = 120_000;
+
+    /**
+     * An upload session and the number of bytes the registry has acknowledged so far.
+     */
+    public record UploadSession(String location, long offset) {
+    }
+
+    private final HttpClient httpClient;
+    private final Authenticator authenticator;
+    private final ManifestCache manifestCache;
+    private final MirrorRouter mirrorRouter;
+
+    public RegistryApi(HttpClient httpClient, Authenticator authenticator) {
+        this(httpClient, authenticator, null);
+    }
+
+    /**
+     * @param manifestCache cache consulted by {@link #getManifest}, or null to always fetch
+     */
+    public RegistryApi(HttpClient httpClient, Authenticator authenticator, ManifestCache manifestCache) {
+        this(httpClient, authenticator, manifestCache, null);
+    }
+
+    /**
+     * @param mirrorRouter router spreading manifest and blob reads over mirrors, or null to read from the
+     *                     registry itself
+     */
+    public RegistryApi(HttpClient httpClient, Authenticator authenticator, ManifestCache manifestCache,
+                       MirrorRouter mirrorRouter) {
+        this.httpClient = httpClient;
+        this.authenticator = authenticator;
+        this.manifestCache = manifestCache;
+        this.mirrorRouter = mirrorRouter;
+    }
+
+    /**
+     * The manifest cache, or null
+     */
+    public ManifestCache getManifestCache() {
+        return manifestCache;
+    }
+
+    /**
+     * The mirror router, or null
+     */
+    public MirrorRouter getMirrorRouter() {
+        return mirrorRouter;
+    }
+
+    /**
+     * Metrics of the underlying transport
+     */
+    public RegistryMetrics metrics() {
+        return httpClient.getConfig().getMetrics();
+    }
+
+    /**
+     * Execute a read of {@code registry}, through its mirrors when a {@link MirrorRouter} has some for it
+     *
+     * @param authorization authorization for the registry itself
+     * @param factory       builds the request against an endpoint's base URL
+     */
+    public RegistryResponse read(String registry, Optional<Authorization> authorization, MirrorRouter.RequestFactory factory)
+        throws IOException {
+        if (mirrorRouter == null) {
+            return httpClient.execute(factory.create(baseUrl(registry)).authorization(authorization));
+        }
+        return mirrorRouter.execute(registry, authorization, factory);
+    }
+
+    /**
+     * Registry API base URL, plain HTTP for local registries
+     */
+    public static String baseUrl(String registry) {
+        String protocol = (registry.startsWith("localhost") || registry.startsWith("127.0.0.1") || registry.startsWith("0.0.0.0"))
+            ? "http" : "https";
+        return protocol + "://" + registry;
+    }
+
+    public static String manifestUrl(String registry, String repository, String reference) {
+        return String.format("%s/v2/%s/manifests/%s", baseUrl(registry), repository, reference);
+    }
+
+    public static String blobUrl(String registry, String repository, String digest) {
+        return baseUrl(registry) + blobPath(repository, digest);
+    }
+
+    private static String blobPath(String repository, String digest) {
+        return String.format("/v2/%s/blobs/%s", repository, digest);
+    }
+
+    /**
+     * Fetch a manifest by tag or digest, accepting image manifests as well as manifest lists / indexes.
+     * The digest is computed from the received bytes and checked when {@code reference} is a digest.
+     * <p>
+     * With a {@link ManifestCache}, digests are served from memory and tags within their TTL as well; a tag past
+     * its TTL is revalidated with {@code If-None-Match}.
+     */
+    public RawManifest getManifest(String registry, String repository, String reference, String[] credentials) throws IOException {
+        boolean byDigest = reference.contains(":");
+        ManifestCache.TagEntry revalidate = null;
+        if (manifestCache != null) {
+            Optional<RawManifest> cached = byDigest ? manifestCache.get(registry, repository, reference)
+                : manifestCache.getFresh(registry, repository, reference);
+            if (cached.isPresent()) {
+                manifestCache.recordHit();
+                return cached.get();
+            }
+            revalidate = byDigest ? null : manifestCache.getTag(registry, repository, reference).orElse(null);
+        }
+
+        String path = String.format("/v2/%s/manifests/%s", repository, reference);
+        String ifNoneMatch = revalidate != null ? revalidate.etag() : null;
+        MirrorRouter.RequestFactory request = baseUrl -> {
+            RegistryRequest get = RegistryRequest.get(baseUrl + path).accept(RawManifest.MEDIA_TYPES);
+            return ifNoneMatch != null ? get.header("If-None-Match", ifNoneMatch) : get;
+        };
+
+        try (OperationTimer timer = OperationTimer.start(metrics(), Operation.MANIFEST_GET, registry);
+             RegistryResponse response = read(registry,
+                 authorization(manifestUrl(registry, repository, reference), credentials, repository, Scope.PULL), request)) {
+            if (response.getStatusCode() == 304 && revalidate != null) {
+                Optional<RawManifest> cached = manifestCache.get(registry, repository, revalidate.digest());
+                if (cached.isPresent()) {
+                    manifestCache.revalidated(registry, repository, reference, revalidate);
+                    manifestCache.recordRevalidation();
+                    timer.success();
+                    return cached.get();
+                }
+                // Evicted meanwhile; fetch it again unconditionally
+                return getManifest(registry, repository, revalidate.digest(), credentials);
+            }
+            if (response.getStatusCode() != 200) {
+                log.error("Failed to get manifest {}/{}:{}. HTTP status: {}, response: {}",
+                    registry, repository, reference, response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to get manifest. HTTP status: " + response.getStatusCode());
+            }
+            byte[] content = response.getBody().readAllBytes();
+            String digest = Digests.sha256(content);
+            if (byDigest && !reference.equals(digest)) {
+                throw new IOException("Manifest digest mismatch, expected " + reference + " but got " + digest);
+            }
+            String mediaType = response.getFirstHeader("Content-Type")
+                .map(type -> type.split(";")[0].trim())
+                .filter(RawManifest.MEDIA_TYPES::contains)
+                .orElse(null);
+            if (mediaType == null) {
+                // Fall back to the document itself when the registry sends a generic content type
+                ManifestResp parsed = new RawManifest(null, digest, content).parse();
+                if (parsed.getSchemaVersion() != 2) {
+                    throw new IOException("Unsupported manifest schema version: " + parsed.getSchemaVersion());
+                }
+                mediaType = parsed.getMediaType() != null ? parsed.getMediaType()
+                    : parsed.getManifests() != null ? RawManifest.OCI_INDEX : RawManifest.OCI_MANIFEST;
+            }
+            RawManifest manifest = new RawManifest(mediaType, digest, content);
+            if (manifestCache != null) {
+                manifestCache.recordMiss();
+                // Registries serve the quoted digest as ETag; fall back to it when the header is missing
+                String etag = response.getFirstHeader("ETag").orElse("\"" + digest + "\"");
+                manifestCache.put(registry, repository, reference, etag, manifest);
+            }
+            timer.bytes(content.length).success();
+            return manifest;
+        }
+    }
+
+    /**
+     * Push a manifest under a tag or its digest
+     *
+     * @return the digest of the pushed manifest
+     */
+    public String putManifest(String registry, String repository, String reference, RawManifest manifest, String[] credentials) throws IOException {
+        String url = manifestUrl(registry, repository, reference);
+        RegistryRequest request = RegistryRequest.put(url)
+            .authorization(authorization(url, credentials, repository, Scope.PULL_PUSH))
+            .body(new ByteArrayEntity(manifest.content(), ContentType.create(manifest.mediaType())));
+
+        try (OperationTimer timer = OperationTimer.start(metrics(), Operation.MANIFEST_PUT, registry);
+             RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() != 201 && response.getStatusCode() != 200) {
+                log.error("Failed to put manifest {}/{}:{}. HTTP status: {}, response: {}",
+                    registry, repository, reference, response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to put manifest. HTTP status: " + response.getStatusCode());
+            }
+            if (manifestCache != null && !reference.equals(manifest.digest())) {
+                manifestCache.invalidate(registry, repository, reference);
+            }
+            timer.bytes(manifest.content().length).success();
+            return manifest.digest();
+        }
+    }
+
+    /**
+     * Delete a manifest by digest
+     *
+     * @return false when the registry does not have it
+     */
+    public boolean deleteManifest(String registry, String repository, String digest, String[] credentials) throws IOException {
+        String url = manifestUrl(registry, repository, digest);
+        RegistryRequest request = RegistryRequest.delete(url)
+            .authorization(authorization(url, credentials, repository, Scope.DELETE));
+
+        try (OperationTimer timer = OperationTimer.start(metrics(), Operation.DELETE, registry);
+             RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() == 202 || response.getStatusCode() == 204) {
+                if (manifestCache != null) {
+                    manifestCache.invalidate(registry, repository, digest);
+                }
+                timer.success();
+                return true;
+            } else if (response.getStatusCode() == 404) {
+                timer.success();
+                return false;
+            } else if (response.getStatusCode() == 405) {
+                log.error("Delete operation not supported by registry {}", registry);
+                throw new IOException("Delete operation not supported by registry");
+            }
+            log.error("Failed to delete manifest {}/{}@{}. HTTP status: {}, response: {}",
+                registry, repository, digest, response.getStatusCode(), response.getBodyAsString());
+            throw new IOException("Failed to delete image. HTTP status: " + response.getStatusCode());
+        }
+    }
+
+    public boolean blobExists(String registry, String repository, String digest, String[] credentials) throws IOException {
+        String url = blobUrl(registry, repository, digest);
+        RegistryRequest request = RegistryRequest.head(url)
+            .authorization(authorization(url, credentials, repository, Scope.PULL_PUSH));
+
+        try (RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() == 200) {
+                return true;
+            } else if (response.getStatusCode() == 404) {
+                return false;
+            }
+            throw new IOException("Failed to check blob " + digest + ". HTTP status: " + response.getStatusCode());
+        }
+    }
+
+    /**
+     * Size of a blob from its HEAD response
+     */
+    public long blobSize(String registry, String repository, String digest, String[] credentials) throws IOException {
+        String url = blobUrl(registry, repository, digest);
+        String path = blobPath(repository, digest);
+
+        try (RegistryResponse response = read(registry, authorization(url, credentials, repository, Scope.PULL),
+            baseUrl -> RegistryRequest.head(baseUrl + path).timeout(blobReadTimeout()))) {
+            if (response.getStatusCode() != 200) {
+                throw new IOException("Failed to get blob " + digest + ". HTTP status: " + response.getStatusCode());
+            }
+            Optional<String> length = response.getFirstHeader("Content-Length");
+            if (length.isEmpty()) {
+                throw new IOException("No Content-Length for blob " + digest);
+            }
+            return Long.parseLong(length.get().trim());
+        }
+    }
+
+    /**
+     * Open the bytes {@code start..end} (inclusive) of a blob. The status is 206, or 200 with the whole blob when
+     * the registry ignores range requests. The returned response must be closed by the caller.
+     */
+    public RegistryResponse getBlobRange(String registry, String repository, String digest, long start, long end,
+                                         String[] credentials) throws IOException {
+        String url = blobUrl(registry, repository, digest);
+        String path = blobPath(repository, digest);
+
+        RegistryResponse response = read(registry, authorization(url, credentials, repository, Scope.PULL),
+            baseUrl -> RegistryRequest.get(baseUrl + path).header("Range", "bytes=" + start + "-" + end)
+                .timeout(blobReadTimeout()));
+        if (response.getStatusCode() != 206 && response.getStatusCode() != 200) {
+            int status = response.getStatusCode();
+            response.close();
+            throw new IOException("Failed to get blob " + digest + " range " + start + "-" + end + ". HTTP status: " + status);
+        }
+        return response;
+    }
+
+    /**
+     * Open a blob for reading. The returned response must be closed by the caller.
+     */
+    public RegistryResponse getBlob(String registry, String repository, String digest, String[] credentials) throws IOException {
+        String url = blobUrl(registry, repository, digest);
+        String path = blobPath(repository, digest);
+
+        RegistryResponse response = read(registry, authorization(url, credentials, repository, Scope.PULL),
+            baseUrl -> RegistryRequest.get(baseUrl + path).timeout(blobReadTimeout()));
+        if (response.getStatusCode() != 200) {
+            int status = response.getStatusCode();
+            response.close();
+            throw new IOException("Failed to get blob " + digest + ". HTTP status: " + status);
+        }
+        return response;
+    }
+
+    /**
+     * Start a blob upload session
+     *
+     * @return the absolute upload URL
+     */
+    public String startUpload(String registry, String repository, String[] credentials) throws IOException {
+        return startUpload(registry, repository, null, null, credentials)
+            .orElseThrow(() -> new IOException("Registry did not open an upload session"));
+    }
+
+    /**
+     * Try to mount {@code mountDigest} from {@code fromRepository} of the same registry, falling back to a new
+     * upload session when the registry refuses the mount.
+     *
+     * @return the absolute upload URL, or empty when the blob was mounted and nothing has to be uploaded
+     */
+    public Optional<String> startUpload(String registry, String repository, String mountDigest, String fromRepository,
+                                        String[] credentials) throws IOException {
+        String url = String.format("%s/v2/%s/blobs/uploads/", baseUrl(registry), repository);
+        if (mountDigest != null) {
+            url += "?mount=" + encode(mountDigest) + "&from=" + encode(fromRepository);
+        }
+        // Mounting reads the source repository, so the token has to grant pull on it as well
+        RegistryRequest request = RegistryRequest.post(url).authorization(authenticator.getAuthorization(url, credentials,
+            repository, Scope.PULL_PUSH, mountDigest != null ? fromRepository : null));
+
+        try (RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() == 201 && mountDigest != null) {
+                log.debug("Mounted blob {} from {} into {}", mountDigest, fromRepository, repository);
+                return Optional.empty();
+            } else if (response.getStatusCode() == 202) {
+                String location = response.getFirstHeader("Location")
+                    .orElseThrow(() -> new IOException("Upload session without Location header"));
+                return Optional.of(response.getRequestUri().resolve(location).toString());
+            }
+            log.error("Failed to start blob upload to {}/{}. HTTP status: {}, response: {}",
+                registry, repository, response.getStatusCode(), response.getBodyAsString());
+            throw new IOException("Failed to start blob upload. HTTP status: " + response.getStatusCode());
+        }
+    }
+
+    /**
+     * Ask the registry how much of an upload session it has received
+     *
+     * @return the session, or empty when the registry no longer knows it
+     */
+    public Optional<UploadSession> uploadStatus(String registry, String repository, String location, String[] credentials) throws IOException {
+        RegistryRequest request = RegistryRequest.get(location)
+            .authorization(authorization(location, credentials, repository, Scope.PULL_PUSH));
+
+        try (RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() == 404) {
+                return Optional.empty();
+            } else if (response.getStatusCode() != 204) {
+                throw new IOException("Failed to get upload status. HTTP status: " + response.getStatusCode());
+            }
+            return Optional.of(session(response, location));
+        }
+    }
+
+    /**
+     * Append a chunk to an upload session with {@code PATCH}; chunks have to be sent in order
+     *
+     * @param offset position of the chunk in the blob, must equal the acknowledged offset of the session
+     * @return the session as acknowledged by the registry, whose location is to be used for the next request
+     */
+    public UploadSession uploadChunk(String registry, String repository, String location, long offset, HttpEntity chunk,
+                                     String[] credentials) throws IOException {
+        RegistryRequest request = RegistryRequest.patch(location)
+            .authorization(authorization(location, credentials, repository, Scope.PULL_PUSH))
+            .header("Content-Range", offset + "-" + (offset + chunk.getContentLength() - 1))
+            .body(chunk)
+            .timeout(CHUNK_TIMEOUT);
+
+        try (RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() != 202) {
+                log.error("Failed to upload chunk at {} to {}/{}. HTTP status: {}, response: {}",
+                    offset, registry, repository, response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to upload chunk. HTTP status: " + response.getStatusCode());
+            }
+            return session(response, location);
+        }
+    }
+
+    /**
+     * Read the next location and the acknowledged {@code Range: 0-<last>} of an upload response
+     */
+    private static UploadSession session(RegistryResponse response, String location) {
+        String next = response.getFirstHeader("Location")
+            .map(value -> response.getRequestUri().resolve(value).toString())
+            .orElse(location);
+        long offset = response.getFirstHeader("Range")
+            .map(range -> Long.parseLong(range.substring(range.indexOf('-') + 1).trim()) + 1)
+            .orElse(0L);
+        return new UploadSession(next, offset);
+    }
+
+    /**
+     * Upload the rest of the blob into a session and commit it under {@code digest}; the registry verifies the
+     * content against the digest.
+     *
+     * @param body the remaining bytes, or null when everything has been sent with {@link #uploadChunk}
+     */
+    public void completeUpload(String registry, String repository, String location, String digest, HttpEntity body,
+                               String[] credentials) throws IOException {
+        String url = location + (location.contains("?") ? "&" : "?") + "digest=" + encode(digest);
+        RegistryRequest request = RegistryRequest.put(url)
+            .authorization(authorization(url, credentials, repository, Scope.PULL_PUSH))
+            .body(body)
+            .timeout(BLOB_COMMIT_TIMEOUT);
+
+        try (RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() != 201) {
+                log.error("Failed to upload blob {} to {}/{}. HTTP status: {}, response: {}",
+                    digest, registry, repository, response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to upload blob. HTTP status: " + response.getStatusCode());
+            }
+        }
+    }
+
+    /**
+     * Abandon an upload session, so the registry can drop what it has received; a session the registry no longer
+     * knows counts as cancelled
+     */
+    public void cancelUpload(String registry, String repository, String location, String[] credentials) throws IOException {
+        RegistryRequest request = RegistryRequest.delete(location)
+            .authorization(authorization(location, credentials, repository, Scope.PULL_PUSH));
+
+        try (RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() != 204 && response.getStatusCode() != 404) {
+                throw new IOException("Failed to cancel upload to " + registry + "/" + repository + ". HTTP status: "
+                    + response.getStatusCode());
+            }
+        }
+    }
+
+    private int blobReadTimeout() {
+        return (int) httpClient.getConfig().getBlobReadTimeout().toMillis();
+    }
+
+    private Optional<Authorization> authorization(String url, String[] credentials, String repository, Scope scope) throws IOException {
+        return authenticator.getAuthorization(url, credentials, repository, scope);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
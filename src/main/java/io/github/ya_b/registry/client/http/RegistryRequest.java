@@ -0,0 +1,118 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import org.apache.http.HttpEntity;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A single call against a registry endpoint, executed by {@link HttpClient}.
+ */
+public class RegistryRequest {
+
+    private final String method;
+    private final URI uri;
+    private final List<Map.Entry<String, String>> headers = new ArrayList<>();
+    private Authorization authorization;
+    private HttpEntity body;
+    private Integer timeout;
+
+    private RegistryRequest(String method, URI uri) {
+        this.method = method;
+        this.uri = uri;
+    }
+
+    public static RegistryRequest of(String method, String url) {
+        return new RegistryRequest(method, URI.create(url));
+    }
+
+    public static RegistryRequest get(String url) {
+        return of("GET", url);
+    }
+
+    public static RegistryRequest head(String url) {
+        return of("HEAD", url);
+    }
+
+    public static RegistryRequest delete(String url) {
+        return of("DELETE", url);
+    }
+
+    public static RegistryRequest put(String url) {
+        return of("PUT", url);
+    }
+
+    public static RegistryRequest post(String url) {
+        return of("POST", url);
+    }
+
+    public static RegistryRequest patch(String url) {
+        return of("PATCH", url);
+    }
+
+    public RegistryRequest authorization(Authorization authorization) {
+        this.authorization = authorization;
+        return this;
+    }
+
+    public RegistryRequest authorization(Optional<Authorization> authorization) {
+        this.authorization = authorization.orElse(null);
+        return this;
+    }
+
+    public RegistryRequest accept(List<String> mediaTypes) {
+        return header("Accept", String.join(", ", mediaTypes));
+    }
+
+    public RegistryRequest header(String name, String value) {
+        headers.add(Map.entry(name, value));
+        return this;
+    }
+
+    public RegistryRequest body(HttpEntity body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * Socket timeout in milliseconds, overriding {@link HttpClientConfig#getRequestTimeout()}.
+     */
+    public RegistryRequest timeout(int millis) {
+        this.timeout = millis;
+        return this;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public List<Map.Entry<String, String>> getHeaders() {
+        return Collections.unmodifiableList(headers);
+    }
+
+    public Authorization getAuthorization() {
+        return authorization;
+    }
+
+    public HttpEntity getBody() {
+        return body;
+    }
+
+    public Integer getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri;
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.ya_b.registry.client.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Response of a {@link RegistryRequest}. Must be closed so the connection goes back to the pool.
+ */
+public class RegistryResponse implements Closeable {
+
+    private static final long DRAIN_LIMIT = 64 * 1024;
+
+    private final CloseableHttpResponse response;
+    private final URI requestUri;
+
+    RegistryResponse(CloseableHttpResponse response, URI requestUri) {
+        this.response = response;
+        this.requestUri = requestUri;
+    }
+
+    public int getStatusCode() {
+        return response.getStatusLine().getStatusCode();
+    }
+
+    public List<String> getHeader(String name) {
+        List<String> values = new ArrayList<>();
+        for (Header header : response.getHeaders(name)) {
+            values.add(header.getValue());
+        }
+        return values;
+    }
+
+    public Optional<String> getFirstHeader(String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? Optional.empty() : Optional.of(header.getValue());
+    }
+
+    /**
+     * Length of the body, or -1 when unknown.
+     */
+    public long getContentLength() {
+        HttpEntity entity = response.getEntity();
+        return entity == null ? -1 : entity.getContentLength();
+    }
+
+    public InputStream getBody() throws IOException {
+        HttpEntity entity = response.getEntity();
+        return entity == null ? InputStream.nullInputStream() : entity.getContent();
+    }
+
+    public String getBodyAsString() throws IOException {
+        HttpEntity entity = response.getEntity();
+        return entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The URI that produced this response, after redirects.
+     */
+    public URI getRequestUri() {
+        return requestUri;
+    }
+
+    /**
+     * Release the connection. Small unread bodies are drained so the connection can be reused; large ones are
+     * cut off instead of being downloaded just to be discarded.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            HttpEntity entity = response.getEntity();
+            if (entity != null && entity.getContentLength() >= 0 && entity.getContentLength() <= DRAIN_LIMIT) {
+                EntityUtils.consumeQuietly(entity);
+            }
+        } finally {
+            response.close();
+        }
+    }
+}
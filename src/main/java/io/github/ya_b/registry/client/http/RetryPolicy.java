@@ -0,0 +1,67 @@
+package io.github.ya_b.registry.client.http;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * How {@link HttpClient} retries, paces and sheds requests to a struggling registry.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class RetryPolicy {
+
+    /**
+     * Attempts per request including the first one; 1 disables retries.
+     */
+    @Builder.Default
+    private final int maxAttempts = 4;
+
+    /**
+     * Upper bound of the first backoff; each further retry doubles it, and the actual delay is drawn at random
+     * below the bound so concurrent callers do not retry in lockstep.
+     */
+    @Builder.Default
+    private final Duration initialBackoff = Duration.ofMillis(200);
+
+    @Builder.Default
+    private final Duration maxBackoff = Duration.ofSeconds(10);
+
+    /**
+     * Longest {@code Retry-After} or rate limit pause waited out; a longer one fails the request instead.
+     */
+    @Builder.Default
+    private final Duration maxRetryAfter = Duration.ofSeconds(60);
+
+    /**
+     * Pace requests to hosts that announce {@code RateLimit-Remaining}, such as Docker Hub: once the quota is used
+     * up, requests wait for it to refill instead of drawing 429s.
+     */
+    @Builder.Default
+    private final boolean paceRateLimits = true;
+
+    /**
+     * Consecutive failed attempts (connection errors and 5xx responses) after which requests to a host fail fast;
+     * 0 disables the circuit breaker.
+     */
+    @Builder.Default
+    private final int circuitBreakerThreshold = 10;
+
+    /**
+     * How long a tripped circuit stays open before a single trial request is let through.
+     */
+    @Builder.Default
+    private final Duration circuitBreakerOpenTime = Duration.ofSeconds(30);
+
+    public static RetryPolicy defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Single attempts, no pacing and no circuit breaker.
+     */
+    public static RetryPolicy disabled() {
+        return builder().maxAttempts(1).paceRateLimits(false).circuitBreakerThreshold(0).build();
+    }
+}
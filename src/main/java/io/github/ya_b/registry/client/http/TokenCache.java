@@ -0,0 +1,248 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent cache for registry bearer tokens.
+ * <p>
+ * Tokens are reused until shortly before they expire. Once a token enters its refresh window a replacement is
+ * fetched in the background while every caller, including the one that noticed, keeps using the still valid
+ * token, and callers that find no usable token at all wait on one shared in-flight request instead of each
+ * calling the token endpoint.
+ */
+@Slf4j
+public class TokenCache {
+
+    /**
+     * Token lifetime assumed when the token server does not send {@code expires_in}, as defined by the
+     * distribution token spec.
+     */
+    static final Duration DEFAULT_LIFETIME = Duration.ofSeconds(60);
+
+    private static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofSeconds(30);
+
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    // Refreshes are rare and short, idle threads go away after a minute
+    private static final Executor DEFAULT_REFRESH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "registry-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Identifies a token: who issued it, what it grants and to whom.
+     * The credential is a fingerprint, never the password itself.
+     *
+     * @param scope resource scopes the token grants, like {@code repository:library/registry:pull}, separated by
+     *              spaces when there are several
+     */
+    public record Key(String realm, String service, String scope, String credential) {
+    }
+
+    /**
+     * A bearer token together with the instant it stops being accepted.
+     */
+    public record Token(Authorization authorization, Instant expiresAt) {
+    }
+
+    /**
+     * Point-in-time view of the cache counters.
+     */
+    public record Stats(long hits, long misses, long loads, long loadFailures, int size) {
+    }
+
+    @FunctionalInterface
+    public interface TokenLoader {
+        Token load() throws IOException;
+    }
+
+    private record Entry(Token token, Instant refreshAt) {
+    }
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final Duration refreshAhead;
+    private final Clock clock;
+    private final Executor refreshExecutor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+
+    public TokenCache() {
+        this(DEFAULT_REFRESH_AHEAD, Clock.systemUTC());
+    }
+
+    public TokenCache(Duration refreshAhead, Clock clock) {
+        this(refreshAhead, clock, DEFAULT_REFRESH_EXECUTOR);
+    }
+
+    /**
+     * @param refreshExecutor runs the background refreshes of tokens about to expire
+     */
+    public TokenCache(Duration refreshAhead, Clock clock, Executor refreshExecutor) {
+        this.refreshAhead = refreshAhead;
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Return the cached token for {@code key}, loading it with {@code loader} when it is missing, expired or due
+     * for refresh.
+     */
+    public Authorization get(Key key, TokenLoader loader) throws IOException {
+        Instant now = clock.instant();
+        Entry entry = entries.get(key);
+        if (entry != null && now.isBefore(entry.token().expiresAt())) {
+            hits.increment();
+            if (!now.isBefore(entry.refreshAt())) {
+                refreshAhead(key, loader);
+            }
+            return entry.token().authorization();
+        }
+        misses.increment();
+        return load(key, loader).token().authorization();
+    }
+
+    /**
+     * Drop the token for {@code key}, e.g. after the registry rejected it.
+     */
+    public void invalidate(Key key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), entries.size());
+    }
+
+    /**
+     * The load or refresh of {@code key} in flight, or a completed future when there is none
+     */
+    CompletableFuture<?> pending(Key key) {
+        return inFlight.getOrDefault(key, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Refresh a token that is still valid on the refresh executor. Only the caller that wins the race submits the
+     * request; a failure is logged and the old token stays in place until it really expires.
+     */
+    private void refreshAhead(Key key, TokenLoader loader) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    complete(key, loader, future);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to refresh token ahead of expiry for {}", key.scope(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The current token is still good; the next caller tries again
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private Entry load(Key key, TokenLoader loader) throws IOException {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) {
+            return complete(key, loader, future);
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for token", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load token", e.getCause());
+        }
+    }
+
+    /**
+     * Load the token and settle {@code future}. It leaves {@link #inFlight} first, so a caller woken by it that
+     * loads again does not find it there and take its token for a fresh one.
+     */
+    private Entry complete(Key key, TokenLoader loader, CompletableFuture<Entry> future) throws IOException {
+        Entry entry;
+        try {
+            loads.increment();
+            Token token = loader.load();
+            entry = new Entry(token, refreshAt(token));
+            entries.put(key, entry);
+            if (entries.size() > CLEANUP_THRESHOLD) {
+                evictExpired();
+            }
+        } catch (IOException | RuntimeException e) {
+            loadFailures.increment();
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, future);
+        future.complete(entry);
+        return entry;
+    }
+
+    private Instant refreshAt(Token token) {
+        Duration lifetime = Duration.between(clock.instant(), token.expiresAt());
+        Duration ahead = lifetime.dividedBy(2).compareTo(refreshAhead) < 0 ? lifetime.dividedBy(2) : refreshAhead;
+        return token.expiresAt().minus(ahead);
+    }
+
+    private void evictExpired() {
+        Instant now = clock.instant();
+        entries.values().removeIf(e -> !now.isBefore(e.token().expiresAt()));
+    }
+
+    /**
+     * Stable, non-reversible identifier for a username/password pair. A missing username or password, such as an
+     * unset environment variable, counts as empty.
+     */
+    public static String fingerprint(String[] credentials) {
+        if (credentials == null || credentials.length != 2) {
+            return "";
+        }
+        String username = Objects.toString(credentials[0], "");
+        String password = Objects.toString(credentials[1], "");
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(username.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(password.getBytes(StandardCharsets.UTF_8));
+            return username + ":" + HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.ya_b.registry.client.http.resp;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.cloud.tools.jib.json.JsonTemplate;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference to a blob or manifest inside a manifest or index.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Descriptor implements JsonTemplate {
+
+    private String mediaType;
+
+    private long size;
+
+    private String digest;
+
+    /**
+     * Locations of a foreign layer that is not stored in the registry
+     */
+    private List<String> urls;
+
+    private Map<String, String> annotations;
+
+    private Platform platform;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Platform implements JsonTemplate {
+
+        private String architecture;
+
+        private String os;
+
+        @JsonProperty("os.version")
+        private String osVersion;
+
+        private String variant;
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.ya_b.registry.client.http.resp;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.cloud.tools.jib.json.JsonTemplate;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The fields of an image configuration blob the client looks at.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImageConfig implements JsonTemplate {
+
+    /**
+     * Creation time, RFC 3339
+     */
+    private String created;
+
+    private String architecture;
+
+    private String os;
+
+    private RootFs rootfs;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RootFs {
+
+        private String type;
+
+        /**
+         * Digests of the uncompressed layers, base layer first
+         */
+        @JsonProperty("diff_ids")
+        private List<String> diffIds;
+    }
+}
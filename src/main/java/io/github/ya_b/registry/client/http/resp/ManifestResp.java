@@ -0,0 +1,27 @@
+package io.github.ya_b.registry.client.http.resp;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.google.cloud.tools.jib.json.JsonTemplate;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * An image manifest or a manifest list / index; for the latter only {@code manifests} is set.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ManifestResp implements JsonTemplate {
+
+    private int schemaVersion;
+
+    private String mediaType;
+
+    private Descriptor config;
+
+    private List<Descriptor> layers;
+
+    private List<Descriptor> manifests;
+}
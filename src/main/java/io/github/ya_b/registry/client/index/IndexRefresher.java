@@ -0,0 +1,219 @@
+package io.github.ya_b.registry.client.index;
+
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.crawler.CrawlSummary;
+import io.github.ya_b.registry.client.crawler.CrawlerConfig;
+import io.github.ya_b.registry.client.crawler.InventoryEntry;
+import io.github.ya_b.registry.client.crawler.InventorySink;
+import io.github.ya_b.registry.client.crawler.RegistryCrawler;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ImageConfig;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import io.github.ya_b.registry.client.transfer.ParallelWorkers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Brings a {@link MetadataIndex} in step with a registry.
+ * <p>
+ * A refresh crawls the registry ({@link RegistryCrawler}) for the digest behind every tag and writes only what
+ * changed: new and moved tags, and tags gone from repositories that were read completely. Manifests are
+ * immutable, so only those the index does not know yet are read, along with their image configuration for the
+ * creation time; after the first refresh that is a handful of manifests instead of one per tag. Repositories and
+ * tags that fail keep their previous entries.
+ */
+@Slf4j
+public class IndexRefresher {
+
+    private final JibImageManager imageManager;
+    private final RegistryApi registryApi;
+    private final Executor executor;
+    private final Clock clock;
+
+    /**
+     * @param executor executor lending threads for the crawl and for reading manifests
+     */
+    public IndexRefresher(JibImageManager imageManager, Executor executor) {
+        this(imageManager, executor, Clock.systemUTC());
+    }
+
+    IndexRefresher(JibImageManager imageManager, Executor executor, Clock clock) {
+        this.imageManager = imageManager;
+        this.registryApi = imageManager.getRegistryApi();
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Refresh the entries of the registry at {@code registryUrl}, blocking until done
+     *
+     * @param credentials credentials of the registry, null for anonymous access
+     * @throws IOException when the catalog cannot be read; nothing is removed from the index then
+     */
+    public RefreshSummary refresh(MetadataIndex index, String registryUrl, String[] credentials, CrawlerConfig config) throws IOException {
+        String baseUrl = registryUrl.replaceAll("/$", "");
+        String host = URI.create(baseUrl).getAuthority();
+        long start = System.nanoTime();
+        Instant now = clock.instant();
+
+        Map<String, Map<String, String>> seen = new ConcurrentHashMap<>();
+        Set<String> failedRepositories = ConcurrentHashMap.newKeySet();
+        Set<String> failedTags = ConcurrentHashMap.newKeySet();
+        LongAdder failures = new LongAdder();
+        CrawlSummary crawl = new RegistryCrawler(imageManager, executor).crawl(baseUrl, credentials, config, new InventorySink() {
+            @Override
+            public void accept(InventoryEntry entry) {
+                seen.computeIfAbsent(entry.repository(), key -> new ConcurrentHashMap<>()).put(entry.tag(), entry.digest());
+            }
+
+            @Override
+            public void failed(String reference, Exception e) {
+                failures.increment();
+                int separator = reference.lastIndexOf(':');
+                if (separator < 0) {
+                    failedRepositories.add(host + "/" + reference);
+                } else {
+                    failedTags.add(host + "/" + reference);
+                }
+            }
+        });
+
+        long added = 0;
+        long moved = 0;
+        // digest -> a repository to read it from
+        Map<String, String> missing = new ConcurrentHashMap<>();
+        for (Map.Entry<String, Map<String, String>> repository : seen.entrySet()) {
+            String name = host + "/" + repository.getKey();
+            for (Map.Entry<String, String> tag : repository.getValue().entrySet()) {
+                String previous = index.putTag(name, tag.getKey(), tag.getValue(), now);
+                if (previous == null) {
+                    added++;
+                } else if (!previous.equals(tag.getValue())) {
+                    moved++;
+                }
+                if (!index.hasManifest(tag.getValue())) {
+                    missing.putIfAbsent(tag.getValue(), repository.getKey());
+                }
+            }
+        }
+
+        long removed = 0;
+        for (String name : index.repositories()) {
+            if (!name.startsWith(host + "/") || failedRepositories.contains(name)) {
+                continue;
+            }
+            Map<String, String> current = seen.getOrDefault(name.substring(host.length() + 1), Map.of());
+            for (String tag : index.tags(name).keySet()) {
+                if (!current.containsKey(tag) && !failedTags.contains(name + ":" + tag)) {
+                    index.removeTag(name, tag, now);
+                    removed++;
+                }
+            }
+        }
+
+        LongAdder fetched = new LongAdder();
+        ParallelWorkers.forEach(new ArrayList<>(missing.entrySet()), config.getDigestConcurrency(), executor, entry -> {
+            try {
+                fetched.add(read(index, host, entry.getValue(), entry.getKey(), credentials));
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Failed to read manifest {} of {}/{}: {}", entry.getKey(), host, entry.getValue(), e.getMessage());
+                failures.increment();
+            }
+        });
+        index.flush();
+
+        RefreshSummary summary = new RefreshSummary(crawl.digests(), added, moved, removed, fetched.sum(),
+            failures.sum(), Duration.ofNanos(System.nanoTime() - start));
+        log.info("Refreshed index {} from {}: {} tags, {} added, {} moved, {} removed, {} manifests read, {} failures in {}",
+            index.getFile(), baseUrl, summary.tags(), added, moved, removed, summary.manifestsFetched(),
+            summary.failures(), summary.elapsed());
+        return summary;
+    }
+
+    /**
+     * Read a manifest, and the platform manifests of an index, into the index
+     *
+     * @return the number of manifests read
+     */
+    private int read(MetadataIndex index, String host, String repository, String digest, String[] credentials) throws IOException {
+        RawManifest raw = registryApi.getManifest(host, repository, digest, credentials);
+        ManifestResp parsed = raw.parse();
+        if (!raw.isIndex()) {
+            index.putManifest(image(host, repository, digest, parsed, credentials));
+            return 1;
+        }
+        int read = 1;
+        List<String> platforms = new ArrayList<>();
+        Instant created = null;
+        long size = 0;
+        for (Descriptor platform : parsed.getManifests() == null ? List.<Descriptor>of() : parsed.getManifests()) {
+            platforms.add(platform.getDigest());
+            if (!index.hasManifest(platform.getDigest())) {
+                ManifestResp child = registryApi.getManifest(host, repository, platform.getDigest(), credentials).parse();
+                index.putManifest(image(host, repository, platform.getDigest(), child, credentials));
+                read++;
+            }
+            IndexedManifest child = index.manifest(platform.getDigest()).orElseThrow();
+            // An index is dated by its first platform
+            if (platforms.size() == 1) {
+                created = child.created();
+            }
+            size += child.size();
+        }
+        index.putManifest(new IndexedManifest(digest, true, null, created, size, List.of(), platforms));
+        return read;
+    }
+
+    private IndexedManifest image(String host, String repository, String digest, ManifestResp manifest,
+                                  String[] credentials) throws IOException {
+        List<String> layers = new ArrayList<>();
+        long size = 0;
+        for (Descriptor layer : manifest.getLayers() == null ? List.<Descriptor>of() : manifest.getLayers()) {
+            layers.add(layer.getDigest());
+            size += layer.getSize();
+        }
+        Descriptor config = manifest.getConfig();
+        if (config == null) {
+            return new IndexedManifest(digest, false, null, null, size, layers, List.of());
+        }
+        return new IndexedManifest(digest, false, config.getDigest(),
+            created(host, repository, config.getDigest(), credentials), size + config.getSize(), layers, List.of());
+    }
+
+    private Instant created(String host, String repository, String configDigest, String[] credentials) throws IOException {
+        ImageConfig config;
+        try (RegistryResponse response = registryApi.getBlob(host, repository, configDigest, credentials);
+             InputStream body = response.getBody()) {
+            config = JsonTemplateMapper.readJson(body, ImageConfig.class);
+        }
+        if (config.getCreated() == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(config.getCreated()).toInstant();
+        } catch (DateTimeParseException e) {
+            log.debug("Unparseable creation time {} in {}/{}", config.getCreated(), repository, configDigest);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.ya_b.registry.client.index;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A manifest of the {@link MetadataIndex} and the blobs or manifests it refers to.
+ *
+ * @param index     whether it is a manifest list / OCI index
+ * @param config    digest of the image configuration, null for an index
+ * @param created   creation time from the image configuration, for an index that of its first platform; null
+ *                  when unknown
+ * @param size      size of the configuration and layers, for an index the sum over its platforms
+ * @param layers    layer digests, base layer first; empty for an index
+ * @param manifests platform manifest digests of an index; empty for an image
+ */
+public record IndexedManifest(String digest, boolean index, String config, Instant created, long size,
+                              List<String> layers, List<String> manifests) {
+}
@@ -0,0 +1,14 @@
+package io.github.ya_b.registry.client.index;
+
+import java.time.Instant;
+
+/**
+ * A tag of the {@link MetadataIndex}.
+ *
+ * @param repository {@code registry/repository} of the tag
+ * @param digest     digest of the manifest the tag points to
+ * @param created    creation time from the image configuration, null when unknown
+ * @param observed   time of the refresh that last saw the tag change
+ */
+public record IndexedTag(String repository, String tag, String digest, Instant created, Instant observed) {
+}
@@ -0,0 +1,554 @@
+package io.github.ya_b.registry.client.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Local index of repositories, tags, manifests and the blobs they are made of, answering questions about a
+ * registry without asking the registry.
+ * <p>
+ * The index is an append-only log of small binary records: every distinct string (repository, tag, digest) is
+ * written once and referred to by its number afterwards, tags are recorded as set or removed, manifests with
+ * their configuration, layers and creation time. Each record carries a CRC, so a write torn by a crash is
+ * dropped on the next open instead of corrupting the index. Opening maps the log read-only and replays it into
+ * maps of those numbers, including the reverse edges from a blob to the manifests referring to it, so lookups
+ * never touch the disk. {@link #compact()} rewrites the log with the live records only.
+ * <p>
+ * {@link IndexRefresher} keeps the index in step with a registry. All methods are thread-safe.
+ */
+@Slf4j
+public class MetadataIndex implements Closeable {
+
+    private static final int MAGIC = 0x52434958;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 6;
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    private static final byte STRING = 1;
+    private static final byte MANIFEST = 2;
+    private static final byte TAG = 3;
+    private static final byte UNTAG = 4;
+
+    private static final int NONE = -1;
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<Integer, Manifest> manifests = new HashMap<>();
+    // repository -> tag -> entry
+    private final Map<Integer, Map<Integer, Tag>> tags = new HashMap<>();
+    // manifest digest -> tags pointing to it, as repository << 32 | tag
+    private final Map<Integer, Set<Long>> tagsByDigest = new HashMap<>();
+    // blob or platform manifest -> manifests referring to it
+    private final Map<Integer, Set<Integer>> referrers = new HashMap<>();
+
+    private record Manifest(boolean index, int config, long created, long size, int[] refs) {
+    }
+
+    private record Tag(int digest, long observed) {
+    }
+
+    private MetadataIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the index stored in {@code file}, creating it when missing
+     */
+    public static MetadataIndex open(Path file) throws IOException {
+        MetadataIndex index = new MetadataIndex(file);
+        index.load();
+        return index;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Repositories ({@code registry/repository}) with at least one tag
+     */
+    public Set<String> repositories() {
+        lock.readLock().lock();
+        try {
+            Set<String> repositories = new TreeSet<>();
+            tags.forEach((repository, repositoryTags) -> {
+                if (!repositoryTags.isEmpty()) {
+                    repositories.add(strings.get(repository));
+                }
+            });
+            return repositories;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tags of a repository and the digests they point to
+     */
+    public Map<String, String> tags(String repository) {
+        lock.readLock().lock();
+        try {
+            Map<String, String> result = new TreeMap<>();
+            Integer id = ids.get(repository);
+            if (id != null) {
+                tags.getOrDefault(id, Map.of()).forEach((tag, entry) ->
+                    result.put(strings.get(tag), strings.get(entry.digest())));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Every tag of the index, for queries of your own
+     */
+    public List<IndexedTag> allTags() {
+        lock.readLock().lock();
+        try {
+            List<IndexedTag> result = new ArrayList<>();
+            tags.forEach((repository, repositoryTags) -> repositoryTags.forEach((tag, entry) ->
+                result.add(indexedTag(repository, tag, entry))));
+            result.sort(Comparator.comparing(IndexedTag::repository).thenComparing(IndexedTag::tag));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tags whose image was created before {@code cutoff}; tags of an unknown age are left out
+     */
+    public List<IndexedTag> createdBefore(Instant cutoff) {
+        return allTags().stream()
+            .filter(tag -> tag.created() != null && tag.created().isBefore(cutoff))
+            .toList();
+    }
+
+    public Optional<IndexedManifest> manifest(String digest) {
+        lock.readLock().lock();
+        try {
+            Integer id = ids.get(digest);
+            Manifest manifest = id == null ? null : manifests.get(id);
+            if (manifest == null) {
+                return Optional.empty();
+            }
+            List<String> refs = Arrays.stream(manifest.refs()).mapToObj(strings::get).toList();
+            return Optional.of(new IndexedManifest(digest, manifest.index(),
+                manifest.config() == NONE ? null : strings.get(manifest.config()), instant(manifest.created()),
+                manifest.size(), manifest.index() ? List.of() : refs, manifest.index() ? refs : List.of()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tags of every image containing {@code digest}: tags of that manifest, of manifests using it as layer or
+     * configuration, and of indexes holding such a manifest
+     */
+    public List<IndexedTag> tagsContaining(String digest) {
+        lock.readLock().lock();
+        try {
+            Integer id = ids.get(digest);
+            if (id == null) {
+                return List.of();
+            }
+            Set<Integer> containing = new HashSet<>();
+            Deque<Integer> queue = new ArrayDeque<>(List.of(id));
+            while (!queue.isEmpty()) {
+                Integer next = queue.poll();
+                if (containing.add(next)) {
+                    queue.addAll(referrers.getOrDefault(next, Set.of()));
+                }
+            }
+            List<IndexedTag> result = new ArrayList<>();
+            for (Integer manifest : containing) {
+                for (long key : tagsByDigest.getOrDefault(manifest, Set.of())) {
+                    int repository = (int) (key >>> 32);
+                    int tag = (int) key;
+                    result.add(indexedTag(repository, tag, tags.get(repository).get(tag)));
+                }
+            }
+            result.sort(Comparator.comparing(IndexedTag::repository).thenComparing(IndexedTag::tag));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Repositories with a tag of an image containing {@code digest}, see {@link #tagsContaining(String)}
+     */
+    public Set<String> repositoriesContaining(String digest) {
+        Set<String> repositories = new TreeSet<>();
+        tagsContaining(digest).forEach(tag -> repositories.add(tag.repository()));
+        return repositories;
+    }
+
+    /**
+     * Point {@code tag} at {@code digest}; nothing is written when it already does
+     *
+     * @return the digest the tag pointed to before, null for a new tag
+     */
+    String putTag(String repository, String tag, String digest, Instant observed) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int repositoryId = intern(repository);
+            int tagId = intern(tag);
+            int digestId = intern(digest);
+            Tag previous = tags.getOrDefault(repositoryId, Map.of()).get(tagId);
+            if (previous != null && previous.digest() == digestId) {
+                return digest;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(20);
+            payload.putInt(repositoryId).putInt(tagId).putInt(digestId).putLong(observed.toEpochMilli());
+            append(TAG, payload);
+            setTag(repositoryId, tagId, new Tag(digestId, observed.toEpochMilli()));
+            return previous == null ? null : strings.get(previous.digest());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether the tag was in the index
+     */
+    boolean removeTag(String repository, String tag, Instant observed) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Integer repositoryId = ids.get(repository);
+            Integer tagId = ids.get(tag);
+            if (repositoryId == null || tagId == null || !tags.getOrDefault(repositoryId, Map.of()).containsKey(tagId)) {
+                return false;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(16);
+            payload.putInt(repositoryId).putInt(tagId).putLong(observed.toEpochMilli());
+            append(UNTAG, payload);
+            unsetTag(repositoryId, tagId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean hasManifest(String digest) {
+        lock.readLock().lock();
+        try {
+            Integer id = ids.get(digest);
+            return id != null && manifests.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void putManifest(IndexedManifest manifest) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int digest = intern(manifest.digest());
+            List<String> refNames = manifest.index() ? manifest.manifests() : manifest.layers();
+            int[] refs = new int[refNames.size()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = intern(refNames.get(i));
+            }
+            int config = manifest.config() == null ? NONE : intern(manifest.config());
+            long created = manifest.created() == null ? UNKNOWN : manifest.created().toEpochMilli();
+            ByteBuffer payload = ByteBuffer.allocate(4 + 1 + 4 + 8 + 8 + 4 + 4 * refs.length);
+            payload.putInt(digest).put((byte) (manifest.index() ? 1 : 0)).putInt(config).putLong(created)
+                .putLong(manifest.size()).putInt(refs.length);
+            for (int ref : refs) {
+                payload.putInt(ref);
+            }
+            append(MANIFEST, payload);
+            setManifest(digest, new Manifest(manifest.index(), config, created, manifest.size(), refs));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write buffered records to the file and to the disk
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            writePending();
+            channel.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the log with the live tags and manifests only, dropping removed tags, superseded tag records and
+     * strings nothing refers to any more
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            writePending();
+            Path temp = file.resolveSibling(file.getFileName() + ".compact");
+            try (MetadataIndex compacted = new MetadataIndex(temp)) {
+                Files.deleteIfExists(temp);
+                compacted.load();
+                for (Map.Entry<Integer, Manifest> entry : manifests.entrySet()) {
+                    Manifest manifest = entry.getValue();
+                    List<String> refs = Arrays.stream(manifest.refs()).mapToObj(strings::get).toList();
+                    compacted.putManifest(new IndexedManifest(strings.get(entry.getKey()), manifest.index(),
+                        manifest.config() == NONE ? null : strings.get(manifest.config()), instant(manifest.created()),
+                        manifest.size(), manifest.index() ? List.of() : refs, manifest.index() ? refs : List.of()));
+                }
+                for (Map.Entry<Integer, Map<Integer, Tag>> repository : tags.entrySet()) {
+                    for (Map.Entry<Integer, Tag> tag : repository.getValue().entrySet()) {
+                        compacted.putTag(strings.get(repository.getKey()), strings.get(tag.getKey()),
+                            strings.get(tag.getValue().digest()), Instant.ofEpochMilli(tag.getValue().observed()));
+                    }
+                }
+            }
+            channel.close();
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            strings.clear();
+            ids.clear();
+            manifests.clear();
+            tags.clear();
+            tagsByDigest.clear();
+            referrers.clear();
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel.isOpen()) {
+                writePending();
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+            channel.position(HEADER_SIZE);
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Index " + file + " is larger than 2 GB, compact it or start a new one");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < HEADER_SIZE || mapped.getInt() != MAGIC || mapped.getShort() != VERSION) {
+            channel.close();
+            throw new IOException("Not a metadata index, or of another version: " + file);
+        }
+        int records = 0;
+        while (mapped.hasRemaining()) {
+            int start = mapped.position();
+            if (!replay(mapped)) {
+                // A write torn by a crash; everything before it is intact
+                log.warn("Dropping {} bytes of a torn record at the end of {}", size - start, file);
+                channel.truncate(start);
+                break;
+            }
+            records++;
+        }
+        channel.position(channel.size());
+        log.debug("Loaded {} records from {}: {} manifests, {} repositories", records, file, manifests.size(), tags.size());
+    }
+
+    /**
+     * Apply the record at the position of {@code buffer}
+     *
+     * @return false when the record is incomplete or fails its checksum
+     */
+    private boolean replay(ByteBuffer buffer) {
+        if (buffer.remaining() < 5) {
+            return false;
+        }
+        int start = buffer.position();
+        byte type = buffer.get();
+        int length = buffer.getInt();
+        if (length < 0 || buffer.remaining() < length + 4) {
+            return false;
+        }
+        ByteBuffer payload = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        int checksum = buffer.getInt();
+        crc.reset();
+        crc.update(buffer.slice(start, 5 + length));
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+        switch (type) {
+            case STRING -> {
+                String value = StandardCharsets.UTF_8.decode(payload).toString();
+                ids.put(value, strings.size());
+                strings.add(value);
+            }
+            case MANIFEST -> {
+                int digest = payload.getInt();
+                boolean index = payload.get() == 1;
+                int config = payload.getInt();
+                long created = payload.getLong();
+                long size = payload.getLong();
+                int[] refs = new int[payload.getInt()];
+                for (int i = 0; i < refs.length; i++) {
+                    refs[i] = payload.getInt();
+                }
+                setManifest(digest, new Manifest(index, config, created, size, refs));
+            }
+            case TAG -> {
+                int repository = payload.getInt();
+                int tag = payload.getInt();
+                setTag(repository, tag, new Tag(payload.getInt(), payload.getLong()));
+            }
+            case UNTAG -> unsetTag(payload.getInt(), payload.getInt());
+            default -> log.debug("Skipping record of unknown type {} in {}", type, file);
+        }
+        return true;
+    }
+
+    private int intern(String value) throws IOException {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        append(STRING, ByteBuffer.allocate(bytes.length).put(bytes));
+        ids.put(value, strings.size());
+        strings.add(value);
+        return strings.size() - 1;
+    }
+
+    private void append(byte type, ByteBuffer payload) throws IOException {
+        payload.flip();
+        int length = payload.remaining();
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + length + 4);
+        record.put(type).putInt(length).put(payload);
+        crc.reset();
+        crc.update(record.array(), 0, 5 + length);
+        record.putInt((int) crc.getValue()).flip();
+        if (record.remaining() > pending.remaining()) {
+            writePending();
+        }
+        if (record.remaining() > pending.capacity()) {
+            write(record);
+        } else {
+            pending.put(record);
+        }
+    }
+
+    private void writePending() throws IOException {
+        pending.flip();
+        write(pending);
+        pending.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void setManifest(int digest, Manifest manifest) {
+        Manifest previous = manifests.put(digest, manifest);
+        if (previous != null) {
+            unlink(digest, previous);
+        }
+        if (manifest.config() != NONE) {
+            referrers.computeIfAbsent(manifest.config(), key -> new HashSet<>()).add(digest);
+        }
+        for (int ref : manifest.refs()) {
+            referrers.computeIfAbsent(ref, key -> new HashSet<>()).add(digest);
+        }
+    }
+
+    private void unlink(int digest, Manifest manifest) {
+        if (manifest.config() != NONE) {
+            referrers.getOrDefault(manifest.config(), new HashSet<>()).remove(digest);
+        }
+        for (int ref : manifest.refs()) {
+            referrers.getOrDefault(ref, new HashSet<>()).remove(digest);
+        }
+    }
+
+    private void setTag(int repository, int tag, Tag entry) {
+        Tag previous = tags.computeIfAbsent(repository, key -> new HashMap<>()).put(tag, entry);
+        long key = (long) repository << 32 | (tag & 0xffffffffL);
+        if (previous != null) {
+            tagsByDigest.getOrDefault(previous.digest(), new HashSet<>()).remove(key);
+        }
+        tagsByDigest.computeIfAbsent(entry.digest(), k -> new HashSet<>()).add(key);
+    }
+
+    private void unsetTag(int repository, int tag) {
+        Map<Integer, Tag> repositoryTags = tags.get(repository);
+        Tag previous = repositoryTags == null ? null : repositoryTags.remove(tag);
+        if (previous != null) {
+            tagsByDigest.getOrDefault(previous.digest(), new HashSet<>()).remove((long) repository << 32 | (tag & 0xffffffffL));
+        }
+    }
+
+    private IndexedTag indexedTag(int repository, int tag, Tag entry) {
+        Manifest manifest = manifests.get(entry.digest());
+        return new IndexedTag(strings.get(repository), strings.get(tag), strings.get(entry.digest()),
+            manifest == null ? null : instant(manifest.created()), Instant.ofEpochMilli(entry.observed()));
+    }
+
+    private static Instant instant(long epochMillis) {
+        return epochMillis == UNKNOWN ? null : Instant.ofEpochMilli(epochMillis);
+    }
+}
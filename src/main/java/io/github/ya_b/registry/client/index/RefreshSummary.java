@@ -0,0 +1,17 @@
+package io.github.ya_b.registry.client.index;
+
+import java.time.Duration;
+
+/**
+ * Counters of a finished index refresh.
+ *
+ * @param tags             tags seen in the registry
+ * @param tagsAdded        tags new to the index
+ * @param tagsMoved        tags now pointing to another manifest
+ * @param tagsRemoved      tags gone from the registry
+ * @param manifestsFetched manifests read because the index did not know them yet
+ * @param failures         repositories, tags and manifests that could not be read; their index entries are kept
+ */
+public record RefreshSummary(long tags, long tagsAdded, long tagsMoved, long tagsRemoved, long manifestsFetched,
+                             long failures, Duration elapsed) {
+}
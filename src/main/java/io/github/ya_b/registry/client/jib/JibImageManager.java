@@ -2,243 +2,409 @@ package io.github.ya_b.registry.client.jib;
 
 import com.google.cloud.tools.jib.api.*;
 import com.google.cloud.tools.jib.http.Authorization;
-import com.google.cloud.tools.jib.http.FailoverHttpClient;
-import com.google.cloud.tools.jib.http.Request;
-import com.google.cloud.tools.jib.http.Response;
 import com.google.cloud.tools.jib.json.JsonTemplateMapper;
 
+import io.github.ya_b.registry.client.cache.BlobCache;
 import io.github.ya_b.registry.client.http.Authenticator;
+import io.github.ya_b.registry.client.http.HostLimiter;
 import io.github.ya_b.registry.client.http.HttpClient;
+import io.github.ya_b.registry.client.http.HttpClientConfig;
+import io.github.ya_b.registry.client.http.LinkHeader;
+import io.github.ya_b.registry.client.http.ManifestCache;
+import io.github.ya_b.registry.client.http.MirrorRouter;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryRequest;
+import io.github.ya_b.registry.client.http.RegistryResponse;
 import io.github.ya_b.registry.client.http.Scope;
 import io.github.ya_b.registry.client.http.resp.CatalogResp;
 import io.github.ya_b.registry.client.http.resp.TagsResp;
+import io.github.ya_b.registry.client.metrics.Operation;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
 
+import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
- * Pure Jib-based image manager that handles all container image operations
- * using Google's Jib library exclusively.
+ * Registry operations on images: digests, manifests, tags, the catalog and deletes, sent over a shared pooled
+ * {@link HttpClient} with tokens from one {@link Authenticator}. Jib is used for parsing image references and
+ * JSON only; nothing here goes through Jib's HTTP stack or reads its system properties.
  */
 @Slf4j
-public class JibImageManager {
+public class JibImageManager implements Closeable {
 
+    @FunctionalInterface
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
 
-    /**
-     * Save a Jib container builder as a tar file using Jib
-     */
-    public void saveToTar(ImageReference imageRef, String[] credentials, String filePath) throws IOException, InvalidImageReferenceException {
-        Path targetTarFile = Path.of(filePath);
-        try {
-            RegistryImage registryImage = RegistryImage.named(imageRef);
-
-            // Set authentication if credentials are provided
-            if (credentials != null && credentials.length == 2) {
-                registryImage.addCredential(credentials[0], credentials[1]);
-            }
-
-            TarImage targetImage = TarImage.at(targetTarFile).named(imageRef);
-
-            // Configure containerizer with proper settings for HTTP registries
-            Containerizer containerizer = Containerizer.to(targetImage)
-                .setAllowInsecureRegistries(true)
-                .setOfflineMode(false);
-
-            // For localhost HTTP registries, we need special handling
-            String registry = imageRef.getRegistry();
-            if (isLocalHttpRegistry(registry)) {
-                log.info("Detected local HTTP registry: {}, applying special configuration", registry);
-                // For HTTP registries, we need to ensure credentials are sent
-                if (credentials != null && credentials.length == 2) {
-                    // Create a new registry image with explicit credential handling
-                    registryImage = RegistryImage.named(imageRef);
-                    registryImage.addCredential(credentials[0], credentials[1]);
-
-                    // Additional configuration for HTTP
-                    containerizer = containerizer
-                        .setAllowInsecureRegistries(true)
-                        .setOfflineMode(false);
-                }
-            }
+    private final HttpClient httpClient;
+    private final Authenticator authenticator;
+    private final RegistryApi registryApi;
+    private final BlobCache blobCache;
 
-            Jib.from(registryImage).containerize(containerizer);
+    public JibImageManager() {
+        this(new HttpClient());
+    }
 
-            log.info("Successfully saved container to tar using Jib: {}", filePath);
+    public JibImageManager(HttpClient httpClient) {
+        this(httpClient, new Authenticator(httpClient));
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to save container to tar using Jib", e);
-            // Clean up the target file only if there was an error
-            try {
-                Files.deleteIfExists(targetTarFile);
-            } catch (IOException cleanupException) {
-                log.warn("Failed to clean up target file after error: {}", targetTarFile, cleanupException);
-            }
-            throw new IOException("Failed to save container to tar", e);
-        }
+    public JibImageManager(HttpClient httpClient, Authenticator authenticator) {
+        this(httpClient, authenticator, null);
     }
 
     /**
-     * Check if the registry is a local HTTP registry
+     * @param blobCache blob cache shared by transfers, copy and export, or null
      */
-    private boolean isLocalHttpRegistry(String registry) {
-        return registry.startsWith("localhost") ||
-               registry.startsWith("127.0.0.1") ||
-               registry.startsWith("0.0.0.0");
+    public JibImageManager(HttpClient httpClient, Authenticator authenticator, BlobCache blobCache) {
+        this(httpClient, authenticator, blobCache, null);
     }
 
     /**
-     * Push an image to registry using Jib
+     * @param manifestCache cache for manifest reads and tag digests, or null to always ask the registry
      */
-    public void pushToRegistry(String srcReference, String[] srcCredentials, String destReference, String[] destCredentials) throws IOException, InvalidImageReferenceException {
-        try {
-            // Create registry image reference
-            ImageReference dstRef = ImageReference.parse(destReference);
-            RegistryImage dstRegistryImage = RegistryImage.named(dstRef);
-
-            // Set authentication if credentials are provided
-            if (destCredentials != null && destCredentials.length == 2) {
-                dstRegistryImage.addCredential(destCredentials[0], destCredentials[1]);
-            }
-
+    public JibImageManager(HttpClient httpClient, Authenticator authenticator, BlobCache blobCache,
+                           ManifestCache manifestCache) {
+        this(httpClient, authenticator, blobCache, manifestCache, null);
+    }
 
-            // Create registry image reference
-            ImageReference srcRef = ImageReference.parse(srcReference);
-            RegistryImage srcRegistryImage = RegistryImage.named(srcRef);
+    /**
+     * @param mirrorRouter router spreading digest, tag, manifest and blob reads over mirrors, or null
+     */
+    public JibImageManager(HttpClient httpClient, Authenticator authenticator, BlobCache blobCache,
+                           ManifestCache manifestCache, MirrorRouter mirrorRouter) {
+        this.httpClient = httpClient;
+        this.authenticator = authenticator;
+        this.registryApi = new RegistryApi(httpClient, authenticator, manifestCache, mirrorRouter);
+        this.blobCache = blobCache;
+    }
 
-            // Set authentication if credentials are provided
-            if (srcCredentials != null && srcCredentials.length == 2) {
-                srcRegistryImage.addCredential(srcCredentials[0], srcCredentials[1]);
-            }
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
 
-            JibContainer result = Jib.from(srcRegistryImage).containerize(Containerizer.to(dstRegistryImage).setAllowInsecureRegistries(true));
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
 
-            log.info("Successfully pushed image to registry: {} with digest: {}",
-                    destReference, result.getDigest());
+    public BlobCache getBlobCache() {
+        return blobCache;
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to push image to registry using Jib", e);
-            throw new IOException("Failed to push image to registry", e);
-        }
+    /**
+     * Manifest and blob endpoints over the same transport and token cache
+     */
+    public RegistryApi getRegistryApi() {
+        return registryApi;
     }
 
-    
-    public void pushToRegistry(String path, String destReference, String[] destCredentials) throws IOException, InvalidImageReferenceException {
-        try {
-            // Create registry image reference
-            ImageReference dstRef = ImageReference.parse(destReference);
-            RegistryImage dstRegistryImage = RegistryImage.named(dstRef);
+    /**
+     * Release the pooled connections of this manager
+     */
+    @Override
+    public void close() {
+        httpClient.close();
+    }
 
-            // Set authentication if credentials are provided
-            if (destCredentials != null && destCredentials.length == 2) {
-                dstRegistryImage.addCredential(destCredentials[0], destCredentials[1]);
+    /**
+     * Get image digest from registry using HTTP client; a tag still fresh in the manifest cache is answered locally
+     */
+    public Optional<String> getDigest(String imageReference, String[] credentials) throws IOException, InvalidImageReferenceException {
+        ImageReference imageRef = ImageReference.parse(imageReference);
+        ManifestCache manifestCache = registryApi.getManifestCache();
+        if (manifestCache != null) {
+            Optional<RawManifest> cached = imageRef.getDigest().isPresent()
+                ? manifestCache.get(imageRef.getRegistry(), imageRef.getRepository(), imageRef.getQualifier())
+                : manifestCache.getFresh(imageRef.getRegistry(), imageRef.getRepository(), imageRef.getQualifier());
+            if (cached.isPresent()) {
+                return Optional.of(cached.get().digest());
             }
-            TarImage tarImage = TarImage.at(Path.of(path)).named(destReference);
-            JibContainer result = Jib.from(tarImage).containerize(Containerizer.to(dstRegistryImage).setAllowInsecureRegistries(true));
-
-            log.info("Successfully pushed image to registry: {} with digest: {}",
-                    destReference, result.getDigest());
-
-        } catch (Exception e) {
-            log.error("Failed to push image to registry using Jib", e);
-            throw new IOException("Failed to push image to registry", e);
         }
+        return fetchDigest(imageReference, credentials);
     }
 
     /**
-     * Get image digest from registry using HTTP client
+     * Get image digest from the registry, always with a request: the manifest cache is neither asked nor filled
      */
-    public Optional<String> getDigest(String imageReference, String[] credentials) throws IOException, InvalidImageReferenceException {
+    public Optional<String> fetchDigest(String imageReference, String[] credentials) throws IOException, InvalidImageReferenceException {
         ImageReference imageRef = ImageReference.parse(imageReference);
-        String registry = imageRef.getRegistry();
         String repository = imageRef.getRepository();
-        String tag = imageRef.getTag().orElse("latest");
 
         // Build the registry API URL for getting manifest
-        String protocol = (registry.startsWith("localhost") || registry.startsWith("127.0.0.1") || registry.startsWith("0.0.0.0"))
-            ? "http" : "https";
-        String apiUrl = String.format("%s://%s/v2/%s/manifests/%s", protocol, registry, repository, tag);
+        String apiUrl = manifestUrl(imageRef, imageRef.getQualifier());
+
+        log.atLevel(callLogLevel()).log("Getting digest for image: {} from URL: {}", imageReference, apiUrl);
 
-        log.info("Getting digest for image: {} from URL: {}", imageReference, apiUrl);
+        Optional<Authorization> authOptional = authenticator.getAuthorization(apiUrl, credentials, repository, Scope.PULL);
+        Optional<String> digest = headDigest(imageReference, imageRef, imageRef.getQualifier(), authOptional);
+        digest.ifPresent(value -> log.atLevel(callLogLevel()).log("Successfully retrieved digest for image: {} -> {}", imageReference, value));
+        return digest;
+    }
+
+    /**
+     * Fetch a manifest, image manifest or manifest list / index, through the manifest cache
+     */
+    public RawManifest getManifest(String imageReference, String[] credentials) throws IOException, InvalidImageReferenceException {
+        ImageReference imageRef = ImageReference.parse(imageReference);
+        return registryApi.getManifest(imageRef.getRegistry(), imageRef.getRepository(), imageRef.getQualifier(), credentials);
+    }
 
-        FailoverHttpClient client = HttpClient.get();
-        Request.Builder requestBuilder = Request.builder().setHttpTimeout(3000)
-            .setAccept(Collections.singletonList("application/vnd.docker.distribution.manifest.v2+json"));
+    /**
+     * Resolve the digests of many images at once.
+     * <p>
+     * All references are parsed up front and grouped by registry and repository; each group authenticates once
+     * and then issues its HEAD requests concurrently on {@code executor}, holding a {@code limiter} slot for the
+     * registry per request. A failing reference is passed to {@code onError} and maps to an empty result without
+     * affecting the rest of the batch.
+     *
+     * @param credentials credentials for a registry host, may return null
+     * @return digests keyed by the given reference strings, in iteration order of {@code imageReferences}
+     */
+    public Map<String, Optional<String>> getDigests(Collection<String> imageReferences,
+                                                    Function<String, String[]> credentials,
+                                                    Executor executor, HostLimiter limiter,
+                                                    BiConsumer<String, Exception> onError) {
+        Map<String, Optional<String>> results = new ConcurrentHashMap<>();
+        // registry/repository -> qualifier -> references sharing that manifest
+        Map<String, Map<String, List<String>>> groups = new LinkedHashMap<>();
+        Map<String, ImageReference> groupRefs = new HashMap<>();
+        for (String imageReference : new LinkedHashSet<>(imageReferences)) {
+            try {
+                ImageReference imageRef = ImageReference.parse(imageReference);
+                String groupKey = imageRef.getRegistry() + "/" + imageRef.getRepository();
+                groupRefs.putIfAbsent(groupKey, imageRef);
+                groups.computeIfAbsent(groupKey, key -> new LinkedHashMap<>())
+                        .computeIfAbsent(imageRef.getQualifier(), key -> new ArrayList<>())
+                        .add(imageReference);
+            } catch (InvalidImageReferenceException e) {
+                results.put(imageReference, Optional.empty());
+                onError.accept(imageReference, new IOException("Invalid image reference", e));
+            }
+        }
 
-        Optional<Authorization> authOptional = Authenticator.getAuthorization(apiUrl, credentials, repository, Scope.PULL);
-        if (authOptional.isPresent()) {
-            requestBuilder.setAuthorization(authOptional.get());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        groups.forEach((groupKey, qualifiers) -> {
+            ImageReference groupRef = groupRefs.get(groupKey);
+            String registry = groupRef.getRegistry();
+            CompletableFuture<Optional<Authorization>> auth = limited(limiter, registry, executor,
+                    () -> authenticator.getAuthorization(manifestUrl(groupRef, groupRef.getQualifier()),
+                            credentials.apply(registry), groupRef.getRepository(), Scope.PULL));
+            qualifiers.forEach((qualifier, references) -> tasks.add(auth.thenCompose(authOptional -> limited(limiter,
+                    registry, executor, () -> headDigest(references.get(0), groupRef, qualifier, authOptional))
+            ).handle((digest, error) -> {
+                for (String reference : references) {
+                    results.put(reference, error == null ? digest : Optional.empty());
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        onError.accept(reference, cause instanceof Exception ? (Exception) cause : new IOException(cause));
+                    }
+                }
+                return null;
+            })));
+        });
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+
+        Map<String, Optional<String>> ordered = new LinkedHashMap<>();
+        for (String imageReference : imageReferences) {
+            ordered.put(imageReference, results.get(imageReference));
         }
-        Request request = requestBuilder.build();
-        Response response = client.call("HEAD", URI.create(apiUrl).toURL(), request);
-
-        if (response.getStatusCode() == 200) {
-            // Get digest from Docker-Content-Digest header
-            
-            List<String> digestHeader = response.getHeader("Docker-Content-Digest");
-
-            if (digestHeader.size() > 0) {
-                String digest = digestHeader.get(0);
-                log.info("Successfully retrieved digest for image: {} -> {}", imageReference, digest);
-                return Optional.of(digest);
+        return ordered;
+    }
+
+    /**
+     * Run {@code operation} on {@code executor} once a slot for {@code host} is free. The slot is waited for
+     * without a thread, so tasks queued behind a busy host do not hold executor threads other hosts need.
+     */
+    private static <T> CompletableFuture<T> limited(HostLimiter limiter, String host, Executor executor,
+                                                    IOCallable<T> operation) {
+        CompletableFuture<HostLimiter.Permit> permit = limiter.acquireAsync(host);
+        return permit.thenApplyAsync(ignored -> {
+            try {
+                return operation.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor).whenComplete((result, e) -> permit.thenAccept(HostLimiter.Permit::close));
+    }
+
+    /**
+     * HEAD a manifest and read its Docker-Content-Digest header
+     */
+    private Optional<String> headDigest(String imageReference, ImageReference imageRef, String qualifier,
+                                        Optional<Authorization> authOptional) throws IOException {
+        String path = String.format("/v2/%s/manifests/%s", imageRef.getRepository(), qualifier);
+
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.DIGEST, imageRef.getRegistry());
+             RegistryResponse response = registryApi.read(imageRef.getRegistry(), authOptional,
+                 baseUrl -> RegistryRequest.head(baseUrl + path).accept(RawManifest.MEDIA_TYPES))) {
+            if (response.getStatusCode() == 200) {
+                // Get digest from Docker-Content-Digest header
+
+                List<String> digestHeader = response.getHeader("Docker-Content-Digest");
+
+                if (digestHeader.size() > 0) {
+                    timer.success();
+                    return Optional.of(digestHeader.get(0));
+                } else {
+                    log.warn("No Docker-Content-Digest header found for image: {}", imageReference);
+                    return Optional.empty();
+                }
+            } else if (response.getStatusCode() == 404) {
+                throw new FileNotFoundException("Manifest not found: " + imageReference);
             } else {
-                log.warn("No Docker-Content-Digest header found for image: {}", imageReference);
-                return Optional.empty();
+                log.error("Failed to get digest for image: {}. HTTP status: {}",
+                    imageReference, response.getStatusCode());
+                throw new IOException("Failed to get digest. HTTP status: " + response.getStatusCode());
             }
-        } else {
-            log.error("Failed to get digest for image: {}. HTTP status: {}",
-                imageReference, response.getStatusCode());
-            throw new IOException("Failed to get digest. HTTP status: " + response.getStatusCode());
         }
     }
 
     /**
-     * Get image tags from registry using HTTP client
+     * Level of the per-call log lines, see {@link HttpClientConfig#getCallLogLevel()}
+     */
+    private Level callLogLevel() {
+        return httpClient.getConfig().getCallLogLevel();
+    }
+
+    /**
+     * Registry API base URL, plain HTTP for local registries
+     */
+    static String baseUrl(String registry) {
+        return RegistryApi.baseUrl(registry);
+    }
+
+    private static String manifestUrl(ImageReference imageRef, String reference) {
+        return String.format("%s/v2/%s/manifests/%s", baseUrl(imageRef.getRegistry()), imageRef.getRepository(), reference);
+    }
+
+    /**
+     * Get image tags from registry using HTTP client, following pagination until the last page
      */
     public List<String> getTags(String imageReference, String[] credentials) throws IOException, InvalidImageReferenceException {
         ImageReference imageRef = ImageReference.parse(imageReference);
-        String registry = imageRef.getRegistry();
         String repository = imageRef.getRepository();
 
         // Build the registry API URL for listing tags
-        String protocol = (registry.startsWith("localhost") || registry.startsWith("127.0.0.1") || registry.startsWith("0.0.0.0"))
-            ? "http" : "https";
-        String apiUrl = String.format("%s://%s/v2/%s/tags/list", protocol, registry, repository);
-
-        log.info("Getting tags for image: {} from URL: {}", imageReference, apiUrl);
+        String apiUrl = String.format("%s/v2/%s/tags/list", baseUrl(imageRef.getRegistry()), repository);
 
-        FailoverHttpClient client = HttpClient.get();
-        Request.Builder requestBuilder = Request.builder().setHttpTimeout(3000);
+        log.atLevel(callLogLevel()).log("Getting tags for image: {} from URL: {}", imageReference, apiUrl);
 
-        Optional<Authorization> authOptional = Authenticator.getAuthorization(apiUrl, credentials, repository, Scope.PULL);
-        if (authOptional.isPresent()) {
-            requestBuilder.setAuthorization(authOptional.get());
+        List<String> tags = new ArrayList<>();
+        for (String url = apiUrl; url != null; ) {
+            PageIterator.Page page = fetchTagsPage(imageReference, imageRef.getRegistry(), url, credentials, repository);
+            tags.addAll(page.items());
+            url = page.next();
         }
-        Request request = requestBuilder.build();
-        Response response = client.get(URI.create(apiUrl).toURL(), request);
+        log.atLevel(callLogLevel()).log("Successfully retrieved {} tags for image: {}", tags.size(), imageReference);
+        return tags;
+    }
 
+    /**
+     * Lazily stream the tags of a repository, fetching {@code pageSize} tags per request and prefetching the next
+     * page on {@code executor} while the current one is consumed. Close the stream to stop prefetching.
+     */
+    public Stream<String> streamTags(String imageReference, String[] credentials, int pageSize, Executor executor) throws InvalidImageReferenceException {
+        ImageReference imageRef = ImageReference.parse(imageReference);
+        String repository = imageRef.getRepository();
+        String apiUrl = String.format("%s/v2/%s/tags/list?n=%d", baseUrl(imageRef.getRegistry()), repository, pageSize);
+        return stream(new PageIterator(apiUrl,
+                url -> fetchTagsPage(imageReference, imageRef.getRegistry(), url, credentials, repository), executor));
+    }
+
+    /**
+     * Lazily stream all repositories of a registry, fetching {@code pageSize} names per request and prefetching
+     * the next page on {@code executor} while the current one is consumed. Close the stream to stop prefetching.
+     */
+    public Stream<String> streamCatalog(String registryUrl, String[] credentials, int pageSize, Executor executor) {
+        String apiUrl = registryUrl.replaceAll("/$", "") + "/v2/_catalog?n=" + pageSize;
+        return stream(new PageIterator(apiUrl, url -> fetchCatalogPage(url, credentials), executor));
+    }
 
-        if (response.getStatusCode() == 200) {
-            TagsResp tagsResp = JsonTemplateMapper.readJson(response.getBody(), TagsResp.class);
+    private static Stream<String> stream(PageIterator iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    private PageIterator.Page fetchTagsPage(String imageReference, String registry, String url, String[] credentials,
+                                            String repository) throws IOException {
+        log.debug("Getting tags page for image: {} from URL: {}", imageReference, url);
+
+        Optional<Authorization> authOptional = authenticator.getAuthorization(url, credentials, repository, Scope.PULL);
+        String base = baseUrl(registry);
+        // Later pages link to whichever endpoint served the first one and stay there
+        boolean onRegistry = url.startsWith(base + "/");
+
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.TAGS, registry);
+             RegistryResponse response = onRegistry
+                 ? registryApi.read(registry, authOptional, baseUrl -> RegistryRequest.get(baseUrl + url.substring(base.length())))
+                 : httpClient.execute(RegistryRequest.get(url))) {
+            if (response.getStatusCode() == 200) {
+                TagsResp tagsResp = JsonTemplateMapper.readJson(response.getBody(), TagsResp.class);
+                String next = LinkHeader.next(response.getHeader("Link"), response.getRequestUri()).orElse(null);
+                timer.success();
+
+                if (tagsResp != null && tagsResp.getTags() != null) {
+                    return new PageIterator.Page(tagsResp.getTags(), next);
+                } else {
+                    log.warn("No tags found in response for image: {}", imageReference);
+                    return new PageIterator.Page(Collections.emptyList(), next);
+                }
+            } else if (response.getStatusCode() == 404) {
+                throw new FileNotFoundException("Repository not found: " + imageReference);
+            } else {
+                log.error("Failed to get tags for image: {}. HTTP status: {}, response: {}",
+                    imageReference, response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to get tags. HTTP status: " + response.getStatusCode());
+            }
+        }
+    }
 
-            if (tagsResp != null && tagsResp.getTags() != null) {
-                log.info("Successfully retrieved {} tags for image: {}", tagsResp.getTags().size(), imageReference);
-                return tagsResp.getTags();
+    private PageIterator.Page fetchCatalogPage(String url, String[] credentials) throws IOException {
+        log.debug("Getting catalog page from registry URL: {}", url);
+
+        Optional<Authorization> authOptional = authenticator.getAuthorization(url, credentials, null, Scope.PULL);
+        RegistryRequest request = RegistryRequest.get(url).authorization(authOptional);
+
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.CATALOG, URI.create(url).getAuthority());
+             RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() == 200) {
+                CatalogResp catalogResp = JsonTemplateMapper.readJson(response.getBody(), CatalogResp.class);
+                String next = LinkHeader.next(response.getHeader("Link"), response.getRequestUri()).orElse(null);
+                timer.success();
+                List<String> repositories = catalogResp != null && catalogResp.getRepositories() != null
+                    ? catalogResp.getRepositories() : Collections.emptyList();
+                return new PageIterator.Page(repositories, next);
             } else {
-                log.warn("No tags found in response for image: {}", imageReference);
-                return Collections.emptyList();
+                log.error("Failed to get catalog from registry. HTTP status: {}, response: {}",
+                    response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to get catalog. HTTP status: " + response.getStatusCode());
             }
-        } else {
-            log.error("Failed to get tags for image: {}. HTTP status: {}, response: {}",
-                imageReference, response.getStatusCode(), new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
-            throw new IOException("Failed to get tags. HTTP status: " + response.getStatusCode());
         }
     }
 
@@ -252,42 +418,24 @@ public class JibImageManager {
         String registry = imageRef.getRegistry();
         String repository = imageRef.getRepository();
 
-        log.info("Deleting image: {}", imageReference);
+        log.atLevel(callLogLevel()).log("Deleting image: {}", imageReference);
 
-        // Step 1: Get the digest of the image
-        Optional<String> digestOpt = getDigest(imageReference, credentials);
+        // Step 1: Get the digest of the image, bypassing the manifest cache
+        Optional<String> digestOpt = fetchDigest(imageReference, credentials);
         if (!digestOpt.isPresent()) {
             throw new IOException("Cannot delete image: unable to get digest for " + imageReference);
         }
         String digest = digestOpt.get();
 
         // Step 2: Delete the image using the digest
-        String protocol = (registry.startsWith("localhost") || registry.startsWith("127.0.0.1") || registry.startsWith("0.0.0.0"))
-            ? "http" : "https";
-        String deleteUrl = String.format("%s://%s/v2/%s/manifests/%s", protocol, registry, repository, digest);
-
-        log.info("Deleting image manifest from URL: {}", deleteUrl);
-        FailoverHttpClient client = HttpClient.get();
-        Request.Builder requestBuilder = Request.builder().setHttpTimeout(3000);
-
-        Optional<Authorization> authOptional = Authenticator.getAuthorization(deleteUrl, credentials, repository, Scope.DELETE);
-        if (authOptional.isPresent()) {
-            requestBuilder.setAuthorization(authOptional.get());
-        }
-        Request request = requestBuilder.build();
-        Response response = client.call("DELETE", URI.create(deleteUrl).toURL(), request);
-        if (response.getStatusCode() == 202 || response.getStatusCode() == 204) {
-            log.info("Successfully deleted image: {} (digest: {})", imageReference, digest);
-        } else if (response.getStatusCode() == 404) {
+        log.atLevel(callLogLevel()).log("Deleting image manifest {}/{}@{}", registry, repository, digest);
+        if (!registryApi.deleteManifest(registry, repository, digest, credentials)) {
             log.warn("Image not found for deletion: {} (digest: {})", imageReference, digest);
             throw new IOException("Image not found: " + imageReference);
-        } else if (response.getStatusCode() == 405) {
-            log.error("Delete operation not supported by registry for image: {}", imageReference);
-            throw new IOException("Delete operation not supported by registry");
-        } else {
-            log.error("Failed to delete image: {}. HTTP status: {}, response: {}",
-                imageReference, response.getStatusCode(), new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
-            throw new IOException("Failed to delete image. HTTP status: " + response.getStatusCode());
+        }
+        log.atLevel(callLogLevel()).log("Successfully deleted image: {} (digest: {})", imageReference, digest);
+        if (registryApi.getManifestCache() != null) {
+            registryApi.getManifestCache().invalidate(registry, repository, imageRef.getQualifier());
         }
     }
 
@@ -314,55 +462,52 @@ public class JibImageManager {
         }
 
         String apiUrl = urlBuilder.toString();
-        log.info("Getting catalog from registry URL: {}", apiUrl);
-        
-        FailoverHttpClient client = HttpClient.get();
-        Request.Builder requestBuilder = Request.builder().setHttpTimeout(3000);
-
-        Optional<Authorization> authOptional = Authenticator.getAuthorization(apiUrl, credentials, null, Scope.PULL);
-        if (authOptional.isPresent()) {
-            requestBuilder.setAuthorization(authOptional.get());
-        }
-        Request request = requestBuilder.build();
-        Response response = client.get(URI.create(apiUrl).toURL(), request);
-
-        if (response.getStatusCode() == 200) {
-            CatalogResp catalogResp = JsonTemplateMapper.readJson(response.getBody(), CatalogResp.class);
-
-            if (catalogResp != null) {
-                // Check for pagination link in Link header
-                List<String> linkHeader = response.getHeader("Link");
-                if (linkHeader.size() > 0) {
-                    // Parse Link header to extract next page info
-                    String linkValue = linkHeader.get(0);
-                    // Link header format: </v2/_catalog?last=repo&n=100>; rel="next"
-                    if (linkValue.contains("rel=\"next\"")) {
-                        // Extract the last parameter from the link
-                        int lastIndex = linkValue.indexOf("last=");
-                        if (lastIndex != -1) {
-                            int endIndex = linkValue.indexOf("&", lastIndex);
-                            if (endIndex == -1) {
-                                endIndex = linkValue.indexOf(">", lastIndex);
-                            }
-                            if (endIndex != -1) {
-                                String nextLast = linkValue.substring(lastIndex + 5, endIndex);
-                                catalogResp.setNext(nextLast);
+        log.atLevel(callLogLevel()).log("Getting catalog from registry URL: {}", apiUrl);
+
+        Optional<Authorization> authOptional = authenticator.getAuthorization(apiUrl, credentials, null, Scope.PULL);
+        RegistryRequest request = RegistryRequest.get(apiUrl).authorization(authOptional);
+
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.CATALOG, URI.create(apiUrl).getAuthority());
+             RegistryResponse response = httpClient.execute(request)) {
+            if (response.getStatusCode() == 200) {
+                CatalogResp catalogResp = JsonTemplateMapper.readJson(response.getBody(), CatalogResp.class);
+                timer.success();
+
+                if (catalogResp != null) {
+                    // Check for pagination link in Link header
+                    List<String> linkHeader = response.getHeader("Link");
+                    if (linkHeader.size() > 0) {
+                        // Parse Link header to extract next page info
+                        String linkValue = linkHeader.get(0);
+                        // Link header format: </v2/_catalog?last=repo&n=100>; rel="next"
+                        if (linkValue.contains("rel=\"next\"")) {
+                            // Extract the last parameter from the link
+                            int lastIndex = linkValue.indexOf("last=");
+                            if (lastIndex != -1) {
+                                int endIndex = linkValue.indexOf("&", lastIndex);
+                                if (endIndex == -1) {
+                                    endIndex = linkValue.indexOf(">", lastIndex);
+                                }
+                                if (endIndex != -1) {
+                                    String nextLast = linkValue.substring(lastIndex + 5, endIndex);
+                                    catalogResp.setNext(nextLast);
+                                }
                             }
                         }
                     }
-                }
 
-                int repoCount = catalogResp.getRepositories() != null ? catalogResp.getRepositories().size() : 0;
-                log.info("Successfully retrieved catalog with {} repositories from registry", repoCount);
-                return catalogResp;
+                    int repoCount = catalogResp.getRepositories() != null ? catalogResp.getRepositories().size() : 0;
+                    log.atLevel(callLogLevel()).log("Successfully retrieved catalog with {} repositories from registry", repoCount);
+                    return catalogResp;
+                } else {
+                    log.warn("Empty catalog response from registry");
+                    return new CatalogResp();
+                }
             } else {
-                log.warn("Empty catalog response from registry");
-                return new CatalogResp();
+                log.error("Failed to get catalog from registry. HTTP status: {}, response: {}",
+                    response.getStatusCode(), response.getBodyAsString());
+                throw new IOException("Failed to get catalog. HTTP status: " + response.getStatusCode());
             }
-        } else {
-            log.error("Failed to get catalog from registry. HTTP status: {}, response: {}",
-                response.getStatusCode(), new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
-            throw new IOException("Failed to get catalog. HTTP status: " + response.getStatusCode());
         }
     }
 
@@ -0,0 +1,99 @@
+package io.github.ya_b.registry.client.jib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Iterates the entries of a paginated registry listing, following {@code next} links lazily.
+ * <p>
+ * While one page is consumed the next one is already being fetched on the executor, so at most two pages are
+ * held in memory regardless of how long the listing is.
+ */
+class PageIterator implements Iterator<String>, AutoCloseable {
+
+    record Page(List<String> items, String next) {
+    }
+
+    @FunctionalInterface
+    interface PageFetcher {
+        Page fetch(String url) throws IOException;
+    }
+
+    private final PageFetcher fetcher;
+    private final Executor executor;
+    private String firstUrl;
+    private CompletableFuture<Page> pending;
+    private Iterator<String> current = Collections.emptyIterator();
+
+    PageIterator(String firstUrl, PageFetcher fetcher, Executor executor) {
+        this.firstUrl = firstUrl;
+        this.fetcher = fetcher;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (firstUrl != null) {
+                pending = fetchAsync(firstUrl);
+                firstUrl = null;
+            }
+            if (pending == null) {
+                return false;
+            }
+            Page page = await(pending);
+            pending = page.next() != null ? fetchAsync(page.next()) : null;
+            current = page.items().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stop prefetching
+     */
+    @Override
+    public void close() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        firstUrl = null;
+        current = Collections.emptyIterator();
+    }
+
+    private CompletableFuture<Page> fetchAsync(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetcher.fetch(url);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static Page await(CompletableFuture<Page> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+}
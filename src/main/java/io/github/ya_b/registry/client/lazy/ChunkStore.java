@@ -0,0 +1,222 @@
+package io.github.ya_b.registry.client.lazy;
+
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size chunks of the layers of one image, fetched with range requests on first use and kept in a least
+ * recently used cache bounded in bytes, shared by all layers.
+ * <p>
+ * Random access fetches one chunk per request. A blob read from start to end instead takes its missing chunks off
+ * a single request running to the end of the blob, caching them as they pass.
+ */
+class ChunkStore {
+
+    private final RegistryApi registryApi;
+    private final String registry;
+    private final String repository;
+    private final String[] credentials;
+    private final int chunkSize;
+    private final long cacheBytes;
+
+    private final Map<String, byte[]> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder bytesFetched = new LongAdder();
+    final LongAdder hits = new LongAdder();
+
+    ChunkStore(RegistryApi registryApi, String registry, String repository, String[] credentials, LazyImageConfig config) {
+        if (config.getChunkSize() <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + config.getChunkSize());
+        }
+        this.registryApi = registryApi;
+        this.registry = registry;
+        this.repository = repository;
+        this.credentials = credentials;
+        this.chunkSize = config.getChunkSize();
+        this.cacheBytes = config.getCacheBytes();
+    }
+
+    /**
+     * Stream a blob from {@code position} on. Skipping moves the position without fetching anything, so
+     * skipping over the data of an uncompressed tar entry costs nothing.
+     */
+    InputStream open(String digest, long size, long position) {
+        return new BlobStream(digest, size, position, false);
+    }
+
+    /**
+     * Stream a blob from its start, reading chunks not cached yet off one request rather than one request each
+     */
+    InputStream stream(String digest, long size) {
+        return new BlobStream(digest, size, 0, true);
+    }
+
+    void clear() {
+        synchronized (chunks) {
+            chunks.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private byte[] chunk(String digest, long size, long index) throws IOException {
+        byte[] chunk = cached(digest, index);
+        if (chunk == null) {
+            chunk = fetch(digest, size, index);
+            cache(digest, index, chunk);
+        }
+        return chunk;
+    }
+
+    private byte[] cached(String digest, long index) {
+        synchronized (chunks) {
+            byte[] chunk = chunks.get(digest + "#" + index);
+            if (chunk != null) {
+                hits.increment();
+            }
+            return chunk;
+        }
+    }
+
+    private void cache(String digest, long index, byte[] chunk) {
+        String key = digest + "#" + index;
+        synchronized (chunks) {
+            if (chunks.put(key, chunk) == null) {
+                cachedBytes += chunk.length;
+            }
+            // The chunk just fetched stays, however small the cache
+            Iterator<byte[]> eldest = chunks.values().iterator();
+            while (cachedBytes > cacheBytes && chunks.size() > 1) {
+                cachedBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private byte[] fetch(String digest, long size, long index) throws IOException {
+        long start = index * chunkSize;
+        int length = (int) Math.min(chunkSize, size - start);
+        requests.increment();
+        try (RegistryResponse response = registryApi.getBlobRange(registry, repository, digest, start,
+            start + length - 1, credentials); InputStream in = response.getBody()) {
+            if (response.getStatusCode() == 200) {
+                // The registry ignores ranges and sends the whole blob; closing the response cuts off the rest
+                in.skipNBytes(start);
+                bytesFetched.add(start);
+            }
+            byte[] chunk = in.readNBytes(length);
+            bytesFetched.add(chunk.length);
+            if (chunk.length != length) {
+                throw new IOException("Short read of blob " + digest + " range " + start + "-" + (start + length - 1)
+                    + ": " + chunk.length + " bytes");
+            }
+            return chunk;
+        }
+    }
+
+    private class BlobStream extends InputStream {
+        private final String digest;
+        private final long size;
+        private final boolean sequential;
+        private long position;
+        private byte[] chunk;
+        private long chunkIndex = -1;
+        // The request chunks are read off when sequential, and the blob offset it has reached
+        private RegistryResponse response;
+        private InputStream body;
+        private long bodyPosition;
+
+        BlobStream(String digest, long size, long position, boolean sequential) {
+            this.digest = digest;
+            this.size = size;
+            this.position = position;
+            this.sequential = sequential;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            long index = position / chunkSize;
+            if (index != chunkIndex) {
+                // Held here, so eviction cannot take it away in the middle of reading it
+                chunk = sequential ? streamed(index) : chunk(digest, size, index);
+                chunkIndex = index;
+            }
+            int offset = (int) (position - index * chunkSize);
+            int read = Math.min(len, chunk.length - offset);
+            System.arraycopy(chunk, offset, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : (int) Math.max(0, Math.min((chunkIndex + 1) * chunkSize, size) - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            RegistryResponse current = response;
+            response = null;
+            body = null;
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        private byte[] streamed(long index) throws IOException {
+            byte[] cached = cached(digest, index);
+            if (cached != null) {
+                return cached;
+            }
+            long start = index * chunkSize;
+            int length = (int) Math.min(chunkSize, size - start);
+            if (body == null || bodyPosition != start) {
+                close();
+                requests.increment();
+                response = registryApi.getBlobRange(registry, repository, digest, start, size - 1, credentials);
+                body = response.getBody();
+                bodyPosition = start;
+                if (response.getStatusCode() == 200) {
+                    body.skipNBytes(start);
+                    bytesFetched.add(start);
+                }
+            }
+            byte[] read = body.readNBytes(length);
+            bytesFetched.add(read.length);
+            if (read.length != length) {
+                close();
+                throw new IOException("Short read of blob " + digest + " at " + start + ": " + read.length + " bytes");
+            }
+            bodyPosition += length;
+            cache(digest, index, read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.ya_b.registry.client.lazy;
+
+/**
+ * A file, directory or link of a {@link LazyImage}.
+ *
+ * @param path       absolute path, like {@code /etc/os-release}
+ * @param size       size of a regular file, 0 otherwise
+ * @param linkTarget target of a symbolic or hard link as stored in the layer, null otherwise
+ * @param layer      digest of the layer the entry comes from
+ */
+public record LayerEntry(String path, Type type, long size, String linkTarget, String layer) {
+
+    public enum Type {
+        FILE, DIRECTORY, SYMLINK, HARDLINK, OTHER
+    }
+}
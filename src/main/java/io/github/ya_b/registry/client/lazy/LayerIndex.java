@@ -0,0 +1,271 @@
+package io.github.ya_b.registry.client.lazy;
+
+import io.github.ya_b.registry.client.tar.TarHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Entries of one layer, indexed as far as a scan has come.
+ * <p>
+ * A scan walks the tar headers of the layer from the start and stops as soon as the entry looked for is found;
+ * the next lookup resumes where it stopped. In an uncompressed layer the scan skips over entry data without
+ * fetching it, and data is read in place. A gzip layer cannot be entered in the middle, so its scan streams
+ * through the compressed bytes up to the entry over a single request; the data of the entry the scan stopped at
+ * is read from the scan itself, other entries by decompressing the layer again from the start, served from the
+ * chunk cache as far as it holds it.
+ */
+class LayerIndex {
+
+    private static final String WHITEOUT = ".wh.";
+    private static final String OPAQUE = ".wh..wh..opq";
+
+    record Indexed(LayerEntry entry, long offset) {
+    }
+
+    private final String digest;
+    private final long size;
+    private final ChunkStore store;
+
+    private final Map<String, Indexed> entries = new LinkedHashMap<>();
+    // Paths of lower layers this layer deletes, and directories whose lower contents it replaces
+    private final Set<String> whiteouts = new HashSet<>();
+    private final Set<String> opaque = new HashSet<>();
+
+    private Boolean compressed;
+    private InputStream scan;
+    // Position of the scan in the tar stream, and bytes of entry data and padding before the next header
+    private long position;
+    private long dataRemaining;
+    private Indexed current;
+    private boolean complete;
+
+    LayerIndex(String digest, long size, ChunkStore store) {
+        this.digest = digest;
+        this.size = size;
+        this.store = store;
+    }
+
+    String digest() {
+        return digest;
+    }
+
+    long size() {
+        return size;
+    }
+
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * The entry at {@code path}, scanning on until it is found, a whiteout of it is found, or the layer ends
+     */
+    synchronized Optional<Indexed> find(String path) throws IOException {
+        // An opaque directory does not end the scan, the layer may hold the path itself
+        while (!entries.containsKey(path) && !whitedOut(path) && !complete) {
+            next();
+        }
+        return Optional.ofNullable(entries.get(path));
+    }
+
+    /**
+     * Whether this layer deletes {@code path} from the layers below, as far as scanned
+     */
+    synchronized boolean hides(String path) {
+        if (whitedOut(path)) {
+            return true;
+        }
+        for (String parent = LazyImage.parent(path); parent != null; parent = LazyImage.parent(parent)) {
+            if (opaque.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every entry, scanning the rest of the layer
+     */
+    synchronized List<Indexed> all() throws IOException {
+        while (!complete) {
+            next();
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Write the data of a regular file entry to {@code out}
+     */
+    synchronized void copy(Indexed indexed, OutputStream out) throws IOException {
+        long length = indexed.entry().size();
+        if (indexed == current && position == indexed.offset()) {
+            // The scan stopped right at it
+            copy(scan, out, length, true);
+            return;
+        }
+        if (!compressed) {
+            try (InputStream in = store.open(digest, size, indexed.offset())) {
+                copy(in, out, length, false);
+            }
+            return;
+        }
+        try (InputStream in = new GZIPInputStream(store.stream(digest, size), 64 * 1024)) {
+            in.skipNBytes(indexed.offset());
+            copy(in, out, length, false);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (scan != null) {
+            scan.close();
+            scan = null;
+        }
+    }
+
+    private boolean whitedOut(String path) {
+        for (String deleted = path; deleted != null; deleted = LazyImage.parent(deleted)) {
+            if (whiteouts.contains(deleted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copy(InputStream in, OutputStream out, long length, boolean fromScan) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(64 * 1024, Math.max(1, length))];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new IOException("Truncated layer " + digest);
+            }
+            if (fromScan) {
+                position += read;
+                dataRemaining -= read;
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Read the next entry header, indexing it
+     */
+    private void next() throws IOException {
+        if (scan == null) {
+            scan = start();
+        }
+        skip(dataRemaining);
+        current = null;
+        String longName = null;
+        Map<String, String> pax = Map.of();
+        while (true) {
+            byte[] block = scan.readNBytes(TarHeader.BLOCK);
+            position += block.length;
+            // Archives may lack the end-of-archive marker
+            if (block.length < TarHeader.BLOCK || TarHeader.isEnd(block)) {
+                finish();
+                return;
+            }
+            TarHeader header = TarHeader.parse(block);
+            long entrySize = header.size();
+            if (header.type() == 'L' || header.type() == 'K' || header.type() == 'x') {
+                byte[] data = scan.readNBytes((int) entrySize);
+                position += data.length;
+                skip(header.paddedSize() - data.length);
+                if (header.type() == 'L') {
+                    longName = TarHeader.trim(data);
+                } else if (header.type() == 'x') {
+                    pax = TarHeader.parsePax(data);
+                } else {
+                    pax = new LinkedHashMap<>(pax);
+                    pax.put("linkpath", TarHeader.trim(data));
+                }
+                continue;
+            }
+            if (header.type() == 'g') {
+                skip(header.paddedSize());
+                continue;
+            }
+            if (pax.containsKey("size")) {
+                entrySize = Long.parseLong(pax.get("size"));
+            }
+            String path = LazyImage.normalize(pax.getOrDefault("path", longName != null ? longName : header.name()));
+            String link = pax.getOrDefault("linkpath", header.linkName());
+            dataRemaining = (entrySize + TarHeader.BLOCK - 1) / TarHeader.BLOCK * TarHeader.BLOCK;
+            index(path, header.type(), entrySize, link);
+            return;
+        }
+    }
+
+    private void index(String path, char type, long entrySize, String link) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String parent = LazyImage.parent(path);
+        if (name.equals(OPAQUE)) {
+            opaque.add(parent);
+            return;
+        }
+        if (name.startsWith(WHITEOUT)) {
+            whiteouts.add((parent.equals("/") ? "" : parent) + "/" + name.substring(WHITEOUT.length()));
+            return;
+        }
+        if (path.equals("/")) {
+            return;
+        }
+        LayerEntry.Type entryType = switch (type) {
+            case '0', 0, '7' -> LayerEntry.Type.FILE;
+            case '5' -> LayerEntry.Type.DIRECTORY;
+            case '2' -> LayerEntry.Type.SYMLINK;
+            case '1' -> LayerEntry.Type.HARDLINK;
+            default -> LayerEntry.Type.OTHER;
+        };
+        boolean linked = entryType == LayerEntry.Type.SYMLINK || entryType == LayerEntry.Type.HARDLINK;
+        current = new Indexed(new LayerEntry(path, entryType, entryType == LayerEntry.Type.FILE ? entrySize : 0,
+            linked ? link : null, digest), position);
+        entries.put(path, current);
+    }
+
+    private InputStream start() throws IOException {
+        byte[] magic = new byte[4];
+        int read;
+        // The first chunk, cached for the scan
+        try (InputStream head = store.open(digest, size, 0)) {
+            read = head.readNBytes(magic, 0, magic.length);
+        }
+        if (read >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            compressed = true;
+            return new GZIPInputStream(store.stream(digest, size), 64 * 1024);
+        }
+        if (read == 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5 && (magic[2] & 0xff) == 0x2f
+            && (magic[3] & 0xff) == 0xfd) {
+            throw new IOException("Zstandard compressed layers are not supported: " + digest);
+        }
+        compressed = false;
+        return store.open(digest, size, 0);
+    }
+
+    private void skip(long n) throws IOException {
+        if (n > 0) {
+            scan.skipNBytes(n);
+            position += n;
+            dataRemaining = Math.max(0, dataRemaining - n);
+        }
+    }
+
+    private void finish() throws IOException {
+        complete = true;
+        current = null;
+        scan.close();
+        scan = null;
+    }
+}
@@ -0,0 +1,282 @@
+package io.github.ya_b.registry.client.lazy;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Read-only view of the files of an image that fetches layers on demand instead of pulling them.
+ * <p>
+ * Layers are read in chunks with HTTP range requests (see {@link LazyImageConfig#getChunkSize()}) and their tar
+ * entries indexed as the chunks stream past; a compressed layer, read from its start, streams its chunks over one
+ * request. A lookup goes through the layers from the top, as a container runtime
+ * overlays them, honouring whiteouts, and within a layer stops scanning once the path is found; symbolic links,
+ * in the path or at its end, are followed. Reading a few small files of a large image so fetches the upper layers
+ * and the base layer up to those files. Compressed layers have to be decompressed from their start, so a file at
+ * the end of a large gzip layer still costs most of that layer, while uncompressed layers are read in place.
+ * Indexes and fetched chunks are kept for the life of the instance.
+ */
+@Slf4j
+public class LazyImage implements Closeable {
+
+    private static final int MAX_LINKS = 40;
+
+    private final String image;
+    private final String digest;
+    // Top layer first
+    private final List<LayerIndex> layers;
+    private final ChunkStore store;
+
+    private LazyImage(String image, String digest, List<LayerIndex> layers, ChunkStore store) {
+        this.image = image;
+        this.digest = digest;
+        this.layers = layers;
+        this.store = store;
+    }
+
+    /**
+     * Read the manifest of {@code image}; for a manifest list or OCI index that of
+     * {@link LazyImageConfig#getPlatform()}. No layer is fetched yet.
+     *
+     * @param credentials credentials of the image's registry, null for anonymous access
+     */
+    public static LazyImage open(RegistryApi registryApi, String image, String[] credentials, LazyImageConfig config) throws IOException {
+        ImageReference imageRef;
+        try {
+            imageRef = ImageReference.parse(image);
+        } catch (InvalidImageReferenceException e) {
+            throw new IOException("Invalid image reference", e);
+        }
+        String registry = imageRef.getRegistry();
+        String repository = imageRef.getRepository();
+        RawManifest manifest = registryApi.getManifest(registry, repository, imageRef.getQualifier(), credentials);
+        if (manifest.isIndex()) {
+            List<Descriptor> platforms = manifest.parse().getManifests();
+            Descriptor selected = (platforms == null ? List.<Descriptor>of() : platforms).stream()
+                .filter(platform -> config.getPlatform().matches(platform.getPlatform()))
+                .findFirst()
+                .orElseThrow(() -> new IOException("No " + config.getPlatform() + " manifest in " + image));
+            manifest = registryApi.getManifest(registry, repository, selected.getDigest(), credentials);
+        }
+        ManifestResp parsed = manifest.parse();
+
+        ChunkStore store = new ChunkStore(registryApi, registry, repository, credentials, config);
+        List<LayerIndex> layers = new ArrayList<>();
+        for (Descriptor layer : parsed.getLayers() == null ? List.<Descriptor>of() : parsed.getLayers()) {
+            layers.add(new LayerIndex(layer.getDigest(), layer.getSize(), store));
+        }
+        Collections.reverse(layers);
+        log.debug("Opened {} ({}) lazily: {} layers", image, manifest.digest(), layers.size());
+        return new LazyImage(image, manifest.digest(), layers, store);
+    }
+
+    /**
+     * Digest of the image manifest, the platform manifest for an index
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Layer digests, base layer first
+     */
+    public List<String> layers() {
+        List<String> digests = new ArrayList<>();
+        layers.forEach(layer -> digests.add(0, layer.digest()));
+        return digests;
+    }
+
+    /**
+     * The entry at {@code path}, not following a symbolic link at its end
+     */
+    public Optional<LayerEntry> stat(String path) throws IOException {
+        return lookup(normalize(path)).map(found -> found.indexed().entry());
+    }
+
+    /**
+     * Contents of the regular file at {@code path}, following links
+     *
+     * @return empty when there is no such file
+     * @throws IOException when the path is a directory or another kind of entry, or a layer cannot be read
+     */
+    public Optional<byte[]> readFile(String path) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return read(path, out) ? Optional.of(out.toByteArray()) : Optional.empty();
+    }
+
+    /**
+     * Write the contents of the regular file at {@code path} to {@code out}, following links
+     *
+     * @return false when there is no such file
+     * @throws IOException when the path is a directory or another kind of entry, or a layer cannot be read
+     */
+    public boolean read(String path, OutputStream out) throws IOException {
+        Optional<Found> found = resolve(path);
+        if (found.isEmpty()) {
+            return false;
+        }
+        LayerEntry entry = found.get().indexed().entry();
+        if (entry.type() != LayerEntry.Type.FILE) {
+            throw new IOException("Not a regular file: " + entry.path() + " (" + entry.type() + ") in " + image);
+        }
+        found.get().layer().copy(found.get().indexed(), out);
+        return true;
+    }
+
+    /**
+     * Every entry of the image as the top layers show it, sorted by path. Scans every layer to its end, which
+     * fetches all of them.
+     */
+    public List<LayerEntry> list() throws IOException {
+        Map<String, LayerEntry> visible = new TreeMap<>();
+        for (int i = 0; i < layers.size(); i++) {
+            for (LayerIndex.Indexed indexed : layers.get(i).all()) {
+                String path = indexed.entry().path();
+                if (!visible.containsKey(path) && !hiddenAbove(i, path)) {
+                    visible.put(path, indexed.entry());
+                }
+            }
+        }
+        return new ArrayList<>(visible.values());
+    }
+
+    public LazyImageStats stats() {
+        long imageBytes = 0;
+        int indexed = 0;
+        for (LayerIndex layer : layers) {
+            imageBytes += layer.size();
+            indexed += layer.isComplete() ? 1 : 0;
+        }
+        return new LazyImageStats(store.requests.sum(), store.bytesFetched.sum(), store.hits.sum(), imageBytes, indexed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (LayerIndex layer : layers) {
+            layer.close();
+        }
+        store.clear();
+    }
+
+    private record Found(LayerIndex layer, LayerIndex.Indexed indexed) {
+    }
+
+    /**
+     * Find {@code path} following links, in the directories on the way as well as at its end
+     */
+    private Optional<Found> resolve(String path) throws IOException {
+        String current = normalize(path);
+        for (int hops = 0; hops < MAX_LINKS; hops++) {
+            Optional<Found> found = lookup(current);
+            if (found.isEmpty()) {
+                Optional<String> throughLink = resolveParents(current);
+                if (throughLink.isEmpty()) {
+                    return Optional.empty();
+                }
+                current = throughLink.get();
+                continue;
+            }
+            LayerEntry entry = found.get().indexed().entry();
+            if (entry.type() == LayerEntry.Type.SYMLINK) {
+                current = normalize(entry.linkTarget().startsWith("/") ? entry.linkTarget()
+                    : parent(current) + "/" + entry.linkTarget());
+            } else if (entry.type() == LayerEntry.Type.HARDLINK) {
+                current = normalize(entry.linkTarget());
+            } else {
+                return found;
+            }
+        }
+        throw new IOException("Too many levels of links: " + path + " in " + image);
+    }
+
+    /**
+     * Rewrite {@code path} through the first directory on it that is a symbolic link, like {@code /lib -> usr/lib}
+     */
+    private Optional<String> resolveParents(String path) throws IOException {
+        Deque<String> ancestors = new ArrayDeque<>();
+        for (String parent = parent(path); parent != null && !parent.equals("/"); parent = parent(parent)) {
+            ancestors.push(parent);
+        }
+        for (String ancestor : ancestors) {
+            Optional<Found> found = lookup(ancestor);
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+            LayerEntry entry = found.get().indexed().entry();
+            if (entry.type() == LayerEntry.Type.SYMLINK) {
+                String target = entry.linkTarget().startsWith("/") ? entry.linkTarget()
+                    : parent(ancestor) + "/" + entry.linkTarget();
+                return Optional.of(normalize(target + path.substring(ancestor.length())));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The topmost entry at {@code path} not deleted by a layer above it
+     */
+    private Optional<Found> lookup(String path) throws IOException {
+        for (LayerIndex layer : layers) {
+            Optional<LayerIndex.Indexed> indexed = layer.find(path);
+            if (indexed.isPresent()) {
+                return Optional.of(new Found(layer, indexed.get()));
+            }
+            if (layer.hides(path)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean hiddenAbove(int layer, String path) {
+        for (int i = 0; i < layer; i++) {
+            if (layers.get(i).hides(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Absolute form of a path, resolving {@code .} and {@code ..}; tar names like {@code ./etc/} become {@code /etc}
+     */
+    static String normalize(String path) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.addLast(segment);
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    /**
+     * @return the parent of an absolute path, null for the root
+     */
+    static String parent(String path) {
+        if (path.equals("/")) {
+            return null;
+        }
+        int slash = path.lastIndexOf('/');
+        return slash == 0 ? "/" : path.substring(0, slash);
+    }
+}
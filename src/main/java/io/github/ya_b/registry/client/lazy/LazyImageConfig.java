@@ -0,0 +1,36 @@
+package io.github.ya_b.registry.client.lazy;
+
+import io.github.ya_b.registry.client.http.Platform;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Fetching and caching of a {@link LazyImage}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class LazyImageConfig {
+
+    /**
+     * Size of the ranges layers are fetched in; smaller chunks transfer less around a small file, larger ones need
+     * fewer requests to stream through a compressed layer.
+     */
+    @Builder.Default
+    private final int chunkSize = 1024 * 1024;
+
+    /**
+     * Fetched chunks kept in memory across all layers of the image, least recently used dropped first.
+     */
+    @Builder.Default
+    private final long cacheBytes = 64L * 1024 * 1024;
+
+    /**
+     * Platform picked from a manifest list or OCI index.
+     */
+    @Builder.Default
+    private final Platform platform = Platform.LINUX_AMD64;
+
+    public static LazyImageConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.ya_b.registry.client.lazy;
+
+/**
+ * Transfer of a {@link LazyImage} so far.
+ *
+ * @param rangeRequests  blob range requests issued
+ * @param bytesFetched   compressed bytes received
+ * @param cacheHits      chunk reads served from the cache
+ * @param imageBytes     compressed size of all layers, what a full pull transfers
+ * @param layersIndexed  layers whose entries are all known
+ */
+public record LazyImageStats(long rangeRequests, long bytesFetched, long cacheHits, long imageBytes, int layersIndexed) {
+}
@@ -0,0 +1,24 @@
+package io.github.ya_b.registry.client.metrics;
+
+/**
+ * Registry operations reported to {@link RegistryMetrics}.
+ */
+public enum Operation {
+    DIGEST,
+    MANIFEST_GET,
+    MANIFEST_PUT,
+    TAGS,
+    CATALOG,
+    DELETE,
+    TOKEN,
+    BLOB_DOWNLOAD,
+    BLOB_UPLOAD,
+    BLOB_COPY;
+
+    /**
+     * Lower case name, e.g. {@code blob_download}, for use as a metric tag
+     */
+    public String tag() {
+        return name().toLowerCase(java.util.Locale.ROOT);
+    }
+}
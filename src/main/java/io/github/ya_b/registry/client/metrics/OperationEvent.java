@@ -0,0 +1,35 @@
+package io.github.ya_b.registry.client.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event of a registry operation; only operations slower than the threshold are recorded by default.
+ */
+@Name("io.github.ya_b.registry.Operation")
+@Label("Registry Operation")
+@Category({"Registry Client"})
+@Description("A call against a container registry")
+@Threshold("100 ms")
+@StackTrace(false)
+class OperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Host")
+    String host;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,98 @@
+package io.github.ya_b.registry.client.metrics;
+
+import jdk.jfr.EventType;
+
+/**
+ * Measures one operation for {@link RegistryMetrics} and JFR. Use with try-with-resources and call
+ * {@link #success()} at the end of the block; an operation left without it, by an exception or an early
+ * return, is recorded as failed.
+ * <pre>{@code
+ * try (OperationTimer timer = OperationTimer.start(metrics, Operation.TAGS, registry)) {
+ *     ...
+ *     timer.success();
+ * }
+ * }</pre>
+ * When metrics are off and no JFR recording listens, {@link #start} hands out a shared instance that records
+ * nothing.
+ */
+public class OperationTimer implements AutoCloseable {
+
+    private static final EventType OPERATION_EVENT = EventType.getEventType(OperationEvent.class);
+    private static final EventType RETRY_EVENT = EventType.getEventType(RetryEvent.class);
+
+    private static final OperationTimer DISABLED = new OperationTimer(RegistryMetrics.NOOP, null, null, null);
+
+    private final RegistryMetrics metrics;
+    private final Operation operation;
+    private final String host;
+    private final OperationEvent event;
+    private final long start;
+    private long bytes;
+    private boolean succeeded;
+
+    private OperationTimer(RegistryMetrics metrics, Operation operation, String host, OperationEvent event) {
+        this.metrics = metrics;
+        this.operation = operation;
+        this.host = host;
+        this.event = event;
+        this.start = operation != null ? System.nanoTime() : 0;
+    }
+
+    public static OperationTimer start(RegistryMetrics metrics, Operation operation, String host) {
+        boolean jfr = OPERATION_EVENT.isEnabled();
+        if (metrics == RegistryMetrics.NOOP && !jfr) {
+            return DISABLED;
+        }
+        OperationEvent event = null;
+        if (jfr) {
+            event = new OperationEvent();
+            event.begin();
+        }
+        return new OperationTimer(metrics, operation, host, event);
+    }
+
+    /**
+     * Add to the payload bytes of the operation
+     */
+    public OperationTimer bytes(long count) {
+        bytes += count;
+        return this;
+    }
+
+    public void success() {
+        succeeded = true;
+    }
+
+    @Override
+    public void close() {
+        if (this == DISABLED) {
+            return;
+        }
+        metrics.record(operation, host, System.nanoTime() - start, bytes, succeeded);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation.tag();
+                event.host = host;
+                event.bytes = bytes;
+                event.success = succeeded;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Report a retry to {@code metrics} and JFR
+     */
+    public static void retried(RegistryMetrics metrics, String host, String reason, int attempt, long delayMillis) {
+        metrics.retried(host, reason);
+        if (RETRY_EVENT.isEnabled()) {
+            RetryEvent event = new RetryEvent();
+            event.host = host;
+            event.reason = reason;
+            event.attempt = attempt;
+            event.delay = delayMillis;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.ya_b.registry.client.metrics;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Receives the measurements of a client: a timing per registry operation, retries and rejected requests of the
+ * transport, and gauges over the connection pools and caches.
+ * <p>
+ * Every method has an empty default, so an implementation bridges just what it needs to its metrics library;
+ * with Micrometer, for instance, {@link #record} maps to a {@code Timer} tagged with operation, host and outcome
+ * plus a {@code Counter} of bytes, and {@link #gauge} to {@code Gauge.builder}. Implementations are called from
+ * many threads at once. With {@link #NOOP}, the default, measuring costs a reference comparison per operation.
+ */
+public interface RegistryMetrics {
+
+    RegistryMetrics NOOP = new RegistryMetrics() {
+    };
+
+    /**
+     * A finished operation
+     *
+     * @param host    registry host the operation ran against
+     * @param nanos   duration
+     * @param bytes   payload bytes moved, 0 when not applicable
+     * @param success false when the operation threw or the registry refused it
+     */
+    default void record(Operation operation, String host, long nanos, long bytes, boolean success) {
+    }
+
+    /**
+     * A request is about to be retried
+     *
+     * @param reason the status code or exception class of the failed attempt
+     */
+    default void retried(String host, String reason) {
+    }
+
+    /**
+     * A request was refused without being sent, because the host's circuit is open or its rate limit is used up
+     */
+    default void rejected(String host, String reason) {
+    }
+
+    /**
+     * Register a gauge; called once per gauge, the value is read whenever the metrics library samples it
+     */
+    default void gauge(String name, Map<String, String> tags, Supplier<Number> value) {
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.ya_b.registry.client.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a retried request.
+ */
+@Name("io.github.ya_b.registry.Retry")
+@Label("Registry Retry")
+@Category({"Registry Client"})
+@Description("A registry request failed and is retried after a delay")
+@StackTrace(false)
+class RetryEvent extends Event {
+
+    @Label("Host")
+    String host;
+
+    @Label("Reason")
+    String reason;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Delay")
+    @Timespan(Timespan.MILLISECONDS)
+    long delay;
+}
@@ -0,0 +1,19 @@
+package io.github.ya_b.registry.client.retention;
+
+import java.time.Instant;
+
+/**
+ * What a retention run did, or in a dry run would do, with one tag.
+ *
+ * @param digest  manifest digest of the tag, null when it could not be read
+ * @param created image creation time, null when unknown
+ * @param reason  the rule that decided
+ */
+public record RetentionDecision(String repository, String tag, String digest, Instant created, Action action,
+                                String reason) {
+
+    public enum Action {
+        KEEP,
+        DELETE
+    }
+}
@@ -0,0 +1,324 @@
+package io.github.ya_b.registry.client.retention;
+
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ImageConfig;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import io.github.ya_b.registry.client.retention.RetentionDecision.Action;
+import io.github.ya_b.registry.client.transfer.ParallelWorkers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Applies a {@link RetentionPolicy} to every repository of a registry.
+ * <p>
+ * Repositories are streamed from the catalog and evaluated a few at a time, so only the tag lists of the
+ * repositories in flight are held in memory. Within a repository the manifest and image configuration of every
+ * tag are read in parallel to learn its digest and creation time; the rules then pick the tags to delete and the
+ * distinct manifests behind them are deleted, again in parallel. A manifest still referenced by a kept tag is
+ * never deleted, and a repository where any tag could not be read is left untouched.
+ */
+@Slf4j
+public class RetentionEngine {
+
+    private final JibImageManager imageManager;
+    private final RegistryApi registryApi;
+    private final Executor executor;
+    private final Clock clock;
+
+    /**
+     * @param executor executor running repository evaluations and lending threads for parallel reads and deletes
+     */
+    public RetentionEngine(JibImageManager imageManager, Executor executor) {
+        this(imageManager, executor, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock clock the age of a tag is measured against
+     */
+    public RetentionEngine(JibImageManager imageManager, Executor executor, Clock clock) {
+        this.imageManager = imageManager;
+        this.registryApi = imageManager.getRegistryApi();
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Apply {@code policy} to the registry at {@code registryUrl}, blocking until every repository is done.
+     *
+     * @param credentials credentials of the registry, null for anonymous access
+     * @param listener    receives the decision for every evaluated tag, from several threads at once
+     * @throws IOException when the catalog cannot be read; repositories listed before the failure have been
+     *                     processed
+     */
+    public RetentionReport apply(String registryUrl, String[] credentials, RetentionPolicy policy,
+                                 Consumer<RetentionDecision> listener) throws IOException {
+        if (policy.getKeepLast() == null && policy.getOlderThan() == null && policy.getKeepTags().isEmpty()) {
+            throw new IllegalArgumentException("A retention policy needs keepLast, olderThan or keepTags");
+        }
+        String baseUrl = registryUrl.replaceAll("/$", "");
+        log.info("Applying retention policy to {}{}", baseUrl, policy.isDryRun() ? " (dry run)" : "");
+        Run run = new Run(URI.create(baseUrl).getAuthority(), credentials, policy, listener);
+        long start = System.nanoTime();
+
+        Semaphore slots = new Semaphore(policy.getRepositoryConcurrency());
+        IOException catalogFailure = null;
+        try (Stream<String> catalog = imageManager.streamCatalog(baseUrl, credentials, policy.getCatalogPageSize(), executor)) {
+            for (Iterator<String> iterator = catalog.iterator(); iterator.hasNext(); ) {
+                String repository = iterator.next();
+                if (!policy.getRepositories().matcher(repository).matches()) {
+                    continue;
+                }
+                slots.acquire();
+                try {
+                    CompletableFuture.runAsync(() -> {
+                        try {
+                            run.repository(repository);
+                        } catch (RuntimeException e) {
+                            // nobody joins the future, so an escaping exception would vanish
+                            log.error("Failed to apply retention policy to {}", repository, e);
+                            run.failures.increment();
+                        } finally {
+                            slots.release();
+                        }
+                    }, executor);
+                } catch (RejectedExecutionException e) {
+                    slots.release();
+                    log.error("Failed to schedule repository {}: {}", repository, e.getMessage());
+                    run.failures.increment();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            // repositories already started are still finished, the failure is raised at the end
+            log.error("Failed to read catalog of {}", baseUrl, e.getCause());
+            catalogFailure = e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while applying retention policy to " + baseUrl);
+        }
+        try {
+            slots.acquire(policy.getRepositoryConcurrency());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while applying retention policy to " + baseUrl);
+        }
+        if (catalogFailure != null) {
+            throw catalogFailure;
+        }
+
+        RetentionReport report = new RetentionReport(run.repositories.sum(), run.tags.sum(), run.tagsDeleted.sum(),
+            run.manifestsDeleted.sum(), run.failures.sum(), policy.isDryRun(), Duration.ofNanos(System.nanoTime() - start));
+        log.info("Applied retention policy to {} - {} repositories, {} tags, {} tags and {} manifests deleted, {} failures in {}",
+            baseUrl, report.repositories(), report.tags(), report.tagsDeleted(), report.manifestsDeleted(),
+            report.failures(), report.elapsed());
+        return report;
+    }
+
+    /**
+     * Digest and creation time of a tag
+     */
+    private record TagInfo(String tag, String digest, Instant created) {
+    }
+
+    private class Run {
+        private final String host;
+        private final String[] credentials;
+        private final RetentionPolicy policy;
+        private final Consumer<RetentionDecision> listener;
+        private final Instant cutoff;
+
+        private final LongAdder repositories = new LongAdder();
+        private final LongAdder tags = new LongAdder();
+        private final LongAdder tagsDeleted = new LongAdder();
+        private final LongAdder manifestsDeleted = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Run(String host, String[] credentials, RetentionPolicy policy, Consumer<RetentionDecision> listener) {
+            this.host = host;
+            this.credentials = credentials;
+            this.policy = policy;
+            this.listener = listener;
+            this.cutoff = policy.getOlderThan() != null ? clock.instant().minus(policy.getOlderThan()) : null;
+        }
+
+        void repository(String repository) {
+            repositories.increment();
+            List<TagInfo> infos;
+            try {
+                infos = read(repository);
+            } catch (IOException | InvalidImageReferenceException | RuntimeException e) {
+                log.warn("Skipping repository {} while applying retention policy: {}", repository, e.getMessage());
+                failures.increment();
+                return;
+            }
+            tags.add(infos.size());
+
+            List<TagInfo> byAge = new ArrayList<>(infos);
+            byAge.removeIf(info -> info.created() == null);
+            byAge.sort(Comparator.comparing(TagInfo::created).reversed());
+            Set<TagInfo> newest = new HashSet<>(byAge.subList(0,
+                policy.getKeepLast() != null ? Math.min(policy.getKeepLast(), byAge.size()) : 0));
+
+            Map<TagInfo, String> keepReasons = new HashMap<>();
+            for (TagInfo info : infos) {
+                String reason = keepReason(info, newest.contains(info));
+                if (reason != null) {
+                    keepReasons.put(info, reason);
+                }
+            }
+            Set<String> protectedDigests = new HashSet<>();
+            keepReasons.keySet().forEach(info -> protectedDigests.add(info.digest()));
+
+            Set<String> doomed = new LinkedHashSet<>();
+            for (TagInfo info : infos) {
+                if (!keepReasons.containsKey(info) && protectedDigests.contains(info.digest())) {
+                    keepReasons.put(info, "digest referenced by a kept tag");
+                } else if (!keepReasons.containsKey(info)) {
+                    doomed.add(info.digest());
+                }
+            }
+
+            Set<String> failed = ConcurrentHashMap.newKeySet();
+            if (!policy.isDryRun()) {
+                try {
+                    ParallelWorkers.forEach(doomed, policy.getTagConcurrency(), executor, digest -> {
+                        try {
+                            registryApi.deleteManifest(host, repository, digest, credentials);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete {}/{}@{}: {}", host, repository, digest, e.getMessage());
+                            failed.add(digest);
+                            failures.increment();
+                        }
+                    });
+                } catch (IOException e) {
+                    // a delete failed unexpectedly, so which tags are gone is unknown
+                    log.warn("Aborted deletes in {}/{}: {}", host, repository, e.getMessage());
+                    failures.increment();
+                    return;
+                }
+            }
+            manifestsDeleted.add(doomed.size() - failed.size());
+
+            for (TagInfo info : infos) {
+                String keepReason = keepReasons.get(info);
+                if (keepReason != null) {
+                    decide(repository, info, Action.KEEP, keepReason);
+                } else if (failed.contains(info.digest())) {
+                    decide(repository, info, Action.KEEP, "delete failed");
+                } else {
+                    tagsDeleted.increment();
+                    decide(repository, info, Action.DELETE, cutoff != null ? "older than " + policy.getOlderThan() : "not retained");
+                }
+            }
+        }
+
+        /**
+         * Why a tag is kept on its own merits, null when no rule keeps it
+         */
+        private String keepReason(TagInfo info, boolean newest) {
+            if (policy.getKeepTags().stream().anyMatch(pattern -> pattern.matcher(info.tag()).matches())) {
+                return "tag matches a keep pattern";
+            }
+            if (newest) {
+                return "one of the " + policy.getKeepLast() + " newest tags";
+            }
+            if (info.created() == null) {
+                return "creation time unknown";
+            }
+            if (cutoff != null && !info.created().isBefore(cutoff)) {
+                return "newer than " + policy.getOlderThan();
+            }
+            return null;
+        }
+
+        private void decide(String repository, TagInfo info, Action action, String reason) {
+            listener.accept(new RetentionDecision(repository, info.tag(), info.digest(), info.created(), action, reason));
+        }
+
+        /**
+         * Digest and creation time of every tag of the repository, reading each configuration once
+         */
+        private List<TagInfo> read(String repository) throws IOException, InvalidImageReferenceException {
+            List<String> repositoryTags = imageManager.getTags(host + "/" + repository, credentials);
+            Map<String, TagInfo> infos = new ConcurrentHashMap<>();
+            Map<String, Instant> createdByDigest = new ConcurrentHashMap<>();
+            ParallelWorkers.forEach(repositoryTags, policy.getTagConcurrency(), executor, tag -> {
+                RawManifest manifest = registryApi.getManifest(host, repository, tag, credentials);
+                Instant created = createdByDigest.get(manifest.digest());
+                if (created == null) {
+                    created = created(repository, manifest);
+                    if (created != null) {
+                        createdByDigest.put(manifest.digest(), created);
+                    }
+                }
+                infos.put(tag, new TagInfo(tag, manifest.digest(), created));
+            });
+            List<TagInfo> ordered = new ArrayList<>();
+            repositoryTags.forEach(tag -> ordered.add(infos.get(tag)));
+            return ordered;
+        }
+
+        /**
+         * Creation time from the image configuration; an index is dated by its first platform
+         */
+        private Instant created(String repository, RawManifest manifest) throws IOException {
+            ManifestResp parsed = manifest.parse();
+            if (manifest.isIndex()) {
+                if (parsed.getManifests() == null || parsed.getManifests().isEmpty()) {
+                    return null;
+                }
+                Descriptor first = parsed.getManifests().get(0);
+                parsed = registryApi.getManifest(host, repository, first.getDigest(), credentials).parse();
+            }
+            if (parsed.getConfig() == null) {
+                return null;
+            }
+            ImageConfig config;
+            try (RegistryResponse response = registryApi.getBlob(host, repository, parsed.getConfig().getDigest(), credentials);
+                 InputStream body = response.getBody()) {
+                config = JsonTemplateMapper.readJson(body, ImageConfig.class);
+            }
+            if (config.getCreated() == null) {
+                return null;
+            }
+            try {
+                return OffsetDateTime.parse(config.getCreated()).toInstant();
+            } catch (DateTimeParseException e) {
+                log.debug("Unparseable creation time {} in {}/{}", config.getCreated(), repository, manifest.digest());
+                return null;
+            }
+        }
+    }
+}
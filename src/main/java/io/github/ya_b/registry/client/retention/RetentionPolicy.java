@@ -0,0 +1,68 @@
+package io.github.ya_b.registry.client.retention;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative tag retention rules, evaluated per repository by {@link RetentionEngine}.
+ * <p>
+ * A tag is kept when it matches one of {@link #getKeepTags()}, is among the {@link #getKeepLast()} newest tags
+ * of its repository, or has no readable creation time. Every other tag is deleted, restricted to tags created
+ * more than {@link #getOlderThan()} ago when that is set. Since a registry deletes manifests rather than tags,
+ * a tag is also kept when its digest is shared with a kept tag.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class RetentionPolicy {
+
+    /**
+     * Repositories the policy applies to; others are skipped.
+     */
+    @Builder.Default
+    private final Pattern repositories = Pattern.compile(".*");
+
+    /**
+     * Number of newest tags (by image creation time) always kept, null for no such rule.
+     */
+    private final Integer keepLast;
+
+    /**
+     * Tags matching any of these are always kept.
+     */
+    @Singular
+    private final List<Pattern> keepTags;
+
+    /**
+     * Minimum age of a deleted tag, null to delete regardless of age.
+     */
+    private final Duration olderThan;
+
+    /**
+     * Evaluate and report without deleting anything.
+     */
+    @Builder.Default
+    private final boolean dryRun = false;
+
+    /**
+     * Number of repositories evaluated concurrently; also bounds how many tag lists are held in memory.
+     */
+    @Builder.Default
+    private final int repositoryConcurrency = 4;
+
+    /**
+     * Number of manifests and configurations read concurrently per repository.
+     */
+    @Builder.Default
+    private final int tagConcurrency = 16;
+
+    /**
+     * Number of repositories requested per catalog page.
+     */
+    @Builder.Default
+    private final int catalogPageSize = 100;
+}
@@ -0,0 +1,16 @@
+package io.github.ya_b.registry.client.retention;
+
+import java.time.Duration;
+
+/**
+ * Counters of a finished retention run.
+ *
+ * @param repositories     repositories the policy was applied to
+ * @param tags             tags evaluated
+ * @param tagsDeleted      tags deleted, or in a dry run selected for deletion
+ * @param manifestsDeleted distinct manifests deleted, or in a dry run selected for deletion
+ * @param failures         repositories, tags and deletes that failed
+ */
+public record RetentionReport(long repositories, long tags, long tagsDeleted, long manifestsDeleted, long failures,
+                              boolean dryRun, Duration elapsed) {
+}
@@ -0,0 +1,17 @@
+package io.github.ya_b.registry.client.tar;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Outcome of pushing many image tars at once.
+ *
+ * @param digests       digest of the pushed manifest per tar, in the order the tars were given
+ * @param blobsUploaded distinct blobs sent to a registry
+ * @param blobsMounted  blobs mounted from another repository of the batch on the same registry
+ * @param blobsSkipped  blobs the registry already had
+ * @param bytesUploaded total size of the sent blobs
+ */
+public record BatchPushResult(Map<Path, String> digests, int blobsUploaded, int blobsMounted, int blobsSkipped,
+                              long bytesUploaded) {
+}
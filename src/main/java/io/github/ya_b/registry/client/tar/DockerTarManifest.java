@@ -0,0 +1,31 @@
+package io.github.ya_b.registry.client.tar;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.cloud.tools.jib.json.JsonTemplate;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * An image entry of the {@code manifest.json} at the root of a {@code docker save} style tar.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DockerTarManifest implements JsonTemplate {
+
+    /**
+     * Tar entry holding the image configuration
+     */
+    @JsonProperty("Config")
+    private String config;
+
+    @JsonProperty("RepoTags")
+    private List<String> repoTags;
+
+    /**
+     * Tar entries holding the layers, base layer first
+     */
+    @JsonProperty("Layers")
+    private List<String> layers;
+}
@@ -0,0 +1,247 @@
+package io.github.ya_b.registry.client.tar;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.http.Digests;
+import io.github.ya_b.registry.client.http.Platform;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.metrics.Operation;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
+import io.github.ya_b.registry.client.transfer.BlobTransfer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes an image as a {@code docker save} style tar ({@code manifest.json}, {@code config.json} and one
+ * {@code <hex>.tar.gz} entry per layer) by streaming its blobs from the registry straight into the archive.
+ * <p>
+ * Nothing is staged: the tar headers only need the sizes from the manifest, so each layer goes from the HTTP
+ * response into its entry while its digest is computed on the fly and checked at the end; a connection that
+ * breaks off mid-layer is resumed with a range request. Parallel chunked downloads and resuming a failed export
+ * need a blob cache: the layers are then fetched into the cache and copied from there. Any {@link WritableByteChannel} can be the target;
+ * for a file, data moves with {@link FileChannel#transferFrom}/{@link FileChannel#transferTo}.
+ */
+@Slf4j
+public class ImageExporter {
+
+    static final String MANIFEST_JSON = "manifest.json";
+    static final String CONFIG_JSON = "config.json";
+
+    private final RegistryApi registryApi;
+    private final BlobTransfer blobTransfer;
+
+    public ImageExporter(RegistryApi registryApi, BlobTransfer blobTransfer) {
+        this.registryApi = registryApi;
+        this.blobTransfer = blobTransfer;
+    }
+
+    /**
+     * Export to a file, which is removed again when the export fails
+     *
+     * @return the digest of the exported image manifest
+     */
+    public String export(ImageReference image, String[] credentials, Platform platform, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            String digest = export(image, credentials, platform, channel);
+            channel.force(false);
+            return digest;
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException cleanupException) {
+                log.warn("Failed to clean up target file after error: {}", target, cleanupException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Export to a stream, which is left open
+     *
+     * @return the digest of the exported image manifest
+     */
+    public String export(ImageReference image, String[] credentials, Platform platform, OutputStream out) throws IOException {
+        String digest = export(image, credentials, platform, Channels.newChannel(out));
+        out.flush();
+        return digest;
+    }
+
+    /**
+     * Export to a channel, which is left open
+     *
+     * @param platform platform to export from a multi-platform image, null for linux/amd64 or else the first one
+     * @return the digest of the exported image manifest
+     */
+    public String export(ImageReference image, String[] credentials, Platform platform, WritableByteChannel out) throws IOException {
+        String registry = image.getRegistry();
+        String repository = image.getRepository();
+        RawManifest manifest = registryApi.getManifest(registry, repository, image.getQualifier(), credentials);
+        if (manifest.isIndex()) {
+            Descriptor selected = selectPlatform(manifest, platform);
+            log.debug("Exporting platform manifest {} of {}", selected.getDigest(), image);
+            manifest = registryApi.getManifest(registry, repository, selected.getDigest(), credentials);
+        }
+        ManifestResp parsed = manifest.parse();
+        if (parsed.getConfig() == null || parsed.getLayers() == null) {
+            throw new IOException("Not an image manifest: " + manifest.digest());
+        }
+        byte[] config = readBlob(image, parsed.getConfig(), credentials);
+
+        List<String> layerNames = new ArrayList<>();
+        for (Descriptor layer : parsed.getLayers()) {
+            if (layer.getUrls() != null && !layer.getUrls().isEmpty()) {
+                throw new IOException("Foreign layer " + layer.getDigest() + " cannot be exported");
+            }
+            layerNames.add(layerName(layer));
+        }
+        DockerTarManifest tarManifest = new DockerTarManifest();
+        tarManifest.setConfig(CONFIG_JSON);
+        tarManifest.setRepoTags(image.getTag().map(tag -> List.of(image.toString())).orElse(List.of()));
+        tarManifest.setLayers(layerNames);
+        byte[] manifestJson = JsonTemplateMapper.toByteArray(List.of(tarManifest));
+
+        // Metadata first, so a reader of the stream knows the layout before the layers arrive
+        TarOutput tar = new TarOutput(out);
+        tar.putEntry(MANIFEST_JSON, manifestJson.length);
+        tar.write(manifestJson);
+        tar.closeEntry();
+        tar.putEntry(CONFIG_JSON, config.length);
+        tar.write(config);
+        tar.closeEntry();
+        for (int i = 0; i < layerNames.size(); i++) {
+            Descriptor layer = parsed.getLayers().get(i);
+            tar.putEntry(layerNames.get(i), layer.getSize());
+            writeLayer(tar, image, layer, credentials);
+            tar.closeEntry();
+        }
+        tar.finish();
+        log.info("Exported image {} ({} layers)", image, layerNames.size());
+        return manifest.digest();
+    }
+
+    private void writeLayer(TarOutput tar, ImageReference image, Descriptor layer, String[] credentials) throws IOException {
+        String digest = layer.getDigest();
+        if (blobTransfer.getBlobCache() != null) {
+            Path cached = blobTransfer.downloadToCache(image.getRegistry(), image.getRepository(), digest, credentials);
+            try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+                if (channel.size() != layer.getSize()) {
+                    throw new IOException("Layer " + digest + " is " + channel.size() + " bytes, manifest says " + layer.getSize());
+                }
+                tar.transferFrom(channel, 0, layer.getSize());
+            }
+            return;
+        }
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.BLOB_DOWNLOAD, image.getRegistry());
+             InputStream body = blobTransfer.openStream(image.getRegistry(), image.getRepository(), digest, layer.getSize(), credentials);
+             DigestingChannel in = new DigestingChannel(Channels.newChannel(body))) {
+            tar.transferFrom(in, layer.getSize());
+            if (in.read(ByteBuffer.allocate(1)) != -1) {
+                throw new IOException("Layer " + digest + " is larger than the " + layer.getSize() + " bytes in the manifest");
+            }
+            String actual = in.digest();
+            if (!actual.equals(digest)) {
+                throw new IOException("Digest mismatch for layer, expected " + digest + " but got " + actual);
+            }
+            timer.bytes(layer.getSize()).success();
+        }
+    }
+
+    private byte[] readBlob(ImageReference image, Descriptor descriptor, String[] credentials) throws IOException {
+        try (RegistryResponse response = registryApi.getBlob(image.getRegistry(), image.getRepository(),
+            descriptor.getDigest(), credentials)) {
+            byte[] content = response.getBody().readAllBytes();
+            String actual = Digests.sha256(content);
+            if (!actual.equals(descriptor.getDigest())) {
+                throw new IOException("Digest mismatch for blob, expected " + descriptor.getDigest() + " but got " + actual);
+            }
+            return content;
+        }
+    }
+
+    /**
+     * The platform manifest a tar export of a multi-platform image holds: the requested platform, or without one
+     * linux/amd64 and else the first entry
+     */
+    private static Descriptor selectPlatform(RawManifest index, Platform platform) throws IOException {
+        List<Descriptor> manifests = index.parse().getManifests();
+        if (manifests == null || manifests.isEmpty()) {
+            throw new IOException("Empty manifest list: " + index.digest());
+        }
+        Platform wanted = platform != null ? platform : Platform.LINUX_AMD64;
+        Optional<Descriptor> match = manifests.stream()
+            .filter(descriptor -> wanted.matches(descriptor.getPlatform()))
+            .findFirst();
+        if (match.isEmpty() && platform != null) {
+            throw new IOException("Platform " + platform + " is not in " + index.digest());
+        }
+        return match.orElse(manifests.get(0));
+    }
+
+    private static String layerName(Descriptor layer) {
+        String hex = layer.getDigest().substring(layer.getDigest().indexOf(':') + 1);
+        String mediaType = layer.getMediaType() != null ? layer.getMediaType() : "";
+        if (mediaType.endsWith("gzip")) {
+            return hex + ".tar.gz";
+        }
+        if (mediaType.endsWith("zstd")) {
+            return hex + ".tar.zst";
+        }
+        return hex + ".tar";
+    }
+
+    /**
+     * Hashes everything read through it
+     */
+    private static class DigestingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel delegate;
+        private final MessageDigest digest = Digests.newSha256();
+
+        DigestingChannel(ReadableByteChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int start = dst.position();
+            int read = delegate.read(dst);
+            if (read > 0) {
+                digest.update(dst.duplicate().flip().position(start));
+            }
+            return read;
+        }
+
+        String digest() {
+            return Digests.format(digest);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package io.github.ya_b.registry.client.tar;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.http.Digests;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import io.github.ya_b.registry.client.transfer.BlobTransfer;
+import io.github.ya_b.registry.client.transfer.ParallelWorkers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pushes a {@code docker save} style tar to a registry, uploading every blob straight from its offset inside the
+ * archive.
+ * <p>
+ * Only the tar headers, {@code manifest.json} and the image configuration are read up front. Layers named after
+ * their digest (as written by {@link ImageExporter}, Jib, or the {@code blobs/sha256/} layout of recent Docker
+ * versions) are uploaded without reading them beforehand and hashed as they are sent, so a layer that does not
+ * match its name fails the push before the upload is committed; other layers are hashed in place through
+ * memory-mapped windows first. Layers are uploaded as they are stored, so the
+ * pushed image has the same layer digests as the tar.
+ */
+@Slf4j
+public class ImageImporter {
+
+    private static final String CONFIG_MEDIA_TYPE = "application/vnd.docker.container.image.v1+json";
+    private static final String OCI_CONFIG_MEDIA_TYPE = "application/vnd.oci.image.config.v1+json";
+    private static final String GZIP_LAYER = "application/vnd.docker.image.rootfs.diff.tar.gzip";
+    private static final String TAR_LAYER = "application/vnd.docker.image.rootfs.diff.tar";
+    private static final String OCI_GZIP_LAYER = "application/vnd.oci.image.layer.v1.tar+gzip";
+    private static final String OCI_TAR_LAYER = "application/vnd.oci.image.layer.v1.tar";
+    private static final String OCI_ZSTD_LAYER = "application/vnd.oci.image.layer.v1.tar+zstd";
+
+    static final Pattern DIGEST_NAME = Pattern.compile("(?:.*/)?([0-9a-f]{64})(?:\\.tar(?:\\.gz|\\.zst)?)?");
+
+    private final RegistryApi registryApi;
+    private final BlobTransfer blobTransfer;
+    private final Executor executor;
+
+    /**
+     * @param executor executor lending threads for uploading several layers at once
+     */
+    public ImageImporter(RegistryApi registryApi, BlobTransfer blobTransfer, Executor executor) {
+        this.registryApi = registryApi;
+        this.blobTransfer = blobTransfer;
+        this.executor = executor;
+    }
+
+    /**
+     * Push the image in {@code tar} as {@code dest}
+     *
+     * @return the digest of the pushed manifest
+     */
+    public String importTar(Path tar, ImageReference dest, String[] credentials) throws IOException {
+        PreparedImage image = prepare(tar, dest, credentials);
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+            // An image may repeat a layer; upload each blob once
+            Map<String, Blob> distinct = new LinkedHashMap<>();
+            image.blobs().forEach(blob -> distinct.putIfAbsent(blob.digest(), blob));
+            ParallelWorkers.forEach(distinct.values(), blobTransfer.getConfig().getParallelism(), executor, blob ->
+                blobTransfer.upload(dest.getRegistry(), dest.getRepository(), blob.digest(), channel,
+                    blob.entry().offset(), blob.entry().size(), credentials));
+        }
+        return putManifest(image);
+    }
+
+    /**
+     * Push many image tars at once. All tars are indexed first, so a broken one fails the batch before anything
+     * is uploaded. Blobs shared between the images (base layers, usually) are then uploaded once per registry:
+     * to the first repository needing them, and mounted from there into the other repositories of that registry.
+     * Manifests are pushed last, once every blob is in place.
+     *
+     * @param images      destination of each tar
+     * @param credentials credentials for a registry host, may return null
+     */
+    public BatchPushResult importAll(Map<Path, ImageReference> images, Function<String, String[]> credentials) throws IOException {
+        int parallelism = blobTransfer.getConfig().getParallelism();
+        List<Map.Entry<Path, ImageReference>> requests = new ArrayList<>(images.entrySet());
+        Map<Path, PreparedImage> prepared = new ConcurrentHashMap<>();
+        ParallelWorkers.forEach(requests, parallelism, executor, request -> prepared.put(request.getKey(),
+            prepare(request.getKey(), request.getValue(), credentials.apply(request.getValue().getRegistry()))));
+
+        // registry@digest -> the blob and every repository of that registry needing it
+        Map<String, SharedBlob> shared = new LinkedHashMap<>();
+        for (Map.Entry<Path, ImageReference> request : requests) {
+            PreparedImage image = prepared.get(request.getKey());
+            for (Blob blob : image.blobs()) {
+                shared.computeIfAbsent(image.dest().getRegistry() + "@" + blob.digest(),
+                        key -> new SharedBlob(image.dest().getRegistry(), blob, new LinkedHashMap<>()))
+                    .repositories().putIfAbsent(image.dest().getRepository(), image.credentials());
+            }
+        }
+        log.info("Pushing {} images with {} distinct blobs", requests.size(), shared.size());
+
+        BatchCounters counters = new BatchCounters();
+        List<SharedBlob> blobs = new ArrayList<>(shared.values());
+        // Largest first, so a big base layer does not start last and hold up the batch
+        blobs.sort(Comparator.comparingLong((SharedBlob blob) -> blob.blob().entry().size()).reversed());
+        ParallelWorkers.forEach(blobs, parallelism, executor, blob -> uploadShared(blob, counters));
+
+        Map<Path, String> digests = new ConcurrentHashMap<>();
+        ParallelWorkers.forEach(requests, parallelism, executor, request ->
+            digests.put(request.getKey(), putManifest(prepared.get(request.getKey()))));
+        Map<Path, String> ordered = new LinkedHashMap<>();
+        requests.forEach(request -> ordered.put(request.getKey(), digests.get(request.getKey())));
+        return new BatchPushResult(ordered, counters.uploaded.get(), counters.mounted.get(), counters.skipped.get(),
+            counters.bytes.sum());
+    }
+
+    private void uploadShared(SharedBlob shared, BatchCounters counters) throws IOException {
+        Blob blob = shared.blob();
+        Iterator<Map.Entry<String, String[]>> repositories = shared.repositories().entrySet().iterator();
+        Map.Entry<String, String[]> first = repositories.next();
+        try (FileChannel channel = FileChannel.open(blob.tar(), StandardOpenOption.READ)) {
+            upload(shared.registry(), first.getKey(), blob, channel, first.getValue(), counters);
+            while (repositories.hasNext()) {
+                Map.Entry<String, String[]> next = repositories.next();
+                Optional<String> location = registryApi.startUpload(shared.registry(), next.getKey(), blob.digest(),
+                    first.getKey(), next.getValue());
+                if (location.isEmpty()) {
+                    counters.mounted.incrementAndGet();
+                } else {
+                    // The registry refused the mount; the session it opened instead is left to expire
+                    upload(shared.registry(), next.getKey(), blob, channel, next.getValue(), counters);
+                }
+            }
+        }
+    }
+
+    private void upload(String registry, String repository, Blob blob, FileChannel channel, String[] credentials,
+                        BatchCounters counters) throws IOException {
+        long sent = blobTransfer.upload(registry, repository, blob.digest(), channel, blob.entry().offset(),
+            blob.entry().size(), credentials);
+        if (sent > 0) {
+            counters.uploaded.incrementAndGet();
+            counters.bytes.add(sent);
+        } else {
+            counters.skipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Index a tar and work out the blobs and manifest of the image it holds, without uploading anything
+     */
+    private PreparedImage prepare(Path tar, ImageReference dest, String[] credentials) throws IOException {
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+            TarIndex index = TarIndex.read(channel);
+            TarIndex.Entry manifestEntry = index.get(ImageExporter.MANIFEST_JSON)
+                .orElseThrow(() -> new IOException("No " + ImageExporter.MANIFEST_JSON + " in " + tar));
+            List<DockerTarManifest> images = JsonTemplateMapper.readListOfJson(
+                new String(index.read(channel, manifestEntry), StandardCharsets.UTF_8), DockerTarManifest.class);
+            if (images.isEmpty()) {
+                throw new IOException("No image in " + tar);
+            }
+            if (images.size() > 1) {
+                log.warn("{} holds {} images, pushing the first one", tar, images.size());
+            }
+            DockerTarManifest image = images.get(0);
+
+            TarIndex.Entry configEntry = entry(index, image.getConfig(), tar);
+            List<Blob> blobs = new ArrayList<>();
+            String configDigest = Digests.sha256(index.read(channel, configEntry));
+            blobs.add(new Blob(tar, configEntry, configDigest));
+            List<Compression> compressions = new ArrayList<>();
+            for (String name : image.getLayers()) {
+                TarIndex.Entry entry = entry(index, name, tar);
+                Matcher matcher = DIGEST_NAME.matcher(entry.name());
+                blobs.add(new Blob(tar, entry, matcher.matches() ? "sha256:" + matcher.group(1)
+                    : Digests.sha256Mapped(channel, entry.offset(), entry.size())));
+                compressions.add(compression(channel, entry));
+            }
+            // Docker manifests cannot describe zstd layers, so such images are pushed as OCI
+            boolean oci = compressions.contains(Compression.ZSTD);
+            List<Descriptor> layers = new ArrayList<>();
+            for (int i = 0; i < compressions.size(); i++) {
+                Blob blob = blobs.get(i + 1);
+                Descriptor layer = new Descriptor();
+                layer.setMediaType(mediaType(compressions.get(i), oci));
+                layer.setSize(blob.entry().size());
+                layer.setDigest(blob.digest());
+                layers.add(layer);
+            }
+            Descriptor config = new Descriptor();
+            config.setMediaType(oci ? OCI_CONFIG_MEDIA_TYPE : CONFIG_MEDIA_TYPE);
+            config.setSize(configEntry.size());
+            config.setDigest(configDigest);
+
+            ManifestResp manifest = new ManifestResp();
+            manifest.setSchemaVersion(2);
+            manifest.setMediaType(oci ? RawManifest.OCI_MANIFEST : RawManifest.DOCKER_MANIFEST);
+            manifest.setConfig(config);
+            manifest.setLayers(layers);
+            return new PreparedImage(tar, dest, credentials, blobs, manifest);
+        }
+    }
+
+    private String putManifest(PreparedImage image) throws IOException {
+        ManifestResp manifest = image.manifest();
+        ImageReference dest = image.dest();
+        byte[] content = JsonTemplateMapper.toByteArray(manifest);
+        String digest = registryApi.putManifest(dest.getRegistry(), dest.getRepository(), dest.getQualifier(),
+            new RawManifest(manifest.getMediaType(), Digests.sha256(content), content), image.credentials());
+        log.info("Pushed {} ({} layers) as {} with digest {}", image.tar(), manifest.getLayers().size(), dest, digest);
+        return digest;
+    }
+
+    private record Blob(Path tar, TarIndex.Entry entry, String digest) {
+    }
+
+    private record PreparedImage(Path tar, ImageReference dest, String[] credentials, List<Blob> blobs,
+                                 ManifestResp manifest) {
+    }
+
+    /**
+     * A blob of a batch and the repositories of its registry needing it, each with its credentials
+     */
+    private record SharedBlob(String registry, Blob blob, Map<String, String[]> repositories) {
+    }
+
+    private static class BatchCounters {
+        private final AtomicInteger uploaded = new AtomicInteger();
+        private final AtomicInteger mounted = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    enum Compression {
+        GZIP, ZSTD, NONE
+    }
+
+    private static TarIndex.Entry entry(TarIndex index, String name, Path tar) throws IOException {
+        return index.get(name).orElseThrow(() -> new IOException("Missing entry " + name + " in " + tar));
+    }
+
+    static Compression compression(FileChannel channel, TarIndex.Entry entry) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate((int) Math.min(4, entry.size()));
+        channel.read(magic, entry.offset());
+        byte[] bytes = magic.array();
+        if (bytes.length >= 2 && (bytes[0] & 0xff) == 0x1f && (bytes[1] & 0xff) == 0x8b) {
+            return Compression.GZIP;
+        }
+        if (bytes.length == 4 && (bytes[0] & 0xff) == 0x28 && (bytes[1] & 0xff) == 0xb5
+            && (bytes[2] & 0xff) == 0x2f && (bytes[3] & 0xff) == 0xfd) {
+            return Compression.ZSTD;
+        }
+        return Compression.NONE;
+    }
+
+    private static String mediaType(Compression compression, boolean oci) {
+        switch (compression) {
+            case GZIP:
+                return oci ? OCI_GZIP_LAYER : GZIP_LAYER;
+            case ZSTD:
+                return OCI_ZSTD_LAYER;
+            default:
+                return oci ? OCI_TAR_LAYER : TAR_LAYER;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.ya_b.registry.client.tar;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One 512-byte tar header block. Understands ustar names with prefix, octal and base-256 sizes; GNU long names
+ * ({@code L}) and pax records ({@code x}) are entries of their own whose data names the next entry, see
+ * {@link #parsePax(byte[])}.
+ *
+ * @param type     type flag, {@code '0'} (or NUL) for a regular file, {@code '5'} for a directory, {@code '2'} for a
+ *                 symbolic link, {@code '1'} for a hard link
+ * @param linkName target of a link, empty otherwise
+ */
+public record TarHeader(String name, long size, char type, String linkName) {
+
+    public static final int BLOCK = 512;
+
+    public static TarHeader parse(byte[] block) {
+        String name = trim(Arrays.copyOfRange(block, 0, 100));
+        String prefix = trim(Arrays.copyOfRange(block, 345, 500));
+        return new TarHeader(prefix.isEmpty() ? name : prefix + "/" + name, size(block), (char) block[156],
+            trim(Arrays.copyOfRange(block, 157, 257)));
+    }
+
+    /**
+     * Whether {@code block} is all zeros, which marks the end of the archive
+     */
+    public static boolean isEnd(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isFile() {
+        return type == '0' || type == 0;
+    }
+
+    /**
+     * Size of the entry data rounded up to whole blocks, the distance from the end of this header to the next one
+     */
+    public long paddedSize() {
+        return (size + BLOCK - 1) / BLOCK * BLOCK;
+    }
+
+    /**
+     * Parse the data of a pax header, records of {@code "<length> <key>=<value>\n"}
+     */
+    public static Map<String, String> parsePax(byte[] records) {
+        // The length counts the whole record
+        Map<String, String> values = new LinkedHashMap<>();
+        int position = 0;
+        while (position < records.length) {
+            int space = position;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            if (space == records.length) {
+                break;
+            }
+            int length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.US_ASCII));
+            String record = new String(records, space + 1, length - (space - position) - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) {
+                values.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            position += length;
+        }
+        return values;
+    }
+
+    /**
+     * A NUL terminated field, or the data of a GNU long name entry
+     */
+    public static String trim(byte[] field) {
+        int end = 0;
+        while (end < field.length && field[end] != 0) {
+            end++;
+        }
+        return new String(field, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static long size(byte[] block) {
+        if ((block[124] & 0x80) != 0) {
+            long size = 0;
+            for (int i = 128; i < 136; i++) {
+                size = (size << 8) | (block[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = trim(Arrays.copyOfRange(block, 124, 136)).trim();
+        return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.ya_b.registry.client.tar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Offsets of the regular files in a tar, found by walking its headers only; entry data is never read, so
+ * indexing a multi-GB image takes a few positional reads. Understands ustar, GNU long names and base-256 sizes,
+ * and pax {@code path}/{@code size} records, see {@link TarHeader}.
+ */
+class TarIndex {
+
+    record Entry(String name, long offset, long size) {
+    }
+
+    private final Map<String, Entry> entries;
+
+    private TarIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    static TarIndex read(FileChannel channel) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        ByteBuffer header = ByteBuffer.allocate(TarOutput.BLOCK);
+        long position = 0;
+        String longName = null;
+        Map<String, String> pax = Map.of();
+        // Archives may lack the end-of-archive marker
+        while (position + TarOutput.BLOCK <= channel.size()) {
+            header.clear();
+            readFully(channel, header, position);
+            if (TarHeader.isEnd(header.array())) {
+                break;
+            }
+            TarHeader tarHeader = TarHeader.parse(header.array());
+            long size = tarHeader.size();
+            long data = position + TarOutput.BLOCK;
+            if (tarHeader.type() == 'L') {
+                longName = TarHeader.trim(readBytes(channel, data, (int) size));
+            } else if (tarHeader.type() == 'x') {
+                pax = TarHeader.parsePax(readBytes(channel, data, (int) size));
+            } else {
+                String name = pax.getOrDefault("path", longName != null ? longName : tarHeader.name());
+                if (pax.containsKey("size")) {
+                    size = Long.parseLong(pax.get("size"));
+                }
+                if (tarHeader.isFile()) {
+                    entries.put(normalize(name), new Entry(normalize(name), data, size));
+                }
+                longName = null;
+                pax = Map.of();
+            }
+            position = data + (size + TarOutput.BLOCK - 1) / TarOutput.BLOCK * TarOutput.BLOCK;
+        }
+        return new TarIndex(entries);
+    }
+
+    Optional<Entry> get(String name) {
+        return Optional.ofNullable(entries.get(normalize(name)));
+    }
+
+    Map<String, Entry> entries() {
+        return entries;
+    }
+
+    byte[] read(FileChannel channel, Entry entry) throws IOException {
+        if (entry.size() > Integer.MAX_VALUE) {
+            throw new IOException("Tar entry too large to read into memory: " + entry.name());
+        }
+        return readBytes(channel, entry.offset(), (int) entry.size());
+    }
+
+    private static String normalize(String name) {
+        return name.startsWith("./") ? name.substring(2) : name;
+    }
+
+    private static byte[] readBytes(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new IOException("Truncated tar archive");
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.ya_b.registry.client.tar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal streaming tar writer: ustar headers for regular files, entry data copied straight into the target
+ * channel. Entries larger than the 8 GiB ustar limit use the GNU base-256 size encoding.
+ * <p>
+ * When the target is a {@link FileChannel} the data is moved with {@link FileChannel#transferFrom} and
+ * {@link FileChannel#transferTo}, letting the kernel copy it without passing through the Java heap.
+ */
+class TarOutput {
+
+    static final int BLOCK = 512;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private final WritableByteChannel out;
+    private long remaining;
+    private long entrySize;
+
+    TarOutput(WritableByteChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Start an entry; exactly {@code size} bytes of data must follow
+     */
+    void putEntry(String name, long size) throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException("Previous entry is " + remaining + " bytes short");
+        }
+        writeFully(ByteBuffer.wrap(header(name, size)));
+        remaining = size;
+        entrySize = size;
+    }
+
+    void write(byte[] data) throws IOException {
+        checkRemaining(data.length);
+        writeFully(ByteBuffer.wrap(data));
+        remaining -= data.length;
+    }
+
+    /**
+     * Copy {@code count} bytes of the current entry from a channel
+     */
+    void transferFrom(ReadableByteChannel source, long count) throws IOException {
+        checkRemaining(count);
+        long copied = 0;
+        if (out instanceof FileChannel file) {
+            long position = file.position();
+            while (copied < count) {
+                long moved = file.transferFrom(source, position + copied, count - copied);
+                if (moved <= 0) {
+                    break;
+                }
+                copied += moved;
+            }
+            file.position(position + copied);
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (copied < count) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, count - copied));
+                int read = source.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                buffer.flip();
+                writeFully(buffer);
+                copied += read;
+            }
+        }
+        remaining -= copied;
+        if (copied < count) {
+            throw new IOException("Entry data ended after " + copied + " of " + count + " bytes");
+        }
+    }
+
+    /**
+     * Copy {@code count} bytes of the current entry from a file
+     */
+    void transferFrom(FileChannel source, long position, long count) throws IOException {
+        checkRemaining(count);
+        long copied = 0;
+        while (copied < count) {
+            long moved = source.transferTo(position + copied, count - copied, out);
+            if (moved <= 0) {
+                throw new IOException("File ended after " + copied + " of " + count + " bytes");
+            }
+            copied += moved;
+        }
+        remaining -= count;
+    }
+
+    /**
+     * Pad the finished entry to the block size
+     */
+    void closeEntry() throws IOException {
+        if (remaining != 0) {
+            throw new IOException("Entry is " + remaining + " bytes short");
+        }
+        int padding = (int) ((BLOCK - entrySize % BLOCK) % BLOCK);
+        writeFully(ByteBuffer.allocate(padding));
+        entrySize = 0;
+    }
+
+    /**
+     * Write the end-of-archive marker; the target channel is left open
+     */
+    void finish() throws IOException {
+        writeFully(ByteBuffer.allocate(2 * BLOCK));
+    }
+
+    private void checkRemaining(long count) {
+        if (count > remaining) {
+            throw new IllegalStateException("Writing " + count + " bytes past the end of the entry");
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    static byte[] header(String name, long size) {
+        byte[] header = new byte[BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw new IllegalArgumentException("Tar entry name too long: " + name);
+        }
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        if (size <= MAX_OCTAL_SIZE) {
+            octal(header, 124, 12, size);
+        } else {
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        octal(header, 136, 12, 0);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // The checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Zero-padded octal number followed by a NUL
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int pad = length - 1 - digits.length();
+        for (int i = 0; i < pad; i++) {
+            header[offset + i] = '0';
+        }
+        System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, offset + pad, digits.length());
+        header[offset + length - 1] = 0;
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.ya_b.registry.client.tar;
+
+import java.util.List;
+
+/**
+ * Outcome of verifying an image tar whose blobs all matched.
+ *
+ * @param verified number of entries checked against their digest
+ * @param bytes    total size of the checked entries
+ * @param unchecked entries with no digest to check against, like a {@code config.json} or compressed layers not
+ *                 named after their digest
+ */
+public record TarVerification(int verified, long bytes, List<String> unchecked) {
+}
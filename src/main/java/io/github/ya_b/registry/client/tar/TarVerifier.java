@@ -0,0 +1,137 @@
+package io.github.ya_b.registry.client.tar;
+
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.http.Digests;
+import io.github.ya_b.registry.client.http.resp.ImageConfig;
+import io.github.ya_b.registry.client.transfer.ParallelWorkers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the blobs of an existing {@code docker save} style tar against their digests without pushing it.
+ * <p>
+ * Entries named after their digest (layers, {@code <hex>.json} configurations and {@code blobs/sha256/<hex>}) are
+ * checked against the name;
+ * uncompressed layers that are not are checked against the {@code rootfs.diff_ids} of the image configuration.
+ * Each entry is hashed in place through read-only memory mappings of the tar, and entries are hashed in parallel,
+ * largest first, since a single SHA-256 cannot be split across threads. Every entry is checked before failing, so
+ * the error lists all corrupt entries at once.
+ */
+@Slf4j
+public class TarVerifier {
+
+    // <hex>.json of the legacy layout, blobs/sha256/<hex> of the OCI layout Docker 25 writes
+    private static final Pattern CONFIG_NAME = Pattern.compile("(?:.*/)?([0-9a-f]{64})(?:\\.json)?");
+
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * @param executor    executor lending threads for hashing several entries at once
+     * @param parallelism number of entries hashed at once, the calling thread included
+     */
+    public TarVerifier(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @throws IOException when an entry does not match its digest, or the tar cannot be read
+     */
+    public TarVerification verify(Path tar) throws IOException {
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+            TarIndex index = TarIndex.read(channel);
+            TarIndex.Entry manifestEntry = index.get(ImageExporter.MANIFEST_JSON)
+                .orElseThrow(() -> new IOException("No " + ImageExporter.MANIFEST_JSON + " in " + tar));
+            List<DockerTarManifest> images = JsonTemplateMapper.readListOfJson(
+                new String(index.read(channel, manifestEntry), StandardCharsets.UTF_8), DockerTarManifest.class);
+            if (images.isEmpty()) {
+                throw new IOException("No image in " + tar);
+            }
+
+            // Entry name to expected digest, null when there is nothing to check it against
+            Map<String, String> expected = new LinkedHashMap<>();
+            for (DockerTarManifest image : images) {
+                TarIndex.Entry configEntry = entry(index, image.getConfig(), tar);
+                Matcher configName = CONFIG_NAME.matcher(configEntry.name());
+                expected.putIfAbsent(configEntry.name(), configName.matches() ? "sha256:" + configName.group(1) : null);
+                List<String> diffIds = diffIds(channel, index, configEntry);
+                for (int i = 0; i < image.getLayers().size(); i++) {
+                    TarIndex.Entry entry = entry(index, image.getLayers().get(i), tar);
+                    Matcher layerName = ImageImporter.DIGEST_NAME.matcher(entry.name());
+                    String digest = null;
+                    if (layerName.matches()) {
+                        digest = "sha256:" + layerName.group(1);
+                    } else if (i < diffIds.size()
+                        && ImageImporter.compression(channel, entry) == ImageImporter.Compression.NONE) {
+                        digest = diffIds.get(i);
+                    }
+                    // A layer named after its digest wins over a diff_id of another image sharing it
+                    if (digest != null || !expected.containsKey(entry.name())) {
+                        expected.put(entry.name(), digest);
+                    }
+                }
+            }
+
+            List<TarIndex.Entry> checked = new ArrayList<>();
+            List<String> unchecked = new ArrayList<>();
+            expected.forEach((name, digest) -> {
+                if (digest == null) {
+                    unchecked.add(name);
+                } else {
+                    checked.add(index.get(name).orElseThrow());
+                }
+            });
+            checked.sort(Comparator.comparingLong(TarIndex.Entry::size).reversed());
+
+            LongAdder bytes = new LongAdder();
+            ConcurrentLinkedQueue<String> mismatches = new ConcurrentLinkedQueue<>();
+            ParallelWorkers.forEach(checked, parallelism, executor, entry -> {
+                String digest = expected.get(entry.name());
+                String actual = Digests.sha256Mapped(channel, entry.offset(), entry.size());
+                if (!actual.equals(digest)) {
+                    mismatches.add(entry.name() + ": expected " + digest + " but got " + actual);
+                }
+                bytes.add(entry.size());
+            });
+            if (!mismatches.isEmpty()) {
+                throw new IOException("Digest mismatch in " + tar + ": " + String.join(", ", mismatches));
+            }
+            log.debug("Verified {} entries ({} bytes) of {}, {} unchecked", checked.size(), bytes.sum(), tar, unchecked.size());
+            return new TarVerification(checked.size(), bytes.sum(), unchecked);
+        }
+    }
+
+    private static List<String> diffIds(FileChannel channel, TarIndex index, TarIndex.Entry configEntry) throws IOException {
+        try {
+            ImageConfig config = JsonTemplateMapper.readJson(
+                new String(index.read(channel, configEntry), StandardCharsets.UTF_8), ImageConfig.class);
+            if (config.getRootfs() != null && config.getRootfs().getDiffIds() != null) {
+                return config.getRootfs().getDiffIds();
+            }
+        } catch (IOException e) {
+            // Not a readable configuration; its layers can still be checked by name
+            log.debug("Could not read image configuration {}: {}", configEntry.name(), e.getMessage());
+        }
+        return List.of();
+    }
+
+    private static TarIndex.Entry entry(TarIndex index, String name, Path tar) throws IOException {
+        return index.get(name).orElseThrow(() -> new IOException("Missing entry " + name + " in " + tar));
+    }
+}
@@ -0,0 +1,332 @@
+package io.github.ya_b.registry.client.transfer;
+
+import io.github.ya_b.registry.client.cache.BlobCache;
+import io.github.ya_b.registry.client.http.Digests;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+import io.github.ya_b.registry.client.metrics.Operation;
+import io.github.ya_b.registry.client.metrics.OperationTimer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Moves single blobs between a registry and the local disk in chunks, resuming interrupted transfers.
+ * <p>
+ * Downloads split the blob into ranged GETs fetched in parallel and written at their offsets into
+ * {@code <target>.part}; finished chunks are recorded in {@code <target>.part.state}, so a failed download picks up
+ * with the missing chunks only. Chunks are hashed as they land, in order, so the digest is checked the moment the
+ * last one is written and before the file is moved into place.
+ * <p>
+ * Uploads use the registry's chunked upload protocol, sending {@code PATCH} requests in order. The upload session
+ * and acknowledged offset are kept in {@link TransferConfig#getStateDirectory()}; a retried upload asks the registry
+ * how far the session got and continues from there.
+ */
+@Slf4j
+public class BlobTransfer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RegistryApi registryApi;
+    private final Executor executor;
+    private final TransferConfig config;
+    private final BlobCache blobCache;
+
+    /**
+     * @param executor executor lending threads for parallel chunk downloads
+     */
+    public BlobTransfer(RegistryApi registryApi, Executor executor, TransferConfig config) {
+        this(registryApi, executor, config, null);
+    }
+
+    /**
+     * @param blobCache cache downloads are served from and stored into, or null
+     */
+    public BlobTransfer(RegistryApi registryApi, Executor executor, TransferConfig config, BlobCache blobCache) {
+        this.registryApi = registryApi;
+        this.executor = executor;
+        this.config = config;
+        this.blobCache = blobCache;
+    }
+
+    public TransferConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * The cache downloads go through, or null
+     */
+    public BlobCache getBlobCache() {
+        return blobCache;
+    }
+
+    /**
+     * Download a blob to {@code target}, resuming a previous attempt when its progress is still on disk. With a
+     * {@link BlobCache} the blob is taken from the cache when present and otherwise downloaded into it first.
+     */
+    public void download(String registry, String repository, String digest, Path target, String[] credentials) throws IOException {
+        if (blobCache == null) {
+            fetch(registry, repository, digest, target, credentials);
+            return;
+        }
+        // The download verifies the digest already, the cache need not read the blob again
+        Path cached = blobCache.computeIfAbsent(digest,
+            loadTarget -> fetch(registry, repository, digest, loadTarget, credentials), true);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path copy = target.resolveSibling(target.getFileName() + ".part");
+        Files.copy(cached, copy, StandardCopyOption.REPLACE_EXISTING);
+        move(copy, target);
+    }
+
+    /**
+     * Download a blob through the cache
+     *
+     * @return the cached file
+     * @throws IllegalStateException when this transfer has no cache
+     */
+    public Path downloadToCache(String registry, String repository, String digest, String[] credentials) throws IOException {
+        if (blobCache == null) {
+            throw new IllegalStateException("No blob cache configured");
+        }
+        return blobCache.computeIfAbsent(digest,
+            loadTarget -> fetch(registry, repository, digest, loadTarget, credentials), true);
+    }
+
+    /**
+     * Stream a blob once from start to end, for a consumer that must not stage it. A connection that breaks off
+     * is resumed with a ranged GET from the first missing byte; unlike {@link #download}, chunks are not fetched
+     * in parallel and progress does not survive a failed call. The caller checks the digest.
+     *
+     * @param size size of the blob as the manifest states it
+     */
+    public InputStream openStream(String registry, String repository, String digest, long size, String[] credentials) throws IOException {
+        return new ResumableBlobStream(registryApi, registry, repository, digest, size, credentials);
+    }
+
+    private void fetch(String registry, String repository, String digest, Path target, String[] credentials) throws IOException {
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.BLOB_DOWNLOAD, registry)) {
+            timer.bytes(fetchChunks(registry, repository, digest, target, credentials)).success();
+        }
+    }
+
+    /**
+     * @return the size of the blob
+     */
+    private long fetchChunks(String registry, String repository, String digest, Path target, String[] credentials) throws IOException {
+        long size = registryApi.blobSize(registry, repository, digest, credentials);
+        long chunkSize = config.getChunkSize();
+        int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        TransferState state = TransferState.load(target.resolveSibling(target.getFileName() + ".part.state"));
+
+        BitSet done = new BitSet(chunks);
+        if (Files.exists(part) && state.matches("digest", digest) && state.matches("size", size)
+            && state.matches("chunkSize", chunkSize)) {
+            done = parseChunks(state.get("done"));
+            log.info("Resuming download of {} with {}/{} chunks already on disk", digest, done.cardinality(), chunks);
+        } else {
+            Files.deleteIfExists(part);
+            state.reset().set("digest", digest).set("size", size).set("chunkSize", chunkSize).set("done", "").save();
+        }
+
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        String actual;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            ChunkDigest chunkDigest = new ChunkDigest(channel, size, chunkSize);
+            List<Integer> pending = new ArrayList<>();
+            for (int chunk = done.nextClearBit(0); chunk < chunks; chunk = done.nextClearBit(chunk + 1)) {
+                pending.add(chunk);
+            }
+            // Chunks left by a previous attempt are hashed from disk first
+            for (int chunk = done.nextSetBit(0); chunk >= 0 && chunk < chunks; chunk = done.nextSetBit(chunk + 1)) {
+                chunkDigest.completed(chunk, chunk + 1);
+            }
+            BitSet completed = done;
+            ParallelWorkers.IOConsumer<Integer> fetch = chunk -> {
+                long start = chunk * chunkSize;
+                long end = Math.min(size, start + chunkSize) - 1;
+                boolean whole = downloadRange(registry, repository, digest, start, end, channel, credentials);
+                synchronized (state) {
+                    if (whole) {
+                        completed.set(0, chunks);
+                    } else {
+                        completed.set(chunk);
+                    }
+                    state.set("done", formatChunks(completed)).save();
+                }
+                chunkDigest.completed(whole ? 0 : chunk, whole ? chunks : chunk + 1);
+            };
+            // The first chunk alone tells whether the registry honours ranges before going parallel
+            if (!pending.isEmpty()) {
+                fetch.accept(pending.remove(0));
+            }
+            if (completed.cardinality() < chunks) {
+                ParallelWorkers.forEach(pending, config.getParallelism(), executor, fetch);
+            }
+            channel.force(true);
+            actual = chunkDigest.digest();
+        }
+
+        if (!actual.equals(digest)) {
+            Files.deleteIfExists(part);
+            state.delete();
+            throw new IOException("Digest mismatch for downloaded blob, expected " + digest + " but got " + actual);
+        }
+        move(part, target);
+        state.delete();
+        log.debug("Downloaded blob {} ({} bytes) to {}", digest, size, target);
+        return size;
+    }
+
+    /**
+     * Write one range of the blob at its offset
+     *
+     * @return true when the response contained the whole blob instead of the range
+     */
+    private boolean downloadRange(String registry, String repository, String digest, long start, long end,
+                                  FileChannel channel, String[] credentials) throws IOException {
+        try (RegistryResponse response = registryApi.getBlobRange(registry, repository, digest, start, end, credentials)) {
+            boolean whole = response.getStatusCode() == 200;
+            long position = whole ? 0 : start;
+            long expected = whole ? -1 : end - start + 1;
+            long written = 0;
+            try (InputStream in = response.getBody()) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        written += channel.write(data, position + written);
+                    }
+                }
+            }
+            if (expected >= 0 && written != expected) {
+                throw new IOException("Short read of blob " + digest + " range " + start + "-" + end + ": " + written + " bytes");
+            }
+            return whole;
+        }
+    }
+
+    /**
+     * Upload a file as a blob, computing its digest first
+     *
+     * @return the digest of the blob
+     */
+    public String upload(String registry, String repository, Path source, String[] credentials) throws IOException {
+        String digest = Digests.sha256(source);
+        upload(registry, repository, digest, source, credentials);
+        return digest;
+    }
+
+    /**
+     * Upload a file as the blob {@code digest}, skipping it when the registry already has it and resuming a
+     * previous attempt when the registry still knows its session
+     */
+    public void upload(String registry, String repository, String digest, Path source, String[] credentials) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            upload(registry, repository, digest, channel, 0, channel.size(), credentials);
+        }
+    }
+
+    /**
+     * Upload a region of an open file as the blob {@code digest}, like {@link #upload(String, String, String, Path, String[])};
+     * the region is read in place, so a blob inside a larger file (a layer inside an image tar) needs no copy.
+     * Regions of one channel may be uploaded concurrently.
+     *
+     * @return the number of bytes sent, 0 when the registry already had the blob
+     */
+    public long upload(String registry, String repository, String digest, FileChannel source, long offset, long size,
+                       String[] credentials) throws IOException {
+        try (OperationTimer timer = OperationTimer.start(registryApi.metrics(), Operation.BLOB_UPLOAD, registry)) {
+            long sent = uploadRegion(registry, repository, digest, source, offset, size, credentials);
+            timer.bytes(sent).success();
+            return sent;
+        }
+    }
+
+    /**
+     * @return the number of bytes sent, 0 when the registry already had the blob
+     */
+    private long uploadRegion(String registry, String repository, String digest, FileChannel source, long offset, long size,
+                              String[] credentials) throws IOException {
+        if (registryApi.blobExists(registry, repository, digest, credentials)) {
+            log.debug("Blob {} already exists in {}/{}", digest, registry, repository);
+            return 0;
+        }
+        TransferState state = TransferState.load(config.getStateDirectory().resolve(
+            Digests.sha256((registry + "/" + repository + "@" + digest).getBytes(StandardCharsets.UTF_8))
+                .substring("sha256:".length()) + ".upload"));
+
+        RegistryApi.UploadSession session = null;
+        if (state.get("location") != null) {
+            Optional<RegistryApi.UploadSession> status = registryApi.uploadStatus(registry, repository, state.get("location"), credentials);
+            if (status.isPresent()) {
+                session = status.get();
+                log.info("Resuming upload of {} at offset {}", digest, session.offset());
+            }
+        }
+        if (session == null) {
+            session = new RegistryApi.UploadSession(registryApi.startUpload(registry, repository, credentials), 0);
+            state.reset().set("location", session.location()).save();
+        }
+
+        // The region is hashed chunk by chunk as it is sent, so a source that does not match its digest is never committed
+        MessageDigest hash = Digests.newSha256();
+        Digests.update(hash, source, offset, session.offset());
+        long sent = size - session.offset();
+        while (session.offset() < size) {
+            long chunkStart = session.offset();
+            long length = Math.min(config.getChunkSize(), size - chunkStart);
+            session = registryApi.uploadChunk(registry, repository, session.location(), chunkStart,
+                new FileRegionEntity(source, offset + chunkStart, length), credentials);
+            state.set("location", session.location()).save();
+            Digests.update(hash, source, offset + chunkStart, session.offset() - chunkStart);
+        }
+        String actual = Digests.format(hash);
+        if (!actual.equals(digest)) {
+            throw new IOException("Digest mismatch for uploaded blob, expected " + digest + " but got " + actual);
+        }
+        registryApi.completeUpload(registry, repository, session.location(), digest, null, credentials);
+        state.delete();
+        log.debug("Uploaded blob {} ({} bytes) to {}/{}", digest, size, registry, repository);
+        return sent;
+    }
+
+    private static BitSet parseChunks(String value) {
+        BitSet chunks = new BitSet();
+        if (value != null && !value.isEmpty()) {
+            for (String chunk : value.split(",")) {
+                chunks.set(Integer.parseInt(chunk.trim()));
+            }
+        }
+        return chunks;
+    }
+
+    private static String formatChunks(BitSet chunks) {
+        return chunks.stream().mapToObj(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.ya_b.registry.client.transfer;
+
+import io.github.ya_b.registry.client.http.Digests;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.BitSet;
+
+/**
+ * Digest of a file written in chunks that complete in any order. Each completed chunk may extend the contiguous
+ * prefix hashed so far; the thread completing it hashes the new part right away, while it is still in the page
+ * cache, so the digest is ready when the last chunk lands instead of after a second pass over the file. One
+ * thread hashes at a time, the others just record their chunk and carry on.
+ */
+class ChunkDigest {
+
+    private final FileChannel channel;
+    private final long size;
+    private final long chunkSize;
+    private final MessageDigest digest = Digests.newSha256();
+    private final BitSet completed = new BitSet();
+    private int hashedChunks;
+    private boolean hashing;
+    private IOException failure;
+
+    ChunkDigest(FileChannel channel, long size, long chunkSize) {
+        this.channel = channel;
+        this.size = size;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Record chunks {@code from} (inclusive) to {@code to} (exclusive) as written
+     */
+    void completed(int from, int to) throws IOException {
+        synchronized (this) {
+            completed.set(from, to);
+            if (hashing || failure != null) {
+                return;
+            }
+            hashing = true;
+        }
+        while (true) {
+            long start;
+            long end;
+            synchronized (this) {
+                int next = completed.nextClearBit(hashedChunks);
+                if (next == hashedChunks) {
+                    hashing = false;
+                    return;
+                }
+                start = hashedChunks * chunkSize;
+                end = Math.min(size, next * chunkSize);
+                hashedChunks = next;
+            }
+            try {
+                Digests.update(digest, channel, start, end - start);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    hashing = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The digest of the whole file; every chunk must have been completed
+     */
+    synchronized String digest() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to hash downloaded chunks", failure);
+        }
+        if (hashing || hashedChunks * chunkSize < size) {
+            throw new IOException("Digest requested before every chunk was written");
+        }
+        return Digests.format(digest);
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.ya_b.registry.client.transfer;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Request body reading a region of a file with positional reads, so several regions of one channel can be sent
+ * concurrently and a region can be resent on retry.
+ */
+class FileRegionEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+
+    FileRegionEntity(FileChannel channel, long offset, long length) {
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        setContentType(ContentType.APPLICATION_OCTET_STREAM.toString());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new InputStream() {
+            private long position = offset;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long left = offset + length - position;
+                if (left <= 0) {
+                    return -1;
+                }
+                int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, left)), position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new IOException("File ended before the expected " + length + " bytes from " + offset);
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.ya_b.registry.client.transfer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded parallel loop for blocking I/O work.
+ */
+public final class ParallelWorkers {
+
+    @FunctionalInterface
+    public interface IOConsumer<T> {
+        void accept(T value) throws IOException;
+    }
+
+    private ParallelWorkers() {
+    }
+
+    /**
+     * Run {@code action} for every item with up to {@code parallelism} workers, one of them being the calling
+     * thread; the others are borrowed from {@code executor}, so a saturated executor only reduces parallelism and
+     * never blocks progress. Stops taking new items at the first failure and rethrows it once running items are
+     * done.
+     */
+    public static <T> void forEach(Collection<T> items, int parallelism, Executor executor, IOConsumer<T> action) throws IOException {
+        Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        CountDownLatch remaining = new CountDownLatch(items.size());
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            for (T item = queue.poll(); item != null; item = queue.poll()) {
+                try {
+                    if (failure.get() == null) {
+                        action.accept(item);
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, new IOException(e));
+                } finally {
+                    remaining.countDown();
+                }
+            }
+        };
+        for (int i = 1; i < Math.min(parallelism, items.size()); i++) {
+            CompletableFuture.runAsync(worker, executor);
+        }
+        worker.run();
+        try {
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for parallel transfers", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.ya_b.registry.client.transfer;
+
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.RegistryResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * A blob read once from start to end. When the connection breaks off, reading continues with a ranged GET from
+ * the first byte not yet received, so a dropped connection late in a large layer costs only the rest of it.
+ */
+@Slf4j
+class ResumableBlobStream extends InputStream {
+
+    // Consecutive failures without a byte of progress before giving up
+    private static final int MAX_RESUMES = 3;
+
+    private final RegistryApi registryApi;
+    private final String registry;
+    private final String repository;
+    private final String digest;
+    private final long size;
+    private final String[] credentials;
+
+    private RegistryResponse response;
+    private InputStream body;
+    private long position;
+    private int resumes;
+
+    ResumableBlobStream(RegistryApi registryApi, String registry, String repository, String digest, long size,
+                        String[] credentials) throws IOException {
+        this.registryApi = registryApi;
+        this.registry = registry;
+        this.repository = repository;
+        this.digest = digest;
+        this.size = size;
+        this.credentials = credentials;
+        open();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            try {
+                if (body == null) {
+                    open();
+                }
+                int read = body.read(b, off, len);
+                if (read == -1 && position < size) {
+                    throw new EOFException("Blob " + digest + " ended after " + position + " of " + size + " bytes");
+                }
+                if (read > 0) {
+                    position += read;
+                    resumes = 0;
+                }
+                return read;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                closeResponse();
+                if (++resumes > MAX_RESUMES || position >= size || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                log.debug("Resuming blob {} at byte {} of {} after: {}", digest, position, size, e.toString());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        RegistryResponse current = response;
+        response = null;
+        body = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void open() throws IOException {
+        if (position == 0) {
+            response = registryApi.getBlob(registry, repository, digest, credentials);
+            body = response.getBody();
+            return;
+        }
+        response = registryApi.getBlobRange(registry, repository, digest, position, size - 1, credentials);
+        body = response.getBody();
+        if (response.getStatusCode() == 200) {
+            // The registry ignores ranges and sends the whole blob again
+            body.skipNBytes(position);
+        }
+    }
+
+    private void closeResponse() {
+        try {
+            close();
+        } catch (IOException e) {
+            // The connection is broken already
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.ya_b.registry.client.transfer;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Chunking, parallelism and resume state location of a {@link BlobTransfer}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class TransferConfig {
+
+    /**
+     * Size of a ranged GET when downloading and of a PATCH when uploading.
+     */
+    @Builder.Default
+    private final long chunkSize = 16L * 1024 * 1024;
+
+    /**
+     * Number of ranged GETs in flight per downloaded blob. Uploads of a single blob are sequential by protocol.
+     */
+    @Builder.Default
+    private final int parallelism = 4;
+
+    /**
+     * Directory keeping the progress of interrupted uploads. Downloads keep theirs next to the target file.
+     */
+    @Builder.Default
+    private final Path stateDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "registry-client-transfers");
+
+    public static TransferConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.ya_b.registry.client.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a transfer persisted as a small properties file. Every save replaces the file atomically, so a
+ * crash leaves either the previous or the new state behind.
+ */
+class TransferState {
+
+    private final Path path;
+    private final Properties properties;
+
+    private TransferState(Path path, Properties properties) {
+        this.path = path;
+        this.properties = properties;
+    }
+
+    static TransferState load(Path path) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            } catch (IllegalArgumentException e) {
+                // Corrupt state only costs a restart of the transfer
+                properties.clear();
+            }
+        }
+        return new TransferState(path, properties);
+    }
+
+    String get(String key) {
+        return properties.getProperty(key);
+    }
+
+    TransferState set(String key, Object value) {
+        properties.setProperty(key, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Whether the state was written for this exact transfer
+     */
+    boolean matches(String key, Object value) {
+        return String.valueOf(value).equals(properties.getProperty(key));
+    }
+
+    TransferState reset() {
+        properties.clear();
+        return this;
+    }
+
+    synchronized void save() throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,361 @@
+package io.github.ya_b.registry.client.watch;
+
+import com.google.cloud.tools.jib.api.ImageReference;
+import com.google.cloud.tools.jib.api.InvalidImageReferenceException;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Turns polling of repositories and tags into a feed of {@link TagEvent}s.
+ * <p>
+ * Each poll of a repository lists its tags once and diffs the list against the last snapshot: new tags are
+ * created, missing ones deleted. A tag can also move without the list changing, which only a digest lookup
+ * reveals, so the digests looked up are limited to candidates: new tags, tags whose own check is due, and when
+ * the list of a repository changed (someone is pushing to it), its tags that have moved before, like
+ * {@code latest}. Repositories and tags back off independently, their interval
+ * growing from {@link WatchConfig#getMinInterval()} to {@link WatchConfig#getMaxInterval()} while they stay quiet
+ * and snapping back on a change, so the request rate follows the rate of change rather than the number of
+ * watched tags.
+ * <p>
+ * The snapshot is only tag to digest per repository. The first poll of a repository takes the baseline and
+ * publishes nothing. Listeners are called on the polling threads, one repository at a time.
+ */
+@Slf4j
+public class RegistryWatcher implements Closeable {
+
+    private final JibImageManager imageManager;
+    private final Function<String, String[]> credentials;
+    private final WatchConfig config;
+    private final Clock clock;
+    private final Map<String, WatchedRepository> repositories = new ConcurrentHashMap<>();
+    private final List<Consumer<TagEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean started;
+
+    private final LongAdder tagListRequests = new LongAdder();
+    private final LongAdder digestRequests = new LongAdder();
+    private final LongAdder events = new LongAdder();
+
+    /**
+     * @param credentials credentials for a registry host, may return null
+     */
+    public RegistryWatcher(JibImageManager imageManager, Function<String, String[]> credentials, WatchConfig config) {
+        this(imageManager, credentials, config, Clock.systemUTC());
+    }
+
+    RegistryWatcher(JibImageManager imageManager, Function<String, String[]> credentials, WatchConfig config, Clock clock) {
+        this.imageManager = imageManager;
+        this.credentials = credentials;
+        this.config = config;
+        this.clock = clock;
+        AtomicInteger threads = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, config.getConcurrency()), r -> {
+            Thread thread = new Thread(r, "registry-watch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Watch every tag of {@code repository}, like {@code localhost:5000/team/app}
+     */
+    public RegistryWatcher watchRepository(String repository) {
+        return watch(parse(repository), watched -> watched.allTags = true);
+    }
+
+    /**
+     * Watch one tag, like {@code localhost:5000/team/app:latest}; tags of one repository share its polls
+     */
+    public RegistryWatcher watchTag(String image) {
+        ImageReference imageRef = parse(image);
+        if (imageRef.getTag().isEmpty()) {
+            throw new IllegalArgumentException("Not a tag reference: " + image);
+        }
+        return watch(imageRef, watched -> watched.tags.add(imageRef.getTag().get()));
+    }
+
+    public RegistryWatcher addListener(Consumer<TagEvent> listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Start polling every watched repository, and those watched later, in the background
+     */
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            repositories.values().forEach(this::scheduleFirst);
+        }
+    }
+
+    /**
+     * Poll every watched repository once on the calling thread, ignoring their schedule; tags are still only
+     * looked up when they are candidates.
+     *
+     * @throws IOException the first failure, once every repository has been polled
+     */
+    public void pollNow() throws IOException {
+        IOException failure = null;
+        for (WatchedRepository watched : repositories.values()) {
+            try {
+                poll(watched);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Tags of a watched repository ({@code registry/repository}) and their digests as of the last poll
+     */
+    public Map<String, String> snapshot(String repository) {
+        WatchedRepository watched = repositories.get(key(parse(repository)));
+        if (watched == null) {
+            return Map.of();
+        }
+        synchronized (watched) {
+            Map<String, String> snapshot = new TreeMap<>();
+            watched.state.forEach((tag, state) -> snapshot.put(tag, state.digest));
+            return snapshot;
+        }
+    }
+
+    public WatchStats stats() {
+        int tags = 0;
+        for (WatchedRepository watched : repositories.values()) {
+            synchronized (watched) {
+                tags += watched.state.size();
+            }
+        }
+        return new WatchStats(repositories.size(), tags, tagListRequests.sum(), digestRequests.sum(), events.sum());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private RegistryWatcher watch(ImageReference imageRef, Consumer<WatchedRepository> configure) {
+        boolean[] created = new boolean[1];
+        WatchedRepository watched = repositories.computeIfAbsent(key(imageRef), key -> {
+            created[0] = true;
+            return new WatchedRepository(imageRef.getRegistry(), imageRef.getRepository(), config.getMinInterval());
+        });
+        synchronized (watched) {
+            configure.accept(watched);
+        }
+        // Scheduled once configured, so its first poll sees what it watches
+        if (created[0] && started) {
+            scheduleFirst(watched);
+        }
+        return this;
+    }
+
+    private void scheduleFirst(WatchedRepository watched) {
+        synchronized (watched) {
+            // start() and a new watch may both get here
+            if (watched.scheduled) {
+                return;
+            }
+            watched.scheduled = true;
+        }
+        schedule(watched, Duration.ZERO);
+    }
+
+    private void schedule(WatchedRepository watched, Duration delay) {
+        try {
+            scheduler.schedule(() -> pollAndReschedule(watched), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void pollAndReschedule(WatchedRepository watched) {
+        try {
+            poll(watched);
+        } catch (IOException e) {
+            log.warn("Failed to poll {}: {}", watched.name, e.getMessage());
+            synchronized (watched) {
+                watched.interval = backOff(watched.interval);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to poll {}", watched.name, e);
+        }
+        Duration next;
+        synchronized (watched) {
+            next = watched.interval;
+        }
+        schedule(watched, next);
+    }
+
+    private void poll(WatchedRepository watched) throws IOException {
+        List<TagEvent> changes = new ArrayList<>();
+        synchronized (watched) {
+            Instant now = clock.instant();
+            String[] creds = credentials.apply(watched.registry);
+            Set<String> listed = new LinkedHashSet<>(listTags(watched, creds));
+            if (!watched.allTags) {
+                listed.retainAll(watched.tags);
+            }
+
+            Set<String> deleted = new HashSet<>(watched.state.keySet());
+            deleted.removeAll(listed);
+            boolean listChanged = !deleted.isEmpty() || !watched.state.keySet().containsAll(listed);
+
+            for (String tag : listed) {
+                TagState state = watched.state.get(tag);
+                boolean candidate = state == null || (listChanged && state.moved) || !now.isBefore(state.nextCheck);
+                if (!candidate) {
+                    continue;
+                }
+                Optional<String> digest = lookUp(watched, tag, creds);
+                if (digest.isEmpty()) {
+                    // Deleted between the listing and the lookup
+                    if (state != null) {
+                        deleted.add(tag);
+                    }
+                } else if (state == null) {
+                    watched.state.put(tag, new TagState(digest.get(), config.getMinInterval(), now));
+                    changes.add(new TagEvent(TagEvent.Type.CREATED, watched.name, tag, null, digest.get(), now));
+                } else if (!state.digest.equals(digest.get())) {
+                    changes.add(new TagEvent(TagEvent.Type.MOVED, watched.name, tag, state.digest, digest.get(), now));
+                    state.digest = digest.get();
+                    state.moved = true;
+                    state.interval = config.getMinInterval();
+                    state.nextCheck = now.plus(state.interval);
+                } else {
+                    state.interval = backOff(state.interval);
+                    state.nextCheck = now.plus(state.interval);
+                }
+            }
+            for (String tag : deleted) {
+                TagState state = watched.state.remove(tag);
+                changes.add(new TagEvent(TagEvent.Type.DELETED, watched.name, tag, state.digest, null, now));
+            }
+
+            watched.interval = changes.isEmpty() ? backOff(watched.interval) : config.getMinInterval();
+            if (watched.baseline) {
+                watched.baseline = false;
+                log.debug("Took baseline of {}: {} tags", watched.name, watched.state.size());
+                return;
+            }
+            for (TagEvent change : changes) {
+                publish(change);
+            }
+        }
+    }
+
+    private List<String> listTags(WatchedRepository watched, String[] creds) throws IOException {
+        tagListRequests.increment();
+        try {
+            return imageManager.getTags(watched.name, creds);
+        } catch (FileNotFoundException e) {
+            // The repository is gone, and its tags with it
+            return List.of();
+        } catch (InvalidImageReferenceException e) {
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    private Optional<String> lookUp(WatchedRepository watched, String tag, String[] creds) throws IOException {
+        digestRequests.increment();
+        try {
+            return imageManager.fetchDigest(watched.name + ":" + tag, creds);
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        } catch (InvalidImageReferenceException e) {
+            throw new IOException("Invalid image reference", e);
+        }
+    }
+
+    private void publish(TagEvent event) {
+        events.increment();
+        log.debug("{} {}:{} {} -> {}", event.type(), event.repository(), event.tag(), event.previousDigest(), event.digest());
+        for (Consumer<TagEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                log.error("Watch listener failed on {}", event, e);
+            }
+        }
+    }
+
+    private Duration backOff(Duration interval) {
+        Duration next = Duration.ofMillis((long) (interval.toMillis() * config.getBackoffMultiplier()));
+        return next.compareTo(config.getMaxInterval()) > 0 ? config.getMaxInterval() : next;
+    }
+
+    private static ImageReference parse(String reference) {
+        try {
+            return ImageReference.parse(reference);
+        } catch (InvalidImageReferenceException e) {
+            throw new IllegalArgumentException("Invalid image reference: " + reference, e);
+        }
+    }
+
+    private static String key(ImageReference imageRef) {
+        return imageRef.getRegistry() + "/" + imageRef.getRepository();
+    }
+
+    private static class WatchedRepository {
+        private final String registry;
+        private final String name;
+        private final Set<String> tags = new HashSet<>();
+        private final Map<String, TagState> state = new HashMap<>();
+        private boolean allTags;
+        private boolean baseline = true;
+        private boolean scheduled;
+        private Duration interval;
+
+        WatchedRepository(String registry, String repository, Duration interval) {
+            this.registry = registry;
+            this.name = registry + "/" + repository;
+            this.interval = interval;
+        }
+    }
+
+    private static class TagState {
+        private String digest;
+        private boolean moved;
+        private Duration interval;
+        private Instant nextCheck;
+
+        TagState(String digest, Duration interval, Instant now) {
+            this.digest = digest;
+            this.interval = interval;
+            this.nextCheck = now.plus(interval);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.ya_b.registry.client.watch;
+
+import java.time.Instant;
+
+/**
+ * A change of a watched tag.
+ *
+ * @param repository     {@code registry/repository} of the tag
+ * @param previousDigest digest the tag pointed to before, null for {@link Type#CREATED}
+ * @param digest         digest the tag points to now, null for {@link Type#DELETED}
+ * @param detectedAt     time of the poll that found the change
+ */
+public record TagEvent(Type type, String repository, String tag, String previousDigest, String digest,
+                       Instant detectedAt) {
+
+    public enum Type {
+        CREATED,
+        /**
+         * The tag points to another manifest
+         */
+        MOVED,
+        DELETED
+    }
+}
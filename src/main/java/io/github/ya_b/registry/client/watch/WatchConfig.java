@@ -0,0 +1,42 @@
+package io.github.ya_b.registry.client.watch;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Polling schedule of a {@link RegistryWatcher}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class WatchConfig {
+
+    /**
+     * Interval between two polls of a repository, or two digest checks of a tag, that just changed.
+     */
+    @Builder.Default
+    private final Duration minInterval = Duration.ofSeconds(30);
+
+    /**
+     * Upper bound the interval of a quiet repository or tag backs off to.
+     */
+    @Builder.Default
+    private final Duration maxInterval = Duration.ofMinutes(10);
+
+    /**
+     * Factor the interval grows by after every poll that found no change.
+     */
+    @Builder.Default
+    private final double backoffMultiplier = 2.0;
+
+    /**
+     * Number of repositories polled at the same time.
+     */
+    @Builder.Default
+    private final int concurrency = 4;
+
+    public static WatchConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.ya_b.registry.client.watch;
+
+/**
+ * Point-in-time view of a {@link RegistryWatcher}.
+ *
+ * @param tagListRequests {@code tags/list} walks issued so far, one per repository poll
+ * @param digestRequests  digest lookups issued so far
+ */
+public record WatchStats(int repositories, int tags, long tagListRequests, long digestRequests, long events) {
+}
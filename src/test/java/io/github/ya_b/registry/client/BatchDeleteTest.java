@@ -0,0 +1,54 @@
+package io.github.ya_b.registry.client;
+
+import io.github.ya_b.registry.client.delete.DeleteResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class BatchDeleteTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void deletesEachManifestOnce() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().maxConcurrentRequestsPerHost(4).build()) {
+            List<String> images = new ArrayList<>();
+            List<String> digests = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                // Three tags per manifest
+                String digest = registry.putManifest("repo" + (i % 2), "v" + i, MANIFEST_TYPE,
+                        ("{\"n\":" + (i / 3) + "}").getBytes(StandardCharsets.UTF_8));
+                images.add(registry.getHost() + "/repo" + (i % 2) + ":v" + i);
+                digests.add(digest);
+            }
+            String byDigest = registry.getHost() + "/repo0@" + digests.get(0);
+            String missing = registry.getHost() + "/repo0:missing";
+            String invalid = "Not A Reference";
+            images.add(byDigest);
+            images.add(missing);
+            images.add(invalid);
+
+            Map<String, DeleteResult> results = client.delete(images);
+
+            Assertions.assertEquals(images.size(), results.size());
+            for (int i = 0; i < 30; i++) {
+                DeleteResult result = results.get(images.get(i));
+                Assertions.assertTrue(result.isDeleted(), result.toString());
+                Assertions.assertEquals(digests.get(i), result.digest());
+                Assertions.assertNull(registry.getManifest("repo" + (i % 2), "v" + i));
+            }
+            Assertions.assertTrue(results.get(byDigest).isDeleted());
+            Assertions.assertEquals(DeleteResult.Status.NOT_FOUND, results.get(missing).status());
+            Assertions.assertEquals(DeleteResult.Status.FAILED, results.get(invalid).status());
+
+            // 10 manifests, the tags of each spread over both repositories
+            long deletes = registry.requests().stream().filter(request -> request.method().equals("DELETE")).count();
+            Assertions.assertEquals(20, deletes);
+        }
+    }
+}
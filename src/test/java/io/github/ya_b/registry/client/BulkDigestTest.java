@@ -0,0 +1,44 @@
+package io.github.ya_b.registry.client;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+class BulkDigestTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void resolvesBatchAndReportsFailuresPerItem() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().maxConcurrentRequestsPerHost(8).build()) {
+            List<String> images = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                registry.putManifest("repo" + (i % 10), "v" + i, MANIFEST_TYPE,
+                        ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+                images.add(registry.getHost() + "/repo" + (i % 10) + ":v" + i);
+            }
+            String missing = registry.getHost() + "/repo0:missing";
+            String invalid = "Not A Reference";
+            images.add(missing);
+            images.add(invalid);
+
+            Map<String, Exception> errors = new ConcurrentHashMap<>();
+            Map<String, Optional<String>> digests = client.digests(images, errors::put);
+
+            Assertions.assertEquals(images.size(), digests.size());
+            Assertions.assertEquals(FakeRegistry.sha256("{\"n\":7}".getBytes(StandardCharsets.UTF_8)),
+                    digests.get(registry.getHost() + "/repo7:v7").get());
+            Assertions.assertTrue(digests.get(missing).isEmpty());
+            Assertions.assertTrue(digests.get(invalid).isEmpty());
+            Assertions.assertEquals(2, errors.size());
+            Assertions.assertTrue(registry.connectionCount() <= 8);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package io.github.ya_b.registry.client;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process stand-in for a registry v2 endpoint, good enough for transport tests and benchmarks.
+ */
+public class FakeRegistry implements Closeable {
+
+    private static final String DOCKER_MANIFEST = "application/vnd.docker.distribution.manifest.v2+json";
+    private static final Pattern MANIFEST_PATH = Pattern.compile("/v2/(.+)/manifests/([^/]+)");
+    private static final Pattern TAGS_PATH = Pattern.compile("/v2/(.+)/tags/list");
+    private static final Pattern BLOB_PATH = Pattern.compile("/v2/(.+)/blobs/(sha256:[0-9a-f]{64})");
+    private static final Pattern UPLOAD_PATH = Pattern.compile("/v2/(.+)/blobs/uploads/([^/]*)");
+
+    public record RecordedRequest(String method, String path, Headers headers) {
+    }
+
+    private record Manifest(String mediaType, byte[] content, String digest) {
+    }
+
+    private record Failure(String method, Pattern path, AtomicInteger successes, AtomicInteger remaining, int status,
+                           Map<String, String> headers) {
+    }
+
+    private record Truncation(Pattern path, AtomicInteger remaining, int bytes) {
+    }
+
+    private final HttpServer server;
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final Map<String, String> redirects = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+    private final Set<String> repositoryBlobs = ConcurrentHashMap.newKeySet();
+    private final Map<String, ByteArrayOutputStream> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadCounter = new AtomicInteger();
+    private final List<Failure> failures = new CopyOnWriteArrayList<>();
+    private final List<Truncation> truncations = new CopyOnWriteArrayList<>();
+    private final Map<String, String> responseHeaders = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> tokens = new ConcurrentHashMap<>();
+    private volatile boolean tokenAuth;
+    private volatile long delayMillis;
+    private volatile double errorRate;
+    private volatile int errorStatus;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final List<RecordedRequest> requests = new CopyOnWriteArrayList<>();
+
+    private FakeRegistry(HttpServer server) {
+        this.server = server;
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-registry");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    public static FakeRegistry start() throws IOException {
+        return new FakeRegistry(HttpServer.create(new InetSocketAddress("localhost", 0), 0));
+    }
+
+    /**
+     * Registry host as used in image references, e.g. {@code localhost:5123}.
+     */
+    public String getHost() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    public String putManifest(String repository, String tag, String mediaType, byte[] content) {
+        String digest = sha256(content);
+        Manifest manifest = new Manifest(mediaType, content, digest);
+        manifests.put(repository + ":" + tag, manifest);
+        manifests.put(repository + ":" + digest, manifest);
+        return digest;
+    }
+
+    public String putBlob(String repository, byte[] content) {
+        String digest = sha256(content);
+        blobs.put(digest, content);
+        repositoryBlobs.add(repository + "@" + digest);
+        return digest;
+    }
+
+    /**
+     * Store a single-platform Docker image of {@code layers} random layers of {@code layerSize} bytes each.
+     *
+     * @return the manifest digest
+     */
+    public String putImage(String repository, String tag, int layers, int layerSize, long seed) {
+        Random random = new Random(seed);
+        StringBuilder descriptors = new StringBuilder();
+        for (int i = 0; i < layers; i++) {
+            byte[] layer = new byte[layerSize];
+            random.nextBytes(layer);
+            descriptors.append(i > 0 ? "," : "").append(descriptor("application/vnd.docker.image.rootfs.diff.tar.gzip",
+                    putBlob(repository, layer), layer.length));
+        }
+        byte[] config = ("{\"architecture\":\"amd64\",\"os\":\"linux\",\"seed\":" + seed + "}").getBytes(StandardCharsets.UTF_8);
+        String manifest = "{\"schemaVersion\":2,\"mediaType\":\"" + DOCKER_MANIFEST + "\",\"config\":"
+                + descriptor("application/vnd.docker.container.image.v1+json", putBlob(repository, config), config.length)
+                + ",\"layers\":[" + descriptors + "]}";
+        return putManifest(repository, tag, DOCKER_MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String descriptor(String mediaType, String digest, long size) {
+        return "{\"mediaType\":\"" + mediaType + "\",\"digest\":\"" + digest + "\",\"size\":" + size + "}";
+    }
+
+    public boolean hasBlob(String repository, String digest) {
+        return repositoryBlobs.contains(repository + "@" + digest);
+    }
+
+    /**
+     * Manifest content and media type stored under a tag or digest, or null.
+     */
+    public byte[] getManifest(String repository, String reference) {
+        Manifest manifest = manifests.get(repository + ":" + reference);
+        return manifest == null ? null : manifest.content();
+    }
+
+    public String getManifestMediaType(String repository, String reference) {
+        Manifest manifest = manifests.get(repository + ":" + reference);
+        return manifest == null ? null : manifest.mediaType();
+    }
+
+    /**
+     * Answer the next {@code times} requests matching {@code method} and {@code pathRegex} with a 500.
+     */
+    public void failNext(String method, String pathRegex, int times) {
+        failAfter(method, pathRegex, 0, times);
+    }
+
+    /**
+     * Let {@code successes} matching requests through, then answer the next {@code times} with a 500.
+     */
+    public void failAfter(String method, String pathRegex, int successes, int times) {
+        failures.add(new Failure(method, Pattern.compile(pathRegex), new AtomicInteger(successes), new AtomicInteger(times),
+                500, Map.of()));
+    }
+
+    /**
+     * Cut the connection of the next {@code times} blob GETs matching {@code pathRegex} after {@code bytes} bytes
+     * of their body.
+     */
+    public void truncateNext(String pathRegex, int times, int bytes) {
+        truncations.add(new Truncation(Pattern.compile(pathRegex), new AtomicInteger(times), bytes));
+    }
+
+    /**
+     * Answer the next {@code times} requests matching {@code method} and {@code pathRegex} with {@code status}
+     * and the given headers.
+     */
+    public void respondNext(String method, String pathRegex, int times, int status, Map<String, String> headers) {
+        failures.add(new Failure(method, Pattern.compile(pathRegex), new AtomicInteger(), new AtomicInteger(times),
+                status, headers));
+    }
+
+    /**
+     * Answer a random {@code ratio} of all requests with {@code status} from now on, for steady error injection.
+     */
+    public void errorRate(double ratio, int status) {
+        errorStatus = status;
+        errorRate = ratio;
+    }
+
+    /**
+     * Hold every response back by {@code delay} from now on.
+     */
+    public void delay(Duration delay) {
+        delayMillis = delay.toMillis();
+    }
+
+    /**
+     * From now on, accept only bearer tokens issued by {@code /token} (any credentials get one, for the scopes
+     * asked for), and refuse to mount a blob from a repository the token does not grant pull on, falling back to
+     * a new upload session like the reference registry does.
+     */
+    public void requireTokens() {
+        tokenAuth = true;
+    }
+
+    /**
+     * Add a header to every response from now on.
+     */
+    public void responseHeader(String name, String value) {
+        responseHeaders.put(name, value);
+    }
+
+    public void redirect(String path, String location) {
+        redirects.put(path, location);
+    }
+
+    /**
+     * Number of distinct TCP connections the server has seen.
+     */
+    public int connectionCount() {
+        return clientPorts.size();
+    }
+
+    /**
+     * Number of upload sessions opened and neither committed nor cancelled
+     */
+    public int openUploads() {
+        return uploads.size();
+    }
+
+    public List<RecordedRequest> requests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String path = exchange.getRequestURI().getPath();
+        requests.add(new RecordedRequest(exchange.getRequestMethod(), path, exchange.getRequestHeaders()));
+        try (exchange) {
+            // The JDK server only keeps the connection alive once the request body has been consumed
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            responseHeaders.forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+            if (tokenAuth && "/token".equals(path)) {
+                issueToken(exchange);
+                return;
+            }
+            if (tokenAuth && grantedScopes(exchange) == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer realm=\"http://" + getHost() + "/token\"");
+                send(exchange, 401, "{\"errors\":[{\"code\":\"UNAUTHORIZED\"}]}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            for (Failure failure : failures) {
+                if (failure.method().equals(exchange.getRequestMethod()) && failure.path().matcher(path).matches()
+                        && failure.successes().getAndDecrement() <= 0 && failure.remaining().getAndDecrement() > 0) {
+                    failure.headers().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+                    send(exchange, failure.status(), "{\"errors\":[{\"code\":\"UNKNOWN\"}]}".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                send(exchange, errorStatus, "{\"errors\":[{\"code\":\"UNKNOWN\"}]}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String location = redirects.get(path);
+            if (location != null) {
+                exchange.getResponseHeaders().set("Location", location);
+                exchange.sendResponseHeaders(307, -1);
+                return;
+            }
+            Matcher upload = UPLOAD_PATH.matcher(path);
+            if (upload.matches()) {
+                upload(exchange, upload.group(1), upload.group(2), body);
+                return;
+            }
+            Matcher blob = BLOB_PATH.matcher(path);
+            if (blob.matches()) {
+                blob(exchange, blob.group(1), blob.group(2));
+                return;
+            }
+            Matcher matcher = MANIFEST_PATH.matcher(path);
+            if (matcher.matches()) {
+                manifest(exchange, matcher.group(1), matcher.group(2), body);
+                return;
+            }
+            Matcher tags = TAGS_PATH.matcher(path);
+            if (tags.matches()) {
+                String repository = tags.group(1);
+                List<String> names = manifests.keySet().stream()
+                        .filter(key -> key.startsWith(repository + ":") && !key.contains(":sha256:"))
+                        .map(key -> key.substring(repository.length() + 1))
+                        .sorted()
+                        .toList();
+                page(exchange, "{\"name\":\"" + repository + "\",\"tags\":", names);
+                return;
+            }
+            if ("/v2/_catalog".equals(path)) {
+                List<String> names = manifests.keySet().stream()
+                        .map(key -> key.substring(0, key.indexOf(':')))
+                        .distinct()
+                        .sorted()
+                        .toList();
+                page(exchange, "{\"repositories\":", names);
+                return;
+            }
+            send(exchange, 404, "{\"errors\":[{\"code\":\"NAME_UNKNOWN\"}]}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void manifest(HttpExchange exchange, String repository, String reference, byte[] body) throws IOException {
+        if ("PUT".equals(exchange.getRequestMethod())) {
+            String digest = putManifest(repository, reference, exchange.getRequestHeaders().getFirst("Content-Type"), body);
+            exchange.getResponseHeaders().set("Docker-Content-Digest", digest);
+            send(exchange, 201, new byte[0]);
+            return;
+        }
+        Manifest manifest = manifests.get(repository + ":" + reference);
+        if (manifest == null) {
+            send(exchange, 404, "{\"errors\":[{\"code\":\"MANIFEST_UNKNOWN\"}]}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if ("DELETE".equals(exchange.getRequestMethod())) {
+            // Deleting by digest untags every tag pointing to the manifest
+            manifests.entrySet().removeIf(entry -> entry.getKey().startsWith(repository + ":")
+                    && entry.getValue().digest().equals(manifest.digest()));
+            send(exchange, 202, new byte[0]);
+            return;
+        }
+        String etag = "\"" + manifest.digest() + "\"";
+        exchange.getResponseHeaders().set("Docker-Content-Digest", manifest.digest());
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            send(exchange, 304, new byte[0]);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", manifest.mediaType());
+        send(exchange, 200, manifest.content());
+    }
+
+    private void blob(HttpExchange exchange, String repository, String digest) throws IOException {
+        byte[] content = hasBlob(repository, digest) ? blobs.get(digest) : null;
+        if (content == null) {
+            send(exchange, 404, "{\"errors\":[{\"code\":\"BLOB_UNKNOWN\"}]}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        exchange.getResponseHeaders().set("Docker-Content-Digest", digest);
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+        } else if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(content.length - 1, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            sendBlob(exchange, 206, Arrays.copyOfRange(content, start, end + 1));
+            return;
+        }
+        sendBlob(exchange, 200, content);
+    }
+
+    private void sendBlob(HttpExchange exchange, int status, byte[] content) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        for (Truncation truncation : truncations) {
+            if (!"HEAD".equals(exchange.getRequestMethod()) && truncation.path().matcher(path).matches()
+                    && truncation.remaining().getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(status, content.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(content, 0, Math.min(truncation.bytes(), content.length));
+                out.flush();
+                // Closing short of the announced length drops the connection
+                return;
+            }
+        }
+        send(exchange, status, content);
+    }
+
+    private void upload(HttpExchange exchange, String repository, String session, byte[] body) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        if ("POST".equals(exchange.getRequestMethod()) && session.isEmpty()) {
+            String mount = query.get("mount");
+            if (mount != null && hasBlob(query.get("from"), mount)
+                    && (!tokenAuth || grantedScopes(exchange).contains("repository:" + query.get("from") + ":pull"))) {
+                repositoryBlobs.add(repository + "@" + mount);
+                exchange.getResponseHeaders().set("Location", "/v2/" + repository + "/blobs/" + mount);
+                send(exchange, 201, new byte[0]);
+                return;
+            }
+            String id = "upload-" + uploadCounter.incrementAndGet();
+            uploads.put(id, new ByteArrayOutputStream());
+            exchange.getResponseHeaders().set("Location", "/v2/" + repository + "/blobs/uploads/" + id + "?state=x");
+            send(exchange, 202, new byte[0]);
+            return;
+        }
+        ByteArrayOutputStream buffer = uploads.get(session);
+        if (buffer == null) {
+            send(exchange, 404, "{\"errors\":[{\"code\":\"BLOB_UPLOAD_UNKNOWN\"}]}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if ("DELETE".equals(exchange.getRequestMethod())) {
+            uploads.remove(session);
+            send(exchange, 204, new byte[0]);
+            return;
+        }
+        if ("GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Location", exchange.getRequestURI().toString());
+            exchange.getResponseHeaders().set("Range", "0-" + (buffer.size() - 1));
+            send(exchange, 204, new byte[0]);
+            return;
+        }
+        synchronized (buffer) {
+            String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+            if (contentRange != null && Long.parseLong(contentRange.split("-")[0]) != buffer.size()) {
+                send(exchange, 416, new byte[0]);
+                return;
+            }
+            buffer.write(body);
+        }
+        if ("PATCH".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Location", "/v2/" + repository + "/blobs/uploads/" + session + "?state=" + buffer.size());
+            exchange.getResponseHeaders().set("Range", "0-" + (buffer.size() - 1));
+            send(exchange, 202, new byte[0]);
+            return;
+        }
+        if ("PUT".equals(exchange.getRequestMethod())) {
+            uploads.remove(session);
+            String digest = query.get("digest");
+            if (!sha256(buffer.toByteArray()).equals(digest)) {
+                send(exchange, 400, "{\"errors\":[{\"code\":\"DIGEST_INVALID\"}]}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            putBlob(repository, buffer.toByteArray());
+            exchange.getResponseHeaders().set("Docker-Content-Digest", digest);
+            send(exchange, 201, new byte[0]);
+            return;
+        }
+        send(exchange, 405, new byte[0]);
+    }
+
+    /**
+     * Serve a listing honouring {@code n} and {@code last}, linking the next page like a real registry does.
+     */
+    private static void page(HttpExchange exchange, String prefix, List<String> names) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        int from = 0;
+        if (query.containsKey("last")) {
+            from = names.indexOf(query.get("last")) + 1;
+        }
+        int size = query.containsKey("n") ? Integer.parseInt(query.get("n")) : names.size();
+        int to = Math.min(names.size(), from + size);
+        List<String> page = names.subList(from, to);
+        if (to < names.size()) {
+            String next = exchange.getRequestURI().getPath() + "?n=" + size + "&last="
+                    + URLEncoder.encode(page.get(page.size() - 1), StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Link", "<" + next + ">; rel=\"next\"");
+        }
+        String body = prefix + page.stream().map(name -> "\"" + name + "\"")
+                .collect(Collectors.joining(",", "[", "]")) + "}";
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void issueToken(HttpExchange exchange) throws IOException {
+        Set<String> scopes = new HashSet<>();
+        for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+            if (pair.startsWith("scope=")) {
+                // repository:<name>:<action>[,<action>] grants each action
+                String scope = URLDecoder.decode(pair.substring("scope=".length()), StandardCharsets.UTF_8);
+                int colon = scope.lastIndexOf(':');
+                for (String action : scope.substring(colon + 1).split(",")) {
+                    scopes.add(scope.substring(0, colon + 1) + action);
+                }
+            }
+        }
+        String token = UUID.randomUUID().toString();
+        tokens.put(token, scopes);
+        send(exchange, 200, ("{\"token\":\"" + token + "\",\"expires_in\":300}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Scopes granted to the bearer token of a request, null without a valid one
+     */
+    private Set<String> grantedScopes(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return tokens.get(authorization.substring("Bearer ".length()));
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod()) || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static String sha256(byte[] content) {
+        try {
+            return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
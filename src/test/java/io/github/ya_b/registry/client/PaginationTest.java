@@ -0,0 +1,60 @@
+package io.github.ya_b.registry.client;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class PaginationTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void streamsTagsAcrossPages() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            for (int i = 0; i < 25; i++) {
+                registry.putManifest("app", String.format("v%02d", i), MANIFEST_TYPE,
+                        ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+            }
+            String image = registry.getHost() + "/app";
+
+            try (Stream<String> tags = client.tagsStream(image, 10)) {
+                List<String> all = tags.collect(Collectors.toList());
+                Assertions.assertEquals(25, all.size());
+                Assertions.assertEquals("v00", all.get(0));
+                Assertions.assertEquals("v24", all.get(24));
+            }
+            Assertions.assertEquals(3, registry.requests().stream()
+                    .filter(request -> request.path().endsWith("/tags/list")).count());
+
+            Assertions.assertEquals(25, client.tags(image).size());
+        }
+    }
+
+    @Test
+    void streamsCatalogLazily() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            for (int i = 0; i < 30; i++) {
+                registry.putManifest(String.format("repo%02d", i), "latest", MANIFEST_TYPE,
+                        ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+            }
+
+            try (Stream<String> catalog = client.catalogStream(registry.getHost(), 7)) {
+                Assertions.assertEquals(List.of("repo00", "repo01", "repo02"),
+                        catalog.limit(3).collect(Collectors.toList()));
+            }
+            // the first page plus at most one prefetched page
+            Assertions.assertTrue(registry.requests().stream()
+                    .filter(request -> request.path().equals("/v2/_catalog")).count() <= 2);
+
+            try (Stream<String> catalog = client.catalogStream(registry.getHost(), 7)) {
+                Assertions.assertEquals(30, catalog.count());
+            }
+        }
+    }
+}
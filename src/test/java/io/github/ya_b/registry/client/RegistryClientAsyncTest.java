@@ -0,0 +1,106 @@
+package io.github.ya_b.registry.client;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class RegistryClientAsyncTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void fansOutDigestsWithinHostLimit() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().maxConcurrentRequestsPerHost(4).build()) {
+            String digest = registry.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+
+            List<CompletableFuture<Optional<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                futures.add(client.digestAsync(registry.getHost() + "/test:v1"));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+            for (CompletableFuture<Optional<String>> future : futures) {
+                Assertions.assertEquals(digest, future.get().get());
+            }
+            Assertions.assertTrue(registry.connectionCount() <= 4);
+            Assertions.assertEquals(0, client.getHostLimiter().inFlight(registry.getHost()));
+        }
+    }
+
+    @Test
+    void waitingForABusyHostHoldsNoThread() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (FakeRegistry slow = FakeRegistry.start();
+             FakeRegistry fast = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().asyncExecutor(executor)
+                     .maxConcurrentRequestsPerHost(1).build()) {
+            slow.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            String digest = fast.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            slow.delay(Duration.ofSeconds(1));
+
+            List<CompletableFuture<Optional<String>>> queued = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                queued.add(client.digestAsync(slow.getHost() + "/test:v1"));
+            }
+            // One slow call runs, the rest wait for its slot without taking the second thread
+            Assertions.assertEquals(digest, client.digestAsync(fast.getHost() + "/test:v1").get(900, TimeUnit.MILLISECONDS).get());
+            Assertions.assertFalse(queued.get(0).isDone());
+
+            CompletableFuture.allOf(queued.toArray(new CompletableFuture<?>[0])).join();
+            Assertions.assertEquals(0, client.getHostLimiter().inFlight(slow.getHost()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void batchDigestsOfABusyHostHoldNoThread() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (FakeRegistry slow = FakeRegistry.start();
+             FakeRegistry fast = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().asyncExecutor(executor)
+                     .maxConcurrentRequestsPerHost(1).build()) {
+            List<String> images = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                slow.putManifest("test", "v" + i, MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+                images.add(slow.getHost() + "/test:v" + i);
+            }
+            fast.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            images.add(fast.getHost() + "/test:v1");
+            slow.delay(Duration.ofMillis(500));
+
+            CompletableFuture<Map<String, Optional<String>>> batch = CompletableFuture.supplyAsync(() -> client.digests(images));
+            // The slow host's queued lookups leave the second thread to the fast host
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(900);
+            while (fast.requests().isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertFalse(fast.requests().isEmpty());
+            Assertions.assertTrue(batch.join().values().stream().allMatch(Optional::isPresent));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failuresCompleteExceptionally() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            CompletionException e = Assertions.assertThrows(CompletionException.class,
+                    () -> client.digestAsync(registry.getHost() + "/missing:v1").join());
+            Assertions.assertTrue(e.getCause() instanceof java.io.IOException);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.ya_b.registry.client;
+
+import io.github.ya_b.registry.client.http.HttpClientConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+class RegistryClientInstanceTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void instancesKeepTheirOwnCredentials() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance alice = RegistryClient.builder()
+                     .credentialProvider(new CredentialStore().authBasic(registry.getHost(), "alice", "a"))
+                     .build();
+             RegistryClientInstance bob = RegistryClient.builder()
+                     .credentialProvider(new CredentialStore().authBasic(registry.getHost(), "bob", "b"))
+                     .httpClientConfig(HttpClientConfig.builder().maxConnectionsPerHost(2).build())
+                     .build()) {
+            String digest = registry.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+
+            Assertions.assertEquals(digest, alice.digest(registry.getHost() + "/test:v1").get());
+            Assertions.assertEquals(digest, bob.digest(registry.getHost() + "/test:v1").get());
+
+            Assertions.assertEquals(basic("alice", "a"),
+                    registry.requests().get(0).headers().getFirst("Authorization"));
+            Assertions.assertEquals(basic("bob", "b"),
+                    registry.requests().get(1).headers().getFirst("Authorization"));
+            Assertions.assertEquals(2, registry.connectionCount());
+        }
+    }
+
+    private static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+}
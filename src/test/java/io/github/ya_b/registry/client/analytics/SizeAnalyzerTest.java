@@ -0,0 +1,130 @@
+package io.github.ya_b.registry.client.analytics;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.RawManifest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class SizeAnalyzerTest {
+
+    private static final byte[] BASE = layer('b', 1000);
+    private static final byte[] APP_1 = layer('1', 100);
+    private static final byte[] APP_2 = layer('2', 200);
+    private static final byte[] OTHER = layer('o', 300);
+    private static final byte[] AMD64 = layer('x', 50);
+    private static final byte[] ARM64 = layer('y', 60);
+
+    @Test
+    void sizesAndDiffsImagesFromManifests() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String host = registry.getHost();
+            pushImage(registry, "app", "v1", BASE, APP_1);
+            pushImage(registry, "app", "v2", BASE, APP_2);
+            pushIndex(registry, "multi", "latest");
+
+            ImageSize v2 = client.imageSize(host + "/app:v2");
+            Assertions.assertEquals(3, v2.blobs().size());
+            Assertions.assertEquals(config("app:v2").length + BASE.length + APP_2.length, v2.size());
+            Assertions.assertEquals(BASE.length, v2.blobs().get(FakeRegistry.sha256(BASE)));
+
+            // The base layer of both platforms is counted once
+            ImageSize multi = client.imageSize(host + "/multi:latest");
+            Assertions.assertEquals(5, multi.blobs().size());
+            Assertions.assertEquals(config("multi:amd64").length + config("multi:arm64").length + BASE.length
+                    + AMD64.length + ARM64.length, multi.size());
+
+            LayerDiff diff = client.layerDiff(host + "/app:v1", host + "/app:v2");
+            Assertions.assertEquals(Set.of(FakeRegistry.sha256(BASE)), diff.shared().keySet());
+            Assertions.assertEquals(BASE.length, diff.sharedBytes());
+            Assertions.assertEquals(config("app:v1").length + APP_1.length, diff.onlyInFromBytes());
+            Assertions.assertEquals(config("app:v2").length + APP_2.length, diff.onlyInToBytes());
+
+            Assertions.assertTrue(registry.requests().stream().noneMatch(request -> request.path().contains("/blobs/")));
+        }
+    }
+
+    @Test
+    void reportsDeduplicatedStoragePerRepository() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            pushImage(registry, "app", "v1", BASE, APP_1);
+            pushImage(registry, "app", "v2", BASE, APP_2);
+            registry.putManifest("app", "latest", RawManifest.DOCKER_MANIFEST, registry.getManifest("app", "v2"));
+            pushImage(registry, "other", "v1", BASE, OTHER);
+            pushIndex(registry, "multi", "latest");
+
+            StorageReport report = client.storageReport("http://" + registry.getHost());
+            Assertions.assertEquals(5, report.tags());
+            Assertions.assertEquals(4, report.images());
+            Assertions.assertEquals(0, report.failures());
+            Map<String, RepositoryUsage> usage = report.repositories().stream()
+                    .collect(Collectors.toMap(RepositoryUsage::repository, repository -> repository));
+            Assertions.assertEquals(List.of("app", "other", "multi"),
+                    report.repositories().stream().map(RepositoryUsage::repository).toList());
+
+            RepositoryUsage app = usage.get("app");
+            long appConfigs = config("app:v1").length + config("app:v2").length;
+            Assertions.assertEquals(3, app.tags());
+            Assertions.assertEquals(2, app.images());
+            Assertions.assertEquals(2L * BASE.length + APP_1.length + APP_2.length + appConfigs, app.logicalBytes());
+            Assertions.assertEquals(BASE.length + APP_1.length + APP_2.length + appConfigs, app.storedBytes());
+            Assertions.assertEquals(BASE.length, app.sharedBytes());
+
+            long stored = BASE.length + APP_1.length + APP_2.length + OTHER.length + AMD64.length + ARM64.length
+                    + appConfigs + config("other:v1").length + config("multi:amd64").length + config("multi:arm64").length;
+            Assertions.assertEquals(stored, report.storedBytes());
+            Assertions.assertEquals(report.repositories().stream().mapToLong(RepositoryUsage::logicalBytes).sum(),
+                    report.logicalBytes());
+            Assertions.assertTrue(registry.requests().stream().noneMatch(request -> request.path().contains("/blobs/")));
+        }
+    }
+
+    private static byte[] layer(char fill, int size) {
+        byte[] layer = new byte[size];
+        Arrays.fill(layer, (byte) fill);
+        return layer;
+    }
+
+    private static byte[] config(String name) {
+        return ("{\"architecture\":\"amd64\",\"os\":\"linux\",\"name\":\"" + name + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void pushImage(FakeRegistry registry, String repository, String tag, byte[]... layers) {
+        registry.putManifest(repository, tag, RawManifest.DOCKER_MANIFEST, manifest(registry, repository, repository + ":" + tag, layers));
+    }
+
+    private static void pushIndex(FakeRegistry registry, String repository, String tag) {
+        StringBuilder index = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.OCI_INDEX + "\",\"manifests\":[");
+        String[] platforms = {"amd64", "arm64"};
+        for (int i = 0; i < platforms.length; i++) {
+            byte[] manifest = manifest(registry, repository, repository + ":" + platforms[i], BASE, i == 0 ? AMD64 : ARM64);
+            String digest = registry.putManifest(repository, FakeRegistry.sha256(manifest), RawManifest.DOCKER_MANIFEST, manifest);
+            index.append(i > 0 ? "," : "").append("{\"mediaType\":\"").append(RawManifest.DOCKER_MANIFEST)
+                    .append("\",\"size\":").append(manifest.length).append(",\"digest\":\"").append(digest)
+                    .append("\",\"platform\":{\"architecture\":\"").append(platforms[i]).append("\",\"os\":\"linux\"}}");
+        }
+        registry.putManifest(repository, tag, RawManifest.OCI_INDEX, index.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] manifest(FakeRegistry registry, String repository, String name, byte[]... layers) {
+        byte[] config = config(name);
+        StringBuilder manifest = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\","
+                + "\"config\":{\"mediaType\":\"application/vnd.docker.container.image.v1+json\",\"size\":"
+                + config.length + ",\"digest\":\"" + registry.putBlob(repository, config) + "\"},\"layers\":[");
+        for (int i = 0; i < layers.length; i++) {
+            manifest.append(i > 0 ? "," : "").append("{\"mediaType\":\"application/vnd.docker.image.rootfs.diff.tar.gzip\",\"size\":")
+                    .append(layers[i].length).append(",\"digest\":\"").append(registry.putBlob(repository, layers[i])).append("\"}");
+        }
+        return manifest.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
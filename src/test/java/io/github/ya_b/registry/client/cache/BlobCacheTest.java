@@ -0,0 +1,156 @@
+package io.github.ya_b.registry.client.cache;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.transfer.TransferConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class BlobCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storesVerifiedBlobs() throws Exception {
+        BlobCache cache = new BlobCache(tempDir.resolve("cache"), Long.MAX_VALUE);
+        byte[] content = random(1000);
+        String digest = FakeRegistry.sha256(content);
+
+        Assertions.assertFalse(cache.get(digest).isPresent());
+        Path path = cache.put(digest, new ByteArrayInputStream(content));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(path));
+        Assertions.assertEquals(path, cache.get(digest).orElse(null));
+        Assertions.assertEquals(1, cache.stats().hits());
+        Assertions.assertEquals(1000, cache.stats().size());
+
+        String other = FakeRegistry.sha256(random(10));
+        Assertions.assertThrows(IOException.class, () -> cache.put(other, new ByteArrayInputStream(content)));
+        Assertions.assertFalse(cache.contains(other));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cache.contains("md5:abc"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        BlobCache cache = new BlobCache(tempDir.resolve("cache"), 2500);
+        List<String> digests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] content = random(1000 + i);
+            String digest = FakeRegistry.sha256(content);
+            Path path = cache.put(digest, new ByteArrayInputStream(content));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(1000L * (i + 1)));
+            digests.add(digest);
+        }
+        // The third insert overflowed the bound; the oldest blob went
+        Assertions.assertFalse(cache.contains(digests.get(0)));
+        Assertions.assertTrue(cache.contains(digests.get(1)));
+        Assertions.assertTrue(cache.contains(digests.get(2)));
+        Assertions.assertEquals(1, cache.stats().evictions());
+
+        // Touching the second makes the third the eviction candidate
+        cache.get(digests.get(1));
+        byte[] content = random(900);
+        cache.put(FakeRegistry.sha256(content), new ByteArrayInputStream(content));
+        Assertions.assertTrue(cache.contains(digests.get(1)));
+        Assertions.assertFalse(cache.contains(digests.get(2)));
+
+        // A new instance over the same directory sees what is left
+        Assertions.assertEquals(cache.stats().size(), new BlobCache(tempDir.resolve("cache"), 2500).stats().size());
+    }
+
+    @Test
+    void sparesRecentlyUsedBlobs() throws Exception {
+        BlobCache cache = new BlobCache(tempDir.resolve("cache"), 1500);
+        byte[] first = random(1000);
+        byte[] second = random(1001);
+        Path path = cache.put(FakeRegistry.sha256(first), new ByteArrayInputStream(first));
+        cache.put(FakeRegistry.sha256(second), new ByteArrayInputStream(second));
+
+        // Over the bound, but both may be about to be read by whoever asked for them
+        Assertions.assertArrayEquals(first, Files.readAllBytes(path));
+        Assertions.assertEquals(0, cache.stats().evictions());
+
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - BlobCache.EVICTION_GRACE.toMillis() - 1000));
+        cache.evict();
+        Assertions.assertFalse(cache.contains(FakeRegistry.sha256(first)));
+        Assertions.assertTrue(cache.contains(FakeRegistry.sha256(second)));
+    }
+
+    @Test
+    void loadsConcurrentMissesOnce() throws Exception {
+        BlobCache cache = new BlobCache(tempDir.resolve("cache"), Long.MAX_VALUE);
+        byte[] content = random(100_000);
+        String digest = FakeRegistry.sha256(content);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.computeIfAbsent(digest, target -> {
+                        loads.incrementAndGet();
+                        Files.write(target, content);
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<Path> future : futures) {
+                Assertions.assertArrayEquals(content, Files.readAllBytes(future.get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void downloadsAreServedFromCache() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder()
+                     .transferConfig(TransferConfig.builder().chunkSize(64 * 1024)
+                             .stateDirectory(tempDir.resolve("state")).build())
+                     .blobCache(new BlobCache(tempDir.resolve("cache"), Long.MAX_VALUE))
+                     .build()) {
+            byte[] content = random(200_000);
+            String digest = registry.putBlob("app", content);
+
+            client.downloadBlob(registry.getHost() + "/app", digest, tempDir.resolve("first"));
+            long gets = blobGets(registry);
+            client.downloadBlob(registry.getHost() + "/app", digest, tempDir.resolve("second"));
+
+            Assertions.assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("second")));
+            Assertions.assertEquals(gets, blobGets(registry));
+            Assertions.assertTrue(client.getBlobCache().contains(digest));
+        }
+    }
+
+    private static long blobGets(FakeRegistry registry) {
+        return registry.requests().stream()
+                .filter(request -> request.method().equals("GET") && request.path().contains("/blobs/"))
+                .count();
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
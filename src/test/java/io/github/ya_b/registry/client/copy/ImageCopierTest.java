@@ -0,0 +1,212 @@
+package io.github.ya_b.registry.client.copy;
+
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.Authenticator;
+import io.github.ya_b.registry.client.http.HttpClient;
+import io.github.ya_b.registry.client.http.Platform;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.RegistryApi;
+import io.github.ya_b.registry.client.http.TokenCache;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+class ImageCopierTest {
+
+    @Test
+    void copiesOnlyMissingBlobs() throws Exception {
+        try (FakeRegistry source = FakeRegistry.start();
+             FakeRegistry mirror = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String digest = pushImage(source, "app", "v1", 3);
+
+            CopyResult first = client.copy(source.getHost() + "/app:v1", mirror.getHost() + "/app:v1");
+            Assertions.assertEquals(digest, first.digest());
+            Assertions.assertEquals(4, first.blobsTransferred());
+            Assertions.assertEquals(0, first.blobsSkipped());
+            Assertions.assertArrayEquals(source.getManifest("app", "v1"), mirror.getManifest("app", "v1"));
+            Assertions.assertEquals(RawManifest.DOCKER_MANIFEST, mirror.getManifestMediaType("app", "v1"));
+
+            CopyResult second = client.copy(source.getHost() + "/app:v1", mirror.getHost() + "/app:v2");
+            Assertions.assertEquals(0, second.blobsTransferred());
+            Assertions.assertEquals(4, second.blobsSkipped());
+            Assertions.assertEquals(0, second.bytesTransferred());
+        }
+    }
+
+    @Test
+    void mountsBlobsWithinTheSameRegistry() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            pushImage(registry, "app", "v1", 2);
+
+            CopyResult result = client.copy(registry.getHost() + "/app:v1", registry.getHost() + "/other:v1");
+            Assertions.assertEquals(3, result.blobsMounted());
+            Assertions.assertEquals(0, result.blobsTransferred());
+            Assertions.assertNotNull(registry.getManifest("other", "v1"));
+        }
+    }
+
+    @Test
+    void mountsWithATokenGrantingPullOnTheSource() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             HttpClient httpClient = new HttpClient()) {
+            pushImage(registry, "app", "v1", 2);
+            registry.requireTokens();
+            Authenticator authenticator = new Authenticator(httpClient, new TokenCache(), registry.getHost(),
+                    "http://" + registry.getHost() + "/token", "fake");
+            ImageCopier copier = new ImageCopier(new RegistryApi(httpClient, authenticator), Runnable::run, 4, null);
+            String[] credentials = {"user", "secret"};
+
+            CopyResult result = copier.copy(registry.getHost() + "/app:v1", credentials,
+                    registry.getHost() + "/other:v1", credentials);
+            Assertions.assertEquals(3, result.blobsMounted());
+            Assertions.assertEquals(0, result.blobsTransferred());
+        }
+    }
+
+    @Test
+    void cancelsTheUploadWhenTheSourceBlobCannotBeRead() throws Exception {
+        try (FakeRegistry source = FakeRegistry.start();
+             FakeRegistry mirror = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            pushImage(source, "app", "v1", 1);
+            source.failNext("GET", "/v2/app/blobs/.*", 100);
+
+            Assertions.assertThrows(IOException.class,
+                    () -> client.copy(source.getHost() + "/app:v1", mirror.getHost() + "/app:v1"));
+            Assertions.assertTrue(mirror.requests().stream().anyMatch(request -> request.method().equals("POST")));
+            Assertions.assertEquals(0, mirror.openUploads());
+            Assertions.assertNull(mirror.getManifest("app", "v1"));
+        }
+    }
+
+    @Test
+    void copiesManifestListsWithSharedLayers() throws Exception {
+        try (FakeRegistry source = FakeRegistry.start();
+             FakeRegistry mirror = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String base = source.putBlob("multi", random(1, 4096));
+            String amd64 = pushPlatform(source, base, 2);
+            String arm64 = pushPlatform(source, base, 3);
+            String index = "{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.OCI_INDEX + "\",\"manifests\":["
+                    + "{\"mediaType\":\"" + RawManifest.OCI_MANIFEST + "\",\"digest\":\"" + amd64
+                    + "\",\"size\":1,\"platform\":{\"architecture\":\"amd64\",\"os\":\"linux\"}},"
+                    + "{\"mediaType\":\"" + RawManifest.OCI_MANIFEST + "\",\"digest\":\"" + arm64
+                    + "\",\"size\":1,\"platform\":{\"architecture\":\"arm64\",\"os\":\"linux\",\"variant\":\"v8\"}}],"
+                    + "\"annotations\":{\"org.opencontainers.image.source\":\"test\"}}";
+            String indexDigest = source.putManifest("multi", "latest", RawManifest.OCI_INDEX,
+                    index.getBytes(StandardCharsets.UTF_8));
+
+            CopyResult result = client.copy(source.getHost() + "/multi:latest", mirror.getHost() + "/multi:latest");
+            Assertions.assertEquals(indexDigest, result.digest());
+            // shared base layer once, plus config and own layer per platform
+            Assertions.assertEquals(5, result.blobsTransferred());
+            Assertions.assertNotNull(mirror.getManifest("multi", amd64));
+            Assertions.assertNotNull(mirror.getManifest("multi", arm64));
+            Assertions.assertTrue(mirror.hasBlob("multi", base));
+        }
+    }
+
+    @Test
+    void copiesSelectedPlatformsOnly() throws Exception {
+        try (FakeRegistry source = FakeRegistry.start();
+             FakeRegistry mirror = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String[] architectures = {"amd64", "arm64", "arm", "ppc64le", "s390x", "386"};
+            StringBuilder index = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"")
+                    .append(RawManifest.OCI_INDEX).append("\",\"manifests\":[");
+            for (int i = 0; i < architectures.length; i++) {
+                byte[] config = ("{\"architecture\":\"" + architectures[i] + "\"}").getBytes(StandardCharsets.UTF_8);
+                byte[] layer = random(100 + i, 10_000);
+                byte[] manifest = ("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.OCI_MANIFEST + "\","
+                        + "\"config\":" + descriptor(source.putBlob("multi", config), config.length) + ","
+                        + "\"layers\":[" + descriptor(source.putBlob("multi", layer), layer.length) + "]}")
+                        .getBytes(StandardCharsets.UTF_8);
+                String digest = source.putManifest("multi", FakeRegistry.sha256(manifest), RawManifest.OCI_MANIFEST, manifest);
+                index.append(i == 0 ? "" : ",").append("{\"mediaType\":\"").append(RawManifest.OCI_MANIFEST)
+                        .append("\",\"digest\":\"").append(digest).append("\",\"size\":").append(manifest.length)
+                        .append(",\"platform\":{\"architecture\":\"").append(architectures[i]).append("\",\"os\":\"linux\"}}");
+            }
+            index.append("]}");
+            source.putManifest("multi", "latest", RawManifest.OCI_INDEX, index.toString().getBytes(StandardCharsets.UTF_8));
+
+            CopyResult result = client.copy(source.getHost() + "/multi:latest", mirror.getHost() + "/multi:latest",
+                    List.of(Platform.of("linux/amd64")));
+            Assertions.assertEquals(2, result.blobsTransferred());
+            Assertions.assertEquals(10_000 + "{\"architecture\":\"amd64\"}".length(), result.bytesTransferred());
+
+            ManifestResp copied = JsonTemplateMapper.readJson(mirror.getManifest("multi", "latest"), ManifestResp.class);
+            Assertions.assertEquals(1, copied.getManifests().size());
+            Assertions.assertEquals("amd64", copied.getManifests().get(0).getPlatform().getArchitecture());
+            Assertions.assertEquals(result.digest(), FakeRegistry.sha256(mirror.getManifest("multi", "latest")));
+            Assertions.assertNotNull(mirror.getManifest("multi", copied.getManifests().get(0).getDigest()));
+
+            Assertions.assertThrows(IOException.class, () -> client.copy(source.getHost() + "/multi:latest",
+                    mirror.getHost() + "/multi:other", List.of(Platform.of("windows/amd64"))));
+        }
+    }
+
+    @Test
+    void rejectsCorruptSourceBlobs() throws Exception {
+        try (FakeRegistry source = FakeRegistry.start();
+             FakeRegistry mirror = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            byte[] config = "{\"architecture\":\"amd64\"}".getBytes(StandardCharsets.UTF_8);
+            byte[] layer = random(9, 32 * 1024);
+            String layerDigest = source.putBlob("app", layer);
+            String manifest = "{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\","
+                    + "\"config\":" + descriptor(source.putBlob("app", config), config.length) + ","
+                    + "\"layers\":[" + descriptor(layerDigest, layer.length) + "]}";
+            source.putManifest("app", "v1", RawManifest.DOCKER_MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+            layer[layer.length - 1] ^= 1;
+
+            Assertions.assertThrows(IOException.class,
+                    () -> client.copy(source.getHost() + "/app:v1", mirror.getHost() + "/app:v1"));
+            Assertions.assertFalse(mirror.hasBlob("app", layerDigest));
+            Assertions.assertNull(mirror.getManifest("app", "v1"));
+        }
+    }
+
+    private static String pushImage(FakeRegistry registry, String repository, String tag, int layers) {
+        StringBuilder manifest = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"")
+                .append(RawManifest.DOCKER_MANIFEST).append("\",");
+        byte[] config = ("{\"architecture\":\"amd64\",\"layers\":" + layers + "}").getBytes(StandardCharsets.UTF_8);
+        manifest.append("\"config\":").append(descriptor(registry.putBlob(repository, config), config.length)).append(",\"layers\":[");
+        for (int i = 0; i < layers; i++) {
+            byte[] layer = random(i + layers * 100, 64 * 1024 + i);
+            manifest.append(i == 0 ? "" : ",").append(descriptor(registry.putBlob(repository, layer), layer.length));
+        }
+        manifest.append("]}");
+        return registry.putManifest(repository, tag, RawManifest.DOCKER_MANIFEST,
+                manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String pushPlatform(FakeRegistry registry, String base, int seed) {
+        byte[] config = ("{\"seed\":" + seed + "}").getBytes(StandardCharsets.UTF_8);
+        byte[] layer = random(seed, 2048);
+        String manifest = "{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.OCI_MANIFEST + "\","
+                + "\"config\":" + descriptor(registry.putBlob("multi", config), config.length) + ","
+                + "\"layers\":[" + descriptor(base, 4096) + "," + descriptor(registry.putBlob("multi", layer), layer.length) + "]}";
+        return registry.putManifest("multi", FakeRegistry.sha256(manifest.getBytes(StandardCharsets.UTF_8)),
+                RawManifest.OCI_MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String descriptor(String digest, long size) {
+        return "{\"mediaType\":\"application/octet-stream\",\"digest\":\"" + digest + "\",\"size\":" + size + "}";
+    }
+
+    private static byte[] random(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
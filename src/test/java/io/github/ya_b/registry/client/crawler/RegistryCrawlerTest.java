@@ -0,0 +1,75 @@
+package io.github.ya_b.registry.client.crawler;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class RegistryCrawlerTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void crawlsEveryTagAndSkipsFailingRepositories() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            Map<String, String> expected = new ConcurrentHashMap<>();
+            for (int r = 0; r < 40; r++) {
+                for (int t = 0; t < 5; t++) {
+                    String digest = registry.putManifest("repo" + r, "v" + t, MANIFEST_TYPE,
+                            ("{\"r\":" + r + ",\"t\":" + t + "}").getBytes(StandardCharsets.UTF_8));
+                    expected.put("repo" + r + ":v" + t, digest);
+                }
+            }
+            registry.putManifest("broken", "latest", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            registry.redirect("/v2/broken/tags/list", "/nowhere");
+
+            Map<String, String> inventory = new ConcurrentHashMap<>();
+            Map<String, Exception> failures = new ConcurrentHashMap<>();
+            CrawlerConfig config = CrawlerConfig.builder()
+                    .catalogPageSize(7).tagConcurrency(4).digestConcurrency(8).queueCapacity(4).build();
+
+            CrawlSummary summary = client.crawl(registry.getHost(), config, new InventorySink() {
+                @Override
+                public void accept(InventoryEntry entry) {
+                    inventory.put(entry.repository() + ":" + entry.tag(), entry.digest());
+                }
+
+                @Override
+                public void failed(String reference, Exception e) {
+                    failures.put(reference, e);
+                }
+            });
+
+            Assertions.assertEquals(expected, inventory);
+            Assertions.assertEquals(1, failures.size());
+            Assertions.assertTrue(failures.get("broken") instanceof IOException);
+            Assertions.assertEquals(41, summary.repositories());
+            Assertions.assertEquals(200, summary.tags());
+            Assertions.assertEquals(200, summary.digests());
+            Assertions.assertEquals(1, summary.failures());
+        }
+    }
+
+    @Test
+    void sinkFailureAbortsTheCrawl() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            for (int r = 0; r < 20; r++) {
+                registry.putManifest("repo" + r, "latest", MANIFEST_TYPE,
+                        ("{\"r\":" + r + "}").getBytes(StandardCharsets.UTF_8));
+            }
+
+            IOException e = Assertions.assertThrows(IOException.class, () -> client.crawl(registry.getHost(), entry -> {
+                throw new IllegalStateException("sink full");
+            }));
+            Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
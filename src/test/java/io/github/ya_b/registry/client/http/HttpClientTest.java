@@ -0,0 +1,195 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.jib.JibImageManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+class HttpClientTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void reusesConnectionAcrossCalls() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             JibImageManager manager = new JibImageManager(new HttpClient())) {
+            String digest = registry.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 50; i++) {
+                Optional<String> result = manager.getDigest(registry.getHost() + "/test:v1", null);
+                Assertions.assertEquals(digest, result.get());
+            }
+            Assertions.assertEquals(1, registry.connectionCount());
+            HttpClient.PoolStats stats = manager.getHttpClient().poolStats().get("http://" + registry.getHost());
+            Assertions.assertEquals(0, stats.leased());
+            Assertions.assertEquals(1, stats.available());
+        }
+    }
+
+    @Test
+    void dropsAuthorizationOnCrossHostRedirect() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             FakeRegistry storage = FakeRegistry.start();
+             HttpClient client = new HttpClient()) {
+            storage.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            registry.redirect("/v2/test/manifests/v1", "http://" + storage.getHost() + "/v2/test/manifests/v1");
+
+            RegistryRequest request = RegistryRequest.get("http://" + registry.getHost() + "/v2/test/manifests/v1")
+                    .authorization(Authorization.fromBasicCredentials("user", "secret"));
+            try (RegistryResponse response = client.execute(request)) {
+                Assertions.assertEquals(200, response.getStatusCode());
+                Assertions.assertEquals("{}", response.getBodyAsString());
+            }
+            Assertions.assertNotNull(registry.requests().get(0).headers().getFirst("Authorization"));
+            Assertions.assertNull(storage.requests().get(0).headers().getFirst("Authorization"));
+        }
+    }
+
+    @Test
+    void rejectsCallsAfterClose() {
+        HttpClient client = new HttpClient();
+        client.close();
+        Assertions.assertThrows(IOException.class,
+                () -> client.execute(RegistryRequest.get("http://localhost:1/v2/")));
+    }
+
+    @Test
+    void retriesThrottledAndUnavailableResponses() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             HttpClient client = new HttpClient()) {
+            registry.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            registry.respondNext("GET", "/v2/test/manifests/v1", 1, 429, Map.of("Retry-After", "1"));
+            registry.respondNext("GET", "/v2/test/manifests/v1", 1, 503, Map.of());
+
+            long start = System.nanoTime();
+            try (RegistryResponse response = client.execute(RegistryRequest.get("http://" + registry.getHost() + "/v2/test/manifests/v1"))) {
+                Assertions.assertEquals(200, response.getStatusCode());
+            }
+            Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+            Assertions.assertEquals(3, registry.requests().size());
+        }
+    }
+
+    @Test
+    void doesNotRetryUnsafeRequestsOnGatewayErrors() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             HttpClient client = new HttpClient()) {
+            registry.respondNext("POST", "/v2/test/blobs/uploads/", 1, 502, Map.of());
+
+            try (RegistryResponse response = client.execute(RegistryRequest.post("http://" + registry.getHost() + "/v2/test/blobs/uploads/"))) {
+                Assertions.assertEquals(502, response.getStatusCode());
+            }
+            Assertions.assertEquals(1, registry.requests().size());
+        }
+    }
+
+    @Test
+    void failsFastWhileCircuitIsOpen() throws Exception {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(1).circuitBreakerThreshold(3)
+                .circuitBreakerOpenTime(Duration.ofMillis(300)).build();
+        try (FakeRegistry registry = FakeRegistry.start();
+             HttpClient client = new HttpClient(HttpClientConfig.builder().retryPolicy(policy).build())) {
+            registry.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            registry.failNext("GET", "/v2/test/manifests/v1", 3);
+            String url = "http://" + registry.getHost() + "/v2/test/manifests/v1";
+            for (int i = 0; i < 3; i++) {
+                try (RegistryResponse response = client.execute(RegistryRequest.get(url))) {
+                    Assertions.assertEquals(500, response.getStatusCode());
+                }
+            }
+            Assertions.assertTrue(client.isCircuitOpen("http://" + registry.getHost()));
+            Assertions.assertThrows(IOException.class, () -> client.execute(RegistryRequest.get(url)));
+            Assertions.assertEquals(3, registry.requests().size());
+
+            Thread.sleep(400);
+            try (RegistryResponse response = client.execute(RegistryRequest.get(url))) {
+                Assertions.assertEquals(200, response.getStatusCode());
+            }
+            Assertions.assertFalse(client.isCircuitOpen("http://" + registry.getHost()));
+        }
+    }
+
+    @Test
+    void pacesRequestsOnceAnnouncedQuotaIsUsedUp() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             FakeRegistry exhausted = FakeRegistry.start();
+             HttpClient client = new HttpClient()) {
+            // two requests per second, none left right now
+            registry.responseHeader("RateLimit-Limit", "2;w=1");
+            registry.responseHeader("RateLimit-Remaining", "0;w=1");
+            String url = "http://" + registry.getHost() + "/v2/app/manifests/latest";
+            client.execute(RegistryRequest.get(url)).close();
+            long start = System.nanoTime();
+            client.execute(RegistryRequest.get(url)).close();
+            Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+
+            // one request per hour is further away than any acceptable wait
+            exhausted.responseHeader("RateLimit-Limit", "1;w=3600");
+            exhausted.responseHeader("RateLimit-Remaining", "0;w=3600");
+            String exhaustedUrl = "http://" + exhausted.getHost() + "/v2/app/manifests/latest";
+            client.execute(RegistryRequest.get(exhaustedUrl)).close();
+            IOException e = Assertions.assertThrows(IOException.class, () -> client.execute(RegistryRequest.get(exhaustedUrl)));
+            Assertions.assertTrue(e.getMessage().contains("Rate limit"), e.getMessage());
+            Assertions.assertEquals(1, exhausted.requests().size());
+        }
+    }
+
+    @Test
+    void chargesOnlyManifestGetsAgainstTheQuota() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             HttpClient client = new HttpClient()) {
+            String digest = registry.putBlob("app", "layer".getBytes(StandardCharsets.UTF_8));
+            registry.responseHeader("RateLimit-Limit", "1;w=3600");
+            registry.responseHeader("RateLimit-Remaining", "0;w=3600");
+            String base = "http://" + registry.getHost() + "/v2/app/";
+            client.execute(RegistryRequest.get(base + "manifests/latest")).close();
+
+            // Pulling the layers of the manifest is not metered
+            for (int i = 0; i < 5; i++) {
+                try (RegistryResponse response = client.execute(RegistryRequest.get(base + "blobs/" + digest))) {
+                    Assertions.assertEquals(200, response.getStatusCode());
+                }
+                client.execute(RegistryRequest.head(base + "blobs/" + digest)).close();
+            }
+            IOException e = Assertions.assertThrows(IOException.class,
+                    () -> client.execute(RegistryRequest.get(base + "manifests/latest")));
+            Assertions.assertTrue(e.getMessage().contains("Rate limit"), e.getMessage());
+        }
+    }
+
+    @Test
+    void readsBlobsWithTheirOwnTimeout() throws Exception {
+        HttpClientConfig config = HttpClientConfig.builder()
+                .requestTimeout(Duration.ofMillis(200))
+                .blobReadTimeout(Duration.ofSeconds(5))
+                .retryPolicy(RetryPolicy.builder().maxAttempts(1).build())
+                .build();
+        try (FakeRegistry registry = FakeRegistry.start();
+             JibImageManager manager = new JibImageManager(new HttpClient(config))) {
+            byte[] layer = "layer".getBytes(StandardCharsets.UTF_8);
+            String digest = registry.putBlob("test", layer);
+            registry.putManifest("test", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            registry.delay(Duration.ofMillis(500));
+
+            RegistryApi api = manager.getRegistryApi();
+            try (RegistryResponse response = api.getBlob(registry.getHost(), "test", digest, null)) {
+                Assertions.assertArrayEquals(layer, response.getBody().readAllBytes());
+            }
+            Assertions.assertThrows(IOException.class, () -> api.getManifest(registry.getHost(), "test", "v1", null));
+        }
+    }
+
+    @Test
+    void parsesRetryAfter() {
+        Assertions.assertEquals(Optional.of(Duration.ofSeconds(120)), HttpClient.parseRetryAfter("120"));
+        Assertions.assertEquals(Optional.of(Duration.ZERO), HttpClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        Assertions.assertEquals(Optional.empty(), HttpClient.parseRetryAfter("soon"));
+    }
+}
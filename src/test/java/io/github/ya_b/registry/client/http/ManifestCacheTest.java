@@ -0,0 +1,123 @@
+package io.github.ya_b.registry.client.http;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+class ManifestCacheTest {
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+    }
+
+    @Test
+    void servesDigestsLocallyAndRevalidatesTags() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String digest = registry.putManifest("app", "v1", RawManifest.OCI_MANIFEST, manifest("a"));
+
+            RawManifest first = client.manifest(registry.getHost() + "/app:v1");
+            Assertions.assertEquals(digest, first.digest());
+            Assertions.assertEquals(RawManifest.OCI_MANIFEST, first.mediaType());
+            Assertions.assertEquals("sha256:" + "a".repeat(64), first.parse().getConfig().getDigest());
+
+            // The default cache revalidates tags; the unchanged manifest comes back as 304
+            Assertions.assertEquals(digest, client.manifest(registry.getHost() + "/app:v1").digest());
+            Assertions.assertEquals(1, manifestGets(registry, true));
+
+            int before = registry.requests().size();
+            Assertions.assertEquals(digest, client.manifest(registry.getHost() + "/app@" + digest).digest());
+            Assertions.assertEquals(before, registry.requests().size());
+
+            String updated = registry.putManifest("app", "v1", RawManifest.OCI_MANIFEST, manifest("b"));
+            Assertions.assertEquals(updated, client.manifest(registry.getHost() + "/app:v1").digest());
+
+            ManifestCache.Stats stats = client.manifestCacheStats();
+            Assertions.assertEquals(1, stats.hits());
+            Assertions.assertEquals(1, stats.revalidations());
+            Assertions.assertEquals(2, stats.misses());
+            Assertions.assertEquals(2, stats.size());
+        }
+    }
+
+    @Test
+    void trustsTagsWithinTtl() throws Exception {
+        MutableClock clock = new MutableClock();
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder()
+                     .manifestCache(new ManifestCache(10, Duration.ofSeconds(30), clock))
+                     .build()) {
+            String digest = registry.putManifest("app", "v1", RawManifest.DOCKER_MANIFEST, manifest("a"));
+            client.manifest(registry.getHost() + "/app:v1");
+            int before = registry.requests().size();
+
+            String updated = registry.putManifest("app", "v1", RawManifest.DOCKER_MANIFEST, manifest("b"));
+            Assertions.assertEquals(digest, client.manifest(registry.getHost() + "/app:v1").digest());
+            Assertions.assertEquals(Optional.of(digest), client.digest(registry.getHost() + "/app:v1"));
+            Assertions.assertEquals(before, registry.requests().size());
+
+            clock.advance(Duration.ofSeconds(31));
+            Assertions.assertEquals(updated, client.manifest(registry.getHost() + "/app:v1").digest());
+        }
+    }
+
+    @Test
+    void negotiatesIndexes() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String child = registry.putManifest("multi", "amd64", RawManifest.OCI_MANIFEST, manifest("c"));
+            byte[] index = ("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.OCI_INDEX + "\",\"manifests\":[{\"mediaType\":\""
+                    + RawManifest.OCI_MANIFEST + "\",\"digest\":\"" + child + "\",\"size\":10,"
+                    + "\"platform\":{\"architecture\":\"amd64\",\"os\":\"linux\"}}]}").getBytes(StandardCharsets.UTF_8);
+            String digest = registry.putManifest("multi", "latest", RawManifest.OCI_INDEX, index);
+
+            RawManifest manifest = client.manifest(registry.getHost() + "/multi:latest");
+            Assertions.assertTrue(manifest.isIndex());
+            Assertions.assertEquals("amd64", manifest.parse().getManifests().get(0).getPlatform().getArchitecture());
+            Assertions.assertEquals(digest, client.digest(registry.getHost() + "/multi:latest").orElseThrow());
+            Assertions.assertTrue(registry.requests().stream()
+                    .filter(request -> request.method().equals("HEAD"))
+                    .allMatch(request -> request.headers().getFirst("Accept").contains(RawManifest.OCI_INDEX)));
+        }
+    }
+
+    private static long manifestGets(FakeRegistry registry, boolean conditional) {
+        return registry.requests().stream()
+                .filter(request -> request.method().equals("GET") && request.path().contains("/manifests/"))
+                .filter(request -> request.headers().containsKey("If-None-Match") == conditional)
+                .count();
+    }
+
+    private static byte[] manifest(String seed) {
+        return ("{\"schemaVersion\":2,\"config\":{\"mediaType\":\"application/vnd.oci.image.config.v1+json\","
+                + "\"digest\":\"sha256:" + seed.repeat(64) + "\",\"size\":2},\"layers\":[]}").getBytes(StandardCharsets.UTF_8);
+    }
+}
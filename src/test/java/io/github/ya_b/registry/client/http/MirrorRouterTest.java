@@ -0,0 +1,134 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+class MirrorRouterTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void failsOverToNextMirrorWithoutUpstreamCredentials() throws Exception {
+        try (FakeRegistry upstream = FakeRegistry.start();
+             FakeRegistry broken = FakeRegistry.start();
+             FakeRegistry mirror = FakeRegistry.start();
+             HttpClient httpClient = new HttpClient()) {
+            String digest = mirror.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            broken.failNext("GET", ".*", 10);
+            MirrorRouter router = new MirrorRouter(httpClient, MirrorConfig.builder()
+                    .mirror(upstream.getHost(), List.of(broken.getHost(), "http://" + mirror.getHost()))
+                    .build());
+
+            try (RegistryResponse response = router.execute(upstream.getHost(),
+                    Optional.of(Authorization.fromBasicCredentials("user", "secret")),
+                    baseUrl -> RegistryRequest.get(baseUrl + "/v2/app/manifests/v1"))) {
+                Assertions.assertEquals(200, response.getStatusCode());
+                Assertions.assertEquals(digest, response.getFirstHeader("Docker-Content-Digest").get());
+            }
+            Assertions.assertEquals(0, upstream.requests().size());
+            Assertions.assertNull(mirror.requests().get(0).headers().getFirst("Authorization"));
+            Assertions.assertEquals(1, router.stats().failovers());
+            Assertions.assertEquals(1, router.stats().endpoints().get("http://" + broken.getHost()).failures());
+        }
+    }
+
+    @Test
+    void fallsBackToUpstreamWhenMirrorsLackTheContentOrAccess() throws Exception {
+        try (FakeRegistry upstream = FakeRegistry.start();
+             FakeRegistry empty = FakeRegistry.start();
+             FakeRegistry denied = FakeRegistry.start();
+             HttpClient httpClient = new HttpClient();
+             MirrorRouter router = new MirrorRouter(httpClient, MirrorConfig.builder()
+                     .mirror(upstream.getHost(), List.of(empty.getHost(), denied.getHost()))
+                     .build())) {
+            String digest = upstream.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            denied.respondNext("GET", ".*", 1, 401, Map.of());
+
+            try (RegistryResponse response = router.execute(upstream.getHost(), Optional.empty(),
+                    baseUrl -> RegistryRequest.get(baseUrl + "/v2/app/manifests/v1"))) {
+                Assertions.assertEquals(200, response.getStatusCode());
+                Assertions.assertEquals(digest, response.getFirstHeader("Docker-Content-Digest").get());
+            }
+            Assertions.assertEquals(2, router.stats().failovers());
+
+            // Missing upstream as well: its answer stands
+            try (RegistryResponse response = router.execute(upstream.getHost(), Optional.empty(),
+                    baseUrl -> RegistryRequest.get(baseUrl + "/v2/app/manifests/v2"))) {
+                Assertions.assertEquals(404, response.getStatusCode());
+            }
+            Assertions.assertEquals(2, upstream.requests().size());
+        }
+    }
+
+    @Test
+    void fallsBackToUpstreamAndRanksMirrorsByLatency() throws Exception {
+        try (FakeRegistry upstream = FakeRegistry.start();
+             FakeRegistry slow = FakeRegistry.start();
+             FakeRegistry fast = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder()
+                     .mirrorConfig(MirrorConfig.builder()
+                             .mirror(upstream.getHost(), List.of(slow.getHost(), fast.getHost()))
+                             .build())
+                     .build()) {
+            String digest = upstream.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            slow.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            fast.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            slow.delay(Duration.ofMillis(200));
+
+            for (int i = 0; i < 5; i++) {
+                Assertions.assertEquals(digest, client.digest(upstream.getHost() + "/app:v1").get());
+            }
+            MirrorRouter router = client.getJibImageManager().getRegistryApi().getMirrorRouter();
+            Assertions.assertEquals(List.of("http://" + fast.getHost(), "http://" + slow.getHost(),
+                    "http://" + upstream.getHost()), router.endpoints(upstream.getHost()));
+            Assertions.assertEquals(1, slow.requests().size());
+            Assertions.assertEquals(4, fast.requests().size());
+
+            // both mirrors down: the upstream answers
+            slow.failNext("HEAD", ".*", 10);
+            fast.failNext("HEAD", ".*", 10);
+            Assertions.assertEquals(digest, client.digest(upstream.getHost() + "/app:v1").get());
+            Assertions.assertEquals(1, upstream.requests().size());
+        }
+    }
+
+    @Test
+    void hedgesReadsTheBestMirrorIsLateFor() throws Exception {
+        try (FakeRegistry upstream = FakeRegistry.start();
+             FakeRegistry primary = FakeRegistry.start();
+             FakeRegistry secondary = FakeRegistry.start();
+             HttpClient httpClient = new HttpClient()) {
+            primary.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            secondary.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            primary.delay(Duration.ofMillis(1000));
+            MirrorRouter router = new MirrorRouter(httpClient, MirrorConfig.builder()
+                    .mirror(upstream.getHost(), List.of(primary.getHost(), secondary.getHost()))
+                    .hedging(true)
+                    .hedgeDelay(Duration.ofMillis(50))
+                    .fallbackToUpstream(false)
+                    .build());
+
+            long start = System.nanoTime();
+            try (RegistryResponse response = router.execute(upstream.getHost(), Optional.empty(),
+                    baseUrl -> RegistryRequest.get(baseUrl + "/v2/app/manifests/v1"))) {
+                Assertions.assertEquals(200, response.getStatusCode());
+                Assertions.assertEquals("{}", response.getBodyAsString());
+            }
+            Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+            Assertions.assertEquals(1, router.stats().hedged());
+            Assertions.assertEquals(1, router.stats().hedgeWins());
+            Assertions.assertEquals(1, secondary.requests().size());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.ya_b.registry.client.http;
+
+import com.google.cloud.tools.jib.http.Authorization;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TokenCacheTest {
+
+    private static final TokenCache.Key KEY = new TokenCache.Key("realm", "service", "repository:library/registry:pull", "u");
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+    }
+
+    @Test
+    void reusesTokenUntilRefreshWindow() throws IOException {
+        MutableClock clock = new MutableClock();
+        TokenCache cache = new TokenCache(Duration.ofSeconds(30), clock);
+        AtomicInteger loads = new AtomicInteger();
+        TokenCache.TokenLoader loader = () -> new TokenCache.Token(
+                Authorization.fromBearerToken("t" + loads.incrementAndGet()), clock.instant().plusSeconds(300));
+
+        Assertions.assertEquals("t1", cache.get(KEY, loader).getToken());
+        clock.advance(Duration.ofSeconds(200));
+        Assertions.assertEquals("t1", cache.get(KEY, loader).getToken());
+        Assertions.assertEquals(1, loads.get());
+
+        // inside the refresh window the caller still gets the current token while the new one loads in the background
+        clock.advance(Duration.ofSeconds(80));
+        Assertions.assertEquals("t1", cache.get(KEY, loader).getToken());
+        cache.pending(KEY).join();
+        Assertions.assertEquals("t2", cache.get(KEY, loader).getToken());
+
+        clock.advance(Duration.ofSeconds(600));
+        Assertions.assertEquals("t3", cache.get(KEY, loader).getToken());
+
+        TokenCache.Stats stats = cache.stats();
+        Assertions.assertEquals(3, stats.loads());
+        Assertions.assertEquals(2, stats.misses());
+        Assertions.assertEquals(3, stats.hits());
+    }
+
+    @Test
+    void refreshesWithoutBlockingTheCaller() throws Exception {
+        MutableClock clock = new MutableClock();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TokenCache cache = new TokenCache(Duration.ofSeconds(30), clock, executor);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Instant expiresAt = clock.instant().plusSeconds(300);
+        TokenCache.TokenLoader loader = () -> {
+            if (loads.incrementAndGet() > 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return new TokenCache.Token(Authorization.fromBearerToken("t" + loads.get()), expiresAt.plusSeconds(loads.get()));
+        };
+        try {
+            cache.get(KEY, loader);
+            clock.advance(Duration.ofSeconds(280));
+            // The refresh is stuck at the token endpoint, yet callers get the current token right away
+            Assertions.assertEquals("t1", cache.get(KEY, loader).getToken());
+            Assertions.assertEquals("t1", cache.get(KEY, loader).getToken());
+            CompletableFuture<?> refresh = cache.pending(KEY);
+            Assertions.assertFalse(refresh.isDone());
+            release.countDown();
+            refresh.get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals("t2", cache.get(KEY, loader).getToken());
+            Assertions.assertEquals(2, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void collapsesConcurrentLoads() throws Exception {
+        TokenCache cache = new TokenCache();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TokenCache.TokenLoader loader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new TokenCache.Token(Authorization.fromBearerToken("t"), Instant.now().plusSeconds(300));
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Authorization>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get(KEY, loader)));
+            }
+            started.await();
+            CompletableFuture<?> load = cache.pending(KEY);
+            release.countDown();
+            load.join();
+            for (Future<Authorization> future : futures) {
+                Assertions.assertEquals("t", future.get().getToken());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        TokenCache cache = new TokenCache();
+        Assertions.assertThrows(IOException.class, () -> cache.get(KEY, () -> {
+            throw new IOException("boom");
+        }));
+        Assertions.assertEquals(1, cache.stats().loadFailures());
+        Assertions.assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void fingerprintDoesNotContainPassword() {
+        String fingerprint = TokenCache.fingerprint(new String[]{"user", "secret"});
+        Assertions.assertTrue(fingerprint.startsWith("user:"));
+        Assertions.assertFalse(fingerprint.contains("secret"));
+        Assertions.assertNotEquals(fingerprint, TokenCache.fingerprint(new String[]{"user", "other"}));
+    }
+
+    @Test
+    void fingerprintAcceptsMissingCredentialParts() {
+        Assertions.assertEquals(TokenCache.fingerprint(new String[]{"", ""}), TokenCache.fingerprint(new String[]{null, null}));
+        Assertions.assertTrue(TokenCache.fingerprint(new String[]{"user", null}).startsWith("user:"));
+        Assertions.assertNotEquals(TokenCache.fingerprint(new String[]{"user", null}),
+                TokenCache.fingerprint(new String[]{"user", "secret"}));
+    }
+}
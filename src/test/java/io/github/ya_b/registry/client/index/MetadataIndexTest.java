@@ -0,0 +1,150 @@
+package io.github.ya_b.registry.client.index;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.crawler.CrawlerConfig;
+import io.github.ya_b.registry.client.http.RawManifest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+class MetadataIndexTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T00:00:00Z");
+    private static final String BASE_LAYER = FakeRegistry.sha256("base".getBytes(StandardCharsets.UTF_8));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void refreshesIncrementallyAndFindsImagesByLayer() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build();
+             MetadataIndex index = MetadataIndex.open(dir.resolve("registry.idx"))) {
+            String host = registry.getHost();
+            String v1 = pushImage(registry, "app", "v1", "v1", 40);
+            pushImage(registry, "app", "v2", "v2", 5);
+            pushImage(registry, "other", "latest", "v1", 40);
+
+            RefreshSummary first = refresher(client).refresh(index, "http://" + host, null, CrawlerConfig.defaults());
+            Assertions.assertEquals(3, first.tags());
+            Assertions.assertEquals(3, first.tagsAdded());
+            // other:latest is the same manifest as app:v1
+            Assertions.assertEquals(2, first.manifestsFetched());
+            Assertions.assertEquals(0, first.failures());
+
+            Assertions.assertEquals(Set.of(host + "/app", host + "/other"), index.repositories());
+            Assertions.assertEquals(v1, index.tags(host + "/app").get("v1"));
+            IndexedManifest manifest = index.manifest(v1).orElseThrow();
+            Assertions.assertEquals(NOW.minus(Duration.ofDays(40)), manifest.created());
+            Assertions.assertEquals(2, manifest.layers().size());
+            Assertions.assertEquals(Set.of("app:v1", "app:v2", "other:latest"), names(index.tagsContaining(BASE_LAYER)));
+            Assertions.assertEquals(Set.of("app:v1", "other:latest"), names(index.tagsContaining(manifest.layers().get(1))));
+            Assertions.assertEquals(Set.of(host + "/app", host + "/other"), index.repositoriesContaining(BASE_LAYER));
+            Assertions.assertEquals(Set.of("app:v1", "other:latest"), names(index.createdBefore(NOW.minus(Duration.ofDays(30)))));
+
+            // Nothing changed: no manifest is read again
+            int requests = registry.requests().size();
+            RefreshSummary unchanged = refresher(client).refresh(index, "http://" + host, null, CrawlerConfig.defaults());
+            Assertions.assertEquals(0, unchanged.tagsAdded() + unchanged.tagsMoved() + unchanged.tagsRemoved());
+            Assertions.assertEquals(0, unchanged.manifestsFetched());
+            Assertions.assertTrue(registry.requests().subList(requests, registry.requests().size()).stream()
+                    .noneMatch(request -> request.path().contains("/blobs/")));
+
+            String v3 = pushImage(registry, "app", "v2", "v3", 1);
+            client.delete(host + "/other:latest");
+            RefreshSummary changed = refresher(client).refresh(index, "http://" + host, null, CrawlerConfig.defaults());
+            Assertions.assertEquals(1, changed.tagsMoved());
+            Assertions.assertEquals(1, changed.tagsRemoved());
+            Assertions.assertEquals(1, changed.manifestsFetched());
+            Assertions.assertEquals(Set.of(host + "/app"), index.repositories());
+            Assertions.assertEquals(Map.of("v1", v1, "v2", v3), index.tags(host + "/app"));
+            Assertions.assertEquals(Set.of("app:v1", "app:v2"), names(index.tagsContaining(BASE_LAYER)));
+        }
+    }
+
+    @Test
+    void survivesReopeningTornWritesAndCompaction() throws Exception {
+        Path file = dir.resolve("registry.idx");
+        try (MetadataIndex index = MetadataIndex.open(file)) {
+            index.putManifest(new IndexedManifest("sha256:m1", false, "sha256:c1", NOW, 30, List.of("sha256:l1", "sha256:l2"), List.of()));
+            index.putManifest(new IndexedManifest("sha256:m2", false, "sha256:c2", null, 20, List.of("sha256:l1"), List.of()));
+            index.putManifest(new IndexedManifest("sha256:i1", true, null, NOW, 50, List.of(), List.of("sha256:m1", "sha256:m2")));
+            Assertions.assertNull(index.putTag("r/app", "latest", "sha256:m1", NOW));
+            Assertions.assertEquals("sha256:m1", index.putTag("r/app", "latest", "sha256:m2", NOW));
+            index.putTag("r/app", "multi", "sha256:i1", NOW);
+            index.putTag("r/app", "old", "sha256:m1", NOW);
+            Assertions.assertTrue(index.removeTag("r/app", "old", NOW));
+            Assertions.assertFalse(index.removeTag("r/app", "old", NOW));
+        }
+        long complete = Files.size(file);
+        // A record cut short by a crash
+        Files.write(file, new byte[]{3, 0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        try (MetadataIndex index = MetadataIndex.open(file)) {
+            Assertions.assertEquals(complete, Files.size(file));
+            Assertions.assertEquals(Map.of("latest", "sha256:m2", "multi", "sha256:i1"), index.tags("r/app"));
+            Assertions.assertEquals(Set.of("r/app:latest", "r/app:multi"),
+                    index.tagsContaining("sha256:l1").stream().map(tag -> tag.repository() + ":" + tag.tag()).collect(Collectors.toSet()));
+            Assertions.assertEquals(List.of("sha256:m1", "sha256:m2"), index.manifest("sha256:i1").orElseThrow().manifests());
+
+            index.compact();
+            Assertions.assertTrue(Files.size(file) < complete);
+            Assertions.assertEquals(Map.of("latest", "sha256:m2", "multi", "sha256:i1"), index.tags("r/app"));
+            Assertions.assertEquals(List.of("sha256:l1", "sha256:l2"), index.manifest("sha256:m1").orElseThrow().layers());
+            Assertions.assertEquals(NOW, index.manifest("sha256:i1").orElseThrow().created());
+            index.putTag("r/app", "next", "sha256:m1", NOW);
+        }
+
+        try (MetadataIndex index = MetadataIndex.open(file)) {
+            Assertions.assertEquals(3, index.allTags().size());
+            Assertions.assertEquals(Set.of("r/app"), index.repositoriesContaining("sha256:l2"));
+        }
+    }
+
+    private static IndexRefresher refresher(RegistryClientInstance client) {
+        return new IndexRefresher(client.getJibImageManager(), ForkJoinPool.commonPool(), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private static Set<String> names(List<IndexedTag> tags) {
+        return tags.stream()
+                .map(tag -> tag.repository().substring(tag.repository().indexOf('/') + 1) + ":" + tag.tag())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Push an image of a shared base layer and a layer of its own, created {@code ageDays} before {@link #NOW}
+     */
+    private static String pushImage(FakeRegistry registry, String repository, String tag, String content, int ageDays) {
+        byte[] config = ("{\"architecture\":\"amd64\",\"os\":\"linux\",\"created\":\""
+                + NOW.minus(Duration.ofDays(ageDays)) + "\"}").getBytes(StandardCharsets.UTF_8);
+        byte[] base = "base".getBytes(StandardCharsets.UTF_8);
+        byte[] layer = content.getBytes(StandardCharsets.UTF_8);
+        String configDigest = registry.putBlob(repository, config);
+        String baseDigest = registry.putBlob(repository, base);
+        String layerDigest = registry.putBlob(repository, layer);
+        String manifest = "{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\","
+                + "\"config\":{\"mediaType\":\"application/vnd.docker.container.image.v1+json\",\"size\":"
+                + config.length + ",\"digest\":\"" + configDigest + "\"},"
+                + "\"layers\":[{\"mediaType\":\"application/vnd.docker.image.rootfs.diff.tar.gzip\",\"size\":"
+                + base.length + ",\"digest\":\"" + baseDigest + "\"},"
+                + "{\"mediaType\":\"application/vnd.docker.image.rootfs.diff.tar.gzip\",\"size\":"
+                + layer.length + ",\"digest\":\"" + layerDigest + "\"}]}";
+        return registry.putManifest(repository, tag, RawManifest.DOCKER_MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,172 @@
+package io.github.ya_b.registry.client.lazy;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.RawManifest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+class LazyImageTest {
+
+    private static final LazyImageConfig CONFIG = LazyImageConfig.builder().chunkSize(64 * 1024).build();
+
+    @Test
+    void readsFilesFetchingOnlyWhatTheLookupNeeds() throws Exception {
+        byte[] big = new byte[2 * 1024 * 1024];
+        new Random(7).nextBytes(big);
+        ByteArrayOutputStream base = new ByteArrayOutputStream();
+        entry(base, "./etc/", '5', "", new byte[0]);
+        entry(base, "./etc/os-release", '0', "", text("ID=test\n"));
+        entry(base, "./etc/removed", '0', "", text("gone"));
+        entry(base, "./opt/old.txt", '0', "", text("old"));
+        entry(base, "./lib", '2', "usr/lib", new byte[0]);
+        entry(base, "./usr/lib/libc.txt", '0', "", text("libc"));
+        entry(base, "./var/big.bin", '0', "", big);
+        entry(base, "./var/last.txt", '0', "", text("last"));
+        byte[] baseLayer = gzip(end(base));
+
+        ByteArrayOutputStream top = new ByteArrayOutputStream();
+        entry(top, "sbom.json", '0', "", text("{\"packages\":[]}"));
+        entry(top, "etc/.wh.removed", '0', "", new byte[0]);
+        entry(top, "etc/link", '2', "os-release", new byte[0]);
+        entry(top, "opt/.wh..wh..opq", '0', "", new byte[0]);
+        entry(top, "opt/new.txt", '0', "", text("new"));
+        byte[] topLayer = end(top);
+
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            String digest = pushImage(registry, "app", "v1", baseLayer, topLayer);
+
+            try (LazyImage image = client.openImage(registry.getHost() + "/app:v1", CONFIG)) {
+                Assertions.assertEquals(digest, image.getDigest());
+                Assertions.assertEquals(2, image.layers().size());
+
+                Assertions.assertEquals("ID=test\n", string(image.readFile("/etc/os-release")));
+                LazyImageStats stats = image.stats();
+                Assertions.assertEquals(baseLayer.length + topLayer.length, stats.imageBytes());
+                // The top layer and the first chunk of the base layer
+                Assertions.assertTrue(stats.bytesFetched() <= topLayer.length + CONFIG.getChunkSize(), stats.toString());
+                Assertions.assertEquals(1, stats.layersIndexed());
+
+                Assertions.assertEquals("{\"packages\":[]}", string(image.readFile("sbom.json")));
+                Assertions.assertEquals("ID=test\n", string(image.readFile("/etc/link")));
+                Assertions.assertEquals(LayerEntry.Type.SYMLINK, image.stat("/etc/link").orElseThrow().type());
+                Assertions.assertTrue(image.readFile("/etc/removed").isEmpty());
+                Assertions.assertTrue(image.readFile("/opt/old.txt").isEmpty());
+                Assertions.assertEquals("new", string(image.readFile("/opt/new.txt")));
+                Assertions.assertThrows(IOException.class, () -> image.readFile("/etc"));
+
+                // Through a directory that is a symbolic link, and behind the large entry
+                Assertions.assertEquals("libc", string(image.readFile("/lib/libc.txt")));
+                Assertions.assertEquals("last", string(image.readFile("/var/last.txt")));
+                Assertions.assertEquals(big.length, image.stat("/var/big.bin").orElseThrow().size());
+                Assertions.assertEquals(2, image.stats().layersIndexed());
+                // The scan of the gzip layer streams on over one request instead of one per chunk
+                Assertions.assertTrue(image.stats().rangeRequests() <= 5, image.stats().toString());
+
+                List<String> paths = image.list().stream().map(LayerEntry::path).toList();
+                Assertions.assertTrue(paths.containsAll(List.of("/etc", "/etc/os-release", "/etc/link", "/opt/new.txt",
+                        "/sbom.json", "/var/big.bin")), paths.toString());
+                Assertions.assertFalse(paths.contains("/etc/removed"));
+                Assertions.assertFalse(paths.contains("/opt/old.txt"));
+            }
+            Assertions.assertTrue(registry.requests().stream()
+                    .filter(request -> request.method().equals("GET") && request.path().contains("/blobs/"))
+                    .allMatch(request -> request.headers().getFirst("Range") != null));
+        }
+    }
+
+    @Test
+    void readsUncompressedLayersInPlace() throws Exception {
+        byte[] big = new byte[1024 * 1024];
+        new Random(3).nextBytes(big);
+        ByteArrayOutputStream layer = new ByteArrayOutputStream();
+        entry(layer, "big.bin", '0', "", big);
+        entry(layer, "small.txt", '0', "", text("small"));
+        byte[] tar = end(layer);
+
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            pushImage(registry, "app", "v1", tar);
+
+            try (LazyImage image = client.openImage(registry.getHost() + "/app:v1", CONFIG)) {
+                Assertions.assertEquals("small", string(image.readFile("/small.txt")));
+                // Headers only: the data of big.bin is skipped, not fetched
+                Assertions.assertTrue(image.stats().bytesFetched() <= 2L * CONFIG.getChunkSize(), image.stats().toString());
+                Assertions.assertFalse(image.readFile("/missing").isPresent());
+            }
+        }
+    }
+
+    private static String string(Optional<byte[]> content) {
+        return new String(content.orElseThrow(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] text(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void entry(ByteArrayOutputStream tar, String name, char type, String link, byte[] data) {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", data.length));
+        put(header, 136, "00000000000");
+        header[156] = (byte) type;
+        put(header, 157, link);
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        put(header, 148, "        ");
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+        tar.writeBytes(header);
+        tar.writeBytes(data);
+        tar.writeBytes(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static byte[] end(ByteArrayOutputStream tar) {
+        tar.writeBytes(new byte[1024]);
+        return tar.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static String pushImage(FakeRegistry registry, String repository, String tag, byte[]... layers) {
+        byte[] config = "{\"architecture\":\"amd64\",\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+        StringBuilder manifest = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\","
+                + "\"config\":{\"mediaType\":\"application/vnd.docker.container.image.v1+json\",\"size\":"
+                + config.length + ",\"digest\":\"" + registry.putBlob(repository, config) + "\"},\"layers\":[");
+        for (int i = 0; i < layers.length; i++) {
+            manifest.append(i > 0 ? "," : "").append("{\"mediaType\":\"application/vnd.docker.image.rootfs.diff.tar.gzip\",\"size\":")
+                    .append(layers[i].length).append(",\"digest\":\"").append(registry.putBlob(repository, layers[i])).append("\"}");
+        }
+        return registry.putManifest(repository, tag, RawManifest.DOCKER_MANIFEST,
+                manifest.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.ya_b.registry.client.metrics;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.HttpClientConfig;
+import io.github.ya_b.registry.client.http.RetryPolicy;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+class RegistryMetricsTest {
+
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @Test
+    void recordsOperationsRetriesAndGauges(@TempDir Path dir) throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder()
+                     .httpClientConfig(HttpClientConfig.builder()
+                             .retryPolicy(RetryPolicy.builder().initialBackoff(Duration.ofMillis(1)).build())
+                             .build())
+                     .metrics(metrics)
+                     .build()) {
+            String host = registry.getHost();
+            registry.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            byte[] blob = "layer content".getBytes(StandardCharsets.UTF_8);
+            String blobDigest = registry.putBlob("app", blob);
+            registry.respondNext("HEAD", "/v2/app/manifests/v1", 1, 503, Map.of());
+
+            Assertions.assertTrue(client.digest(host + "/app:v1").isPresent());
+            Assertions.assertEquals(List.of("v1"), client.tags(host + "/app"));
+            client.downloadBlob(host + "/app", blobDigest, dir.resolve("blob"));
+            registry.failNext("GET", "/v2/app/tags/list", 1);
+            Assertions.assertThrows(IOException.class, () -> client.tags(host + "/app"));
+
+            Assertions.assertEquals(List.of(
+                    new Recorded(Operation.DIGEST, host, 0, true),
+                    new Recorded(Operation.TAGS, host, 0, true),
+                    new Recorded(Operation.BLOB_DOWNLOAD, host, blob.length, true),
+                    new Recorded(Operation.TAGS, host, 0, false)), metrics.operations);
+            Assertions.assertEquals(List.of(host + " 503"), metrics.retries);
+
+            Assertions.assertEquals(0, metrics.gauges.get("registry.client.pool.leased host=" + host).get().intValue());
+            Assertions.assertTrue(metrics.gauges.get("registry.client.pool.available host=" + host).get().intValue() >= 1);
+            Assertions.assertEquals(0, metrics.gauges.get("registry.client.token.cache.size").get().intValue());
+            Assertions.assertNotNull(metrics.gauges.get("registry.client.manifest.cache.misses"));
+        }
+    }
+
+    @Test
+    void emitsJfrEvents() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build();
+             Recording recording = new Recording()) {
+            registry.putManifest("app", "v1", MANIFEST_TYPE, "{}".getBytes(StandardCharsets.UTF_8));
+            recording.enable("io.github.ya_b.registry.Operation").withThreshold(Duration.ZERO);
+            recording.start();
+            client.digest(registry.getHost() + "/app:v1");
+            recording.stop();
+
+            Path file = Path.of(System.getProperty("java.io.tmpdir"), "registry-metrics-" + System.nanoTime() + ".jfr");
+            try {
+                recording.dump(file);
+                List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                        .filter(event -> event.getEventType().getName().equals("io.github.ya_b.registry.Operation"))
+                        .toList();
+                Assertions.assertEquals(1, events.size());
+                Assertions.assertEquals("digest", events.get(0).getString("operation"));
+                Assertions.assertEquals(registry.getHost(), events.get(0).getString("host"));
+                Assertions.assertTrue(events.get(0).getBoolean("success"));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private record Recorded(Operation operation, String host, long bytes, boolean success) {
+    }
+
+    private static class RecordingMetrics implements RegistryMetrics {
+        private final List<Recorded> operations = new CopyOnWriteArrayList<>();
+        private final List<String> retries = new CopyOnWriteArrayList<>();
+        private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+        @Override
+        public void record(Operation operation, String host, long nanos, long bytes, boolean success) {
+            Assertions.assertTrue(nanos > 0);
+            operations.add(new Recorded(operation, host, bytes, success));
+        }
+
+        @Override
+        public void retried(String host, String reason) {
+            retries.add(host + " " + reason);
+        }
+
+        @Override
+        public void gauge(String name, Map<String, String> tags, Supplier<Number> value) {
+            StringBuilder key = new StringBuilder(name);
+            tags.forEach((tag, tagValue) -> key.append(' ').append(tag).append('=').append(tagValue));
+            gauges.put(key.toString(), value);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.ya_b.registry.client.retention;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.RawManifest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+class RetentionEngineTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T00:00:00Z");
+
+    @Test
+    void keepsNewestMatchingAndSharedTags() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            for (int day = 1; day <= 6; day++) {
+                pushImage(registry, "app", "build-" + day, 40 - day);
+            }
+            pushImage(registry, "app", "release-1", 100);
+            // same manifest as build-6, which is old enough to go but shares its digest
+            String shared = pushImage(registry, "app", "stable", 34);
+            pushImage(registry, "other", "build-1", 90);
+
+            RetentionPolicy policy = RetentionPolicy.builder()
+                    .repositories(Pattern.compile("app"))
+                    .keepLast(2)
+                    .keepTag(Pattern.compile("release-.*"))
+                    .olderThan(Duration.ofDays(35))
+                    .keepTag(Pattern.compile("stable"))
+                    .build();
+            Map<String, RetentionDecision> decisions = new ConcurrentHashMap<>();
+            RetentionReport report = engine(client).apply("http://" + registry.getHost(), null, policy,
+                    decision -> decisions.put(decision.tag(), decision));
+
+            Assertions.assertEquals(1, report.repositories());
+            Assertions.assertEquals(8, report.tags());
+            // build-1 (39 days), build-2 (38), build-3 (37) and build-4 (36); build-5 is too young,
+            // build-6 is kept with stable
+            for (String tag : List.of("build-1", "build-2", "build-3", "build-4")) {
+                Assertions.assertEquals(RetentionDecision.Action.DELETE, decisions.get(tag).action(), tag);
+                Assertions.assertNull(registry.getManifest("app", tag), tag);
+            }
+            Assertions.assertEquals(4, report.tagsDeleted());
+            Assertions.assertEquals(4, report.manifestsDeleted());
+            Assertions.assertEquals(RetentionDecision.Action.KEEP, decisions.get("build-5").action());
+            Assertions.assertEquals(RetentionDecision.Action.KEEP, decisions.get("build-6").action());
+            Assertions.assertEquals(shared, decisions.get("build-6").digest());
+            Assertions.assertEquals(RetentionDecision.Action.KEEP, decisions.get("release-1").action());
+            Assertions.assertEquals(NOW.minus(Duration.ofDays(100)), decisions.get("release-1").created());
+            Assertions.assertNotNull(registry.getManifest("app", "stable"));
+            Assertions.assertNotNull(registry.getManifest("other", "build-1"));
+            Assertions.assertEquals(0, report.failures());
+        }
+    }
+
+    @Test
+    void dryRunDeletesNothing() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            for (int i = 0; i < 5; i++) {
+                pushImage(registry, "repo" + (i % 2), "v" + i, 10 + i);
+            }
+
+            RetentionPolicy policy = RetentionPolicy.builder().keepLast(1).dryRun(true).build();
+            Map<String, RetentionDecision> decisions = new ConcurrentHashMap<>();
+            RetentionReport report = engine(client).apply("http://" + registry.getHost(), null, policy,
+                    decision -> decisions.put(decision.repository() + ":" + decision.tag(), decision));
+
+            Assertions.assertTrue(report.dryRun());
+            Assertions.assertEquals(2, report.repositories());
+            Assertions.assertEquals(3, report.tagsDeleted());
+            Assertions.assertEquals(RetentionDecision.Action.KEEP, decisions.get("repo0:v0").action());
+            Assertions.assertEquals(RetentionDecision.Action.DELETE, decisions.get("repo0:v4").action());
+            Assertions.assertEquals(RetentionDecision.Action.KEEP, decisions.get("repo1:v1").action());
+            Assertions.assertEquals(0, registry.requests().stream().filter(request -> request.method().equals("DELETE")).count());
+        }
+    }
+
+    @Test
+    void leavesUnreadableRepositoriesAlone() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            pushImage(registry, "app", "old", 50);
+            pushImage(registry, "app", "new", 1);
+            registry.failNext("GET", "/v2/app/manifests/new", 10);
+
+            RetentionPolicy policy = RetentionPolicy.builder().olderThan(Duration.ofDays(7)).build();
+            RetentionReport report = engine(client).apply("http://" + registry.getHost(), null, policy, decision -> { });
+
+            Assertions.assertEquals(1, report.failures());
+            Assertions.assertEquals(0, report.tagsDeleted());
+            Assertions.assertNotNull(registry.getManifest("app", "old"));
+        }
+    }
+
+    @Test
+    void countsAFailingListenerAsAFailure() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            pushImage(registry, "app", "v1", 1);
+            pushImage(registry, "other", "v1", 1);
+
+            RetentionPolicy policy = RetentionPolicy.builder().keepLast(1).build();
+            RetentionReport report = engine(client).apply("http://" + registry.getHost(), null, policy, decision -> {
+                if (decision.repository().equals("app")) {
+                    throw new IllegalStateException("listener failed");
+                }
+            });
+
+            Assertions.assertEquals(2, report.repositories());
+            Assertions.assertEquals(1, report.failures());
+        }
+    }
+
+    private static RetentionEngine engine(RegistryClientInstance client) {
+        return new RetentionEngine(client.getJibImageManager(), ForkJoinPool.commonPool(),
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    /**
+     * Push a single-layer image created {@code ageDays} before {@link #NOW}
+     */
+    private static String pushImage(FakeRegistry registry, String repository, String tag, int ageDays) {
+        byte[] config = ("{\"architecture\":\"amd64\",\"os\":\"linux\",\"created\":\""
+                + NOW.minus(Duration.ofDays(ageDays)) + "\"}").getBytes(StandardCharsets.UTF_8);
+        byte[] layer = (repository + ageDays).getBytes(StandardCharsets.UTF_8);
+        String configDigest = registry.putBlob(repository, config);
+        String layerDigest = registry.putBlob(repository, layer);
+        String manifest = "{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\","
+                + "\"config\":{\"mediaType\":\"application/vnd.docker.container.image.v1+json\",\"size\":"
+                + config.length + ",\"digest\":\"" + configDigest + "\"},"
+                + "\"layers\":[{\"mediaType\":\"application/vnd.docker.image.rootfs.diff.tar.gzip\",\"size\":"
+                + layer.length + ",\"digest\":\"" + layerDigest + "\"}]}";
+        return registry.putManifest(repository, tag, RawManifest.DOCKER_MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,332 @@
+package io.github.ya_b.registry.client.tar;
+
+import com.google.cloud.tools.jib.json.JsonTemplateMapper;
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.Platform;
+import io.github.ya_b.registry.client.http.RawManifest;
+import io.github.ya_b.registry.client.http.resp.Descriptor;
+import io.github.ya_b.registry.client.http.resp.ManifestResp;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+class ImageTarTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void exportsAndImportsWithoutStaging() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            byte[] config = "{\"architecture\":\"amd64\",\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+            List<byte[]> layers = List.of(gzipLike(1, 70_000), gzipLike(2, 512), gzipLike(3, 1));
+            String manifest = manifest(registry, "app", config, layers);
+            registry.putManifest("app", "v1", RawManifest.DOCKER_MANIFEST,
+                    manifest.getBytes(StandardCharsets.UTF_8));
+
+            Path tar = tempDir.resolve("app.tar");
+            client.pull(registry.getHost() + "/app:v1", tar.toString());
+            try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+                TarIndex index = TarIndex.read(channel);
+                Assertions.assertEquals(5, index.entries().size());
+                Assertions.assertArrayEquals(config, index.read(channel, index.get("config.json").orElseThrow()));
+                for (byte[] layer : layers) {
+                    String hex = FakeRegistry.sha256(layer).substring("sha256:".length());
+                    Assertions.assertArrayEquals(layer, index.read(channel, index.get(hex + ".tar.gz").orElseThrow()));
+                }
+            }
+
+            // The stream export writes the same archive
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            client.pull(registry.getHost() + "/app:v1", out);
+            Assertions.assertArrayEquals(Files.readAllBytes(tar), out.toByteArray());
+
+            client.push(tar.toString(), registry.getHost() + "/copy:v1");
+            ManifestResp pushed = JsonTemplateMapper.readJson(registry.getManifest("copy", "v1"), ManifestResp.class);
+            Assertions.assertEquals(RawManifest.DOCKER_MANIFEST, pushed.getMediaType());
+            Assertions.assertEquals(FakeRegistry.sha256(config), pushed.getConfig().getDigest());
+            Assertions.assertEquals(3, pushed.getLayers().size());
+            for (int i = 0; i < layers.size(); i++) {
+                Descriptor layer = pushed.getLayers().get(i);
+                Assertions.assertEquals(FakeRegistry.sha256(layers.get(i)), layer.getDigest());
+                Assertions.assertEquals(layers.get(i).length, layer.getSize());
+                Assertions.assertTrue(registry.hasBlob("copy", layer.getDigest()));
+            }
+        }
+    }
+
+    @Test
+    void exportsTheRequestedPlatform() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            StringBuilder index = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.OCI_INDEX + "\",\"manifests\":[");
+            List<byte[]> layers = new ArrayList<>();
+            for (String architecture : List.of("amd64", "arm64")) {
+                byte[] config = ("{\"architecture\":\"" + architecture + "\"}").getBytes(StandardCharsets.UTF_8);
+                byte[] layer = gzipLike(architecture.hashCode(), 4096);
+                layers.add(layer);
+                byte[] manifest = manifest(registry, "multi", config, List.of(layer)).getBytes(StandardCharsets.UTF_8);
+                String digest = registry.putManifest("multi", FakeRegistry.sha256(manifest), RawManifest.DOCKER_MANIFEST, manifest);
+                index.append(layers.size() == 1 ? "" : ",").append("{\"digest\":\"").append(digest).append("\",\"size\":")
+                        .append(manifest.length).append(",\"platform\":{\"os\":\"linux\",\"architecture\":\"")
+                        .append(architecture).append("\"}}");
+            }
+            registry.putManifest("multi", "latest", RawManifest.OCI_INDEX,
+                    index.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+
+            Path tar = tempDir.resolve("arm64.tar");
+            client.pull(registry.getHost() + "/multi:latest", tar.toString(), Platform.of("linux/arm64"));
+            try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+                String hex = FakeRegistry.sha256(layers.get(1)).substring("sha256:".length());
+                Assertions.assertTrue(TarIndex.read(channel).get(hex + ".tar.gz").isPresent());
+            }
+            Assertions.assertThrows(IOException.class, () -> client.pull(registry.getHost() + "/multi:latest",
+                    tempDir.resolve("s390x.tar").toString(), Platform.of("linux/s390x")));
+            Assertions.assertFalse(Files.exists(tempDir.resolve("s390x.tar")));
+        }
+    }
+
+    @Test
+    void resumesLayersWhoseConnectionBreaksOff() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            byte[] config = "{\"architecture\":\"amd64\",\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+            byte[] layer = gzipLike(4, 300_000);
+            String manifest = manifest(registry, "app", config, List.of(layer));
+            registry.putManifest("app", "v1", RawManifest.DOCKER_MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+            String layerPath = "/v2/app/blobs/" + FakeRegistry.sha256(layer);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            client.pull(registry.getHost() + "/app:v1", expected);
+            registry.truncateNext(layerPath, 2, 100_000);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            client.pull(registry.getHost() + "/app:v1", out);
+
+            Assertions.assertArrayEquals(expected.toByteArray(), out.toByteArray());
+            List<String> ranges = registry.requests().stream()
+                    .filter(request -> request.method().equals("GET") && request.path().equals(layerPath))
+                    .map(request -> request.headers().getFirst("Range"))
+                    .toList();
+            // The whole layer once, then twice from where each broken connection stopped
+            Assertions.assertEquals(4, ranges.size(), ranges.toString());
+            Assertions.assertNull(ranges.get(1));
+            Assertions.assertEquals("bytes=100000-299999", ranges.get(2));
+            Assertions.assertEquals("bytes=200000-299999", ranges.get(3));
+        }
+    }
+
+    @Test
+    void importsDockerSaveLayout() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            byte[] config = "{\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+            byte[] layer = random(7, 3000);
+            byte[] manifest = ("[{\"Config\":\"abc.json\",\"RepoTags\":[\"app:v1\"],\"Layers\":[\"0123/layer.tar\"]}]")
+                    .getBytes(StandardCharsets.UTF_8);
+
+            Path tar = tempDir.resolve("saved.tar");
+            try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                TarOutput out = new TarOutput(channel);
+                for (Object[] entry : new Object[][]{{"manifest.json", manifest}, {"abc.json", config}, {"0123/layer.tar", layer}}) {
+                    byte[] data = (byte[]) entry[1];
+                    out.putEntry((String) entry[0], data.length);
+                    out.write(data);
+                    out.closeEntry();
+                }
+                out.finish();
+            }
+
+            client.push(tar.toString(), registry.getHost() + "/app:v1");
+            ManifestResp pushed = JsonTemplateMapper.readJson(registry.getManifest("app", "v1"), ManifestResp.class);
+            Descriptor pushedLayer = pushed.getLayers().get(0);
+            Assertions.assertEquals(FakeRegistry.sha256(layer), pushedLayer.getDigest());
+            Assertions.assertEquals("application/vnd.docker.image.rootfs.diff.tar", pushedLayer.getMediaType());
+            Assertions.assertTrue(registry.hasBlob("app", FakeRegistry.sha256(config)));
+        }
+    }
+
+    @Test
+    void verifiesEntriesAgainstTheirDigests() throws Exception {
+        byte[] plain = random(11, 5000);
+        byte[] compressed = gzipLike(12, 70_000);
+        String compressedHex = FakeRegistry.sha256(compressed).substring("sha256:".length());
+        byte[] config = ("{\"os\":\"linux\",\"rootfs\":{\"type\":\"layers\",\"diff_ids\":[\""
+                + FakeRegistry.sha256(plain) + "\",\"sha256:" + "0".repeat(64) + "\"]}}").getBytes(StandardCharsets.UTF_8);
+        String configName = FakeRegistry.sha256(config).substring("sha256:".length()) + ".json";
+        String compressedName = compressedHex + ".tar.gz";
+        byte[] manifest = ("[{\"Config\":\"" + configName + "\",\"Layers\":[\"0123/layer.tar\",\"" + compressedName + "\"]}]")
+                .getBytes(StandardCharsets.UTF_8);
+
+        Path tar = tempDir.resolve("saved.tar");
+        writeTar(tar, List.of("manifest.json", configName, "0123/layer.tar", compressedName),
+                List.of(manifest, config, plain, compressed));
+
+        TarVerifier verifier = new TarVerifier(Runnable::run, 4);
+        TarVerification verification = verifier.verify(tar);
+        Assertions.assertEquals(3, verification.verified());
+        Assertions.assertEquals(config.length + plain.length + compressed.length, verification.bytes());
+        Assertions.assertEquals(List.of(), verification.unchecked());
+
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            TarIndex index = TarIndex.read(channel);
+            for (String name : List.of("0123/layer.tar", compressedName)) {
+                TarIndex.Entry entry = index.get(name).orElseThrow();
+                channel.write(ByteBuffer.wrap(new byte[]{0}), entry.offset() + entry.size() - 1);
+            }
+        }
+        // Every corrupt entry is reported, not just the first
+        IOException error = Assertions.assertThrows(IOException.class, () -> verifier.verify(tar));
+        Assertions.assertTrue(error.getMessage().contains("0123/layer.tar"));
+        Assertions.assertTrue(error.getMessage().contains(compressedName));
+    }
+
+    @Test
+    void verifiesConfigurationsOfTheOciLayout() throws Exception {
+        byte[] layer = gzipLike(14, 4096);
+        byte[] config = "{\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+        String configName = "blobs/sha256/" + FakeRegistry.sha256(config).substring("sha256:".length());
+        String layerName = "blobs/sha256/" + FakeRegistry.sha256(layer).substring("sha256:".length());
+        byte[] manifest = ("[{\"Config\":\"" + configName + "\",\"Layers\":[\"" + layerName + "\"]}]")
+                .getBytes(StandardCharsets.UTF_8);
+        config[1] ^= 1;
+        Path tar = tempDir.resolve("oci.tar");
+        writeTar(tar, List.of("manifest.json", configName, layerName), List.of(manifest, config, layer));
+
+        IOException error = Assertions.assertThrows(IOException.class, () -> new TarVerifier(Runnable::run, 2).verify(tar));
+        Assertions.assertTrue(error.getMessage().contains(configName), error.getMessage());
+    }
+
+    @Test
+    void refusesToPushLayersNotMatchingTheirName() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            byte[] layer = gzipLike(13, 4096);
+            String layerName = FakeRegistry.sha256(layer).substring("sha256:".length()) + ".tar.gz";
+            String layerDigest = FakeRegistry.sha256(layer);
+            layer[100] ^= 1;
+            byte[] config = "{\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+            byte[] manifest = ("[{\"Config\":\"config.json\",\"Layers\":[\"" + layerName + "\"]}]")
+                    .getBytes(StandardCharsets.UTF_8);
+            Path tar = tempDir.resolve("corrupt.tar");
+            writeTar(tar, List.of("manifest.json", "config.json", layerName), List.of(manifest, config, layer));
+
+            Assertions.assertThrows(IOException.class, () -> client.verify(tar.toString()));
+            Assertions.assertThrows(IOException.class, () -> client.push(tar.toString(), registry.getHost() + "/app:v1"));
+            Assertions.assertFalse(registry.hasBlob("app", layerDigest));
+            Assertions.assertNull(registry.getManifest("app", "v1"));
+        }
+    }
+
+    @Test
+    void pushesManyTarsUploadingSharedLayersOnce() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build()) {
+            byte[] base = gzipLike(20, 100_000);
+            String baseName = FakeRegistry.sha256(base).substring("sha256:".length()) + ".tar.gz";
+            Map<Path, String> images = new LinkedHashMap<>();
+            List<byte[]> apps = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                byte[] app = gzipLike(21 + i, 1000);
+                apps.add(app);
+                String appName = FakeRegistry.sha256(app).substring("sha256:".length()) + ".tar.gz";
+                byte[] config = ("{\"os\":\"linux\",\"image\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+                byte[] manifest = ("[{\"Config\":\"config.json\",\"Layers\":[\"" + baseName + "\",\"" + appName + "\"]}]")
+                        .getBytes(StandardCharsets.UTF_8);
+                Path tar = tempDir.resolve("image-" + i + ".tar");
+                writeTar(tar, List.of("manifest.json", "config.json", baseName, appName), List.of(manifest, config, base, app));
+                images.put(tar, registry.getHost() + (i < 2 ? "/team/a:v" + i : "/team/b:v" + i));
+            }
+
+            BatchPushResult result = client.pushAll(images);
+            // The base layer is sent to team/a once and mounted into team/b; configs and app layers are distinct
+            Assertions.assertEquals(7, result.blobsUploaded());
+            Assertions.assertEquals(1, result.blobsMounted());
+            Assertions.assertEquals(0, result.blobsSkipped());
+            Assertions.assertEquals(List.copyOf(images.keySet()), List.copyOf(result.digests().keySet()));
+            Assertions.assertTrue(registry.hasBlob("team/b", FakeRegistry.sha256(base)));
+            for (int i = 0; i < 3; i++) {
+                String repository = i < 2 ? "team/a" : "team/b";
+                ManifestResp pushed = JsonTemplateMapper.readJson(registry.getManifest(repository, "v" + i), ManifestResp.class);
+                Assertions.assertEquals(FakeRegistry.sha256(apps.get(i)), pushed.getLayers().get(1).getDigest());
+                Assertions.assertEquals(result.digests().get(tempDir.resolve("image-" + i + ".tar")),
+                        FakeRegistry.sha256(registry.getManifest(repository, "v" + i)));
+            }
+
+            // Pushing the release again finds every blob in place
+            BatchPushResult again = client.pushAll(images);
+            Assertions.assertEquals(0, again.blobsUploaded());
+            Assertions.assertEquals(0, again.bytesUploaded());
+        }
+    }
+
+    @Test
+    void encodesLargeSizesInBase256() throws Exception {
+        long size = 10L * 1024 * 1024 * 1024;
+        Path tar = tempDir.resolve("large.tar");
+        Files.write(tar, TarOutput.header("big.tar", size));
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+            TarIndex.Entry entry = TarIndex.read(channel).get("big.tar").orElseThrow();
+            Assertions.assertEquals(size, entry.size());
+            Assertions.assertEquals(TarOutput.BLOCK, entry.offset());
+        }
+    }
+
+    private static void writeTar(Path tar, List<String> names, List<byte[]> contents) throws IOException {
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            TarOutput out = new TarOutput(channel);
+            for (int i = 0; i < names.size(); i++) {
+                out.putEntry(names.get(i), contents.get(i).length);
+                out.write(contents.get(i));
+                out.closeEntry();
+            }
+            out.finish();
+        }
+    }
+
+    private static String manifest(FakeRegistry registry, String repository, byte[] config, List<byte[]> layers) {
+        List<String> descriptors = new ArrayList<>();
+        for (byte[] layer : layers) {
+            descriptors.add(descriptor("application/vnd.docker.image.rootfs.diff.tar.gzip",
+                    registry.putBlob(repository, layer), layer.length));
+        }
+        return "{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\",\"config\":"
+                + descriptor("application/vnd.docker.container.image.v1+json", registry.putBlob(repository, config), config.length)
+                + ",\"layers\":[" + String.join(",", descriptors) + "]}";
+    }
+
+    private static String descriptor(String mediaType, String digest, long size) {
+        return "{\"mediaType\":\"" + mediaType + "\",\"digest\":\"" + digest + "\",\"size\":" + size + "}";
+    }
+
+    private static byte[] gzipLike(long seed, int size) {
+        byte[] bytes = random(seed, size);
+        bytes[0] = 0x1f;
+        if (size > 1) {
+            bytes[1] = (byte) 0x8b;
+        }
+        return bytes;
+    }
+
+    private static byte[] random(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
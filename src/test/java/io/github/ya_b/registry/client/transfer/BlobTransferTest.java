@@ -0,0 +1,129 @@
+package io.github.ya_b.registry.client.transfer;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+class BlobTransferTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resumesInterruptedDownload() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = client()) {
+            byte[] content = random(10 * CHUNK + 123);
+            String digest = registry.putBlob("app", content);
+            Path target = tempDir.resolve("blob");
+
+            registry.failAfter("GET", "/v2/app/blobs/.*", 3, 1);
+            Assertions.assertThrows(IOException.class,
+                    () -> client.downloadBlob(registry.getHost() + "/app", digest, target));
+            Assertions.assertFalse(Files.exists(target));
+            Assertions.assertTrue(Files.exists(tempDir.resolve("blob.part.state")));
+
+            long before = rangedGets(registry);
+            client.downloadBlob(registry.getHost() + "/app", digest, target);
+            Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+            // 3 of 11 chunks were on disk already
+            Assertions.assertEquals(8, rangedGets(registry) - before);
+            Assertions.assertFalse(Files.exists(tempDir.resolve("blob.part")));
+            Assertions.assertFalse(Files.exists(tempDir.resolve("blob.part.state")));
+        }
+    }
+
+    @Test
+    void downloadsChunksInParallel() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder()
+                     .transferConfig(TransferConfig.builder().chunkSize(CHUNK).parallelism(8).build())
+                     .build()) {
+            byte[] content = random(40 * CHUNK + 1);
+            String digest = registry.putBlob("app", content);
+            Path target = tempDir.resolve("nested").resolve("blob");
+
+            client.downloadBlob(registry.getHost() + "/app", digest, target);
+            Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+            Assertions.assertEquals(41, rangedGets(registry));
+        }
+    }
+
+    @Test
+    void rejectsCorruptDownload() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = client()) {
+            byte[] content = random(6 * CHUNK);
+            String digest = registry.putBlob("app", content);
+            // The registry serves the array it was given, so this corrupts the stored blob
+            content[3 * CHUNK + 1] ^= 1;
+            Path target = tempDir.resolve("blob");
+
+            IOException error = Assertions.assertThrows(IOException.class,
+                    () -> client.downloadBlob(registry.getHost() + "/app", digest, target));
+            Assertions.assertTrue(error.getMessage().contains("Digest mismatch"));
+            Assertions.assertFalse(Files.exists(target));
+            Assertions.assertFalse(Files.exists(tempDir.resolve("blob.part")));
+            Assertions.assertFalse(Files.exists(tempDir.resolve("blob.part.state")));
+        }
+    }
+
+    @Test
+    void resumesInterruptedUpload() throws Exception {
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = client()) {
+            byte[] content = random(5 * CHUNK + 7);
+            Path source = tempDir.resolve("layer");
+            Files.write(source, content);
+
+            registry.failAfter("PATCH", "/v2/app/blobs/uploads/.*", 3, 1);
+            Assertions.assertThrows(IOException.class, () -> client.uploadBlob(registry.getHost() + "/app", source));
+
+            String digest = client.uploadBlob(registry.getHost() + "/app", source);
+            Assertions.assertEquals(FakeRegistry.sha256(content), digest);
+            Assertions.assertTrue(registry.hasBlob("app", digest));
+            // 3 chunks acknowledged before the failure, 3 more afterwards
+            Assertions.assertEquals(1, registry.requests().stream()
+                    .filter(request -> request.method().equals("POST")).count());
+            Assertions.assertEquals(7, registry.requests().stream()
+                    .filter(request -> request.method().equals("PATCH")).count());
+
+            // a second upload finds the blob and sends nothing
+            client.uploadBlob(registry.getHost() + "/app", source);
+            Assertions.assertEquals(7, registry.requests().stream()
+                    .filter(request -> request.method().equals("PATCH")).count());
+        }
+    }
+
+    private RegistryClientInstance client() {
+        return RegistryClient.builder()
+                .transferConfig(TransferConfig.builder()
+                        .chunkSize(CHUNK)
+                        .parallelism(1)
+                        .stateDirectory(tempDir.resolve("state"))
+                        .build())
+                .build();
+    }
+
+    private static long rangedGets(FakeRegistry registry) {
+        return registry.requests().stream()
+                .filter(request -> request.method().equals("GET") && request.headers().containsKey("Range"))
+                .count();
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
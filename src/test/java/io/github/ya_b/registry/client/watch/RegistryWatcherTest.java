@@ -0,0 +1,141 @@
+package io.github.ya_b.registry.client.watch;
+
+import io.github.ya_b.registry.client.FakeRegistry;
+import io.github.ya_b.registry.client.RegistryClient;
+import io.github.ya_b.registry.client.RegistryClientInstance;
+import io.github.ya_b.registry.client.http.RawManifest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class RegistryWatcherTest {
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+    }
+
+    @Test
+    void looksUpOnlyCandidateDigests() throws Exception {
+        MutableClock clock = new MutableClock();
+        WatchConfig config = WatchConfig.builder()
+                .minInterval(Duration.ofSeconds(30))
+                .maxInterval(Duration.ofMinutes(4))
+                .build();
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build();
+             RegistryWatcher watcher = new RegistryWatcher(client.getJibImageManager(), host -> null, config, clock)) {
+            String m1 = put(registry, "v1", 1);
+            put(registry, "latest", 1);
+            String m2 = put(registry, "v2", 2);
+            List<TagEvent> events = new CopyOnWriteArrayList<>();
+            watcher.watchRepository(registry.getHost() + "/team/app").addListener(events::add);
+
+            // The baseline looks every tag up once and publishes nothing
+            watcher.pollNow();
+            Assertions.assertEquals(List.of(), events);
+            Assertions.assertEquals(3, watcher.stats().digestRequests());
+            Assertions.assertEquals(m1, watcher.snapshot(registry.getHost() + "/team/app").get("latest"));
+
+            // An unchanged list and no tag due: one tags/list, no lookups, even though latest moved
+            put(registry, "latest", 2);
+            watcher.pollNow();
+            Assertions.assertEquals(2, watcher.stats().tagListRequests());
+            Assertions.assertEquals(3, watcher.stats().digestRequests());
+            Assertions.assertEquals(List.of(), events);
+
+            clock.advance(Duration.ofSeconds(31));
+            watcher.pollNow();
+            Assertions.assertEquals(6, watcher.stats().digestRequests());
+            Assertions.assertEquals(List.of(new TagEvent(TagEvent.Type.MOVED, registry.getHost() + "/team/app", "latest",
+                    m1, m2, clock.instant())), events);
+
+            // v1 and v2 stayed quiet and backed off; latest moved and is checked again first
+            clock.advance(Duration.ofSeconds(31));
+            watcher.pollNow();
+            Assertions.assertEquals(7, watcher.stats().digestRequests());
+
+            // A new tag makes the repository active: the new tag and latest are looked up, v1 and v2 are not
+            String m3 = put(registry, "v3", 3);
+            put(registry, "latest", 1);
+            events.clear();
+            watcher.pollNow();
+            Assertions.assertEquals(9, watcher.stats().digestRequests());
+            Assertions.assertEquals(List.of(
+                    new TagEvent(TagEvent.Type.MOVED, registry.getHost() + "/team/app", "latest", m2, m1, clock.instant()),
+                    new TagEvent(TagEvent.Type.CREATED, registry.getHost() + "/team/app", "v3", null, m3, clock.instant())),
+                    events.stream().sorted((a, b) -> a.tag().compareTo(b.tag())).toList());
+
+            events.clear();
+            client.delete(registry.getHost() + "/team/app@" + m2);
+            watcher.pollNow();
+            Assertions.assertEquals(List.of(new TagEvent(TagEvent.Type.DELETED, registry.getHost() + "/team/app", "v2",
+                    m2, null, clock.instant())), events);
+            Assertions.assertEquals(10, watcher.stats().digestRequests());
+            Assertions.assertEquals(3, watcher.stats().tags());
+        }
+    }
+
+    @Test
+    void pollsInTheBackground() throws Exception {
+        WatchConfig config = WatchConfig.builder()
+                .minInterval(Duration.ofMillis(20))
+                .maxInterval(Duration.ofMillis(80))
+                .build();
+        try (FakeRegistry registry = FakeRegistry.start();
+             RegistryClientInstance client = RegistryClient.builder().build();
+             RegistryWatcher watcher = client.watcher(config)) {
+            put(registry, "latest", 1);
+            put(registry, "v1", 1);
+            BlockingQueue<TagEvent> events = new LinkedBlockingQueue<>();
+            watcher.watchTag(registry.getHost() + "/team/app:latest").addListener(events::add).start();
+            while (watcher.stats().tags() == 0) {
+                Thread.sleep(10);
+            }
+
+            // Tags outside the watched one are ignored
+            put(registry, "v2", 2);
+            String moved = put(registry, "latest", 2);
+            TagEvent event = events.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(event);
+            Assertions.assertEquals(TagEvent.Type.MOVED, event.type());
+            Assertions.assertEquals(moved, event.digest());
+            Assertions.assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+            Assertions.assertEquals(List.of("latest"), List.copyOf(watcher.snapshot(registry.getHost() + "/team/app").keySet()));
+        }
+    }
+
+    private static String put(FakeRegistry registry, String tag, int version) {
+        byte[] manifest = ("{\"schemaVersion\":2,\"mediaType\":\"" + RawManifest.DOCKER_MANIFEST + "\",\"version\":" + version + "}")
+                .getBytes(StandardCharsets.UTF_8);
+        return registry.putManifest("team/app", tag, RawManifest.DOCKER_MANIFEST, manifest);
+    }
+}